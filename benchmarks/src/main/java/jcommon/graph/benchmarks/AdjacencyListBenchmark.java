@@ -0,0 +1,53 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.benchmarks;
+
+import jcommon.graph.IVertex;
+import jcommon.graph.impl.AdjacencyList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building an {@link AdjacencyList} from a graph's vertices and edges and
+ * computing the in-degrees from it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdjacencyListBenchmark {
+  @Benchmark
+  public AdjacencyList<IVertex<Integer>, Integer, Integer> construct(final GraphState state) {
+    return new AdjacencyList<IVertex<Integer>, Integer, Integer>(state.vertices, state.edges);
+  }
+
+  @Benchmark
+  public int[] calculateInDegrees(final GraphState state) {
+    return state.adjacencyList.calculateInDegrees();
+  }
+}
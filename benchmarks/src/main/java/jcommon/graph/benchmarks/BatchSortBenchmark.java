@@ -0,0 +1,100 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.benchmarks;
+
+import jcommon.graph.CyclicGraphException;
+import jcommon.graph.GraphGenerator;
+import jcommon.graph.NumberGraph;
+import jcommon.graph.impl.BatchTopologicalSort;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares sorting a batch of small graphs one {@link jcommon.graph.IGraph#sort()} at a time against
+ * {@link BatchTopologicalSort} on the calling thread and on a pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchSortBenchmark {
+  @Param({"10000"})
+  public int graphs;
+
+  @Param({"20"})
+  public int size;
+
+  private List<NumberGraph<Integer>> batch;
+  private ExecutorService executor;
+  private BatchTopologicalSort serial;
+  private BatchTopologicalSort pooled;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    batch = new ArrayList<NumberGraph<Integer>>(graphs);
+    for(int i = 0; i < graphs; ++i)
+      batch.add(GraphGenerator.seeded(i).shape(GraphGenerator.Shape.values()[i % GraphGenerator.Shape.values().length], size).toNumberGraph());
+    executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    serial = new BatchTopologicalSort();
+    pooled = new BatchTopologicalSort(executor);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Benchmark
+  public int sortEach() throws CyclicGraphException {
+    int total = 0;
+    for(NumberGraph<Integer> g : batch)
+      total += g.sort().size();
+    return total;
+  }
+
+  @Benchmark
+  public List<List<Integer>> batchSerial() {
+    return serial.sortAll(batch);
+  }
+
+  @Benchmark
+  public List<List<Integer>> batchPooled() {
+    return pooled.sortAll(batch);
+  }
+}
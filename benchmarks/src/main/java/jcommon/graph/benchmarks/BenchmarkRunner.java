@@ -0,0 +1,45 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached so that allocation rates
+ * (<code>gc.alloc.rate.norm</code>, bytes per operation) are reported alongside timings.
+ *
+ * Accepts the same arguments as <code>org.openjdk.jmh.Main</code>, e.g. a benchmark regex or
+ * <code>-p size=1000</code>.
+ */
+public class BenchmarkRunner {
+  public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+    new Runner(
+      new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .addProfiler(GCProfiler.class)
+        .build()
+    ).run();
+  }
+}
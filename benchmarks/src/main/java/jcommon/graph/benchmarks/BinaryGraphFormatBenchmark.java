@@ -0,0 +1,75 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.benchmarks;
+
+import jcommon.graph.NumberGraph;
+import jcommon.graph.impl.BinaryGraphFormat;
+import jcommon.graph.impl.ValueSerializers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading a cached graph with {@link BinaryGraphFormat} compared to writing it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BinaryGraphFormatBenchmark {
+  private File file;
+
+  @Setup(Level.Trial)
+  public void setUp(final GraphState state) throws IOException {
+    file = File.createTempFile("jcommon-graph-benchmark-", ".bin");
+    file.deleteOnExit();
+    BinaryGraphFormat.write(state.graph, ValueSerializers.INTEGERS, file);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Benchmark
+  public NumberGraph<Integer> read() throws IOException {
+    return BinaryGraphFormat.read(file, ValueSerializers.INTEGERS, NumberGraph.<Integer>createForNumbers());
+  }
+
+  @Benchmark
+  public long write(final GraphState state) throws IOException {
+    return BinaryGraphFormat.write(state.graph, ValueSerializers.INTEGERS, file);
+  }
+}
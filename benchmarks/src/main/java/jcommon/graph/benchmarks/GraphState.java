@@ -0,0 +1,61 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.benchmarks;
+
+import jcommon.graph.GraphGenerator;
+import jcommon.graph.IEdge;
+import jcommon.graph.IVertex;
+import jcommon.graph.NumberGraph;
+import jcommon.graph.impl.AdjacencyList;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Set;
+
+/**
+ * Shared benchmark state: a generated graph of the requested shape and size along with its
+ * vertices, edges and a prebuilt {@link AdjacencyList}.
+ */
+@State(Scope.Benchmark)
+public class GraphState {
+  private static final long SEED = 0x5EEDL;
+
+  @Param({"CHAIN", "FAN_OUT_IN", "LAYERED", "RANDOM", "DIAMOND_LATTICE"})
+  public GraphGenerator.Shape shape;
+
+  @Param({"100", "1000", "5000"})
+  public int size;
+
+  public NumberGraph<Integer> graph;
+  public Set<IVertex<Integer>> vertices;
+  public Set<IEdge<IVertex<Integer>>> edges;
+  public AdjacencyList<IVertex<Integer>, Integer, Integer> adjacencyList;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    graph = GraphGenerator.seeded(SEED).shape(shape, size).toNumberGraph();
+    vertices = graph.getVertices();
+    edges = graph.getEdges();
+    adjacencyList = new AdjacencyList<IVertex<Integer>, Integer, Integer>(vertices, edges);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.benchmarks;
+
+import jcommon.graph.ITopologicalSortAsyncResult;
+import jcommon.graph.ITopologicalSortCallback;
+import jcommon.graph.ITopologicalSortCoordinator;
+import jcommon.graph.ITopologicalSortInput;
+import jcommon.graph.IVertex;
+import jcommon.graph.impl.SimpleTopologicalSort;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throughput and latency distribution of
+ * {@link SimpleTopologicalSort#sortAsync(ExecutorService, jcommon.graph.IAdjacencyList, ITopologicalSortCallback, jcommon.graph.ITopologicalSortErrorCallback)}
+ * with a callback that does no work, i.e. the scheduling overhead of the library itself.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SortAsyncBenchmark {
+  private static final ITopologicalSortCallback<Integer, Integer> CALLBACK = new ITopologicalSortCallback<Integer, Integer>() {
+    @Override
+    public Integer handle(Integer value, ITopologicalSortInput<Integer, Integer> input, IVertex<Integer> vertex, ITopologicalSortCoordinator coordinator) throws Throwable {
+      return value;
+    }
+  };
+
+  @State(Scope.Benchmark)
+  public static class ExecutorState {
+    @Param({"4"})
+    public int threads;
+
+    public ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+      executor.shutdownNow();
+      executor.awaitTermination(1L, TimeUnit.MINUTES);
+    }
+  }
+
+  private final SimpleTopologicalSort<IVertex<Integer>, Integer, Integer> strategy = new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>();
+
+  @Benchmark
+  public boolean sortAsync(final GraphState state, final ExecutorState executor) {
+    final ITopologicalSortAsyncResult<Integer, Integer> result = strategy.sortAsync(executor.executor, state.adjacencyList, CALLBACK, null);
+    return result.waitForCompletion();
+  }
+}
@@ -0,0 +1,68 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.benchmarks;
+
+import jcommon.graph.CyclicGraphException;
+import jcommon.graph.IVertex;
+import jcommon.graph.impl.SimpleTopologicalSort;
+import jcommon.graph.impl.TopologicalSortContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link SimpleTopologicalSort#sort(jcommon.graph.IAdjacencyList)} on a prebuilt adjacency list
+ * as well as the end-to-end {@link jcommon.graph.IGraph#sort()} which also validates the graph and builds
+ * the adjacency list, and sorting with a reused {@link TopologicalSortContext}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SortBenchmark {
+  private final SimpleTopologicalSort<IVertex<Integer>, Integer, Integer> strategy = new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>();
+  private final TopologicalSortContext context = new TopologicalSortContext();
+
+  @Benchmark
+  public List<Integer> sort(final GraphState state) throws CyclicGraphException {
+    return strategy.sort(state.adjacencyList);
+  }
+
+  @Benchmark
+  public List<Integer> sortWithContext(final GraphState state) throws CyclicGraphException {
+    return strategy.sort(state.adjacencyList, context);
+  }
+
+  @Benchmark
+  public List<Integer> graphSort(final GraphState state) throws CyclicGraphException {
+    return state.graph.sort();
+  }
+}
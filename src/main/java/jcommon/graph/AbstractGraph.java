@@ -0,0 +1,210 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph;
+
+import jcommon.graph.impl.AncestorSlice;
+import jcommon.graph.impl.SimpleTopologicalSort;
+import jcommon.graph.impl.TransitiveReduction;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Implements the {@link #sort()} and {@link #sortAsync(ITopologicalSortCallback)} family of methods on top of
+ * {@link #createAdjacencyList()}, leaving the storage of vertices and edges to subclasses.
+ *
+ * @param <TVertex> Type of {@link IVertex} vertices that this graph contains.
+ *
+ * @see IGraph
+ */
+public abstract class AbstractGraph<TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> implements IGraph<TVertex, TValue, TProcessedValue> {
+  /**
+   * Provides an {@link IAdjacencyList} of the graph's current vertices and edges to sort. Implementations
+   * must ensure the graph is valid (see {@link #validate()}) and that the adjacency list is not affected by
+   * later changes to the graph.
+   *
+   * @return An instance of {@link IAdjacencyList} representing the graph.
+   * @throws IllegalStateException Thrown if the graph is invalid.
+   */
+  protected abstract IAdjacencyList<TVertex, TValue, TProcessedValue> createAdjacencyList();
+
+  /**
+   * Provides an {@link IAdjacencyList} of only the target vertices and their ancestors. By default this slices
+   * the result of {@link #createAdjacencyList()}, which visits the whole graph. Subclasses that keep an index
+   * of in-neighbors should override it so the work is proportional to the slice.
+   *
+   * @param targets The vertices whose ancestors are wanted.
+   * @return An instance of {@link IAdjacencyList} representing the slice of the graph.
+   * @throws IllegalStateException Thrown if the graph is invalid.
+   * @throws IllegalArgumentException Thrown if a target is not a vertex of the graph.
+   */
+  protected IAdjacencyList<TVertex, TValue, TProcessedValue> createAdjacencyList(final Collection<? extends TVertex> targets) {
+    return AncestorSlice.of(createAdjacencyList(), targets);
+  }
+
+  /**
+   * Finds the redundant edges in the adjacency list and removes them one at a time with
+   * {@link #removeEdge(IVertex, IVertex)}.
+   *
+   * @see IGraph#transitiveReduction()
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> transitiveReduction() throws CyclicGraphException {
+    for(IEdge<TVertex> e : TransitiveReduction.redundantEdges(createAdjacencyList()))
+      removeEdge(e.getFrom(), e.getTo());
+    return this;
+  }
+
+  /**
+   * @see IGraph#sort()
+   */
+  @Override
+  public List<TValue> sort() throws CyclicGraphException {
+    return sort(new SimpleTopologicalSort<TVertex, TValue, TProcessedValue>());
+  }
+
+  /**
+   * @see IGraph#sort(ITopologicalSortStrategy)
+   */
+  @Override
+  public List<TValue> sort(final ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy) throws CyclicGraphException {
+    if (strategy == null)
+      throw new IllegalArgumentException("strategy cannot be null");
+    return strategy.sort(createAdjacencyList());
+  }
+
+  /**
+   * @see IGraph#sortAsync(ITopologicalSortCallback)
+   */
+  @Override
+  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ITopologicalSortCallback<TValue, TProcessedValue> callback) {
+    return sortAsync(new SimpleTopologicalSort<TVertex, TValue, TProcessedValue>(), callback, null);
+  }
+
+  /**
+   * @see IGraph#sortAsync(ITopologicalSortCallback, ITopologicalSortErrorCallback)
+   */
+  @Override
+  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ITopologicalSortCallback<TValue, TProcessedValue> callback, final ITopologicalSortErrorCallback<TValue> errorCallback) {
+    return sortAsync(new SimpleTopologicalSort<TVertex, TValue, TProcessedValue>(), callback, errorCallback);
+  }
+
+  /**
+   * @see IGraph#sortAsync(ITopologicalSortStrategy, ITopologicalSortCallback)
+   */
+  @Override
+  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy, final ITopologicalSortCallback<TValue, TProcessedValue> callback) {
+    return sortAsync(strategy, callback, null);
+  }
+
+  /**
+   * @see IGraph#sortAsync(ITopologicalSortStrategy, ITopologicalSortCallback, ITopologicalSortErrorCallback)
+   */
+  @Override
+  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy, final ITopologicalSortCallback<TValue, TProcessedValue> callback, final ITopologicalSortErrorCallback<TValue> errorCallback) {
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() + 1));
+    final ITopologicalSortAsyncResult<TValue, TProcessedValue> result = sortAsync(executor, strategy, callback, errorCallback);
+
+    //We don't explicity shutdown b/c we may not be done processing
+    //at this point. If need to abort prematurely, the caller can
+    //access the executor service from the .getExecutorService()
+    //method.
+    return result;
+  }
+
+  /**
+   * @see IGraph#sortAsync(java.util.concurrent.ExecutorService, ITopologicalSortCallback)
+   */
+  @Override
+  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ExecutorService executor, final ITopologicalSortCallback<TValue, TProcessedValue> callback) {
+    return sortAsync(executor, new SimpleTopologicalSort<TVertex, TValue, TProcessedValue>(), callback, null);
+  }
+
+  /**
+   * @see IGraph#sortAsync(java.util.concurrent.ExecutorService, ITopologicalSortCallback, ITopologicalSortErrorCallback)
+   */
+  @Override
+  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ExecutorService executor, final ITopologicalSortCallback<TValue, TProcessedValue> callback, final ITopologicalSortErrorCallback<TValue> errorCallback) {
+    return sortAsync(executor, new SimpleTopologicalSort<TVertex, TValue, TProcessedValue>(), callback, errorCallback);
+  }
+
+  /**
+   * @see IGraph#sortAsync(java.util.concurrent.ExecutorService, ITopologicalSortStrategy, ITopologicalSortCallback)
+   */
+  @Override
+  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ExecutorService executor, final ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy, final ITopologicalSortCallback<TValue, TProcessedValue> callback) {
+    return sortAsync(executor, strategy, callback, null);
+  }
+
+  /**
+   * @see IGraph#sortAsync(java.util.concurrent.ExecutorService, ITopologicalSortStrategy, ITopologicalSortCallback, ITopologicalSortErrorCallback)
+   */
+  @Override
+  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ExecutorService executor, final ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy, final ITopologicalSortCallback<TValue, TProcessedValue> callback, final ITopologicalSortErrorCallback<TValue> errorCallback) {
+    if (strategy == null)
+      throw new IllegalArgumentException("strategy cannot be null");
+    if (callback == null)
+      throw new IllegalArgumentException("callback cannot be null");
+
+    return strategy.sortAsync(executor, createAdjacencyList(), callback, errorCallback);
+  }
+
+  /**
+   * @see IGraph#sort(Collection)
+   */
+  @Override
+  public List<TValue> sort(final Collection<? extends TVertex> targets) throws CyclicGraphException {
+    return sort(new SimpleTopologicalSort<TVertex, TValue, TProcessedValue>(), targets);
+  }
+
+  /**
+   * @see IGraph#sort(ITopologicalSortStrategy, Collection)
+   */
+  @Override
+  public List<TValue> sort(final ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy, final Collection<? extends TVertex> targets) throws CyclicGraphException {
+    if (strategy == null)
+      throw new IllegalArgumentException("strategy cannot be null");
+    return strategy.sort(createAdjacencyList(targets));
+  }
+
+  /**
+   * @see IGraph#sortAsync(Collection, ITopologicalSortCallback)
+   */
+  @Override
+  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final Collection<? extends TVertex> targets, final ITopologicalSortCallback<TValue, TProcessedValue> callback) {
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() + 1));
+    return sortAsync(executor, new SimpleTopologicalSort<TVertex, TValue, TProcessedValue>(), targets, callback, null);
+  }
+
+  /**
+   * @see IGraph#sortAsync(ExecutorService, ITopologicalSortStrategy, Collection, ITopologicalSortCallback, ITopologicalSortErrorCallback)
+   */
+  @Override
+  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ExecutorService executor, final ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy, final Collection<? extends TVertex> targets, final ITopologicalSortCallback<TValue, TProcessedValue> callback, final ITopologicalSortErrorCallback<TValue> errorCallback) {
+    if (strategy == null)
+      throw new IllegalArgumentException("strategy cannot be null");
+    if (callback == null)
+      throw new IllegalArgumentException("callback cannot be null");
+
+    return strategy.sortAsync(executor, createAdjacencyList(targets), callback, errorCallback);
+  }
+}
@@ -0,0 +1,87 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph;
+
+/**
+ * Base class of the array-backed per-vertex values. It resolves vertices to the dense ids of an
+ * {@link IVertexIds} and decides how far the backing array grows when a larger id is written, leaving the array
+ * itself, and so the type of the values, to subclasses.
+ *
+ * @param <TVertex> Type of {@link IVertex} that values are kept for.
+ *
+ * @see VertexProperties
+ * @see IntVertexProperties
+ * @see DoubleVertexProperties
+ */
+public abstract class AbstractVertexProperties<TVertex extends IVertex<?>> {
+  private final IVertexIds<TVertex> ids;
+
+  /**
+   * @param ids The {@link IVertexIds} that assigns ids to vertices.
+   */
+  protected AbstractVertexProperties(final IVertexIds<TVertex> ids) {
+    if (ids == null)
+      throw new IllegalArgumentException("ids cannot be null");
+    this.ids = ids;
+  }
+
+  /**
+   * Gets the source of the ids that values are indexed by.
+   *
+   * @return The {@link IVertexIds} that assigns ids to vertices.
+   */
+  public IVertexIds<TVertex> getIds() {
+    return ids;
+  }
+
+  /**
+   * @return The length the backing array should start out with.
+   */
+  protected int initialLength() {
+    return ids.getIdBound();
+  }
+
+  /**
+   * Gets the id of a vertex that must have one.
+   *
+   * @param vertex The vertex whose id is needed.
+   * @return The id of the vertex.
+   * @throws IllegalArgumentException Thrown if the vertex has no id.
+   */
+  protected int require(final TVertex vertex) {
+    final int id = ids.idOf(vertex);
+    if (id < 0)
+      throw new IllegalArgumentException("vertex " + vertex + " has no id");
+    return id;
+  }
+
+  /**
+   * Calculates the length the backing array should grow to so that it can hold <code>id</code>. It grows by at
+   * least half, and to at least the current id bound, so that filling in every vertex copies the array a
+   * logarithmic number of times.
+   *
+   * @param id The id that's about to be written.
+   * @param length The current length of the backing array.
+   * @return The new length of the backing array.
+   */
+  protected int grownLength(final int id, final int length) {
+    return Math.max(id + 1, Math.max(ids.getIdBound(), length + (length >> 1)));
+  }
+}
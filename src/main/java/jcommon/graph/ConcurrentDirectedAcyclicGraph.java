@@ -0,0 +1,382 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph;
+
+import jcommon.graph.impl.AdjacencyList;
+import jcommon.graph.impl.Edge;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread-safe {@link IGraph} that many threads can add vertices and edges to at the same time.
+ *
+ * Vertices and edges are kept in {@link ConcurrentHashMap}s, so mutations from different threads rarely contend.
+ * Each mutation takes the read lock of one of several stripes, chosen by thread, and {@link #sort()},
+ * {@link #sortAsync(ITopologicalSortCallback)} and {@link #copy()} briefly take every stripe's write lock. They
+ * therefore always operate on a consistent snapshot: every mutation that completed before the snapshot is included
+ * and none that started after it are. Threads mutating through different stripes never write to the same lock.
+ *
+ * Snapshots are ordered by sequence numbers that each thread hands out from its own block, so that mutations don't
+ * all increment one shared counter. A snapshot preserves the order in which each thread added its vertices and
+ * edges, and a single thread building a graph gets exactly the insertion order of {@link DirectedAcyclicGraph}.
+ * Across threads, items are ordered by the blocks their numbers came from rather than strictly by time.
+ * {@link #getVertices()} and {@link #getEdges()} are live, weakly consistent views.
+ *
+ * Removing a vertex also removes its incident edges. The first removal builds an index of every vertex's incident
+ * edges, under the snapshot locks, and edge mutations keep it up to date from then on, so each later removal takes
+ * time proportional to the vertex's degree. An edge added at the same time as one of its endpoints is removed may
+ * outlive it, exactly as if it had been added right after the removal.
+ *
+ * @param <TVertex> Type of {@link IVertex} vertices that this graph contains.
+ *
+ * @see IGraph
+ * @see DirectedAcyclicGraph
+ */
+public class ConcurrentDirectedAcyclicGraph<TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> extends AbstractGraph<TVertex, TValue, TProcessedValue> {
+  private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+  private static final int MAX_STRIPES = 64;
+  private static final long SEQUENCE_BLOCK_SIZE = 1024L;
+
+  //Values are a sequence number so that snapshots can be put back into insertion order.
+  private final ConcurrentHashMap<TVertex, Long> vertices;
+  private final ConcurrentHashMap<IEdge<TVertex>, Long> edges;
+  private final AtomicLong sequence = new AtomicLong();
+  private final ReadWriteLock[] snapshot_locks;
+  private final ThreadLocal<Writer> writers = new ThreadLocal<Writer>();
+
+  //Maps each vertex to its incident edges. Built by the first removeVertex() while every stripe is locked.
+  private volatile ConcurrentHashMap<TVertex, Set<IEdge<TVertex>>> incident;
+
+  /**
+   * Protected constructor to prevent public instantiation.
+   *
+   * @param concurrencyLevel The estimated number of threads concurrently mutating the graph.
+   */
+  protected ConcurrentDirectedAcyclicGraph(final int concurrencyLevel) {
+    if (concurrencyLevel <= 0)
+      throw new IllegalArgumentException("concurrencyLevel must be positive");
+    this.vertices = new ConcurrentHashMap<TVertex, Long>(16, 0.75f, concurrencyLevel);
+    this.edges = new ConcurrentHashMap<IEdge<TVertex>, Long>(16, 0.75f, concurrencyLevel);
+
+    int stripes = 1;
+    while(stripes < concurrencyLevel && stripes < MAX_STRIPES)
+      stripes <<= 1;
+    this.snapshot_locks = new ReadWriteLock[stripes];
+    for(int i = 0; i < stripes; ++i)
+      snapshot_locks[i] = new ReentrantReadWriteLock();
+  }
+
+  /**
+   * Convenience method for constructing an empty {@link ConcurrentDirectedAcyclicGraph}.
+   *
+   * @param <TVertex> Type of {@link IVertex} of the vertices in the new {@link IGraph}.
+   * @return A new, empty instance of {@link ConcurrentDirectedAcyclicGraph}.
+   */
+  public static <TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> ConcurrentDirectedAcyclicGraph<TVertex, TValue, TProcessedValue> create() {
+    return create(DEFAULT_CONCURRENCY_LEVEL);
+  }
+
+  /**
+   * Convenience method for constructing an empty {@link ConcurrentDirectedAcyclicGraph} sized for the expected
+   * number of threads concurrently mutating it.
+   *
+   * @param concurrencyLevel The estimated number of threads concurrently mutating the graph.
+   * @param <TVertex> Type of {@link IVertex} of the vertices in the new {@link IGraph}.
+   * @return A new, empty instance of {@link ConcurrentDirectedAcyclicGraph}.
+   */
+  public static <TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> ConcurrentDirectedAcyclicGraph<TVertex, TValue, TProcessedValue> create(final int concurrencyLevel) {
+    return new ConcurrentDirectedAcyclicGraph<TVertex, TValue, TProcessedValue>(concurrencyLevel);
+  }
+
+  /**
+   * @see IGraph#getVertices()
+   */
+  @Override
+  public Set<TVertex> getVertices() {
+    return Collections.unmodifiableSet(vertices.keySet());
+  }
+
+  /**
+   * @see IGraph#getEdges()
+   */
+  @Override
+  public Set<IEdge<TVertex>> getEdges() {
+    return Collections.unmodifiableSet(edges.keySet());
+  }
+
+  /**
+   * Provides a consistent copy of this graph.
+   *
+   * @see IGraph#copy()
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> copy() {
+    final ConcurrentDirectedAcyclicGraph<TVertex, TValue, TProcessedValue> g = new ConcurrentDirectedAcyclicGraph<TVertex, TValue, TProcessedValue>(snapshot_locks.length);
+    lockAll();
+    try {
+      g.vertices.putAll(vertices);
+      g.edges.putAll(edges);
+      g.sequence.set(sequence.get());
+    } finally {
+      unlockAll();
+    }
+    return g;
+  }
+
+  /**
+   * Provides the calling thread's stripe and sequence block, creating them on its first mutation.
+   */
+  private Writer writer() {
+    Writer w = writers.get();
+    if (w == null) {
+      w = new Writer(snapshot_locks[(int)(Thread.currentThread().getId() & (snapshot_locks.length - 1))].readLock());
+      writers.set(w);
+    }
+    return w;
+  }
+
+  private void lockAll() {
+    for(ReadWriteLock l : snapshot_locks)
+      l.writeLock().lock();
+  }
+
+  private void unlockAll() {
+    for(int i = snapshot_locks.length - 1; i >= 0; --i)
+      snapshot_locks[i].writeLock().unlock();
+  }
+
+  /**
+   * @see IGraph#addVertex(IVertex)
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> addVertex(final TVertex vertex) {
+    if (vertex == null)
+      throw new IllegalArgumentException("vertex must not be null");
+    final Writer w = writer();
+    w.lock.lock();
+    try {
+      if (!vertices.containsKey(vertex))
+        vertices.putIfAbsent(vertex, w.next());
+    } finally {
+      w.lock.unlock();
+    }
+    return this;
+  }
+
+  /**
+   * Removes a vertex along with every edge coming into or going out of it.
+   *
+   * @see IGraph#removeVertex(IVertex)
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> removeVertex(final TVertex vertex) {
+    if (vertex == null)
+      throw new IllegalArgumentException("vertex must not be null");
+    if (incident == null)
+      buildIncidentIndex();
+
+    final Writer w = writer();
+    w.lock.lock();
+    try {
+      vertices.remove(vertex);
+      final Set<IEdge<TVertex>> removed = incident.remove(vertex);
+      if (removed != null) {
+        for(IEdge<TVertex> e : removed) {
+          edges.remove(e);
+          final TVertex other = vertex.equals(e.getFrom()) ? e.getTo() : e.getFrom();
+          final Set<IEdge<TVertex>> other_edges = incident.get(other);
+          if (other_edges != null)
+            other_edges.remove(e);
+        }
+      }
+    } finally {
+      w.lock.unlock();
+    }
+    return this;
+  }
+
+  private void buildIncidentIndex() {
+    lockAll();
+    try {
+      if (incident != null)
+        return;
+      final ConcurrentHashMap<TVertex, Set<IEdge<TVertex>>> index = new ConcurrentHashMap<TVertex, Set<IEdge<TVertex>>>(Math.max(16, vertices.size()), 0.75f, snapshot_locks.length);
+      for(IEdge<TVertex> e : edges.keySet()) {
+        incidentTo(index, e.getFrom()).add(e);
+        incidentTo(index, e.getTo()).add(e);
+      }
+      incident = index;
+    } finally {
+      unlockAll();
+    }
+  }
+
+  private static <TVertex extends IVertex> Set<IEdge<TVertex>> incidentTo(final ConcurrentHashMap<TVertex, Set<IEdge<TVertex>>> index, final TVertex vertex) {
+    Set<IEdge<TVertex>> set = index.get(vertex);
+    if (set == null) {
+      final Set<IEdge<TVertex>> created = Collections.newSetFromMap(new ConcurrentHashMap<IEdge<TVertex>, Boolean>(4));
+      set = index.putIfAbsent(vertex, created);
+      if (set == null)
+        set = created;
+    }
+    return set;
+  }
+
+  /**
+   * @see IGraph#addEdge(IVertex, IVertex)
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> addEdge(final TVertex from, final TVertex to) {
+    final Edge<TVertex> edge = new Edge<TVertex>(from, to);
+    final Writer w = writer();
+    w.lock.lock();
+    try {
+      if (!edges.containsKey(edge) && edges.putIfAbsent(edge, w.next()) == null) {
+        final ConcurrentHashMap<TVertex, Set<IEdge<TVertex>>> index = incident;
+        if (index != null) {
+          incidentTo(index, from).add(edge);
+          incidentTo(index, to).add(edge);
+        }
+      }
+    } finally {
+      w.lock.unlock();
+    }
+    return this;
+  }
+
+  /**
+   * @see IGraph#removeEdge(IVertex, IVertex)
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> removeEdge(final TVertex from, final TVertex to) {
+    final Edge<TVertex> edge = new Edge<TVertex>(from, to);
+    final Writer w = writer();
+    w.lock.lock();
+    try {
+      if (edges.remove(edge) != null) {
+        final ConcurrentHashMap<TVertex, Set<IEdge<TVertex>>> index = incident;
+        if (index != null) {
+          removeIncident(index, from, edge);
+          removeIncident(index, to, edge);
+        }
+      }
+    } finally {
+      w.lock.unlock();
+    }
+    return this;
+  }
+
+  /**
+   * Validates the graph as it is at this moment. Concurrent mutations may change the answer.
+   *
+   * @see IGraph#validate()
+   */
+  @Override
+  public boolean validate() {
+    for(IEdge<TVertex> r : edges.keySet()) {
+      if (!vertices.containsKey(r.getFrom()) || !vertices.containsKey(r.getTo()))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Takes a consistent snapshot of the vertices and edges, validates it and builds an {@link AdjacencyList} from it.
+   *
+   * @see AbstractGraph#createAdjacencyList()
+   */
+  @Override
+  protected IAdjacencyList<TVertex, TValue, TProcessedValue> createAdjacencyList() {
+    final Object[] vertex_entries;
+    final Object[] edge_entries;
+    lockAll();
+    try {
+      vertex_entries = vertices.entrySet().toArray();
+      edge_entries = edges.entrySet().toArray();
+    } finally {
+      unlockAll();
+    }
+
+    final Set<TVertex> snapshot_vertices = inInsertionOrder(vertex_entries);
+    final Set<IEdge<TVertex>> snapshot_edges = inInsertionOrder(edge_entries);
+    for(IEdge<TVertex> r : snapshot_edges) {
+      if (!snapshot_vertices.contains(r.getFrom()) || !snapshot_vertices.contains(r.getTo()))
+        throw new IllegalStateException("The graph is invalid. Please confirm that all vertices are present for every relationship.");
+    }
+    return new AdjacencyList<TVertex, TValue, TProcessedValue>(snapshot_vertices, snapshot_edges);
+  }
+
+  private static <TVertex extends IVertex> void removeIncident(final ConcurrentHashMap<TVertex, Set<IEdge<TVertex>>> index, final TVertex vertex, final IEdge<TVertex> edge) {
+    final Set<IEdge<TVertex>> set = index.get(vertex);
+    if (set != null)
+      set.remove(edge);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Set<T> inInsertionOrder(final Object[] entries) {
+    Arrays.sort(entries, SEQUENCE_ORDER);
+    final Set<T> result = new LinkedHashSet<T>((int)(entries.length / 0.75f) + 1);
+    for(Object entry : entries)
+      result.add(((Map.Entry<T, Long>)entry).getKey());
+    return result;
+  }
+
+  private static final Comparator<Object> SEQUENCE_ORDER = new Comparator<Object>() {
+    @Override
+    @SuppressWarnings("unchecked")
+    public int compare(final Object a, final Object b) {
+      final long x = ((Map.Entry<Object, Long>)a).getValue();
+      final long y = ((Map.Entry<Object, Long>)b).getValue();
+      return (x < y) ? -1 : ((x == y) ? 0 : 1);
+    }
+  };
+
+  /**
+   * The stripe a thread locks while mutating and the block of sequence numbers it hands out from. Only ever used
+   * by its own thread.
+   */
+  private final class Writer {
+    final Lock lock;
+    private long next;
+    private long limit;
+
+    Writer(final Lock lock) {
+      this.lock = lock;
+    }
+
+    long next() {
+      if (next == limit) {
+        next = sequence.getAndAdd(SEQUENCE_BLOCK_SIZE);
+        limit = next + SEQUENCE_BLOCK_SIZE;
+      }
+      return next++;
+    }
+  }
+}
@@ -20,27 +20,111 @@
 package jcommon.graph;
 
 import jcommon.graph.impl.AdjacencyList;
+import jcommon.graph.impl.AncestorSlice;
 import jcommon.graph.impl.Edge;
-import jcommon.graph.impl.SimpleTopologicalSort;
+import jcommon.graph.impl.NeighborEdgeSet;
 
 import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Factory and implementation of a dependency graph that can topologically sort its vertices.
  *
+ * Every vertex is given a dense int id when it's added (see {@link IVertexIds}) that it keeps until it's removed.
+ * Ids of removed vertices are reused by vertices added later so that ids stay below the number of vertices ever
+ * present at one time.
+ *
  * @param <TVertex> Type of {@link IVertex} vertices that this graph contains.
  *
  * @see IGraph
+ * @see AbstractGraph
  */
-public class DirectedAcyclicGraph<TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> implements Cloneable, IGraph<TVertex, TValue, TProcessedValue> {
-  private Set<TVertex> vertices = new LinkedHashSet<TVertex>(5, 0.8f);
+public class DirectedAcyclicGraph<TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> extends AbstractGraph<TVertex, TValue, TProcessedValue> implements IVertexIds<TVertex>, Cloneable {
+  /**
+   * How a {@link DirectedAcyclicGraph} stores its edges.
+   *
+   * @see DirectedAcyclicGraph#withEdgeStorage(EdgeStorage)
+   */
+  public static enum EdgeStorage {
+    /**
+     * Every edge is an {@link Edge} held in a {@link LinkedHashSet}. {@link #getEdges()} iterates in the order
+     * edges were added. This is the default.
+     */
+    EDGE_SET,
+
+    /**
+     * Edges are kept only as per-vertex arrays of out-neighbors in a {@link NeighborEdgeSet}, using several times
+     * less memory per edge. {@link #getEdges()} becomes a lazy view that iterates edges grouped by their source
+     * vertex.
+     */
+    NEIGHBOR_LISTS
+  }
+
+  /**
+   * How vertices are matched to one another while sorting.
+   *
+   * @see DirectedAcyclicGraph#withVertexLookup(VertexLookup)
+   */
+  public static enum VertexLookup {
+    /**
+     * Vertices are looked up with their <code>equals()</code> and <code>hashCode()</code>. This is the default.
+     */
+    EQUALITY,
+
+    /**
+     * Vertices are looked up by reference identity. <code>equals()</code> and <code>hashCode()</code> are still
+     * used when adding and removing vertices and edges, where the endpoints of every edge are replaced with the
+     * graph's own instances, but never when building the {@link IAdjacencyList} for {@link #sort()} or
+     * {@link #sortAsync(ITopologicalSortCallback)} nor while sorting. Edges added before one of their vertices
+     * are mapped to the graph's instances once, on the next sort. Useful when vertices have costly
+     * <code>equals()</code> implementations.
+     */
+    IDENTITY
+  }
+
+  private static final int[] NO_IDS = new int[0];
+  private static final Object[] NO_VERTICES = new Object[0];
+
+  //Maps each vertex to its id.
+  private LinkedHashMap<TVertex, Integer> vertices = new LinkedHashMap<TVertex, Integer>(5, 0.8f);
+  private int id_bound;
+  private int[] free_ids = NO_IDS;
+  private int free_id_count;
+  //The vertex instance stored under each id, used to give edges the graph's own instances.
+  private Object[] vertex_at = NO_VERTICES;
   private Set<IEdge<TVertex>> edges = new LinkedHashSet<IEdge<TVertex>>(8, 0.8f);
+  private VertexLookup vertex_lookup = VertexLookup.EQUALITY;
+
+  //Incident-edge index used to remove a vertex's edges in O(degree) and to slice the graph by target. It's built
+  //the first time either is needed and kept up to date from then on, until releaseIndex() drops it. The in-index
+  //maps each vertex to the vertices pointing at it. The out-index is only needed for EDGE_SET storage since a
+  //NeighborEdgeSet is its own out-index.
+  private NeighborEdgeSet<TVertex> in_index;
+  private NeighborEdgeSet<TVertex> out_index;
+
+  //Number of edges with at least one endpoint that isn't a vertex of the graph. The graph is valid when
+  //this is zero, so validate() doesn't need to look at every edge.
+  private int dangling_edges;
+
+  //Maps every vertex missing from the graph that a dangling edge refers to onto the other endpoint of each
+  //such edge, so adding or removing that vertex only looks at its own dangling edges.
+  private Map<TVertex, List<TVertex>> missing = new HashMap<TVertex, List<TVertex>>(4);
+
+  //False when an edge may hold an endpoint that isn't the instance in the vertex map, which can only happen
+  //when the edge was added before that vertex.
+  private boolean canonical_edges = true;
 
   /**
    * Protected constructor to prevent public instantiation.
@@ -53,7 +137,7 @@ public class DirectedAcyclicGraph<TVertex extends IVertex<TValue>, TValue extend
    */
   @Override
   public Set<TVertex> getVertices() {
-    return Collections.unmodifiableSet(vertices);
+    return Collections.unmodifiableSet(vertices.keySet());
   }
 
   /**
@@ -64,6 +148,80 @@ public class DirectedAcyclicGraph<TVertex extends IVertex<TValue>, TValue extend
     return Collections.unmodifiableSet(edges);
   }
 
+  /**
+   * @see IVertexIds#idOf(IVertex)
+   */
+  @Override
+  public int idOf(final TVertex vertex) {
+    final Integer id = vertices.get(vertex);
+    return (id != null) ? id : -1;
+  }
+
+  /**
+   * @see IVertexIds#getIdBound()
+   */
+  @Override
+  public int getIdBound() {
+    return id_bound;
+  }
+
+  /**
+   * Gets how this graph currently stores its edges.
+   *
+   * @return The {@link EdgeStorage} in use.
+   */
+  public EdgeStorage getEdgeStorage() {
+    return (edges instanceof NeighborEdgeSet) ? EdgeStorage.NEIGHBOR_LISTS : EdgeStorage.EDGE_SET;
+  }
+
+  /**
+   * Switches how this graph stores its edges, converting any edges already added. Topological sorts are
+   * unaffected by the choice.
+   *
+   * @param storage The {@link EdgeStorage} to use.
+   * @return The current instance of {@link IGraph} for use in a builder-style pattern.
+   */
+  public IGraph<TVertex, TValue, TProcessedValue> withEdgeStorage(final EdgeStorage storage) {
+    if (storage == null)
+      throw new IllegalArgumentException("storage cannot be null");
+    if (storage != getEdgeStorage()) {
+      edges = newEdgeSet(storage, edges);
+      dropIncidentIndex();
+    }
+    return this;
+  }
+
+  /**
+   * Gets how vertices are matched to one another while sorting.
+   *
+   * @return The {@link VertexLookup} in use.
+   */
+  public VertexLookup getVertexLookup() {
+    return vertex_lookup;
+  }
+
+  /**
+   * Sets how vertices are matched to one another while sorting.
+   *
+   * @param lookup The {@link VertexLookup} to use.
+   * @return The current instance of {@link IGraph} for use in a builder-style pattern.
+   */
+  public IGraph<TVertex, TValue, TProcessedValue> withVertexLookup(final VertexLookup lookup) {
+    if (lookup == null)
+      throw new IllegalArgumentException("lookup cannot be null");
+    vertex_lookup = lookup;
+    return this;
+  }
+
+  private static <TVertex extends IVertex> Set<IEdge<TVertex>> newEdgeSet(final EdgeStorage storage, final Set<IEdge<TVertex>> edges) {
+    switch(storage) {
+      case NEIGHBOR_LISTS:
+        return new NeighborEdgeSet<TVertex>(edges);
+      default:
+        return new LinkedHashSet<IEdge<TVertex>>(edges);
+    }
+  }
+
   /**
    * @see IGraph#clone()
    */
@@ -80,6 +238,8 @@ public class DirectedAcyclicGraph<TVertex extends IVertex<TValue>, TValue extend
    * @param <TVertex> Type of {@link IVertex} of the graph vertices.
    * @param <TGraph> Type of {@link DirectedAcyclicGraph} of the graph being copied.
    * @return A new instance of type {@link TGraph} with {@link DirectedAcyclicGraph} specific fields already filled in.
+   * @throws IllegalStateException Thrown if the graph's class cannot be instantiated through its no-argument
+   *         constructor.
    */
   @SuppressWarnings("unchecked")
   protected static <TGraph extends DirectedAcyclicGraph<TVertex, TValue, TProcessedValue>, TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> TGraph copyGraph(final TGraph graph) {
@@ -89,12 +249,34 @@ public class DirectedAcyclicGraph<TVertex extends IVertex<TValue>, TValue extend
       construct.setAccessible(true);
 
       final TGraph g = (TGraph)construct.newInstance();
-
-      g.vertices = new LinkedHashSet<TVertex>(graph.vertices);
-      g.edges = new LinkedHashSet<IEdge<TVertex>>(graph.edges);
+      final DirectedAcyclicGraph<TVertex, TValue, TProcessedValue> src = graph;
+      final DirectedAcyclicGraph<TVertex, TValue, TProcessedValue> dest = g;
+
+      dest.vertices = new LinkedHashMap<TVertex, Integer>(src.vertices);
+      dest.id_bound = src.id_bound;
+      dest.free_ids = Arrays.copyOf(src.free_ids, src.free_id_count);
+      dest.free_id_count = src.free_id_count;
+      dest.vertex_at = Arrays.copyOf(src.vertex_at, src.vertex_at.length);
+      dest.edges = newEdgeSet(src.getEdgeStorage(), src.edges);
+      dest.vertex_lookup = src.vertex_lookup;
+      dest.dangling_edges = src.dangling_edges;
+      dest.missing = new HashMap<TVertex, List<TVertex>>(Math.max(4, src.missing.size() * 2));
+      for(Map.Entry<TVertex, List<TVertex>> e : src.missing.entrySet())
+        dest.missing.put(e.getKey(), new ArrayList<TVertex>(e.getValue()));
+      dest.canonical_edges = src.canonical_edges;
       return g;
-    } catch(Throwable t) {
-      return null;
+    } catch(InvocationTargetException e) {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException)e.getCause();
+      if (e.getCause() instanceof Error)
+        throw (Error)e.getCause();
+      throw new IllegalStateException("Unable to copy " + graph.getClass().getName(), e.getCause());
+    } catch(NoSuchMethodException e) {
+      throw new IllegalStateException("Unable to copy " + graph.getClass().getName(), e);
+    } catch(InstantiationException e) {
+      throw new IllegalStateException("Unable to copy " + graph.getClass().getName(), e);
+    } catch(IllegalAccessException e) {
+      throw new IllegalStateException("Unable to copy " + graph.getClass().getName(), e);
     }
   }
 
@@ -139,148 +321,406 @@ public class DirectedAcyclicGraph<TVertex extends IVertex<TValue>, TValue extend
   public IGraph<TVertex, TValue, TProcessedValue> addVertex(final TVertex vertex) {
     if (vertex == null)
       throw new IllegalArgumentException("vertex must not be null");
-    vertices.add(vertex);
+    if (vertices.containsKey(vertex))
+      return this;
+    putVertex(vertex);
+
+    //Edges that were waiting on this vertex are complete unless their other endpoint is missing too.
+    final List<TVertex> others = (dangling_edges > 0) ? missing.remove(vertex) : null;
+    if (others != null) {
+      for(TVertex other : others) {
+        if (other.equals(vertex) || vertices.containsKey(other))
+          --dangling_edges;
+      }
+    }
     return this;
   }
 
   /**
+   * Removes a vertex along with every edge coming into or going out of it, in time proportional to the
+   * vertex's degree. The first removal builds an index of incident edges, which is kept until
+   * {@link #releaseIndex()} is called.
+   *
    * @see IGraph#removeVertex(IVertex)
    */
   @Override
   public IGraph<TVertex, TValue, TProcessedValue> removeVertex(final TVertex vertex) {
     if (vertex == null)
       throw new IllegalArgumentException("vertex must not be null");
-    vertices.remove(vertex);
+    //An incident edge was dangling if this vertex was missing or its other endpoint is. Either way it's
+    //removed now. The vertex itself is removed last so that self-loops are counted correctly.
+    final boolean was_present = vertices.containsKey(vertex);
+    //Only dangling edges can refer to a vertex that isn't in the graph, so without any there's nothing to do.
+    if (!was_present && !missing.containsKey(vertex))
+      return this;
+    buildIncidentIndex();
+    final NeighborEdgeSet<TVertex> outs = outIndex();
+    for(TVertex to : outs.removeSource(vertex)) {
+      in_index.remove(to, vertex);
+      if (outs != edges)
+        edges.remove(new Edge<TVertex>(vertex, to));
+      if (!was_present || !vertices.containsKey(to))
+        removeDangling(vertex, to);
+    }
+    for(TVertex from : in_index.removeSource(vertex)) {
+      outs.remove(from, vertex);
+      if (outs != edges)
+        edges.remove(new Edge<TVertex>(from, vertex));
+      if (!was_present || !vertices.containsKey(from))
+        removeDangling(from, vertex);
+    }
+
+    if (was_present)
+      releaseId(vertices.remove(vertex));
     return this;
   }
 
   /**
-   * @see IGraph#addEdge(IVertex, IVertex)
+   * Removes many vertices along with every edge coming into or going out of them. If no vertex has been removed
+   * from this graph before, this is a single pass over the edges rather than building the index that
+   * {@link #removeVertex(IVertex)} uses.
+   *
+   * @param vertices The vertices to remove.
+   * @return The current instance of {@link IGraph} for use in a builder-style pattern.
    */
-  @Override
-  public IGraph<TVertex, TValue, TProcessedValue> addEdge(final TVertex from, final TVertex to) {
-    edges.add(new Edge<TVertex>(from, to));
+  @SuppressWarnings("unchecked")
+  public IGraph<TVertex, TValue, TProcessedValue> removeVertices(final Collection<? extends TVertex> vertices) {
+    if (vertices == null)
+      throw new IllegalArgumentException("vertices cannot be null");
+
+    if (in_index != null) {
+      for(TVertex v : vertices)
+        removeVertex(v);
+      return this;
+    }
+
+    final Set<TVertex> doomed = (vertices instanceof Set) ? (Set<TVertex>)vertices : new HashSet<TVertex>(vertices);
+    for(TVertex v : doomed) {
+      if (v == null)
+        throw new IllegalArgumentException("vertex must not be null");
+      final Integer id = this.vertices.remove(v);
+      if (id != null)
+        releaseId(id);
+    }
+    //Recount the dangling edges on the same pass.
+    dangling_edges = 0;
+    missing.clear();
+    for(Iterator<IEdge<TVertex>> it = edges.iterator(); it.hasNext(); ) {
+      final IEdge<TVertex> e = it.next();
+      if (doomed.contains(e.getFrom()) || doomed.contains(e.getTo()))
+        it.remove();
+      else if (isDangling(e.getFrom(), e.getTo()))
+        addDangling(e.getFrom(), e.getTo());
+    }
     return this;
   }
 
+  private boolean isDangling(final TVertex from, final TVertex to) {
+    return !vertices.containsKey(from) || !vertices.containsKey(to);
+  }
+
+  private void addDangling(final TVertex from, final TVertex to) {
+    ++dangling_edges;
+    if (!vertices.containsKey(from))
+      missingFor(from).add(to);
+    if (!vertices.containsKey(to) && !to.equals(from))
+      missingFor(to).add(from);
+  }
+
+  private void removeDangling(final TVertex from, final TVertex to) {
+    --dangling_edges;
+    forget(from, to);
+    if (!to.equals(from))
+      forget(to, from);
+  }
+
+  private List<TVertex> missingFor(final TVertex vertex) {
+    List<TVertex> others = missing.get(vertex);
+    if (others == null) {
+      others = new ArrayList<TVertex>(2);
+      missing.put(vertex, others);
+    }
+    return others;
+  }
+
+  private void forget(final TVertex vertex, final TVertex other) {
+    final List<TVertex> others = missing.get(vertex);
+    if (others != null && others.remove(other) && others.isEmpty())
+      missing.remove(vertex);
+  }
+
+  private NeighborEdgeSet<TVertex> outIndex() {
+    return (edges instanceof NeighborEdgeSet) ? (NeighborEdgeSet<TVertex>)edges : out_index;
+  }
+
+  private void buildIncidentIndex() {
+    if (in_index != null)
+      return;
+    in_index = new NeighborEdgeSet<TVertex>(vertices.size());
+    out_index = (edges instanceof NeighborEdgeSet) ? null : new NeighborEdgeSet<TVertex>(vertices.size());
+    for(IEdge<TVertex> e : edges) {
+      in_index.add(e.getTo(), e.getFrom());
+      if (out_index != null)
+        out_index.add(e.getFrom(), e.getTo());
+    }
+  }
+
+  private void dropIncidentIndex() {
+    in_index = null;
+    out_index = null;
+  }
+
   /**
-   * @see IGraph#removeEdge(IVertex, IVertex)
+   * Releases the incident-edge index that {@link #removeVertex(IVertex)} and sorts of a subset of the graph build
+   * on first use. Once built, the index is kept up to date by every change and holds every edge once more, or
+   * twice more with {@link EdgeStorage#EDGE_SET} storage. Release it once a burst of removals or slicing is over
+   * to get that memory back. It's rebuilt, in time proportional to the number of edges, when next needed.
+   *
+   * @return The current instance of {@link IGraph} for use in a builder-style pattern.
    */
-  @Override
-  public IGraph<TVertex, TValue, TProcessedValue> removeEdge(final TVertex from, final TVertex to) {
-    edges.remove(new Edge<TVertex>(from, to));
+  public IGraph<TVertex, TValue, TProcessedValue> releaseIndex() {
+    dropIncidentIndex();
     return this;
   }
 
   /**
-   * @see IGraph#validate()
+   * Lists every edge that {@link #removeVertex(IVertex)} would remove along with a vertex, building the
+   * incident-edge index if needed.
+   *
+   * @param vertex The vertex whose edges are needed.
+   * @return The edges coming into or going out of <code>vertex</code>.
    */
-  @Override
-  public boolean validate() {
-    //Ensure that every from/to in an edge is present in our set of vertices.
-    //If we refer to one that isn't in there, then we've got a problem.
-    for(IEdge r : edges) {
-      if (!vertices.contains(r.getFrom()) || !vertices.contains(r.getTo()))
-        return false;
+  List<IEdge<TVertex>> incidentEdges(final TVertex vertex) {
+    if (vertex == null || (!vertices.containsKey(vertex) && !missing.containsKey(vertex)))
+      return Collections.emptyList();
+    buildIncidentIndex();
+    final List<IEdge<TVertex>> result = new ArrayList<IEdge<TVertex>>();
+    for(TVertex to : outIndex().outNeighborsFor(vertex))
+      result.add(new Edge<TVertex>(vertex, to));
+    for(TVertex from : in_index.outNeighborsFor(vertex)) {
+      //A self-loop was already listed as an out-edge.
+      if (!from.equals(vertex))
+        result.add(new Edge<TVertex>(from, vertex));
     }
-    return true;
+    return result;
   }
 
   /**
-   * @see IGraph#sort()
+   * Provides a copy of the in-neighbor index that shares its rows with this graph's until either one changes them.
+   *
+   * @param build <code>true</code> to build the index if it hasn't been.
+   * @return A copy of the in-neighbor index or <code>null</code> if it hasn't been built.
    */
-  @Override
-  public List<TValue> sort() throws CyclicGraphException {
-    return sort(new SimpleTopologicalSort<TVertex, TValue, TProcessedValue>());
+  NeighborEdgeSet<TVertex> shareInNeighbors(final boolean build) {
+    if (build)
+      buildIncidentIndex();
+    return (in_index != null) ? in_index.share() : null;
   }
 
   /**
-   * @see IGraph#sort(ITopologicalSortStrategy)
+   * @see IGraph#addEdge(IVertex, IVertex)
    */
   @Override
-  public List<TValue> sort(final ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy) throws CyclicGraphException {
-    if (strategy == null)
-      throw new IllegalArgumentException("strategy cannot be null");
-    if (!validate())
-      throw new IllegalStateException("The graph is invalid. Please confirm that all vertices are present for every relationship.");
-    return strategy.sort(new AdjacencyList<TVertex, TValue, TProcessedValue>(vertices, edges));
+  public IGraph<TVertex, TValue, TProcessedValue> addEdge(final TVertex from, final TVertex to) {
+    //Keep the graph's own instances so that identity lookups match edges to vertices without equals().
+    final TVertex from_vertex = canonical(from);
+    final TVertex to_vertex = canonical(to);
+    final TVertex f = (from_vertex != null) ? from_vertex : from;
+    final TVertex t = (to_vertex != null) ? to_vertex : to;
+
+    final boolean added;
+    if (edges instanceof NeighborEdgeSet)
+      added = ((NeighborEdgeSet<TVertex>)edges).add(f, t);
+    else
+      added = edges.add(new Edge<TVertex>(f, t));
+    if (added) {
+      if (from_vertex == null || to_vertex == null) {
+        addDangling(f, t);
+        canonical_edges = false;
+      }
+      if (in_index != null) {
+        in_index.add(t, f);
+        if (out_index != null)
+          out_index.add(f, t);
+      }
+    }
+    return this;
   }
 
   /**
-   * @see IGraph#sortAsync(ITopologicalSortCallback)
+   * Adds vertices and their out-edges in bulk from a compressed sparse row (CSR) layout. This is used by loaders
+   * such as {@link jcommon.graph.impl.BinaryGraphFormat} and {@link jcommon.graph.impl.GraphImporter}.
+   *
+   * When the graph is empty, the vertex map is sized once and edges are written straight into the edge storage:
+   * with {@link EdgeStorage#NEIGHBOR_LISTS} each vertex's out-neighbor array is filled in a single step, so no
+   * {@link Edge} is ever allocated. Since every endpoint is one of the provided vertices, nothing needs to be checked
+   * for dangling edges. Otherwise this is equivalent to calling {@link #addVertex(IVertex)} and
+   * {@link #addEdge(IVertex, IVertex)} for each of them.
+   *
+   * The out-neighbors of <code>vertices[i]</code> are <code>vertices[targets[offsets[i]]]</code> through
+   * <code>vertices[targets[offsets[i + 1] - 1]]</code>.
+   *
+   * @param vertices The vertices to add. Edges refer to them by their index in this array.
+   * @param offsets An array of size <code>vertices.length + 1</code> of offsets into <code>targets</code>.
+   * @param targets Indices into <code>vertices</code> of the destination of every edge.
+   * @return The current instance of {@link IGraph} for use in a builder-style pattern.
    */
-  @Override
-  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ITopologicalSortCallback<TValue, TProcessedValue> callback) {
-    return sortAsync(new SimpleTopologicalSort<TVertex, TValue, TProcessedValue>(), callback, null);
+  public IGraph<TVertex, TValue, TProcessedValue> addAll(final TVertex[] vertices, final int[] offsets, final int[] targets) {
+    if (vertices == null || offsets == null || targets == null)
+      throw new IllegalArgumentException("vertices, offsets and targets cannot be null");
+    if (offsets.length != vertices.length + 1 || offsets[0] != 0 || offsets[vertices.length] > targets.length)
+      throw new IllegalArgumentException("offsets must have vertices.length + 1 entries that index into targets");
+
+    if (!this.vertices.isEmpty() || !this.edges.isEmpty()) {
+      for(TVertex v : vertices)
+        addVertex(v);
+      for(int i = 0; i < vertices.length; ++i) {
+        for(int j = offsets[i]; j < offsets[i + 1]; ++j)
+          addEdge(vertices[i], vertices[targets[j]]);
+      }
+      return this;
+    }
+
+    //Size the map up front so that it never rehashes.
+    this.vertices = new LinkedHashMap<TVertex, Integer>(capacityFor(vertices.length), 0.8f);
+    for(TVertex v : vertices) {
+      if (v == null)
+        throw new IllegalArgumentException("vertex must not be null");
+      if (!this.vertices.containsKey(v))
+        putVertex(v);
+      else
+        canonical_edges = false;
+    }
+
+    final int edge_count = offsets[vertices.length];
+    if (getEdgeStorage() == EdgeStorage.NEIGHBOR_LISTS) {
+      final NeighborEdgeSet<TVertex> neighbors = new NeighborEdgeSet<TVertex>(vertices.length);
+      for(int i = 0; i < vertices.length; ++i)
+        neighbors.addNeighbors(vertices[i], vertices, targets, offsets[i], offsets[i + 1]);
+      this.edges = neighbors;
+    } else {
+      final Set<IEdge<TVertex>> edge_set = new LinkedHashSet<IEdge<TVertex>>(capacityFor(edge_count), 0.8f);
+      for(int i = 0; i < vertices.length; ++i) {
+        for(int j = offsets[i]; j < offsets[i + 1]; ++j)
+          edge_set.add(new Edge<TVertex>(vertices[i], vertices[targets[j]]));
+      }
+      this.edges = edge_set;
+    }
+    dropIncidentIndex();
+    dangling_edges = 0;
+    missing.clear();
+    return this;
   }
 
-  /**
-   * @see IGraph#sortAsync(ITopologicalSortCallback, ITopologicalSortErrorCallback)
-   */
-  @Override
-  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ITopologicalSortCallback<TValue, TProcessedValue> callback, final ITopologicalSortErrorCallback<TValue> errorCallback) {
-    return sortAsync(new SimpleTopologicalSort<TVertex, TValue, TProcessedValue>(), callback, errorCallback);
+  private void putVertex(final TVertex vertex) {
+    final int id = (free_id_count > 0) ? free_ids[--free_id_count] : id_bound++;
+    vertices.put(vertex, id);
+    if (id >= vertex_at.length)
+      vertex_at = Arrays.copyOf(vertex_at, Math.max(8, Math.max(id + 1, vertex_at.length + (vertex_at.length >> 1))));
+    vertex_at[id] = vertex;
   }
 
   /**
-   * @see IGraph#sortAsync(ITopologicalSortStrategy, ITopologicalSortCallback)
+   * Gets the instance of a vertex that this graph holds.
+   *
+   * @return The instance in the vertex map that equals <code>vertex</code>, or <code>null</code> if there's none.
    */
-  @Override
-  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy, final ITopologicalSortCallback<TValue, TProcessedValue> callback) {
-    return sortAsync(strategy, callback, null);
+  @SuppressWarnings("unchecked")
+  private TVertex canonical(final TVertex vertex) {
+    final Integer id = vertices.get(vertex);
+    return (id != null) ? (TVertex)vertex_at[id] : null;
+  }
+
+  private void releaseId(final int id) {
+    vertex_at[id] = null;
+    if (free_id_count == free_ids.length)
+      free_ids = Arrays.copyOf(free_ids, Math.max(4, free_id_count * 2));
+    free_ids[free_id_count++] = id;
+  }
+
+  private static int capacityFor(final int size) {
+    return (int)Math.min(Integer.MAX_VALUE, (long)(size / 0.8f) + 1L);
   }
 
   /**
-   * @see IGraph#sortAsync(ITopologicalSortStrategy, ITopologicalSortCallback, ITopologicalSortErrorCallback)
+   * @see IGraph#removeEdge(IVertex, IVertex)
    */
   @Override
-  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy, final ITopologicalSortCallback<TValue, TProcessedValue> callback, final ITopologicalSortErrorCallback<TValue> errorCallback) {
-    final ExecutorService executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() + 1));
-    final ITopologicalSortAsyncResult<TValue, TProcessedValue> result = sortAsync(executor, strategy, callback, errorCallback);
-
-    //We don't explicity shutdown b/c we may not be done processing
-    //at this point. If need to abort prematurely, the caller can
-    //access the executor service from the .getExecutorService()
-    //method.
-    return result;
+  public IGraph<TVertex, TValue, TProcessedValue> removeEdge(final TVertex from, final TVertex to) {
+    final boolean removed;
+    if (edges instanceof NeighborEdgeSet)
+      removed = ((NeighborEdgeSet<TVertex>)edges).remove(from, to);
+    else
+      removed = edges.remove(new Edge<TVertex>(from, to));
+    if (removed) {
+      if (isDangling(from, to))
+        removeDangling(from, to);
+      if (in_index != null) {
+        in_index.remove(to, from);
+        if (out_index != null)
+          out_index.remove(from, to);
+      }
+    }
+    return this;
   }
 
   /**
-   * @see IGraph#sortAsync(java.util.concurrent.ExecutorService, ITopologicalSortCallback)
+   * Ensures that every from/to in an edge is present in our set of vertices. Edges whose endpoints are missing
+   * are counted as vertices and edges are added and removed, so this is O(1).
+   *
+   * @see IGraph#validate()
    */
   @Override
-  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ExecutorService executor, final ITopologicalSortCallback<TValue, TProcessedValue> callback) {
-    return sortAsync(executor, new SimpleTopologicalSort<TVertex, TValue, TProcessedValue>(), callback, null);
+  public boolean validate() {
+    return dangling_edges == 0;
   }
 
   /**
-   * @see IGraph#sortAsync(java.util.concurrent.ExecutorService, ITopologicalSortCallback, ITopologicalSortErrorCallback)
+   * Validates the graph and builds an {@link AdjacencyList} from its current vertices and edges.
+   *
+   * @see AbstractGraph#createAdjacencyList()
    */
   @Override
-  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ExecutorService executor, final ITopologicalSortCallback<TValue, TProcessedValue> callback, final ITopologicalSortErrorCallback<TValue> errorCallback) {
-    return sortAsync(executor, new SimpleTopologicalSort<TVertex, TValue, TProcessedValue>(), callback, errorCallback);
+  protected IAdjacencyList<TVertex, TValue, TProcessedValue> createAdjacencyList() {
+    if (!validate())
+      throw new IllegalStateException("The graph is invalid. Please confirm that all vertices are present for every relationship.");
+    if (vertex_lookup == VertexLookup.IDENTITY && !canonical_edges)
+      canonicalizeEdges();
+    //Take the ids in the same pass order as the vertices so that no vertex is hashed.
+    final int[] ids = new int[vertices.size()];
+    int i = 0;
+    for(Integer id : vertices.values())
+      ids[i++] = id;
+    return new AdjacencyList<TVertex, TValue, TProcessedValue>(vertices.keySet(), edges, vertex_lookup == VertexLookup.IDENTITY, ids, id_bound);
   }
 
   /**
-   * @see IGraph#sortAsync(java.util.concurrent.ExecutorService, ITopologicalSortStrategy, ITopologicalSortCallback)
+   * Replaces the endpoints of every edge with the graph's own instances, keeping the edge order. Only called on a
+   * valid graph, so every endpoint has one.
    */
-  @Override
-  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ExecutorService executor, final ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy, final ITopologicalSortCallback<TValue, TProcessedValue> callback) {
-    return sortAsync(executor, strategy, callback, null);
+  private void canonicalizeEdges() {
+    final Set<IEdge<TVertex>> canonical_set = newEdgeSet(getEdgeStorage(), Collections.<IEdge<TVertex>>emptySet());
+    for(IEdge<TVertex> e : edges)
+      canonical_set.add(new Edge<TVertex>(canonical(e.getFrom()), canonical(e.getTo())));
+    edges = canonical_set;
+    dropIncidentIndex();
+    canonical_edges = true;
   }
 
   /**
-   * @see IGraph#sortAsync(java.util.concurrent.ExecutorService, ITopologicalSortStrategy, ITopologicalSortCallback, ITopologicalSortErrorCallback)
+   * Walks the incident-edge index backwards from the targets, building the index first if needed. Once built,
+   * the index is kept up to date by every change, so later slices only visit the targets' ancestors. See
+   * {@link #releaseIndex()} for what it costs to keep.
+   *
+   * @see AbstractGraph#createAdjacencyList(Collection)
    */
   @Override
-  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ExecutorService executor, final ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy, final ITopologicalSortCallback<TValue, TProcessedValue> callback, final ITopologicalSortErrorCallback<TValue> errorCallback) {
-    if (strategy == null)
-      throw new IllegalArgumentException("strategy cannot be null");
-    if (callback == null)
-      throw new IllegalArgumentException("callback cannot be null");
+  protected IAdjacencyList<TVertex, TValue, TProcessedValue> createAdjacencyList(final Collection<? extends TVertex> targets) {
     if (!validate())
       throw new IllegalStateException("The graph is invalid. Please confirm that all vertices are present for every relationship.");
-
-    return strategy.sortAsync(executor, new AdjacencyList<TVertex, TValue, TProcessedValue>(vertices, edges), callback, errorCallback);
+    if (vertex_lookup == VertexLookup.IDENTITY && !canonical_edges)
+      canonicalizeEdges();
+    buildIncidentIndex();
+    return AncestorSlice.<TVertex, TValue, TProcessedValue>of(vertices.keySet(), in_index, targets, vertex_lookup == VertexLookup.IDENTITY, this);
   }
 }
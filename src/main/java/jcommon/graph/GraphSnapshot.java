@@ -0,0 +1,227 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph;
+
+import jcommon.graph.impl.AdjacencyList;
+import jcommon.graph.impl.AncestorSlice;
+import jcommon.graph.impl.NeighborEdgeSet;
+import jcommon.graph.impl.ReachabilityIndex;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * An immutable, point-in-time view of a {@link VersionedDirectedAcyclicGraph}. It can be sorted any number of
+ * times from any number of threads and never changes, no matter what happens to the graph it was taken from.
+ *
+ * The {@link IAdjacencyList} is built the first time the snapshot is sorted and reused after that, so every
+ * reader of the same version shares it. The same goes for the {@link ReachabilityIndex} returned by
+ * {@link #reachability()}. The in-neighbor index used to sort a subset of the graph is usually handed over by the
+ * {@link VersionedDirectedAcyclicGraph}, sharing everything that didn't change with the previous version.
+ *
+ * @param <TVertex> Type of {@link IVertex} vertices that this graph contains.
+ *
+ * @see VersionedDirectedAcyclicGraph#snapshot()
+ */
+public final class GraphSnapshot<TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> extends AbstractGraph<TVertex, TValue, TProcessedValue> {
+  private final long version;
+  private final Set<TVertex> vertices;
+  private final Set<IEdge<TVertex>> edges;
+  private final boolean valid;
+  private volatile IAdjacencyList<TVertex, TValue, TProcessedValue> adjacency_list;
+  private volatile ReachabilityIndex<TVertex, TValue> reachability;
+  private volatile NeighborEdgeSet<TVertex> in_neighbors;
+
+  /**
+   * Creates a snapshot that takes ownership of the provided sets. They must not be modified afterwards.
+   * Validity is provided by the caller, which already knows it, rather than checked against every edge.
+   * The index of in-neighbors may be <code>null</code>, in which case it's built from the edges if needed.
+   */
+  GraphSnapshot(final long version, final Set<TVertex> vertices, final Set<IEdge<TVertex>> edges, final boolean valid, final NeighborEdgeSet<TVertex> inNeighbors) {
+    this.version = version;
+    this.valid = valid;
+    this.vertices = Collections.unmodifiableSet(vertices);
+    this.edges = Collections.unmodifiableSet(edges);
+    this.in_neighbors = inNeighbors;
+  }
+
+  /**
+   * @return <code>true</code> if this snapshot has an index of in-neighbors, whether it was handed one or has
+   *         been sliced by target.
+   */
+  boolean hasInNeighbors() {
+    return in_neighbors != null;
+  }
+
+  /**
+   * The version of the graph that this snapshot captures. Versions increase by one with every change that is
+   * published.
+   *
+   * @return The version of this snapshot.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Provides the {@link ReachabilityIndex} for this snapshot, building it on first use. Since a snapshot never
+   * changes, the index is built at most once per version and answers transitive dependency queries without
+   * walking the graph.
+   *
+   * @return The reachability index of this snapshot.
+   * @throws CyclicGraphException Thrown if the graph has a cycle.
+   * @throws IllegalStateException Thrown if the graph is invalid.
+   */
+  public ReachabilityIndex<TVertex, TValue> reachability() throws CyclicGraphException {
+    ReachabilityIndex<TVertex, TValue> result = reachability;
+    if (result == null) {
+      //As with the adjacency list, racing readers build equivalent indexes.
+      reachability = result = ReachabilityIndex.build(createAdjacencyList());
+    }
+    return result;
+  }
+
+  /**
+   * @see IGraph#getVertices()
+   */
+  @Override
+  public Set<TVertex> getVertices() {
+    return vertices;
+  }
+
+  /**
+   * @see IGraph#getEdges()
+   */
+  @Override
+  public Set<IEdge<TVertex>> getEdges() {
+    return edges;
+  }
+
+  /**
+   * Provides a mutable copy of this snapshot.
+   *
+   * @see IGraph#copy()
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> copy() {
+    final IGraph<TVertex, TValue, TProcessedValue> g = DirectedAcyclicGraph.create();
+    for(TVertex v : vertices)
+      g.addVertex(v);
+    for(IEdge<TVertex> e : edges)
+      g.addEdge(e.getFrom(), e.getTo());
+    return g;
+  }
+
+  /**
+   * Snapshots are read-only.
+   *
+   * @throws UnsupportedOperationException Always.
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> addVertex(final TVertex vertex) {
+    throw new UnsupportedOperationException("A graph snapshot cannot be modified");
+  }
+
+  /**
+   * Snapshots are read-only.
+   *
+   * @throws UnsupportedOperationException Always.
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> removeVertex(final TVertex vertex) {
+    throw new UnsupportedOperationException("A graph snapshot cannot be modified");
+  }
+
+  /**
+   * Snapshots are read-only.
+   *
+   * @throws UnsupportedOperationException Always.
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> addEdge(final TVertex from, final TVertex to) {
+    throw new UnsupportedOperationException("A graph snapshot cannot be modified");
+  }
+
+  /**
+   * Snapshots are read-only.
+   *
+   * @throws UnsupportedOperationException Always.
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> removeEdge(final TVertex from, final TVertex to) {
+    throw new UnsupportedOperationException("A graph snapshot cannot be modified");
+  }
+
+  /**
+   * Snapshots are read-only.
+   *
+   * @throws UnsupportedOperationException Always.
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> transitiveReduction() {
+    throw new UnsupportedOperationException("A graph snapshot cannot be modified");
+  }
+
+  /**
+   * @see IGraph#validate()
+   */
+  @Override
+  public boolean validate() {
+    return valid;
+  }
+
+  /**
+   * Provides the cached {@link AdjacencyList} for this snapshot, building it on first use.
+   *
+   * @see AbstractGraph#createAdjacencyList()
+   */
+  @Override
+  protected IAdjacencyList<TVertex, TValue, TProcessedValue> createAdjacencyList() {
+    IAdjacencyList<TVertex, TValue, TProcessedValue> result = adjacency_list;
+    if (result == null) {
+      //Two readers racing here may both build it. They're equivalent so whichever is published last wins.
+      if (!validate())
+        throw new IllegalStateException("The graph is invalid. Please confirm that all vertices are present for every relationship.");
+      adjacency_list = result = new AdjacencyList<TVertex, TValue, TProcessedValue>(vertices, edges);
+    }
+    return result;
+  }
+
+  /**
+   * Slices the snapshot using an index of in-neighbors, building it from the edges on first use if the snapshot
+   * wasn't handed one.
+   *
+   * @see AbstractGraph#createAdjacencyList(Collection)
+   */
+  @Override
+  protected IAdjacencyList<TVertex, TValue, TProcessedValue> createAdjacencyList(final Collection<? extends TVertex> targets) {
+    if (!validate())
+      throw new IllegalStateException("The graph is invalid. Please confirm that all vertices are present for every relationship.");
+    NeighborEdgeSet<TVertex> index = in_neighbors;
+    if (index == null) {
+      index = new NeighborEdgeSet<TVertex>(vertices.size());
+      for(IEdge<TVertex> e : edges)
+        index.add(e.getTo(), e.getFrom());
+      in_neighbors = index;
+    }
+    return AncestorSlice.<TVertex, TValue, TProcessedValue>of(vertices, index, targets, false);
+  }
+}
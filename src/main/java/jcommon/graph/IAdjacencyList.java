@@ -30,11 +30,15 @@ import java.util.Set;
  *
  * Implementations of this interface must be thread safe.
  *
+ * Every vertex has a dense id for {@link IVertexIds}, so {@link VertexProperties} can be keyed by an adjacency
+ * list. An adjacency list built from a {@link DirectedAcyclicGraph} uses the graph's ids, so properties keyed by
+ * either agree. Otherwise the index of each vertex doubles as its id.
+ *
  * @param <TVertex> Type of {@link IVertex}.
  *
  * @see <a href="http://www.cs.cmu.edu/~avrim/451f08/lectures/lect1002.pdf">http://www.cs.cmu.edu/~avrim/451f08/lectures/lect1002.pdf</a>
  */
-public interface IAdjacencyList<TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> extends Iterable<IAdjacencyListPair<TVertex>> {
+public interface IAdjacencyList<TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> extends Iterable<IAdjacencyListPair<TVertex>>, IVertexIds<TVertex> {
   /**
    * Determines if the adjacency list is empty.
    *
@@ -82,6 +86,16 @@ public interface IAdjacencyList<TVertex extends IVertex<TValue>, TValue extends
    */
   int indexOf(TVertex vertex);
 
+  /**
+   * Gets the id of the vertex at an index without looking the vertex up.
+   *
+   * @param index The index in the list of the vertex.
+   * @return The id of the vertex at <code>index</code>.
+   *
+   * @see IVertexIds#idOf(IVertex)
+   */
+  int idAt(int index);
+
   /**
    * Scans the {@link IAdjacencyList} and for each vertex it counts the number of other vertices referencing it.
    *
@@ -19,6 +19,7 @@
 
 package jcommon.graph;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -106,6 +107,19 @@ public interface IGraph<TVertex extends IVertex<TValue>, TValue extends Object,
    */
   boolean validate();
 
+  /**
+   * Removes every edge that's implied by another path, such as <code>A&rarr;C</code> when
+   * <code>A&rarr;B&rarr;C</code> also exists. The order constraints of the graph are unchanged, but vertices
+   * no longer receive the processed values of the vertices whose edges were removed during an asynchronous
+   * sort.
+   *
+   * @return The current instance of {@link IGraph} for use in a builder-style pattern.
+   * @throws CyclicGraphException A {@link CyclicGraphException} is thrown if the graph has a cycle, in which case
+   *                              the graph is left unchanged.
+   * @throws IllegalStateException Thrown if the graph is invalid.
+   */
+  IGraph<TVertex, TValue, TProcessedValue> transitiveReduction() throws CyclicGraphException;
+
   /**
    * Provides a topologically sorted list of {@link IVertex} vertices.
    *
@@ -276,4 +290,65 @@ public interface IGraph<TVertex extends IVertex<TValue>, TValue extends Object,
    * @see <a href="http://en.wikipedia.org/wiki/Topological_sorting">http://en.wikipedia.org/wiki/Topological_sorting</a>
    */
   ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(ExecutorService executor, ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy, ITopologicalSortCallback<TValue, TProcessedValue> callback, ITopologicalSortErrorCallback<TValue> errorCallback);
+
+  /**
+   * Provides a topologically sorted list of the values of the target vertices and every vertex they depend on,
+   * leaving out the rest of the graph. Only the ancestors of the targets are visited, so the work is
+   * proportional to that slice of the graph rather than to the whole graph.
+   *
+   * The result is a valid topological order of the slice. It's not necessarily the same relative order as
+   * {@link #sort()} would produce.
+   *
+   * @param targets The vertices whose dependencies are wanted. Each must be a vertex of the graph.
+   * @return A topologically sorted list of the values of the targets and their ancestors.
+   * @throws CyclicGraphException A {@link CyclicGraphException} is thrown if a cycle is detected during the sort.
+   * @throws IllegalArgumentException Thrown if a target is not a vertex of the graph.
+   */
+  List<TValue> sort(Collection<? extends TVertex> targets) throws CyclicGraphException;
+
+  /**
+   * Provides a topologically sorted list of the values of the target vertices and every vertex they depend on,
+   * using the provided strategy.
+   *
+   * @param strategy An instance of {@link ITopologicalSortStrategy} that will perform the sort.
+   * @param targets The vertices whose dependencies are wanted. Each must be a vertex of the graph.
+   * @return A topologically sorted list of the values of the targets and their ancestors.
+   * @throws CyclicGraphException A {@link CyclicGraphException} is thrown if a cycle is detected during the sort.
+   * @throws IllegalArgumentException Thrown if a target is not a vertex of the graph.
+   *
+   * @see #sort(Collection)
+   */
+  List<TValue> sort(ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy, Collection<? extends TVertex> targets) throws CyclicGraphException;
+
+  /**
+   * Asynchronously processes only the target vertices and every vertex they depend on. The result holds the
+   * processed values of the ending vertices of that slice, which are the targets no other target depends on.
+   *
+   * @param targets The vertices whose dependencies should be processed. Each must be a vertex of the graph.
+   * @param callback An instance of {@link ITopologicalSortCallback} that will be called to process each vertex.
+   * @return An instance of {@link ITopologicalSortAsyncResult} that allows the caller to coordinate the
+   *         asynchronous processing of the graph.
+   * @throws IllegalArgumentException Thrown if a target is not a vertex of the graph.
+   *
+   * @see #sort(Collection)
+   */
+  ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(Collection<? extends TVertex> targets, ITopologicalSortCallback<TValue, TProcessedValue> callback);
+
+  /**
+   * Asynchronously processes only the target vertices and every vertex they depend on.
+   *
+   * @param executor      An instance of {@link ExecutorService} that will be used to submit tasks for processing
+   *                      vertices.
+   * @param strategy      An instance of {@link ITopologicalSortStrategy} that will perform the sort.
+   * @param targets       The vertices whose dependencies should be processed. Each must be a vertex of the graph.
+   * @param callback      An instance of {@link ITopologicalSortCallback} that will be called to process each vertex.
+   * @param errorCallback An instance of {@link ITopologicalSortErrorCallback} that will be called if an error
+   *                      occurs during processing. May be <code>null</code>.
+   * @return              An instance of {@link ITopologicalSortAsyncResult} that allows the caller to coordinate the
+   *                      asynchronous processing of the graph.
+   * @throws IllegalArgumentException Thrown if a target is not a vertex of the graph.
+   *
+   * @see #sortAsync(Collection, ITopologicalSortCallback)
+   */
+  ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(ExecutorService executor, ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy, Collection<? extends TVertex> targets, ITopologicalSortCallback<TValue, TProcessedValue> callback, ITopologicalSortErrorCallback<TValue> errorCallback);
 }
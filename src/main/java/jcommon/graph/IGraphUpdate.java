@@ -0,0 +1,38 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph;
+
+/**
+ * A batch of changes applied atomically by {@link VersionedDirectedAcyclicGraph#update(IGraphUpdate)}.
+ *
+ * @param <TVertex> Type of {@link IVertex} vertices that the graph contains.
+ *
+ * @see VersionedDirectedAcyclicGraph
+ */
+public interface IGraphUpdate<TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> {
+  /**
+   * Makes changes to the graph's working state. None of them are visible to readers until this method returns,
+   * and none of them are kept if it throws. The graph must not be used once this method returns.
+   *
+   * @param graph The working state of the graph to change.
+   * @throws Exception Any exception aborts the update.
+   */
+  void apply(IGraph<TVertex, TValue, TProcessedValue> graph) throws Exception;
+}
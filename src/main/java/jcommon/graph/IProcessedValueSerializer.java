@@ -0,0 +1,63 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Converts the processed value of a vertex to and from bytes so that it can be moved off of the heap while
+ * it's waiting to be consumed by its out-neighbors.
+ *
+ * Implementations are called concurrently from the threads processing the graph and must be thread safe.
+ *
+ * @param <TProcessedValue> Type of {@link Object} produced by an {@link ITopologicalSortCallback}.
+ *
+ * @see ITopologicalSortStrategy#sortAsync(java.util.concurrent.ExecutorService, IAdjacencyList, ITopologicalSortCallback, ITopologicalSortErrorCallback)
+ */
+public interface IProcessedValueSerializer<TProcessedValue extends Object> {
+  /**
+   * Estimates the number of bytes the provided value occupies on the heap. This is used to decide when the
+   * heap budget has been exceeded and does not need to be exact.
+   *
+   * @param value The processed value. Never <code>null</code>.
+   * @return The approximate number of heap bytes retained by the value.
+   */
+  long sizeOf(TProcessedValue value);
+
+  /**
+   * Writes the provided value to the stream.
+   *
+   * @param value The processed value to write. Never <code>null</code>.
+   * @param output The {@link OutputStream} to write to. It should not be closed.
+   * @throws IOException Thrown if the value cannot be written.
+   */
+  void write(TProcessedValue value, OutputStream output) throws IOException;
+
+  /**
+   * Reads a value previously written by {@link #write(Object, OutputStream)}.
+   *
+   * @param input The {@link InputStream} to read from. It should not be closed.
+   * @return The processed value.
+   * @throws IOException Thrown if the value cannot be read.
+   */
+  TProcessedValue read(InputStream input) throws IOException;
+}
@@ -34,6 +34,18 @@ public interface ITopologicalSortInput<TValue extends Object, TProcessedValue ex
    */
   boolean isStart();
 
+  /**
+   * Gets the id of the vertex being processed. When a {@link DirectedAcyclicGraph} is sorted, whether whole or
+   * sliced by target, this is the vertex's id in the graph. When an {@link IAdjacencyList} is sorted directly it's
+   * the id that list gives the vertex. Callbacks can use it to read and write a {@link VertexProperties},
+   * {@link IntVertexProperties} or {@link DoubleVertexProperties} created over the graph or list that was sorted
+   * without looking the vertex up.
+   *
+   * @return The id of the vertex being processed, or <code>-1</code> if it isn't known.
+   * @see IVertexIds#idOf(IVertex)
+   */
+  int getVertexId();
+
   /**
    * Determines if the input is empty.
    *
@@ -0,0 +1,100 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph;
+
+/**
+ * Receives notifications as an {@link ITopologicalSortStrategy} asynchronously processes a graph. Useful for
+ * gathering metrics or tracing where time is spent.
+ *
+ * Notifications for a vertex arrive in the order ready, started and then finished or failed. A vertex the executor
+ * refuses to run is reported as rejected instead of started, and is never processed. Ready is called on the
+ * thread that completed the vertex's last in-neighbor (or on the thread starting the sort for vertices with an
+ * in-degree of zero). Started, finished and failed are called on the thread processing the vertex. Implementations
+ * are called concurrently, must be thread safe and should return quickly. Exceptions they throw are ignored.
+ *
+ * @param <TValue> The type of {@link Object} that the vertices contain.
+ * @param <TProcessedValue> The type of {@link Object} produced by processing a vertex.
+ *
+ * @see ITopologicalSortStrategy#sortAsync(java.util.concurrent.ExecutorService, IAdjacencyList, ITopologicalSortCallback, ITopologicalSortErrorCallback)
+ */
+public interface ITopologicalSortListener<TValue extends Object, TProcessedValue extends Object> {
+  /**
+   * Called once before any vertex is processed.
+   *
+   * @param size The number of vertices in the graph.
+   */
+  void sortStarted(int size);
+
+  /**
+   * Called when every in-neighbor of a vertex has been processed and it's about to be submitted for processing.
+   * It's followed by {@link #vertexStarted(Object, IVertex, ITopologicalSortInput, long)} once the vertex runs, or
+   * by {@link #vertexRejected(Object, IVertex)} if the submission is refused.
+   *
+   * @param value The value of the vertex.
+   * @param vertex The instance of {@link IVertex} that's ready.
+   */
+  void vertexReady(TValue value, IVertex<TValue> vertex);
+
+  /**
+   * Called instead of {@link #vertexStarted(Object, IVertex, ITopologicalSortInput, long)} when a vertex that was
+   * reported ready could not be submitted because the executor rejected it. The vertex will not be processed.
+   *
+   * @param value The value of the vertex.
+   * @param vertex The instance of {@link IVertex} that was rejected.
+   */
+  void vertexRejected(TValue value, IVertex<TValue> vertex);
+
+  /**
+   * Called immediately before the {@link ITopologicalSortCallback} for a vertex is invoked.
+   *
+   * @param value The value of the vertex.
+   * @param vertex The instance of {@link IVertex} being processed.
+   * @param input The instance of {@link ITopologicalSortInput} that will be provided to the callback. The values it
+   *              holds are the vertex's in-neighbors.
+   * @param waitNanos The number of nanoseconds the vertex spent waiting for a thread after it became ready.
+   */
+  void vertexStarted(TValue value, IVertex<TValue> vertex, ITopologicalSortInput<TValue, TProcessedValue> input, long waitNanos);
+
+  /**
+   * Called after the {@link ITopologicalSortCallback} for a vertex returns.
+   *
+   * @param value The value of the vertex.
+   * @param vertex The instance of {@link IVertex} that was processed.
+   * @param elapsedNanos The number of nanoseconds spent in the callback.
+   */
+  void vertexFinished(TValue value, IVertex<TValue> vertex, long elapsedNanos);
+
+  /**
+   * Called after the {@link ITopologicalSortCallback} for a vertex throws.
+   *
+   * @param value The value of the vertex.
+   * @param vertex The instance of {@link IVertex} that was processed.
+   * @param t The exception that was thrown.
+   * @param elapsedNanos The number of nanoseconds spent in the callback.
+   */
+  void vertexFailed(TValue value, IVertex<TValue> vertex, Throwable t, long elapsedNanos);
+
+  /**
+   * Called once when processing has completed.
+   *
+   * @param successful <code>true</code> if every vertex was processed; <code>false</code> otherwise.
+   */
+  void sortCompleted(boolean successful);
+}
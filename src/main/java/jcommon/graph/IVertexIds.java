@@ -0,0 +1,50 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph;
+
+/**
+ * Assigns dense int ids to vertices so that per-vertex data can live in arrays indexed by id instead of in
+ * maps keyed by vertex.
+ *
+ * Ids are non-negative and less than {@link #getIdBound()}. How long an id stays valid depends on the
+ * implementation: a {@link DirectedAcyclicGraph} keeps a vertex's id for as long as the vertex is in the graph,
+ * while an {@link IAdjacencyList} never changes and keeps the ids of the graph it was built from.
+ *
+ * @param <TVertex> Type of {@link IVertex} that ids are assigned to.
+ *
+ * @see VertexProperties
+ */
+public interface IVertexIds<TVertex extends IVertex<?>> {
+  /**
+   * Gets the id of a vertex.
+   *
+   * @param vertex The vertex whose id is needed.
+   * @return The id of the vertex or <code>-1</code> if it has none.
+   */
+  int idOf(TVertex vertex);
+
+  /**
+   * Gets an exclusive upper bound on the ids currently assigned. This is the size an array needs to be to hold
+   * a value for every vertex.
+   *
+   * @return An int greater than every assigned id.
+   */
+  int getIdBound();
+}
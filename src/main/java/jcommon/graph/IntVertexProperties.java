@@ -0,0 +1,95 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph;
+
+import java.util.Arrays;
+
+/**
+ * Primitive <code>int</code> counterpart of {@link VertexProperties} that avoids boxing.
+ *
+ * @param <TVertex> Type of {@link IVertex} that values are kept for.
+ *
+ * @see VertexProperties
+ */
+public class IntVertexProperties<TVertex extends IVertex<?>> extends AbstractVertexProperties<TVertex> {
+  private final int default_value;
+  private int[] values;
+
+  public IntVertexProperties(final IVertexIds<TVertex> ids) {
+    this(ids, 0);
+  }
+
+  /**
+   * @param ids The {@link IVertexIds} that assigns ids to vertices.
+   * @param defaultValue The value of every vertex that hasn't been set.
+   */
+  public IntVertexProperties(final IVertexIds<TVertex> ids, final int defaultValue) {
+    super(ids);
+    this.default_value = defaultValue;
+    this.values = new int[initialLength()];
+    if (defaultValue != 0)
+      Arrays.fill(values, defaultValue);
+  }
+
+  /**
+   * @see VertexProperties#get(IVertex)
+   */
+  public int get(final TVertex vertex) {
+    return getAt(require(vertex));
+  }
+
+  /**
+   * @see VertexProperties#getAt(int)
+   */
+  public int getAt(final int id) {
+    return (id < values.length) ? values[id] : default_value;
+  }
+
+  /**
+   * @see VertexProperties#set(IVertex, Object)
+   */
+  public IntVertexProperties<TVertex> set(final TVertex vertex, final int value) {
+    return setAt(require(vertex), value);
+  }
+
+  /**
+   * @see VertexProperties#setAt(int, Object)
+   */
+  public IntVertexProperties<TVertex> setAt(final int id, final int value) {
+    if (id >= values.length)
+      grow(id);
+    values[id] = value;
+    return this;
+  }
+
+  /**
+   * @see VertexProperties#clear()
+   */
+  public void clear() {
+    Arrays.fill(values, default_value);
+  }
+
+  private void grow(final int id) {
+    final int old_length = values.length;
+    values = Arrays.copyOf(values, grownLength(id, old_length));
+    if (default_value != 0)
+      Arrays.fill(values, old_length, values.length, default_value);
+  }
+}
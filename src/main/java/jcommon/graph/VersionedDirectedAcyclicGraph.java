@@ -0,0 +1,427 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph;
+
+import jcommon.graph.impl.Edge;
+import jcommon.graph.impl.TransitiveReduction;
+import jcommon.graph.impl.VersionedSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A graph that can be changed while many other threads sort it, using multi-version concurrency control.
+ *
+ * Every change produces a new version and readers call {@link #snapshot()} to get an immutable {@link GraphSnapshot}
+ * of the latest one, which they can then sort as often as they like. Readers never see a partially applied change
+ * and never block: {@link #snapshot()} is a single volatile read.
+ *
+ * Writers are serialized and publish a new snapshot as they finish each change. Versions share their vertices and
+ * edges: each one is stored once, stamped with the versions that added and removed it, and a snapshot only sees
+ * those that were present at its version. Publishing a version therefore costs time proportional to what changed,
+ * not to the size of the graph. Use {@link #update(IGraphUpdate)} to apply many changes as a single version. The
+ * {@link #sort()} and {@link #sortAsync(ITopologicalSortCallback)} family of methods sort the latest snapshot.
+ *
+ * @param <TVertex> Type of {@link IVertex} vertices that this graph contains.
+ *
+ * @see GraphSnapshot
+ * @see IGraph
+ */
+public class VersionedDirectedAcyclicGraph<TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> extends AbstractGraph<TVertex, TValue, TProcessedValue> {
+  private final Object write_lock = new Object();
+  //Everything below is guarded by write_lock, apart from current.
+  private DirectedAcyclicGraph<TVertex, TValue, TProcessedValue> working;
+  private final VersionedSet<TVertex> vertex_versions = new VersionedSet<TVertex>();
+  private final VersionedSet<IEdge<TVertex>> edge_versions = new VersionedSet<IEdge<TVertex>>();
+  private long version;
+  private volatile GraphSnapshot<TVertex, TValue, TProcessedValue> current;
+
+  /**
+   * Protected constructor to prevent public instantiation.
+   */
+  protected VersionedDirectedAcyclicGraph() {
+    this.working = new DirectedAcyclicGraph<TVertex, TValue, TProcessedValue>();
+    this.version = 0L;
+    this.current = new GraphSnapshot<TVertex, TValue, TProcessedValue>(0L, vertex_versions.commit(0L), edge_versions.commit(0L), true, null);
+  }
+
+  /**
+   * Convenience method for constructing an empty {@link VersionedDirectedAcyclicGraph}.
+   *
+   * @param <TVertex> Type of {@link IVertex} of the vertices in the new {@link IGraph}.
+   * @return A new, empty instance of {@link VersionedDirectedAcyclicGraph} at version 0.
+   */
+  public static <TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> VersionedDirectedAcyclicGraph<TVertex, TValue, TProcessedValue> create() {
+    return new VersionedDirectedAcyclicGraph<TVertex, TValue, TProcessedValue>();
+  }
+
+  /**
+   * Provides the latest version of the graph. This never blocks.
+   *
+   * @return An immutable {@link GraphSnapshot} of the graph.
+   */
+  public GraphSnapshot<TVertex, TValue, TProcessedValue> snapshot() {
+    return current;
+  }
+
+  /**
+   * The latest version of the graph. This never blocks.
+   *
+   * @return The version that {@link #snapshot()} provides.
+   */
+  public long getVersion() {
+    return current.getVersion();
+  }
+
+  /**
+   * Applies a batch of changes to the graph and, if it completes normally, publishes them as a single new
+   * version. If the update throws, the graph is left exactly as it was and nothing is published.
+   *
+   * The update works on the graph itself. An update that only adds vertices and edges costs time proportional to
+   * what it adds. The first time an update removes something, or adds a vertex that dangling edges are waiting
+   * on, the writer's copy of the graph is copied once so that the update can still be reverted. Readers are never
+   * blocked by an update, however long it runs.
+   *
+   * @param update An instance of {@link IGraphUpdate} that makes the changes.
+   * @return The version once the update was applied. It's unchanged if the update didn't change anything.
+   * @throws Exception Any exception thrown by the update.
+   */
+  public long update(final IGraphUpdate<TVertex, TValue, TProcessedValue> update) throws Exception {
+    if (update == null)
+      throw new IllegalArgumentException("update cannot be null");
+
+    synchronized (write_lock) {
+      final Transaction transaction = new Transaction();
+      boolean applied = false;
+      try {
+        update.apply(transaction);
+        applied = true;
+      } finally {
+        if (!applied)
+          transaction.rollback();
+      }
+      if (transaction.changed())
+        publish();
+      return version;
+    }
+  }
+
+  /**
+   * Live views are never handed out so this is the same as <code>snapshot().getVertices()</code>.
+   *
+   * @see IGraph#getVertices()
+   */
+  @Override
+  public Set<TVertex> getVertices() {
+    return snapshot().getVertices();
+  }
+
+  /**
+   * Live views are never handed out so this is the same as <code>snapshot().getEdges()</code>.
+   *
+   * @see IGraph#getEdges()
+   */
+  @Override
+  public Set<IEdge<TVertex>> getEdges() {
+    return snapshot().getEdges();
+  }
+
+  /**
+   * Provides a mutable copy of the latest version.
+   *
+   * @see IGraph#copy()
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> copy() {
+    return snapshot().copy();
+  }
+
+  /**
+   * @see IGraph#addVertex(IVertex)
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> addVertex(final TVertex vertex) {
+    synchronized (write_lock) {
+      if (applyAddVertex(vertex))
+        publish();
+    }
+    return this;
+  }
+
+  /**
+   * @see IGraph#removeVertex(IVertex)
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> removeVertex(final TVertex vertex) {
+    synchronized (write_lock) {
+      if (applyRemoveVertex(vertex))
+        publish();
+    }
+    return this;
+  }
+
+  /**
+   * @see IGraph#addEdge(IVertex, IVertex)
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> addEdge(final TVertex from, final TVertex to) {
+    synchronized (write_lock) {
+      if (applyAddEdge(from, to))
+        publish();
+    }
+    return this;
+  }
+
+  /**
+   * @see IGraph#removeEdge(IVertex, IVertex)
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> removeEdge(final TVertex from, final TVertex to) {
+    synchronized (write_lock) {
+      if (applyRemoveEdge(from, to))
+        publish();
+    }
+    return this;
+  }
+
+  /**
+   * Reduces the latest version and publishes a single new version if any edges were removed.
+   *
+   * @see IGraph#transitiveReduction()
+   */
+  @Override
+  public IGraph<TVertex, TValue, TProcessedValue> transitiveReduction() throws CyclicGraphException {
+    synchronized (write_lock) {
+      boolean changed = false;
+      for(IEdge<TVertex> e : TransitiveReduction.redundantEdges(working.createAdjacencyList()))
+        changed |= applyRemoveEdge(e.getFrom(), e.getTo());
+      if (changed)
+        publish();
+    }
+    return this;
+  }
+
+  /**
+   * Validates the latest version.
+   *
+   * @see IGraph#validate()
+   */
+  @Override
+  public boolean validate() {
+    return snapshot().validate();
+  }
+
+  /**
+   * Provides the cached adjacency list of the latest version.
+   *
+   * @see GraphSnapshot#createAdjacencyList()
+   */
+  @Override
+  protected IAdjacencyList<TVertex, TValue, TProcessedValue> createAdjacencyList() {
+    return snapshot().createAdjacencyList();
+  }
+
+  /**
+   * Slices the latest version.
+   *
+   * @see GraphSnapshot#createAdjacencyList(Collection)
+   */
+  @Override
+  protected IAdjacencyList<TVertex, TValue, TProcessedValue> createAdjacencyList(final Collection<? extends TVertex> targets) {
+    return snapshot().createAdjacencyList(targets);
+  }
+
+  //Each of the following applies a single change to the working graph and records it in the version being built.
+  //They return true if anything changed and must be called while holding write_lock.
+
+  private boolean applyAddVertex(final TVertex vertex) {
+    if (vertex == null)
+      throw new IllegalArgumentException("vertex must not be null");
+    if (working.getVertices().contains(vertex))
+      return false;
+    working.addVertex(vertex);
+    vertex_versions.add(vertex, version + 1L);
+    return true;
+  }
+
+  private boolean applyRemoveVertex(final TVertex vertex) {
+    if (vertex == null)
+      throw new IllegalArgumentException("vertex must not be null");
+    final List<IEdge<TVertex>> incident = working.incidentEdges(vertex);
+    final boolean was_present = working.getVertices().contains(vertex);
+    working.removeVertex(vertex);
+    for(IEdge<TVertex> e : incident)
+      edge_versions.remove(e, version + 1L);
+    if (was_present)
+      vertex_versions.remove(vertex, version + 1L);
+    return was_present || !incident.isEmpty();
+  }
+
+  private boolean applyAddEdge(final TVertex from, final TVertex to) {
+    final int size = working.getEdges().size();
+    working.addEdge(from, to);
+    if (size == working.getEdges().size())
+      return false;
+    edge_versions.add(new Edge<TVertex>(from, to), version + 1L);
+    return true;
+  }
+
+  private boolean applyRemoveEdge(final TVertex from, final TVertex to) {
+    final int size = working.getEdges().size();
+    working.removeEdge(from, to);
+    if (size == working.getEdges().size())
+      return false;
+    edge_versions.remove(new Edge<TVertex>(from, to), version + 1L);
+    return true;
+  }
+
+  //Must be called while holding write_lock. Publishes the changes recorded since the last version as a new one.
+  private void publish() {
+    final long next = version + 1L;
+    //Once a snapshot has been sliced by target, the working graph keeps its in-neighbor index up to date and
+    //every later snapshot gets a copy that shares the rows that didn't change, so no snapshot indexes every
+    //edge again.
+    current = new GraphSnapshot<TVertex, TValue, TProcessedValue>(
+        next
+      , vertex_versions.commit(next)
+      , edge_versions.commit(next)
+      , working.validate()
+      , working.shareInNeighbors(current.hasInNeighbors())
+    );
+    version = next;
+  }
+
+  /**
+   * The graph handed to an {@link IGraphUpdate}. Changes go straight to the working graph and reads see it.
+   *
+   * Additions are cheap to revert exactly, so they're only recorded. Before the first change that isn't an
+   * addition (removing a vertex or an edge, or adding a vertex that edges are waiting on) the working graph is
+   * copied once, and reverting goes back to that copy before undoing the additions made ahead of it. Updates that
+   * only add therefore never copy the graph. The versioned vertices and edges revert themselves.
+   */
+  private final class Transaction extends AbstractGraph<TVertex, TValue, TProcessedValue> {
+    //Additions in order. A vertex is recorded with a null in added_to.
+    private final List<TVertex> added_from = new ArrayList<TVertex>();
+    private final List<TVertex> added_to = new ArrayList<TVertex>();
+    private DirectedAcyclicGraph<TVertex, TValue, TProcessedValue> backup;
+    private boolean changed;
+
+    boolean changed() {
+      return changed;
+    }
+
+    void rollback() {
+      if (backup != null)
+        working = backup;
+      for(int i = added_from.size() - 1; i >= 0; --i) {
+        if (added_to.get(i) == null)
+          working.removeVertex(added_from.get(i));
+        else
+          working.removeEdge(added_from.get(i), added_to.get(i));
+      }
+      added_from.clear();
+      added_to.clear();
+      vertex_versions.rollback();
+      edge_versions.rollback();
+    }
+
+    private void beforeDestructiveChange() {
+      if (backup == null)
+        backup = DirectedAcyclicGraph.copyGraph(working);
+    }
+
+    @Override
+    public Set<TVertex> getVertices() {
+      return working.getVertices();
+    }
+
+    @Override
+    public Set<IEdge<TVertex>> getEdges() {
+      return working.getEdges();
+    }
+
+    @Override
+    public IGraph<TVertex, TValue, TProcessedValue> copy() {
+      return working.copy();
+    }
+
+    @Override
+    public boolean validate() {
+      return working.validate();
+    }
+
+    @Override
+    protected IAdjacencyList<TVertex, TValue, TProcessedValue> createAdjacencyList() {
+      return working.createAdjacencyList();
+    }
+
+    @Override
+    protected IAdjacencyList<TVertex, TValue, TProcessedValue> createAdjacencyList(final Collection<? extends TVertex> targets) {
+      return working.createAdjacencyList(targets);
+    }
+
+    @Override
+    public IGraph<TVertex, TValue, TProcessedValue> addVertex(final TVertex vertex) {
+      if (vertex == null)
+        throw new IllegalArgumentException("vertex must not be null");
+      if (working.getVertices().contains(vertex))
+        return this;
+
+      //Removing the vertex again would also remove any edges that were waiting on it.
+      if (!working.validate())
+        beforeDestructiveChange();
+      applyAddVertex(vertex);
+      if (backup == null) {
+        added_from.add(vertex);
+        added_to.add(null);
+      }
+      changed = true;
+      return this;
+    }
+
+    @Override
+    public IGraph<TVertex, TValue, TProcessedValue> removeVertex(final TVertex vertex) {
+      beforeDestructiveChange();
+      changed |= applyRemoveVertex(vertex);
+      return this;
+    }
+
+    @Override
+    public IGraph<TVertex, TValue, TProcessedValue> addEdge(final TVertex from, final TVertex to) {
+      if (applyAddEdge(from, to)) {
+        if (backup == null) {
+          added_from.add(from);
+          added_to.add(to);
+        }
+        changed = true;
+      }
+      return this;
+    }
+
+    @Override
+    public IGraph<TVertex, TValue, TProcessedValue> removeEdge(final TVertex from, final TVertex to) {
+      beforeDestructiveChange();
+      changed |= applyRemoveEdge(from, to);
+      return this;
+    }
+  }
+}
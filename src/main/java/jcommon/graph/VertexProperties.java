@@ -0,0 +1,120 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph;
+
+import java.util.Arrays;
+
+/**
+ * Array-backed per-vertex values, indexed by the dense ids from an {@link IVertexIds} such as a
+ * {@link DirectedAcyclicGraph} or an {@link IAdjacencyList}. Lookups by id are a plain array access, and lookups
+ * by vertex cost a single {@link IVertexIds#idOf(IVertex)}.
+ *
+ * The backing array grows as the id source assigns new ids. Ids can be reused once their vertex is removed, so
+ * clear a removed vertex's value if a later vertex mustn't see it. Not thread safe, although threads may safely
+ * write values for distinct vertices as long as nothing else causes the array to grow at the same time.
+ *
+ * @param <TVertex> Type of {@link IVertex} that values are kept for.
+ * @param <T> Type of the values.
+ *
+ * @see IntVertexProperties
+ * @see DoubleVertexProperties
+ */
+public class VertexProperties<TVertex extends IVertex<?>, T> extends AbstractVertexProperties<TVertex> {
+  private final T default_value;
+  private Object[] values;
+
+  public VertexProperties(final IVertexIds<TVertex> ids) {
+    this(ids, null);
+  }
+
+  /**
+   * @param ids The {@link IVertexIds} that assigns ids to vertices.
+   * @param defaultValue The value of every vertex that hasn't been set.
+   */
+  public VertexProperties(final IVertexIds<TVertex> ids, final T defaultValue) {
+    super(ids);
+    this.default_value = defaultValue;
+    this.values = new Object[initialLength()];
+    if (defaultValue != null)
+      Arrays.fill(values, defaultValue);
+  }
+
+  /**
+   * Gets the value for a vertex.
+   *
+   * @param vertex The vertex whose value is needed.
+   * @return The value for the vertex or the default value if none was set.
+   * @throws IllegalArgumentException Thrown if the vertex has no id.
+   */
+  public T get(final TVertex vertex) {
+    return getAt(require(vertex));
+  }
+
+  /**
+   * Gets the value for the vertex with the provided id.
+   *
+   * @param id The id of the vertex.
+   * @return The value for the vertex or the default value if none was set.
+   */
+  @SuppressWarnings("unchecked")
+  public T getAt(final int id) {
+    return (id < values.length) ? (T)values[id] : default_value;
+  }
+
+  /**
+   * Sets the value for a vertex.
+   *
+   * @param vertex The vertex whose value should be set.
+   * @param value The new value.
+   * @return The current instance of {@link VertexProperties} for use in a builder-style pattern.
+   * @throws IllegalArgumentException Thrown if the vertex has no id.
+   */
+  public VertexProperties<TVertex, T> set(final TVertex vertex, final T value) {
+    return setAt(require(vertex), value);
+  }
+
+  /**
+   * Sets the value for the vertex with the provided id.
+   *
+   * @param id The id of the vertex.
+   * @param value The new value.
+   * @return The current instance of {@link VertexProperties} for use in a builder-style pattern.
+   */
+  public VertexProperties<TVertex, T> setAt(final int id, final T value) {
+    if (id >= values.length)
+      grow(id);
+    values[id] = value;
+    return this;
+  }
+
+  /**
+   * Resets every vertex to the default value.
+   */
+  public void clear() {
+    Arrays.fill(values, default_value);
+  }
+
+  private void grow(final int id) {
+    final int old_length = values.length;
+    values = Arrays.copyOf(values, grownLength(id, old_length));
+    if (default_value != null)
+      Arrays.fill(values, old_length, values.length, default_value);
+  }
+}
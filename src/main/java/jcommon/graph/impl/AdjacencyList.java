@@ -34,30 +34,86 @@ public class AdjacencyList<TVertex extends IVertex<TValue>, TValue extends Objec
   private final Map<TVertex, Integer> index_map;
   private final Map<TVertex, List<TVertex>> vertex_map;
   private final Set<TVertex> end_vertices;
+  private final int[] in_degrees;
+  //The id of the vertex at each index, or null when ids are indices.
+  private final int[] ids;
+  private final int id_bound;
 
   /**
    * @see IAdjacencyList
    */
   public AdjacencyList(final Set<TVertex> vertices, final Set<IEdge<TVertex>> edges) {
+    this(vertices, edges, false);
+  }
+
+  /**
+   * @see #AdjacencyList(Set, Set, boolean, int[], int)
+   */
+  public AdjacencyList(final Set<TVertex> vertices, final Set<IEdge<TVertex>> edges, final boolean identity) {
+    this(vertices, edges, identity, null, vertices.size());
+  }
+
+  /**
+   * Builds an adjacency list that, when <code>identity</code> is <code>true</code>, uses reference identity for
+   * every lookup. Vertex <code>equals()</code> and <code>hashCode()</code> are then never called, so the endpoints
+   * of every edge must be the very instances in <code>vertices</code>. Endpoints that aren't are treated as
+   * vertices outside of the graph.
+   *
+   * @param vertices The vertices of the graph in the order they should be indexed.
+   * @param edges The edges of the graph.
+   * @param identity <code>true</code> to use reference identity for lookups; <code>false</code> to use
+   *                 <code>equals()</code>.
+   * @param ids The id, in the graph the list is built from, of each vertex in the order of <code>vertices</code>.
+   *            May be <code>null</code>, in which case each vertex's index is its id.
+   * @param idBound An exclusive upper bound on <code>ids</code>.
+   */
+  public AdjacencyList(final Set<TVertex> vertices, final Set<IEdge<TVertex>> edges, final boolean identity, final int[] ids, final int idBound) {
+    if (ids != null && (ids.length != vertices.size() || idBound < 0))
+      throw new IllegalArgumentException("ids must have an entry for every vertex");
+
+    final Object event = FlightRecorderEvents.beginAdjacencyList();
+
     //Create 2 maps.
     //  One maps from a vertex to all of its out-neighbors.
     //  The other just maps from an integer index to the vertices at that index.
     //  This means that num_map must preserve insertion order! Easy to do w/ an ArrayList.
     final List<IAdjacencyListPair<TVertex>> num_map = new ArrayList<IAdjacencyListPair<TVertex>>(vertices.size());
-    final Map<TVertex, List<TVertex>> vertex_map = new HashMap<TVertex, List<TVertex>>(vertices.size(), 1.0f);
-    final Map<TVertex, Integer> index_map = new HashMap<TVertex, Integer>(vertices.size(), 1.0f);
+    final Map<TVertex, List<TVertex>> vertex_map = identity ? new IdentityHashMap<TVertex, List<TVertex>>(vertices.size()) : new HashMap<TVertex, List<TVertex>>(vertices.size(), 1.0f);
+    final Map<TVertex, Integer> index_map = identity ? new IdentityHashMap<TVertex, Integer>(vertices.size()) : new HashMap<TVertex, Integer>(vertices.size(), 1.0f);
     final List<TVertex> EMPTY_VERTICES_ARRAYLIST = new ArrayList<TVertex>(0);
-    final Set<TVertex> end_vertices = new HashSet<TVertex>(2, 1.0f);
-
-    for(TVertex d : vertices) {
-      final List<TVertex> al_to = new ArrayList<TVertex>();
-      for(IEdge<TVertex> r : edges) {
-        if (d.equals(r.getFrom())) {
+    final Set<TVertex> end_vertices = identity ? Collections.newSetFromMap(new IdentityHashMap<TVertex, Boolean>(2)) : new HashSet<TVertex>(2, 1.0f);
+
+    //Group the out-neighbors by their source in a single pass over the edges, preserving edge order
+    //within each source. A NeighborEdgeSet is already grouped and, unless lookups are by identity, is
+    //queried directly.
+    final NeighborEdgeSet<TVertex> grouped = (edges instanceof NeighborEdgeSet) ? (NeighborEdgeSet<TVertex>)edges : null;
+    final Map<TVertex, List<TVertex>> by_source;
+    if (grouped != null && !identity) {
+      by_source = null;
+    } else {
+      by_source = identity ? new IdentityHashMap<TVertex, List<TVertex>>(vertices.size()) : new HashMap<TVertex, List<TVertex>>(vertices.size(), 1.0f);
+      if (grouped != null) {
+        for(Map.Entry<TVertex, List<TVertex>> e : grouped.sources())
+          by_source.put(e.getKey(), e.getValue());
+      } else {
+        for(IEdge<TVertex> r : edges) {
+          List<TVertex> al_to = by_source.get(r.getFrom());
+          if (al_to == null) {
+            al_to = new ArrayList<TVertex>(2);
+            by_source.put(r.getFrom(), al_to);
+          }
           al_to.add(r.getTo());
         }
       }
+    }
 
-      final List<TVertex> arr_to = !al_to.isEmpty() ? al_to : EMPTY_VERTICES_ARRAYLIST;
+    for(TVertex d : vertices) {
+      List<TVertex> al_to = (by_source != null) ? by_source.get(d) : grouped.outNeighborsFor(d);
+      //The lists of a NeighborEdgeSet are live, so take a copy.
+      if (grouped != null && al_to != null && !al_to.isEmpty())
+        al_to = new ArrayList<TVertex>(al_to);
+
+      final List<TVertex> arr_to = (al_to != null && !al_to.isEmpty()) ? al_to : EMPTY_VERTICES_ARRAYLIST;
 
       vertex_map.put(d, arr_to);
       num_map.add(new AdjacencyListPair<TVertex>(d, arr_to));
@@ -71,32 +127,37 @@ public class AdjacencyList<TVertex extends IVertex<TValue>, TValue extends Objec
       }
     }
 
+    //Count references to each vertex now that every vertex has an index. Out-neighbors that aren't
+    //vertices of the graph aren't counted.
+    final int[] in_degrees = new int[num_map.size()];
+    for(IAdjacencyListPair<TVertex> p : num_map) {
+      for(TVertex dep : p.getOutNeighbors()) {
+        final Integer index = index_map.get(dep);
+        if (index != null)
+          ++in_degrees[index];
+      }
+    }
+
     //Ensure the maps are read-only at this point.
     this.num_map = Collections.unmodifiableList(num_map);
     this.index_map = Collections.unmodifiableMap(index_map);
     this.vertex_map = Collections.unmodifiableMap(vertex_map);
     this.end_vertices = Collections.unmodifiableSet(end_vertices);
+    this.in_degrees = in_degrees;
+    this.ids = (ids != null) ? ids.clone() : null;
+    this.id_bound = (ids != null) ? idBound : num_map.size();
+
+    FlightRecorderEvents.endAdjacencyList(event, vertices.size(), edges.size());
   }
 
   /**
    * Calculates an integer array where the value at each index is the number of times that vertex is
-   * referenced elsewhere.
+   * referenced elsewhere. The counts are computed once, when the adjacency list is built, and a fresh
+   * copy is returned on every call.
    */
   @Override
   public int[] calculateInDegrees() {
-    final int[] in_degrees = new int[size()];
-    for(int i = 0; i < size(); ++i) {
-      final IAdjacencyListPair<TVertex> p = pairAt(i);
-      final TVertex d = p.getVertex();
-
-      for(int j = 0; j < size(); ++j) {
-        for(IVertex dep : pairAt(j).getOutNeighbors()) {
-          if (d.equals(dep))
-            ++in_degrees[i];
-        }
-      }
-    }
-    return in_degrees;
+    return in_degrees.clone();
   }
 
   @Override
@@ -141,6 +202,30 @@ public class AdjacencyList<TVertex extends IVertex<TValue>, TValue extends Objec
     return (result != null) ? result : -1;
   }
 
+  /**
+   * The vertex's id in the graph this list was built from, or its index if no ids were provided.
+   */
+  @Override
+  public int idOf(final TVertex vertex) {
+    final int index = indexOf(vertex);
+    return (index >= 0) ? idAt(index) : -1;
+  }
+
+  @Override
+  public int idAt(final int index) {
+    if (ids == null)
+      return index;
+    return ids[index];
+  }
+
+  /**
+   * The bound of the graph this list was built from, or {@link #size()} if no ids were provided.
+   */
+  @Override
+  public int getIdBound() {
+    return id_bound;
+  }
+
   @Override
   public boolean isEndingVertex(final TVertex vertex) {
     return end_vertices.contains(vertex);
@@ -0,0 +1,134 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.IAdjacencyList;
+import jcommon.graph.IAdjacencyListPair;
+import jcommon.graph.IEdge;
+import jcommon.graph.IVertex;
+import jcommon.graph.IVertexIds;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds the {@link IAdjacencyList} of the subgraph that a set of target vertices depend on: the targets
+ * themselves, every vertex with a path to one of them, and the edges between those vertices.
+ *
+ * The ancestors are found by walking in-neighbors backwards from the targets, so the work is proportional to
+ * the size of the slice rather than the size of the graph as long as the in-neighbor index already exists.
+ *
+ * @see jcommon.graph.IGraph#sort(Collection)
+ */
+public final class AncestorSlice {
+  private AncestorSlice() {
+  }
+
+  /**
+   * @see #of(Set, NeighborEdgeSet, Collection, boolean, IVertexIds)
+   */
+  public static <TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> IAdjacencyList<TVertex, TValue, TProcessedValue> of(final Set<TVertex> vertices, final NeighborEdgeSet<TVertex> inNeighbors, final Collection<? extends TVertex> targets, final boolean identity) {
+    return of(vertices, inNeighbors, targets, identity, null);
+  }
+
+  /**
+   * Builds the slice of a graph from an index of its in-neighbors.
+   *
+   * @param vertices The vertices of the graph, used to check that every target is one of them.
+   * @param inNeighbors A {@link NeighborEdgeSet} mapping every vertex to the vertices it has edges from.
+   * @param targets The vertices whose ancestors are wanted.
+   * @param identity <code>true</code> to build an identity-based adjacency list.
+   * @param ids The graph's vertex ids, which the slice keeps. May be <code>null</code>, in which case the slice
+   *            numbers its vertices by index.
+   * @return An adjacency list of the targets and their ancestors. Vertices are indexed in the order they're
+   *         discovered, starting with the targets.
+   * @throws IllegalArgumentException Thrown if a target is not a vertex of the graph.
+   */
+  public static <TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> IAdjacencyList<TVertex, TValue, TProcessedValue> of(final Set<TVertex> vertices, final NeighborEdgeSet<TVertex> inNeighbors, final Collection<? extends TVertex> targets, final boolean identity, final IVertexIds<TVertex> ids) {
+    if (targets == null)
+      throw new IllegalArgumentException("targets cannot be null");
+
+    final Set<TVertex> closure = new LinkedHashSet<TVertex>();
+    final List<TVertex> pending = new ArrayList<TVertex>(targets.size());
+    for(TVertex target : targets) {
+      if (target == null || !vertices.contains(target))
+        throw new IllegalArgumentException("targets must all be vertices of the graph");
+      if (closure.add(target))
+        pending.add(target);
+    }
+
+    final Set<IEdge<TVertex>> edges = new LinkedHashSet<IEdge<TVertex>>();
+    while(!pending.isEmpty()) {
+      final TVertex to = pending.remove(pending.size() - 1);
+      for(TVertex from : inNeighbors.outNeighborsFor(to)) {
+        edges.add(new Edge<TVertex>(from, to));
+        if (closure.add(from))
+          pending.add(from);
+      }
+    }
+    if (ids == null)
+      return new AdjacencyList<TVertex, TValue, TProcessedValue>(closure, edges, identity);
+    final int[] slice_ids = new int[closure.size()];
+    int i = 0;
+    for(TVertex v : closure)
+      slice_ids[i++] = ids.idOf(v);
+    return new AdjacencyList<TVertex, TValue, TProcessedValue>(closure, edges, identity, slice_ids, ids.getIdBound());
+  }
+
+  /**
+   * Builds the slice of a graph from its full {@link IAdjacencyList}. This has to index the in-neighbors of the
+   * whole graph first, so it's only used where no such index is kept.
+   *
+   * @param adjacencyList The adjacency list of the whole graph.
+   * @param targets The vertices whose ancestors are wanted.
+   * @return An adjacency list of the targets and their ancestors, keeping the ids of <code>adjacencyList</code>.
+   * @throws IllegalArgumentException Thrown if a target is not a vertex of the graph.
+   */
+  public static <TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> IAdjacencyList<TVertex, TValue, TProcessedValue> of(final IAdjacencyList<TVertex, TValue, TProcessedValue> adjacencyList, final Collection<? extends TVertex> targets) {
+    if (adjacencyList == null)
+      throw new IllegalArgumentException("adjacencyList cannot be null");
+    return of(verticesOf(adjacencyList), inNeighborsOf(adjacencyList), targets, false, adjacencyList);
+  }
+
+  /**
+   * Indexes the in-neighbors of every vertex of an {@link IAdjacencyList}.
+   *
+   * @param adjacencyList The adjacency list to index.
+   * @return A {@link NeighborEdgeSet} holding every edge reversed.
+   */
+  public static <TVertex extends IVertex<TValue>, TValue extends Object> NeighborEdgeSet<TVertex> inNeighborsOf(final IAdjacencyList<TVertex, TValue, ?> adjacencyList) {
+    final NeighborEdgeSet<TVertex> result = new NeighborEdgeSet<TVertex>(adjacencyList.size());
+    for(IAdjacencyListPair<TVertex> pair : adjacencyList) {
+      for(TVertex to : pair.getOutNeighbors())
+        result.add(to, pair.getVertex());
+    }
+    return result;
+  }
+
+  private static <TVertex extends IVertex<TValue>, TValue extends Object> Set<TVertex> verticesOf(final IAdjacencyList<TVertex, TValue, ?> adjacencyList) {
+    final Set<TVertex> result = new LinkedHashSet<TVertex>(adjacencyList.size() * 2);
+    for(IAdjacencyListPair<TVertex> pair : adjacencyList)
+      result.add(pair.getVertex());
+    return result;
+  }
+}
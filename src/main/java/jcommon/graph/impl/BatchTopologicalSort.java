@@ -0,0 +1,144 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.CyclicGraphException;
+import jcommon.graph.DirectedAcyclicGraph;
+import jcommon.graph.IGraph;
+import jcommon.graph.IVertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Topologically sorts many graphs at once, spreading them across a shared {@link ExecutorService}. Intended for
+ * large numbers of small graphs, where building an {@link AdjacencyList} and its maps for every graph would
+ * dominate the cost of sorting.
+ *
+ * Each thread sorts with its own {@link TopologicalSortContext}, reusing its scratch arrays from one graph to
+ * the next, so the only allocation per {@link DirectedAcyclicGraph} is essentially its result list. Other
+ * {@link IGraph} implementations are sorted with {@link IGraph#sort()}.
+ */
+public class BatchTopologicalSort {
+  //Graphs are handed out in a few chunks per core so that uneven chunks still balance out.
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private final ExecutorService executor;
+  private final ThreadLocal<TopologicalSortContext> contexts = new ThreadLocal<TopologicalSortContext>() {
+    @Override
+    protected TopologicalSortContext initialValue() {
+      return new TopologicalSortContext();
+    }
+  };
+
+  /**
+   * Creates a batch sorter that sorts on the calling thread.
+   */
+  public BatchTopologicalSort() {
+    this(null);
+  }
+
+  /**
+   * @param executor The {@link ExecutorService} to sort on. May be shared with other work and is never shut down
+   *                 by this class. <code>null</code> sorts on the calling thread.
+   */
+  public BatchTopologicalSort(final ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Topologically sorts every graph.
+   *
+   * @param graphs The graphs to sort. None of them may be modified until this method returns.
+   * @return A list with the sorted values of each graph at the same position as the graph, or <code>null</code>
+   *         at the position of a graph that has a cycle.
+   * @throws IllegalStateException Thrown if any graph is invalid.
+   */
+  public <TValue extends Object> List<List<TValue>> sortAll(final List<? extends IGraph<? extends IVertex<TValue>, TValue, ?>> graphs) {
+    if (graphs == null)
+      throw new IllegalArgumentException("graphs cannot be null");
+
+    final int size = graphs.size();
+    final Object[] results = new Object[size];
+    if (executor == null || size <= 1) {
+      sortRange(graphs, results, 0, size);
+      return asList(results);
+    }
+
+    final int chunks = Math.min(size, Runtime.getRuntime().availableProcessors() * CHUNKS_PER_THREAD);
+    final List<Future<Void>> futures = new ArrayList<Future<Void>>(chunks);
+    for(int c = 0; c < chunks; ++c) {
+      final int start = (int)((long)size * c / chunks);
+      final int end = (int)((long)size * (c + 1) / chunks);
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          sortRange(graphs, results, start, end);
+          return null;
+        }
+      }));
+    }
+
+    //Waiting on every future also publishes the results written by other threads.
+    RuntimeException failure = null;
+    for(Future<Void> f : futures) {
+      try {
+        f.get();
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        for(Future<Void> other : futures)
+          other.cancel(true);
+        throw new IllegalStateException("Interrupted while sorting", e);
+      } catch(ExecutionException e) {
+        if (failure == null)
+          failure = (e.getCause() instanceof RuntimeException) ? (RuntimeException)e.getCause() : new IllegalStateException(e.getCause());
+      }
+    }
+    if (failure != null)
+      throw failure;
+    return asList(results);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <TValue extends Object> void sortRange(final List<? extends IGraph<? extends IVertex<TValue>, TValue, ?>> graphs, final Object[] results, final int start, final int end) {
+    final TopologicalSortContext context = contexts.get();
+    for(int i = start; i < end; ++i) {
+      final IGraph<? extends IVertex<TValue>, TValue, ?> graph = graphs.get(i);
+      try {
+        if (graph instanceof DirectedAcyclicGraph)
+          results[i] = context.sort((DirectedAcyclicGraph<IVertex<TValue>, TValue, ?>)graph);
+        else
+          results[i] = graph.sort();
+      } catch(CyclicGraphException e) {
+        results[i] = null;
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <TValue extends Object> List<List<TValue>> asList(final Object[] results) {
+    return (List<List<TValue>>)(List<?>)Arrays.asList(results);
+  }
+}
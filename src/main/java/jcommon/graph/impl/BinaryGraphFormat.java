@@ -0,0 +1,261 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.DirectedAcyclicGraph;
+import jcommon.graph.IGraph;
+import jcommon.graph.IProcessedValueSerializer;
+import jcommon.graph.IVertex;
+import jcommon.graph.ObjectGraph;
+import jcommon.graph.ObjectVertex;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads and writes graphs in a compact binary format so that they can be cached on disk and reloaded quickly.
+ *
+ * The layout is:
+ * <pre>
+ *   int      magic ("JCGR")
+ *   byte     version
+ *   varint   vertex count (n)
+ *   varlong  edge count
+ *   n x      varint length + 1 (0 for null) followed by the value as written by the value serializer
+ *   n x      varint out-degree followed by the out-neighbors' indices in ascending order. The first is
+ *            zig-zag encoded relative to the vertex's own index and the rest as the gap to the previous one.
+ * </pre>
+ *
+ * That is, a vertex dictionary followed by the edges in compressed sparse row (CSR) form with
+ * delta-encoded, variable length indices. Vertices keep the iteration order of {@link IGraph#getVertices()}.
+ */
+public final class BinaryGraphFormat {
+  /** Identifies a file written by {@link BinaryGraphFormat}. */
+  public static final int MAGIC = 0x4A434752;
+
+  /** The current version of the format. */
+  public static final int VERSION = 1;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private BinaryGraphFormat() {
+  }
+
+  /**
+   * Writes the graph to the provided file, replacing its contents.
+   *
+   * @see #write(IGraph, IProcessedValueSerializer, FileChannel)
+   */
+  public static <TVertex extends IVertex<TValue>, TValue extends Object> long write(final IGraph<TVertex, TValue, ?> graph, final IProcessedValueSerializer<TValue> serializer, final File file) throws IOException {
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(0L);
+      return write(graph, serializer, raf.getChannel());
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Writes the graph at the channel's current position.
+   *
+   * @param graph The {@link IGraph} to write. Every edge must refer to vertices in the graph.
+   * @param serializer Writes each vertex's value.
+   * @param channel The {@link FileChannel} to write to.
+   * @return The number of bytes written.
+   * @throws IOException Thrown if the channel or serializer fail.
+   */
+  public static <TVertex extends IVertex<TValue>, TValue extends Object> long write(final IGraph<TVertex, TValue, ?> graph, final IProcessedValueSerializer<TValue> serializer, final FileChannel channel) throws IOException {
+    if (graph == null)
+      throw new IllegalArgumentException("graph cannot be null");
+    if (serializer == null)
+      throw new IllegalArgumentException("serializer cannot be null");
+    if (channel == null)
+      throw new IllegalArgumentException("channel cannot be null");
+
+    final CompressedSparseRows<TVertex, TValue> csr = CompressedSparseRows.from(graph);
+    final int n = csr.size();
+    final int[] offsets = csr.offsets;
+    final int[] targets = csr.targets;
+
+    final ChannelOutput output = new ChannelOutput(channel, BUFFER_SIZE);
+    output.writeInt(MAGIC);
+    output.writeByte(VERSION);
+    output.writeVarInt(n);
+    output.writeVarLong(csr.edgeCount());
+
+    final SpillFile.Output value_bytes = new SpillFile.Output();
+    for(TVertex v : csr.vertices) {
+      final TValue value = v.getValue();
+      if (value == null) {
+        output.writeVarInt(0);
+        continue;
+      }
+      value_bytes.reset();
+      serializer.write(value, value_bytes);
+      output.writeVarInt(value_bytes.size() + 1);
+      output.write(value_bytes.bytes(), 0, value_bytes.size());
+    }
+
+    for(int i = 0; i < n; ++i) {
+      final int start = offsets[i];
+      final int end = offsets[i + 1];
+      output.writeVarInt(end - start);
+      long previous = i;
+      for(int j = start; j < end; ++j) {
+        final long delta = (j == start) ? zigzag(targets[j] - previous) : targets[j] - previous - 1L;
+        output.writeVarLong(delta);
+        previous = targets[j];
+      }
+    }
+
+    output.flush();
+    return output.written();
+  }
+
+  /**
+   * Reads a graph from the provided file into a new {@link ObjectGraph}.
+   *
+   * @see #read(FileChannel, IProcessedValueSerializer, DirectedAcyclicGraph)
+   */
+  public static <TValue extends Object, TProcessedValue extends Object> ObjectGraph<TValue, TProcessedValue> read(final File file, final IProcessedValueSerializer<TValue> serializer) throws IOException {
+    return read(file, serializer, ObjectGraph.<TValue, TProcessedValue>createForObjects());
+  }
+
+  /**
+   * Reads a graph from the provided file into the provided graph.
+   *
+   * @see #read(FileChannel, IProcessedValueSerializer, DirectedAcyclicGraph)
+   */
+  public static <TValue extends Object, TProcessedValue extends Object, TGraph extends DirectedAcyclicGraph<IVertex<TValue>, TValue, TProcessedValue>> TGraph read(final File file, final IProcessedValueSerializer<TValue> serializer, final TGraph graph) throws IOException {
+    final FileInputStream input = new FileInputStream(file);
+    try {
+      return read(input.getChannel(), serializer, graph);
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Reads a graph from the channel's current position and adds its vertices and edges to the provided graph
+   * using {@link DirectedAcyclicGraph#addAll(IVertex[], int[], int[])}. Vertices are created with {@link ObjectVertex#from(Object)}.
+   *
+   * @param channel The {@link FileChannel} to read from.
+   * @param serializer Reads each vertex's value.
+   * @param graph The graph to populate.
+   * @return The provided graph.
+   * @throws IOException Thrown if the channel or serializer fail or if the input is not in this format.
+   */
+  @SuppressWarnings("unchecked")
+  public static <TValue extends Object, TProcessedValue extends Object, TGraph extends DirectedAcyclicGraph<IVertex<TValue>, TValue, TProcessedValue>> TGraph read(final FileChannel channel, final IProcessedValueSerializer<TValue> serializer, final TGraph graph) throws IOException {
+    if (channel == null)
+      throw new IllegalArgumentException("channel cannot be null");
+    if (serializer == null)
+      throw new IllegalArgumentException("serializer cannot be null");
+    if (graph == null)
+      throw new IllegalArgumentException("graph cannot be null");
+
+    //Nothing in the header can be trusted until it's been checked against what's actually in the file.
+    final long available = channel.size() - channel.position();
+    final ChannelInput input = new ChannelInput(channel, BUFFER_SIZE);
+    if (input.readInt() != MAGIC)
+      throw new IOException("Not a graph written by " + BinaryGraphFormat.class.getSimpleName());
+    final int version = input.readByte();
+    if (version != VERSION)
+      throw new IOException("Unsupported version: " + version);
+
+    final int n = input.readVarInt();
+    final long edge_count = input.readVarLong();
+    if (n < 0 || edge_count < 0L || edge_count > Integer.MAX_VALUE)
+      throw new IOException("Corrupt graph: " + n + " vertices, " + edge_count + " edges");
+    //Every vertex takes at least a byte for its value's length and another for its out-degree, and every
+    //edge takes at least a byte. Anything larger can't be in the file so don't allocate room for it.
+    if (2L * n + edge_count > available)
+      throw new IOException("Corrupt graph: " + n + " vertices and " + edge_count + " edges cannot fit in " + available + " bytes");
+
+    final IVertex<TValue>[] vertices = new IVertex[n];
+    final Bytes value_bytes = new Bytes();
+    for(int i = 0; i < n; ++i) {
+      final int length = input.readVarInt();
+      if (length < 0 || length > available)
+        throw new IOException("Corrupt graph: invalid length " + length + " for vertex " + i);
+      if (length == 0) {
+        vertices[i] = ObjectVertex.from(null);
+        continue;
+      }
+      value_bytes.fill(input, length - 1);
+      vertices[i] = ObjectVertex.from(serializer.read(value_bytes));
+    }
+
+    final int[] offsets = new int[n + 1];
+    final int[] targets = new int[(int)edge_count];
+    int e = 0;
+    for(int i = 0; i < n; ++i) {
+      final int degree = input.readVarInt();
+      if (degree < 0 || degree > targets.length - e)
+        throw new IOException("Corrupt graph: too many edges for vertex " + i);
+      long previous = i;
+      for(int j = 0; j < degree; ++j) {
+        final long delta = input.readVarLong();
+        final long target = (j == 0) ? previous + unzigzag(delta) : previous + delta + 1L;
+        if (target < 0L || target >= n)
+          throw new IOException("Corrupt graph: edge from vertex " + i + " out of range");
+        targets[e++] = (int)target;
+        previous = target;
+      }
+      offsets[i + 1] = e;
+    }
+    if (e != targets.length)
+      throw new IOException("Corrupt graph: expected " + targets.length + " edges but found " + e);
+
+    graph.addAll(vertices, offsets, targets);
+    return graph;
+  }
+
+  private static long zigzag(final long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(final long value) {
+    return (value >>> 1) ^ -(value & 1L);
+  }
+
+  /**
+   * A reusable {@link ByteArrayInputStream} over a single serialized value.
+   */
+  private static final class Bytes extends ByteArrayInputStream {
+    Bytes() {
+      super(new byte[256]);
+    }
+
+    void fill(final ChannelInput input, final int length) throws IOException {
+      if (buf.length < length)
+        buf = new byte[Math.max(length, buf.length * 2)];
+      input.readFully(buf, 0, length);
+      pos = 0;
+      count = length;
+      mark = 0;
+    }
+  }
+}
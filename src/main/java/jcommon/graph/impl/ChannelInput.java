@@ -0,0 +1,102 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Buffered reads of fixed width and variable length (LEB128) integers from a channel.
+ *
+ * Not thread safe.
+ */
+final class ChannelInput {
+  private final ReadableByteChannel channel;
+  private final ByteBuffer buffer;
+
+  ChannelInput(final ReadableByteChannel channel, final int bufferSize) {
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    ((Buffer)buffer).flip();
+  }
+
+  private void ensure(final int size) throws IOException {
+    if (buffer.remaining() >= size)
+      return;
+    buffer.compact();
+    try {
+      while(buffer.position() < size) {
+        if (channel.read(buffer) < 0)
+          throw new EOFException("Unexpected end of input");
+      }
+    } finally {
+      ((Buffer)buffer).flip();
+    }
+  }
+
+  int readByte() throws IOException {
+    ensure(1);
+    return buffer.get() & 0xFF;
+  }
+
+  int readInt() throws IOException {
+    ensure(4);
+    return buffer.getInt();
+  }
+
+  long readLong() throws IOException {
+    ensure(8);
+    return buffer.getLong();
+  }
+
+  long readVarLong() throws IOException {
+    long value = 0L;
+    for(int shift = 0; shift < 64; shift += 7) {
+      if (!buffer.hasRemaining())
+        ensure(1);
+      final byte b = buffer.get();
+      value |= (long)(b & 0x7F) << shift;
+      if (b >= 0)
+        return value;
+    }
+    throw new IOException("Malformed variable length integer");
+  }
+
+  int readVarInt() throws IOException {
+    final long value = readVarLong();
+    if ((value & ~0xFFFFFFFFL) != 0L)
+      throw new IOException("Malformed variable length integer");
+    return (int)value;
+  }
+
+  void readFully(final byte[] bytes, int offset, int length) throws IOException {
+    while(length > 0) {
+      if (!buffer.hasRemaining())
+        ensure(1);
+      final int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      offset += count;
+      length -= count;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Buffered writes of fixed width and variable length (LEB128) integers to a channel.
+ *
+ * Not thread safe.
+ */
+final class ChannelOutput {
+  private final WritableByteChannel channel;
+  private final ByteBuffer buffer;
+  private long written;
+
+  ChannelOutput(final WritableByteChannel channel, final int bufferSize) {
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    this.written = 0L;
+  }
+
+  /**
+   * @return The number of bytes written so far, including those still buffered.
+   */
+  long written() {
+    return written + buffer.position();
+  }
+
+  private void ensure(final int size) throws IOException {
+    if (buffer.remaining() < size)
+      flush();
+  }
+
+  void writeByte(final int value) throws IOException {
+    ensure(1);
+    buffer.put((byte)value);
+  }
+
+  void writeInt(final int value) throws IOException {
+    ensure(4);
+    buffer.putInt(value);
+  }
+
+  void writeLong(final long value) throws IOException {
+    ensure(8);
+    buffer.putLong(value);
+  }
+
+  void writeVarLong(long value) throws IOException {
+    ensure(10);
+    while((value & ~0x7FL) != 0L) {
+      buffer.put((byte)((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte)value);
+  }
+
+  void writeVarInt(final int value) throws IOException {
+    writeVarLong(value & 0xFFFFFFFFL);
+  }
+
+  void write(final byte[] bytes, int offset, int length) throws IOException {
+    while(length > 0) {
+      if (!buffer.hasRemaining())
+        flush();
+      final int count = Math.min(length, buffer.remaining());
+      buffer.put(bytes, offset, count);
+      offset += count;
+      length -= count;
+    }
+  }
+
+  void flush() throws IOException {
+    //Calls go through java.nio.Buffer, see SpillFile.
+    ((Buffer)buffer).flip();
+    while(buffer.hasRemaining())
+      written += channel.write(buffer);
+    ((Buffer)buffer).clear();
+  }
+}
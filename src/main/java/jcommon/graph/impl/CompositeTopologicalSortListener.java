@@ -0,0 +1,144 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package jcommon.graph.impl;
+
+import jcommon.graph.ITopologicalSortInput;
+import jcommon.graph.ITopologicalSortListener;
+import jcommon.graph.IVertex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link ITopologicalSortListener} that forwards every notification to several listeners, in the order they
+ * were added. Use it to install, for example, a {@link TopologicalSortMetrics} and a
+ * {@link TopologicalSortTraceRecorder} on the same strategy.
+ *
+ * An exception thrown by one listener does not prevent the others from being notified. Listeners must be added
+ * before the composite is installed.
+ *
+ * @see SimpleTopologicalSort#setListener(ITopologicalSortListener)
+ */
+public class CompositeTopologicalSortListener<TValue extends Object, TProcessedValue extends Object> implements ITopologicalSortListener<TValue, TProcessedValue> {
+  private final List<ITopologicalSortListener<TValue, TProcessedValue>> listeners;
+
+  /**
+   * Instantiates a new instance of {@link CompositeTopologicalSortListener} with no listeners.
+   */
+  public CompositeTopologicalSortListener() {
+    this.listeners = new ArrayList<ITopologicalSortListener<TValue, TProcessedValue>>(2);
+  }
+
+  /**
+   * Adds a listener to be notified after the ones that were added before it.
+   *
+   * @param listener The {@link ITopologicalSortListener} to add.
+   * @return This instance.
+   */
+  public CompositeTopologicalSortListener<TValue, TProcessedValue> add(final ITopologicalSortListener<TValue, TProcessedValue> listener) {
+    if (listener == null)
+      throw new IllegalArgumentException("listener cannot be null");
+    listeners.add(listener);
+    return this;
+  }
+
+  /**
+   * @return The number of listeners that have been added.
+   */
+  public int size() {
+    return listeners.size();
+  }
+
+  @Override
+  public void sortStarted(final int size) {
+    for(int i = 0; i < listeners.size(); ++i) {
+      try {
+        listeners.get(i).sortStarted(size);
+      } catch(Throwable t) {
+        //Swallow any exceptions thrown by the listener.
+      }
+    }
+  }
+
+  @Override
+  public void vertexReady(final TValue value, final IVertex<TValue> vertex) {
+    for(int i = 0; i < listeners.size(); ++i) {
+      try {
+        listeners.get(i).vertexReady(value, vertex);
+      } catch(Throwable t) {
+        //Swallow any exceptions thrown by the listener.
+      }
+    }
+  }
+
+  @Override
+  public void vertexRejected(final TValue value, final IVertex<TValue> vertex) {
+    for(int i = 0; i < listeners.size(); ++i) {
+      try {
+        listeners.get(i).vertexRejected(value, vertex);
+      } catch(Throwable t) {
+        //Swallow any exceptions thrown by the listener.
+      }
+    }
+  }
+
+  @Override
+  public void vertexStarted(final TValue value, final IVertex<TValue> vertex, final ITopologicalSortInput<TValue, TProcessedValue> input, final long waitNanos) {
+    for(int i = 0; i < listeners.size(); ++i) {
+      try {
+        listeners.get(i).vertexStarted(value, vertex, input, waitNanos);
+      } catch(Throwable t) {
+        //Swallow any exceptions thrown by the listener.
+      }
+    }
+  }
+
+  @Override
+  public void vertexFinished(final TValue value, final IVertex<TValue> vertex, final long elapsedNanos) {
+    for(int i = 0; i < listeners.size(); ++i) {
+      try {
+        listeners.get(i).vertexFinished(value, vertex, elapsedNanos);
+      } catch(Throwable t) {
+        //Swallow any exceptions thrown by the listener.
+      }
+    }
+  }
+
+  @Override
+  public void vertexFailed(final TValue value, final IVertex<TValue> vertex, final Throwable t, final long elapsedNanos) {
+    for(int i = 0; i < listeners.size(); ++i) {
+      try {
+        listeners.get(i).vertexFailed(value, vertex, t, elapsedNanos);
+      } catch(Throwable ignored) {
+        //Swallow any exceptions thrown by the listener.
+      }
+    }
+  }
+
+  @Override
+  public void sortCompleted(final boolean successful) {
+    for(int i = 0; i < listeners.size(); ++i) {
+      try {
+        listeners.get(i).sortCompleted(successful);
+      } catch(Throwable t) {
+        //Swallow any exceptions thrown by the listener.
+      }
+    }
+  }
+}
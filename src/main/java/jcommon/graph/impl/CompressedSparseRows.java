@@ -0,0 +1,90 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.IEdge;
+import jcommon.graph.IGraph;
+import jcommon.graph.IVertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of a graph's edges in compressed sparse row (CSR) form. Vertices are numbered in the iteration
+ * order of {@link IGraph#getVertices()} and the out-neighbors of vertex <code>i</code> are
+ * <code>targets[offsets[i]]</code> through <code>targets[offsets[i + 1] - 1]</code> in ascending order.
+ */
+final class CompressedSparseRows<TVertex extends IVertex<TValue>, TValue extends Object> {
+  final List<TVertex> vertices;
+  final int[] offsets;
+  final int[] targets;
+
+  private CompressedSparseRows(final List<TVertex> vertices, final int[] offsets, final int[] targets) {
+    this.vertices = vertices;
+    this.offsets = offsets;
+    this.targets = targets;
+  }
+
+  int size() {
+    return vertices.size();
+  }
+
+  int edgeCount() {
+    return targets.length;
+  }
+
+  static <TVertex extends IVertex<TValue>, TValue extends Object> CompressedSparseRows<TVertex, TValue> from(final IGraph<TVertex, TValue, ?> graph) {
+    final List<TVertex> vertices = new ArrayList<TVertex>(graph.getVertices());
+    final int n = vertices.size();
+    final Map<TVertex, Integer> index_map = new HashMap<TVertex, Integer>(n * 2);
+    for(int i = 0; i < n; ++i)
+      index_map.put(vertices.get(i), i);
+
+    //Count the out-degrees, turn them into offsets and then fill in the targets.
+    final int[] offsets = new int[n + 1];
+    final int[] sources = new int[graph.getEdges().size()];
+    final int[] destinations = new int[sources.length];
+    int e = 0;
+    for(IEdge<TVertex> edge : graph.getEdges()) {
+      final Integer from = index_map.get(edge.getFrom());
+      final Integer to = index_map.get(edge.getTo());
+      if (from == null || to == null)
+        throw new IllegalStateException("The graph is invalid. Please confirm that all vertices are present for every relationship.");
+      sources[e] = from;
+      destinations[e] = to;
+      ++offsets[from + 1];
+      ++e;
+    }
+    for(int i = 0; i < n; ++i)
+      offsets[i + 1] += offsets[i];
+
+    final int[] targets = new int[e];
+    final int[] fill = Arrays.copyOf(offsets, n);
+    for(int i = 0; i < e; ++i)
+      targets[fill[sources[i]]++] = destinations[i];
+    for(int i = 0; i < n; ++i)
+      Arrays.sort(targets, offsets[i], offsets[i + 1]);
+
+    return new CompressedSparseRows<TVertex, TValue>(vertices, offsets, targets);
+  }
+}
@@ -0,0 +1,53 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.ITopologicalSortListener;
+
+/**
+ * Hooks for emitting Java Flight Recorder events.
+ *
+ * This version does nothing and is what's used on JVMs without JFR. When the library is packaged as a
+ * multi-release jar on JDK 11 or later, a version under <code>META-INF/versions/11</code> replaces it and
+ * emits events whenever they're enabled in a recording. Tokens returned by the <code>begin</code> methods are
+ * <code>null</code> when nothing is being recorded.
+ */
+final class FlightRecorderEvents {
+  private FlightRecorderEvents() {
+  }
+
+  static Object beginAdjacencyList() {
+    return null;
+  }
+
+  static void endAdjacencyList(final Object token, final int vertices, final int edges) {
+  }
+
+  static Object beginSort() {
+    return null;
+  }
+
+  static void endSort(final Object token, final int vertices, final boolean successful) {
+  }
+
+  static <TValue extends Object, TProcessedValue extends Object> ITopologicalSortListener<TValue, TProcessedValue> listener(final ITopologicalSortListener<TValue, TProcessedValue> delegate) {
+    return delegate;
+  }
+}
@@ -0,0 +1,593 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.DirectedAcyclicGraph;
+import jcommon.graph.IVertex;
+import jcommon.graph.StringGraph;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Streaming importers for edge lists (TSV/CSV) and Graphviz DOT files.
+ *
+ * Input is read through a {@link ByteBuffer} and parsed as UTF-8 bytes. Each distinct vertex name is decoded and
+ * wrapped in an {@link IVertex} once, so no strings are created for repeated names. Edges are collected as pairs of
+ * ints (8 bytes per edge, plus a CSR copy) before being handed to
+ * {@link DirectedAcyclicGraph#addAll(IVertex[], int[], int[])}. What the graph then allocates per edge depends on
+ * its storage: an empty graph using {@link DirectedAcyclicGraph.EdgeStorage#NEIGHBOR_LISTS} only stores a reference
+ * per edge, while the default {@link DirectedAcyclicGraph.EdgeStorage#EDGE_SET} creates an {@link jcommon.graph.IEdge}
+ * and a set entry for each one. Switch large graphs to neighbor lists before importing into them. Vertices are
+ * added in the order they're first seen.
+ */
+public final class GraphImporter {
+  /** Delimiter for tab separated edge lists. */
+  public static final char TAB = '\t';
+
+  /** Delimiter for comma separated edge lists. */
+  public static final char COMMA = ',';
+
+  /** Delimiter for edge lists separated by any run of spaces or tabs. */
+  public static final char WHITESPACE = ' ';
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private GraphImporter() {
+  }
+
+  /**
+   * Reads an edge list from the provided file into a new {@link StringGraph}.
+   *
+   * @see #readEdgeList(ReadableByteChannel, char, DirectedAcyclicGraph)
+   */
+  public static StringGraph readEdgeList(final File file, final char delimiter) throws IOException {
+    final FileInputStream input = new FileInputStream(file);
+    try {
+      return readEdgeList(input.getChannel(), delimiter, StringGraph.createForStrings());
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Reads an edge list into the provided graph. Every line holds <code>from</code> and <code>to</code> separated by
+   * the delimiter and any further columns are ignored. A line with a single column adds a vertex with no edges.
+   * Blank lines and lines starting with <code>#</code> are skipped. Fields are trimmed and may be double quoted,
+   * in which case <code>""</code> stands for a literal quote.
+   *
+   * @param channel The channel to read from. It is not closed.
+   * @param delimiter The column delimiter, e.g. {@link #TAB}, {@link #COMMA} or {@link #WHITESPACE}.
+   * @param graph The graph to populate.
+   * @return The provided graph.
+   * @throws IOException Thrown if the channel cannot be read or a quoted field isn't terminated.
+   */
+  public static <TProcessedValue extends Object, TGraph extends DirectedAcyclicGraph<IVertex<String>, String, TProcessedValue>> TGraph readEdgeList(final ReadableByteChannel channel, final char delimiter, final TGraph graph) throws IOException {
+    if (channel == null)
+      throw new IllegalArgumentException("channel cannot be null");
+    if (graph == null)
+      throw new IllegalArgumentException("graph cannot be null");
+    if (delimiter == '\n' || delimiter == '\r' || delimiter == '"' || delimiter > 0x7F)
+      throw new IllegalArgumentException("Invalid delimiter");
+
+    final Source source = new Source(channel);
+    final NameTable names = new NameTable();
+    final Edges edges = new Edges();
+    final Token token = new Token();
+    final boolean any_whitespace = (delimiter == WHITESPACE);
+
+    int c;
+    while((c = source.skipBlanks(any_whitespace ? -1 : delimiter)) != -1) {
+      if (c == '\n') {
+        source.next();
+        continue;
+      }
+      if (c == '#') {
+        source.skipLine();
+        continue;
+      }
+
+      readField(source, token, delimiter, any_whitespace);
+      if (token.length == 0 && !token.quoted) {
+        //An empty first column, e.g. ",b". There's nothing to connect from.
+        source.skipLine();
+        continue;
+      }
+      final int from = names.intern(token.bytes, token.length);
+
+      if (source.peek() == delimiter || (any_whitespace && isBlank(source.peek()))) {
+        source.next();
+        source.skipBlanks(any_whitespace ? -1 : delimiter);
+        readField(source, token, delimiter, any_whitespace);
+        if (token.length > 0 || token.quoted)
+          edges.add(from, names.intern(token.bytes, token.length));
+      }
+      source.skipLine();
+    }
+
+    return populate(graph, names, edges);
+  }
+
+  private static void readField(final Source source, final Token token, final char delimiter, final boolean any_whitespace) throws IOException {
+    token.reset();
+    int c = source.peek();
+    if (c == '"') {
+      token.quoted = true;
+      source.next();
+      while(true) {
+        c = source.next();
+        if (c == -1)
+          throw new IOException("Unterminated quoted field");
+        if (c == '"') {
+          if (source.peek() != '"')
+            break;
+          source.next();
+        }
+        token.append(c);
+      }
+      source.skipBlanks(any_whitespace ? -1 : delimiter);
+      return;
+    }
+
+    int trailing = 0;
+    while((c = source.peek()) != -1 && c != '\n' && c != delimiter && !(any_whitespace && isBlank(c))) {
+      source.next();
+      token.append(c);
+      trailing = isBlank(c) || c == '\r' ? trailing + 1 : 0;
+    }
+    token.length -= trailing;
+  }
+
+  /**
+   * Reads a DOT file into a new {@link StringGraph}.
+   *
+   * @see #readDot(ReadableByteChannel, DirectedAcyclicGraph)
+   */
+  public static StringGraph readDot(final File file) throws IOException {
+    final FileInputStream input = new FileInputStream(file);
+    try {
+      return readDot(input.getChannel(), StringGraph.createForStrings());
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Reads a Graphviz DOT <code>digraph</code> into the provided graph. Node statements, edge chains
+   * (<code>a -&gt; b -&gt; c</code>), attribute lists, attribute statements, comments and (flattened) subgraphs
+   * are supported. Attributes are ignored. Undirected graphs, ports and edges to or from subgraphs are rejected.
+   *
+   * @param channel The channel to read from. It is not closed.
+   * @param graph The graph to populate.
+   * @return The provided graph.
+   * @throws IOException Thrown if the channel cannot be read or the input is not a supported DOT digraph.
+   */
+  public static <TProcessedValue extends Object, TGraph extends DirectedAcyclicGraph<IVertex<String>, String, TProcessedValue>> TGraph readDot(final ReadableByteChannel channel, final TGraph graph) throws IOException {
+    if (channel == null)
+      throw new IllegalArgumentException("channel cannot be null");
+    if (graph == null)
+      throw new IllegalArgumentException("graph cannot be null");
+
+    final NameTable names = new NameTable();
+    final Edges edges = new Edges();
+    new DotParser(new Source(channel), names, edges).parse();
+    return populate(graph, names, edges);
+  }
+
+  private static <TGraph extends DirectedAcyclicGraph<IVertex<String>, String, ?>> TGraph populate(final TGraph graph, final NameTable names, final Edges edges) {
+    //Turn the pairs into CSR form for the bulk construction path.
+    final int n = names.size();
+    final int[] offsets = new int[n + 1];
+    for(int i = 0; i < edges.size; ++i)
+      ++offsets[edges.from[i] + 1];
+    for(int i = 0; i < n; ++i)
+      offsets[i + 1] += offsets[i];
+
+    final int[] targets = new int[edges.size];
+    final int[] fill = Arrays.copyOf(offsets, n);
+    for(int i = 0; i < edges.size; ++i)
+      targets[fill[edges.from[i]]++] = edges.to[i];
+
+    graph.addAll(names.vertices(), offsets, targets);
+    return graph;
+  }
+
+  private static boolean isBlank(final int c) {
+    return c == ' ' || c == '\t';
+  }
+
+  /**
+   * Pairs of vertex indices.
+   */
+  private static final class Edges {
+    private int[] from = new int[1024];
+    private int[] to = new int[1024];
+    private int size;
+
+    void add(final int f, final int t) {
+      if (size == from.length) {
+        from = Arrays.copyOf(from, size * 2);
+        to = Arrays.copyOf(to, size * 2);
+      }
+      from[size] = f;
+      to[size] = t;
+      ++size;
+    }
+  }
+
+  /**
+   * The bytes of the current token.
+   */
+  private static final class Token {
+    private byte[] bytes = new byte[256];
+    private int length;
+    private boolean quoted;
+
+    void reset() {
+      length = 0;
+      quoted = false;
+    }
+
+    void append(final int c) {
+      if (length == bytes.length)
+        bytes = Arrays.copyOf(bytes, length * 2);
+      bytes[length++] = (byte)c;
+    }
+
+    void copyFrom(final Token other) {
+      if (bytes.length < other.length)
+        bytes = Arrays.copyOf(bytes, Math.max(other.length, bytes.length * 2));
+      System.arraycopy(other.bytes, 0, bytes, 0, other.length);
+      length = other.length;
+      quoted = other.quoted;
+    }
+
+    boolean is(final String keyword) {
+      if (quoted || length != keyword.length())
+        return false;
+      for(int i = 0; i < length; ++i) {
+        if (Character.toLowerCase((char)bytes[i]) != keyword.charAt(i))
+          return false;
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Reads bytes from a channel through a reusable buffer.
+   */
+  private static final class Source {
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private boolean eof;
+
+    Source(final ReadableByteChannel channel) {
+      this.channel = channel;
+      this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      ((Buffer)buffer).flip();
+    }
+
+    private boolean fill() throws IOException {
+      if (eof)
+        return false;
+      ((Buffer)buffer).clear();
+      int read;
+      while((read = channel.read(buffer)) == 0) {
+        //Keep trying until there's data or we reach the end.
+      }
+      ((Buffer)buffer).flip();
+      if (read < 0)
+        eof = true;
+      return buffer.hasRemaining();
+    }
+
+    int peek() throws IOException {
+      if (!buffer.hasRemaining() && !fill())
+        return -1;
+      return buffer.get(buffer.position()) & 0xFF;
+    }
+
+    int next() throws IOException {
+      if (!buffer.hasRemaining() && !fill())
+        return -1;
+      return buffer.get() & 0xFF;
+    }
+
+    /**
+     * Skips spaces, tabs and carriage returns other than the delimiter and returns the next byte.
+     */
+    int skipBlanks(final int delimiter) throws IOException {
+      int c;
+      while((c = peek()) != -1 && c != delimiter && (isBlank(c) || c == '\r'))
+        next();
+      return c;
+    }
+
+    void skipLine() throws IOException {
+      int c;
+      while((c = next()) != -1 && c != '\n') {
+        //Discard the rest of the line.
+      }
+    }
+  }
+
+  /**
+   * A recursive descent parser for the subset of the DOT language described by {@link GraphImporter#readDot(ReadableByteChannel, DirectedAcyclicGraph)}.
+   */
+  private static final class DotParser {
+    private static final int EOF = -1;
+    private static final int ID = 0;
+    private static final int ARROW = 1;
+
+    private final Source source;
+    private final NameTable names;
+    private final Edges edges;
+    private final Token token = new Token();
+    private final Token pending = new Token();
+    private int type;
+    private int line = 1;
+    private boolean peeked;
+
+    DotParser(final Source source, final NameTable names, final Edges edges) {
+      this.source = source;
+      this.names = names;
+      this.edges = edges;
+    }
+
+    void parse() throws IOException {
+      advance();
+      if (type == ID && token.is("strict"))
+        advance();
+      if (type == ID && token.is("graph"))
+        throw error("Undirected graphs are not supported");
+      if (type != ID || !token.is("digraph"))
+        throw error("Expected digraph");
+      advance();
+      if (type == ID)
+        advance();
+      if (type != '{')
+        throw error("Expected '{'");
+      statements();
+      advance();
+      if (type != EOF)
+        throw error("Unexpected content after the graph");
+    }
+
+    private void statements() throws IOException {
+      while(true) {
+        advance();
+        switch(type) {
+          case '}':
+            return;
+          case ';':
+          case ',':
+            continue;
+          case '{':
+            statements();
+            continue;
+          case ID:
+            statement();
+            continue;
+          case EOF:
+            throw error("Unexpected end of input");
+          default:
+            throw error("Unexpected '" + (char)type + "'");
+        }
+      }
+    }
+
+    private void statement() throws IOException {
+      if (token.is("subgraph")) {
+        advance();
+        if (type == ID)
+          advance();
+        if (type != '{')
+          throw error("Expected '{'");
+        statements();
+        return;
+      }
+      if (token.is("graph") || token.is("node") || token.is("edge")) {
+        advance();
+        if (type != '[')
+          throw error("Expected '['");
+        attributes();
+        return;
+      }
+
+      //Either an attribute assignment (id = id) or a node/edge statement.
+      pending.copyFrom(token);
+      lookahead();
+      if (type == '=') {
+        advance();
+        advance();
+        if (type != ID)
+          throw error("Expected a value");
+        return;
+      }
+
+      int from = names.intern(pending.bytes, pending.length);
+      while(type == ARROW) {
+        advance();
+        advance();
+        if (type == '{')
+          throw error("Edges to subgraphs are not supported");
+        if (type != ID)
+          throw error("Expected a node id");
+        final int to = names.intern(token.bytes, token.length);
+        edges.add(from, to);
+        from = to;
+        lookahead();
+      }
+      if (type == ':')
+        throw error("Ports are not supported");
+      if (type == '[') {
+        advance();
+        attributes();
+      }
+    }
+
+    private void attributes() throws IOException {
+      //Skip to the matching ']' (attribute lists may be repeated: [a=b][c=d]).
+      while(true) {
+        advance();
+        if (type == ']') {
+          lookahead();
+          if (type != '[')
+            return;
+          advance();
+          continue;
+        }
+        if (type == EOF)
+          throw error("Unterminated attribute list");
+      }
+    }
+
+    private IOException error(final String message) {
+      return new IOException(message + " on line " + line);
+    }
+
+    /**
+     * Peeks at the next token's type without consuming it. The following {@link #advance()} returns it.
+     */
+    private void lookahead() throws IOException {
+      if (!peeked) {
+        read();
+        peeked = true;
+      }
+    }
+
+    private void advance() throws IOException {
+      if (peeked) {
+        peeked = false;
+        return;
+      }
+      read();
+    }
+
+    private void read() throws IOException {
+      token.reset();
+      int c = skipWhitespaceAndComments();
+      if (c == -1) {
+        type = EOF;
+        return;
+      }
+
+      if (c == '"') {
+        source.next();
+        token.quoted = true;
+        while(true) {
+          c = source.next();
+          if (c == -1)
+            throw error("Unterminated string");
+          if (c == '\n')
+            ++line;
+          if (c == '"')
+            break;
+          if (c == '\\') {
+            final int escaped = source.next();
+            if (escaped == '\n') {
+              ++line;
+              continue;
+            }
+            if (escaped != '"')
+              token.append('\\');
+            c = escaped;
+          }
+          token.append(c);
+        }
+        type = ID;
+        return;
+      }
+
+      if (c == '-') {
+        source.next();
+        final int n = source.peek();
+        if (n == '>') {
+          source.next();
+          type = ARROW;
+          return;
+        }
+        if (n == '-')
+          throw error("Undirected edges are not supported");
+        token.append('-');
+        c = source.peek();
+        if (!isIdByte(c)) {
+          type = ID;
+          return;
+        }
+      } else if (!isIdByte(c)) {
+        source.next();
+        type = c;
+        return;
+      }
+
+      while(isIdByte(c = source.peek())) {
+        source.next();
+        token.append(c);
+      }
+      type = ID;
+    }
+
+    private int skipWhitespaceAndComments() throws IOException {
+      while(true) {
+        final int c = source.peek();
+        if (c == '\n') {
+          ++line;
+          source.next();
+        } else if (c == ' ' || c == '\t' || c == '\r' || c == '\f') {
+          source.next();
+        } else if (c == '#') {
+          source.skipLine();
+          ++line;
+        } else if (c == '/') {
+          source.next();
+          final int n = source.next();
+          if (n == '/') {
+            source.skipLine();
+            ++line;
+          } else if (n == '*') {
+            int previous = 0;
+            int current;
+            while((current = source.next()) != -1 && !(previous == '*' && current == '/')) {
+              if (current == '\n')
+                ++line;
+              previous = current;
+            }
+            if (current == -1)
+              throw error("Unterminated comment");
+          } else {
+            throw error("Unexpected '/'");
+          }
+        } else {
+          return c;
+        }
+      }
+    }
+
+    private static boolean isIdByte(final int c) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '.' || c >= 0x80;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.ITopologicalSortInput;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps every result on the heap in a map per consuming vertex.
+ *
+ * @see InputStore
+ */
+final class HeapInputStore<TValue extends Object, TProcessedValue extends Object> extends InputStore<TValue, TProcessedValue> {
+  private final List<Map<TValue, TProcessedValue>> inputs;
+
+  HeapInputStore(final int[] in_degrees) {
+    this.inputs = new ArrayList<Map<TValue, TProcessedValue>>(in_degrees.length);
+    for(int i = 0; i < in_degrees.length; ++i) {
+      inputs.add(new HashMap<TValue, TProcessedValue>(in_degrees[i], 1.0f));
+    }
+  }
+
+  @Override
+  void produced(final int producer, final TProcessedValue result, final int consumers) {
+    //Results are held directly in the consumer's map.
+  }
+
+  @Override
+  void offer(final int consumer, final TValue value, final int producer, final TProcessedValue result) {
+    final Map<TValue, TProcessedValue> input = inputs.get(consumer);
+    synchronized (input) {
+      input.put(value, result);
+    }
+  }
+
+  @Override
+  ITopologicalSortInput<TValue, TProcessedValue> inputFor(final int consumer, final int vertexId, final boolean starting) {
+    final Map<TValue, TProcessedValue> input = inputs.get(consumer);
+    synchronized (input) {
+      return new TopologicalSortInput<TValue, TProcessedValue>(starting, vertexId, input);
+    }
+  }
+
+  @Override
+  void consumed(final int consumer) {
+    //The callback received its own copy, so we can let go of ours.
+    final Map<TValue, TProcessedValue> input = inputs.get(consumer);
+    synchronized (input) {
+      input.clear();
+    }
+  }
+
+  @Override
+  void close() {
+  }
+}
@@ -0,0 +1,239 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.CyclicGraphException;
+import jcommon.graph.IAdjacencyList;
+import jcommon.graph.IAdjacencyListPair;
+import jcommon.graph.IEdge;
+import jcommon.graph.ITopologicalSortAsyncResult;
+import jcommon.graph.ITopologicalSortCallback;
+import jcommon.graph.ITopologicalSortCoordinator;
+import jcommon.graph.ITopologicalSortErrorCallback;
+import jcommon.graph.ITopologicalSortInput;
+import jcommon.graph.ITopologicalSortStrategy;
+import jcommon.graph.IVertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An {@link ITopologicalSortStrategy} for make-style rebuilds. It remembers the processed value of every vertex
+ * from earlier asynchronous sorts and, on the next sort, only re-executes the vertices that were marked dirty with
+ * {@link #markDirty(Collection)} along with everything downstream of them. Vertices that have never completed
+ * successfully are treated as dirty, so the first sort executes the whole graph.
+ *
+ * The clean in-neighbors of re-executed vertices are scheduled as well, but they hand back their remembered value
+ * instead of calling the callback, so that value reaches {@link ITopologicalSortInput} exactly as it did before.
+ * Nothing else is scheduled.
+ *
+ * The {@link ITopologicalSortAsyncResult} of an incremental sort holds the values of the ending vertices that were
+ * re-executed. When nothing is dirty it holds the remembered values of every ending vertex. The value of any
+ * vertex is available from {@link #resultFor(Object)}.
+ *
+ * Values are remembered by vertex value, so an instance should be used with one graph and one callback. Call
+ * {@link #invalidateAll()} if either changes.
+ */
+public final class IncrementalTopologicalSort<TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> implements ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> {
+  //ConcurrentHashMap doesn't allow null values.
+  private static final Object NULL_RESULT = new Object();
+
+  private final ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy;
+  private final Map<TValue, Object> results = new ConcurrentHashMap<TValue, Object>();
+  private final Set<TValue> dirty = new HashSet<TValue>();
+
+  /**
+   * Schedules with a {@link SimpleTopologicalSort}.
+   */
+  public IncrementalTopologicalSort() {
+    this(new SimpleTopologicalSort<TVertex, TValue, TProcessedValue>());
+  }
+
+  /**
+   * @param strategy The {@link ITopologicalSortStrategy} that schedules the vertices that need to run.
+   */
+  public IncrementalTopologicalSort(final ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> strategy) {
+    if (strategy == null)
+      throw new IllegalArgumentException("strategy cannot be null");
+    this.strategy = strategy;
+  }
+
+  /**
+   * @see #markDirty(Collection)
+   */
+  public IncrementalTopologicalSort<TVertex, TValue, TProcessedValue> markDirty(final TValue...values) {
+    if (values == null)
+      throw new IllegalArgumentException("values cannot be null");
+    return markDirty(Arrays.asList(values));
+  }
+
+  /**
+   * Marks vertices as changed so that they, and every vertex downstream of them, are executed again by the next
+   * asynchronous sort.
+   *
+   * @param values The values of the vertices that changed.
+   * @return The current instance of {@link IncrementalTopologicalSort} for use in a builder-style pattern.
+   */
+  public IncrementalTopologicalSort<TVertex, TValue, TProcessedValue> markDirty(final Collection<? extends TValue> values) {
+    if (values == null)
+      throw new IllegalArgumentException("values cannot be null");
+    synchronized (dirty) {
+      dirty.addAll(values);
+    }
+    return this;
+  }
+
+  /**
+   * Forgets every remembered value so that the next asynchronous sort executes the whole graph.
+   *
+   * @return The current instance of {@link IncrementalTopologicalSort} for use in a builder-style pattern.
+   */
+  public IncrementalTopologicalSort<TVertex, TValue, TProcessedValue> invalidateAll() {
+    synchronized (dirty) {
+      dirty.clear();
+      results.clear();
+    }
+    return this;
+  }
+
+  /**
+   * @param value The value of a vertex.
+   * @return <code>true</code> if the vertex has a remembered value from an earlier sort.
+   */
+  public boolean hasResult(final TValue value) {
+    return results.containsKey(value);
+  }
+
+  /**
+   * @param value The value of a vertex.
+   * @return The remembered processed value of the vertex, or <code>null</code> if there's none.
+   */
+  @SuppressWarnings("unchecked")
+  public TProcessedValue resultFor(final TValue value) {
+    final Object result = results.get(value);
+    return (result != NULL_RESULT) ? (TProcessedValue)result : null;
+  }
+
+  /**
+   * Synchronous sorts don't execute anything, so they're passed straight through.
+   *
+   * @see ITopologicalSortStrategy#sort(IAdjacencyList)
+   */
+  @Override
+  public List<TValue> sort(final IAdjacencyList<TVertex, TValue, TProcessedValue> adjacencyList) throws CyclicGraphException {
+    return strategy.sort(adjacencyList);
+  }
+
+  /**
+   * Executes the dirty vertices, the vertices without a remembered value and everything downstream of them.
+   *
+   * @see ITopologicalSortStrategy#sortAsync(ExecutorService, IAdjacencyList, ITopologicalSortCallback, ITopologicalSortErrorCallback)
+   */
+  @Override
+  public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ExecutorService executor, final IAdjacencyList<TVertex, TValue, TProcessedValue> adjacencyList, final ITopologicalSortCallback<TValue, TProcessedValue> callback, final ITopologicalSortErrorCallback<TValue> errorCallback) {
+    final Set<TValue> changed;
+    synchronized (dirty) {
+      changed = new HashSet<TValue>(dirty);
+      dirty.clear();
+    }
+
+    //Find the vertices to execute by walking downstream from the changed ones.
+    final int n = adjacencyList.size();
+    final boolean[] execute = new boolean[n];
+    final List<Integer> pending = new ArrayList<Integer>();
+    for(int i = 0; i < n; ++i) {
+      final TValue value = adjacencyList.pairAt(i).getVertex().get();
+      if (changed.contains(value) || !results.containsKey(value)) {
+        execute[i] = true;
+        pending.add(i);
+      }
+    }
+    while(!pending.isEmpty()) {
+      final int i = pending.remove(pending.size() - 1);
+      for(TVertex to : adjacencyList.outNeighborsAt(i)) {
+        final int t = adjacencyList.indexOf(to);
+        if (t >= 0 && !execute[t]) {
+          execute[t] = true;
+          pending.add(t);
+        }
+      }
+    }
+
+    //The vertices being executed, plus the clean vertices that feed into them, form the slice to schedule.
+    final boolean[] include = execute.clone();
+    final Set<IEdge<TVertex>> edges = new LinkedHashSet<IEdge<TVertex>>();
+    boolean any = false;
+    for(int i = 0; i < n; ++i) {
+      final IAdjacencyListPair<TVertex> pair = adjacencyList.pairAt(i);
+      for(TVertex to : pair.getOutNeighbors()) {
+        final int t = adjacencyList.indexOf(to);
+        if (t >= 0 && execute[t]) {
+          edges.add(new Edge<TVertex>(pair.getVertex(), to));
+          include[i] = true;
+        }
+      }
+      any |= execute[i];
+    }
+
+    if (!any) {
+      final TopologicalSortAsyncResult<TValue, TProcessedValue> result = new TopologicalSortAsyncResult<TValue, TProcessedValue>(executor);
+      final Map<TValue, TProcessedValue> ending = adjacencyList.createResultMap();
+      for(TVertex v : adjacencyList.getEndingVertices())
+        ending.put(v.get(), resultFor(v.get()));
+      result.asyncComplete(ending, true);
+      return result;
+    }
+
+    //The slice keeps the ids of the adjacency list it was cut from.
+    final Set<TVertex> vertices = new LinkedHashSet<TVertex>();
+    final int[] ids = new int[n];
+    for(int i = 0; i < n; ++i) {
+      if (include[i]) {
+        final TVertex v = adjacencyList.pairAt(i).getVertex();
+        ids[vertices.size()] = adjacencyList.idAt(i);
+        vertices.add(v);
+        if (execute[i])
+          results.remove(v.get());
+      }
+    }
+
+    final IAdjacencyList<TVertex, TValue, TProcessedValue> slice = new AdjacencyList<TVertex, TValue, TProcessedValue>(vertices, edges, false, Arrays.copyOf(ids, vertices.size()), adjacencyList.getIdBound());
+    return strategy.sortAsync(executor, slice, new ITopologicalSortCallback<TValue, TProcessedValue>() {
+      @Override
+      public TProcessedValue handle(final TValue value, final ITopologicalSortInput<TValue, TProcessedValue> input, final IVertex<TValue> vertex, final ITopologicalSortCoordinator coordinator) throws Throwable {
+        //Only clean vertices still have a remembered value at this point.
+        if (results.containsKey(value))
+          return resultFor(value);
+
+        final TProcessedValue result = callback.handle(value, input, vertex, coordinator);
+        results.put(value, (result != null) ? result : NULL_RESULT);
+        return result;
+      }
+    }, errorCallback);
+  }
+}
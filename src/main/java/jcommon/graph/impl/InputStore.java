@@ -0,0 +1,72 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.ITopologicalSortInput;
+
+/**
+ * Holds the processed values of vertices until every out-neighbor has consumed them during an
+ * asynchronous topological sort.
+ *
+ * Vertices are identified by their index in the {@link jcommon.graph.IAdjacencyList}. Implementations
+ * must be thread safe.
+ */
+abstract class InputStore<TValue extends Object, TProcessedValue extends Object> {
+  /**
+   * Called once when a vertex has been processed and before its result is offered to any out-neighbor.
+   *
+   * @param producer The index of the processed vertex.
+   * @param result The result of processing the vertex. May be <code>null</code>.
+   * @param consumers The number of out-neighbors that will be offered the result.
+   */
+  abstract void produced(int producer, TProcessedValue result, int consumers);
+
+  /**
+   * Makes the result of a processed vertex available as input to one of its out-neighbors.
+   *
+   * @param consumer The index of the out-neighbor.
+   * @param value The value of the processed vertex.
+   * @param producer The index of the processed vertex.
+   * @param result The result of processing the vertex. May be <code>null</code>.
+   */
+  abstract void offer(int consumer, TValue value, int producer, TProcessedValue result);
+
+  /**
+   * Provides the input for a vertex that's about to be processed.
+   *
+   * @param consumer The index of the vertex about to be processed.
+   * @param vertexId The id of the vertex about to be processed.
+   * @param starting <code>true</code> if the vertex has an in-degree of zero.
+   * @return An instance of {@link ITopologicalSortInput} with every result offered to the vertex.
+   */
+  abstract ITopologicalSortInput<TValue, TProcessedValue> inputFor(int consumer, int vertexId, boolean starting);
+
+  /**
+   * Signals that a vertex has been processed and no longer needs its input.
+   *
+   * @param consumer The index of the processed vertex.
+   */
+  abstract void consumed(int consumer);
+
+  /**
+   * Releases any resources held by the store once processing has completed.
+   */
+  abstract void close();
+}
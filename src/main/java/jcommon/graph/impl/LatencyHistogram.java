@@ -0,0 +1,123 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of nanosecond latencies using power-of-two buckets. Recording is a handful of atomic
+ * increments. Percentiles are approximate and are reported as the upper bound of the bucket they fall into.
+ *
+ * @see TopologicalSortMetrics
+ */
+public final class LatencyHistogram {
+  private static final int BUCKET_COUNT = 64;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong(0L);
+  private final AtomicLong total = new AtomicLong(0L);
+  private final AtomicLong max = new AtomicLong(0L);
+
+  /**
+   * Records a single latency.
+   *
+   * @param nanos The latency in nanoseconds. Negative values are recorded as zero.
+   */
+  public void record(final long nanos) {
+    final long value = Math.max(0L, nanos);
+
+    //Bucket i holds values in [2^(i-1), 2^i).
+    buckets.incrementAndGet(BUCKET_COUNT - Long.numberOfLeadingZeros(value));
+    count.incrementAndGet();
+    total.addAndGet(value);
+
+    long current;
+    while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+      //Retry until we've set it or someone else has set a larger value.
+    }
+  }
+
+  /**
+   * @return The number of recorded latencies.
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * @return The sum of every recorded latency in nanoseconds.
+   */
+  public long getTotalNanos() {
+    return total.get();
+  }
+
+  /**
+   * @return The largest recorded latency in nanoseconds.
+   */
+  public long getMaxNanos() {
+    return max.get();
+  }
+
+  /**
+   * @return The mean recorded latency in nanoseconds or <code>0</code> if nothing has been recorded.
+   */
+  public long getMeanNanos() {
+    final long c = count.get();
+    return (c > 0L) ? total.get() / c : 0L;
+  }
+
+  /**
+   * Approximates the latency at the provided percentile.
+   *
+   * @param percentile A value between <code>0.0</code> and <code>100.0</code>.
+   * @return The upper bound in nanoseconds of the bucket containing the percentile or <code>0</code> if nothing has
+   *         been recorded.
+   */
+  public long getPercentileNanos(final double percentile) {
+    if (percentile < 0.0 || percentile > 100.0)
+      throw new IllegalArgumentException("percentile must be between 0 and 100");
+
+    final long c = count.get();
+    if (c == 0L)
+      return 0L;
+
+    final long target = Math.max(1L, (long)Math.ceil(c * (percentile / 100.0)));
+    long seen = 0L;
+    for(int i = 0; i < BUCKET_COUNT; ++i) {
+      seen += buckets.get(i);
+      if (seen >= target)
+        return Math.min(max.get(), upperBoundOf(i));
+    }
+    return max.get();
+  }
+
+  private static long upperBoundOf(final int bucket) {
+    return (bucket >= BUCKET_COUNT - 1) ? Long.MAX_VALUE : (1L << bucket) - 1L;
+  }
+
+  /**
+   * @see Object#toString()
+   */
+  @Override
+  public String toString() {
+    return "count=" + getCount() + ", mean=" + getMeanNanos() + "ns, p50=" + getPercentileNanos(50.0) + "ns, p99=" + getPercentileNanos(99.0) + "ns, max=" + getMaxNanos() + "ns";
+  }
+}
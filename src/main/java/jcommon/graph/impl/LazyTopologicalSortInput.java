@@ -0,0 +1,158 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.ITopologicalSortInput;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An {@link ITopologicalSortInput} that only resolves a result from its {@link SpillingInputStore} when
+ * it's asked for. Each result is resolved at most once and then kept for the life of the input, so a spilled
+ * result is only read back once per consumer however often the callback asks for it.
+ *
+ * @see ITopologicalSortInput
+ */
+final class LazyTopologicalSortInput<TValue extends Object, TProcessedValue extends Object> implements ITopologicalSortInput<TValue, TProcessedValue> {
+  private final boolean starting;
+  private final int vertex_id;
+  private final Map<TValue, Integer> producers;
+  private final SpillingInputStore<TValue, TProcessedValue> store;
+  private Map<Integer, TProcessedValue> resolved;
+
+  LazyTopologicalSortInput(final boolean starting, final int vertexId, final Map<TValue, Integer> producers, final SpillingInputStore<TValue, TProcessedValue> store) {
+    this.starting = starting;
+    this.vertex_id = vertexId;
+    this.producers = Collections.unmodifiableMap(new HashMap<TValue, Integer>(producers));
+    this.store = store;
+  }
+
+  @Override
+  public boolean isStart() {
+    return starting;
+  }
+
+  @Override
+  public int getVertexId() {
+    return vertex_id;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return producers.isEmpty();
+  }
+
+  @Override
+  public TProcessedValue get(final TValue value) {
+    final Integer producer = producers.get(value);
+    return (producer != null) ? resultOf(producer) : null;
+  }
+
+  @Override
+  public TProcessedValue first() {
+    if (producers.isEmpty())
+      return null;
+    return resultOf(producers.values().iterator().next());
+  }
+
+  /**
+   * Gets the hash code of an input's result without reading it back from the spill file.
+   *
+   * @param value The value of the in-neighbor.
+   * @return The hash code of its result, or 0 if it's <code>null</code> or not an input.
+   */
+  int hashOf(final TValue value) {
+    final Integer producer = producers.get(value);
+    if (producer == null)
+      return 0;
+    synchronized (this) {
+      if (resolved != null && resolved.containsKey(producer)) {
+        final TProcessedValue result = resolved.get(producer);
+        return (result != null) ? result.hashCode() : 0;
+      }
+    }
+    return store.hashOf(producer);
+  }
+
+  private TProcessedValue resultOf(final Integer producer) {
+    //Callbacks may read their input from several threads so the cache is guarded.
+    synchronized (this) {
+      if (resolved != null && resolved.containsKey(producer))
+        return resolved.get(producer);
+    }
+    final TProcessedValue result = store.resultOf(producer);
+    synchronized (this) {
+      if (resolved == null)
+        resolved = new HashMap<Integer, TProcessedValue>(producers.size() * 2);
+      resolved.put(producer, result);
+    }
+    return result;
+  }
+
+  @Override
+  public int size() {
+    return producers.size();
+  }
+
+  @Override
+  public boolean contains(final TValue value) {
+    return producers.containsKey(value);
+  }
+
+  @Override
+  public Iterable<TProcessedValue> inputs() {
+    return new Iterable<TProcessedValue>() {
+      @Override
+      public Iterator<TProcessedValue> iterator() {
+        final Iterator<Integer> it = producers.values().iterator();
+        return new Iterator<TProcessedValue>() {
+          @Override
+          public boolean hasNext() {
+            return it.hasNext();
+          }
+
+          @Override
+          public TProcessedValue next() {
+            return resultOf(it.next());
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public Set<TValue> values() {
+    return producers.keySet();
+  }
+
+  @Override
+  public String toString() {
+    return producers.keySet().toString();
+  }
+}
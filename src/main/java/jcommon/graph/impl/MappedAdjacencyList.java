@@ -0,0 +1,592 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.IAdjacencyList;
+import jcommon.graph.IAdjacencyListPair;
+import jcommon.graph.IGraph;
+import jcommon.graph.IProcessedValueSerializer;
+import jcommon.graph.IVertex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only {@link IAdjacencyList} that works directly over a memory-mapped file of CSR arrays, allowing graphs
+ * larger than the heap to be sorted by {@link SimpleTopologicalSort#sort(IAdjacencyList)}. Nothing is loaded at
+ * startup: vertices are materialized when accessed and their values are deserialized on first use.
+ *
+ * Files are created with {@link #write(IGraph, IProcessedValueSerializer, File)} and opened with
+ * {@link #open(File, IProcessedValueSerializer)}. The layout (big-endian) is:
+ * <pre>
+ *   int       magic ("JCGM")
+ *   int       version
+ *   long      vertex count (n)
+ *   long      edge count (e)
+ *   long      position of the values
+ *   long      position of the value offsets
+ *   long[n+1] offsets into the targets for each vertex's out-neighbors
+ *   int[e]    out-neighbor indices
+ *   byte[]    values, each as a 1 byte null flag followed by the serialized value
+ *   long[n+1] position of each value
+ * </pre>
+ *
+ * Vertices handed out by this list know their own index, so {@link #indexOf(IVertex)} is O(1) for them. Looking up
+ * any other {@link IVertex} builds a value index on first use.
+ *
+ * Vertices remember their value once it has been deserialized. Recently handed out vertices are kept in a small
+ * direct-mapped cache of up to {@value #VERTEX_CACHE_SIZE} entries keyed by index, so repeatedly visiting the same
+ * out-neighbors or ending vertices doesn't deserialize their values again, while memory use stays bounded no matter
+ * how large the file is.
+ *
+ * @see IAdjacencyList
+ */
+public final class MappedAdjacencyList<TValue extends Object, TProcessedValue extends Object> implements IAdjacencyList<IVertex<TValue>, TValue, TProcessedValue> {
+  /** Identifies a file written by {@link MappedAdjacencyList}. */
+  public static final int MAGIC = 0x4A43474D;
+
+  /** The current version of the format. */
+  public static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 40;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** The maximum number of vertices, and their decoded values, kept by the cache. A power of 2. */
+  public static final int VERTEX_CACHE_SIZE = 4096;
+
+  private static final Object NULL_VALUE = new Object();
+
+  private final IProcessedValueSerializer<TValue> serializer;
+  private final Segments segments;
+  private final int size;
+  private final long edge_count;
+  private final long targets_position;
+  private final long value_offsets_position;
+  private final Object[] vertex_cache;
+  private volatile Map<TValue, Integer> value_index;
+
+  private MappedAdjacencyList(final IProcessedValueSerializer<TValue> serializer, final Segments segments) throws IOException {
+    this.serializer = serializer;
+    this.segments = segments;
+
+    if (segments.length() < HEADER_SIZE || segments.getInt(0L) != MAGIC)
+      throw new IOException("Not a graph written by " + MappedAdjacencyList.class.getSimpleName());
+    final int version = segments.getInt(4L);
+    if (version != VERSION)
+      throw new IOException("Unsupported version: " + version);
+
+    final long n = segments.getLong(8L);
+    this.edge_count = segments.getLong(16L);
+    this.value_offsets_position = segments.getLong(32L);
+    this.targets_position = HEADER_SIZE + 8L * (n + 1L);
+    if (n < 0L || n > Integer.MAX_VALUE || edge_count < 0L || edge_count > (segments.length() - targets_position) / 4L
+        || value_offsets_position < 0L || value_offsets_position + 8L * (n + 1L) > segments.length())
+      throw new IOException("Corrupt graph: " + n + " vertices, " + edge_count + " edges");
+    this.size = (int)n;
+
+    int capacity = 1;
+    while(capacity < size && capacity < VERTEX_CACHE_SIZE)
+      capacity <<= 1;
+    this.vertex_cache = new Object[capacity];
+  }
+
+  /**
+   * Maps the provided file.
+   *
+   * @param file A file written by {@link #write(IGraph, IProcessedValueSerializer, File)}.
+   * @param serializer Reads each vertex's value when it's first accessed.
+   * @return A new instance of {@link MappedAdjacencyList}.
+   * @throws IOException Thrown if the file cannot be mapped or is not in this format.
+   */
+  public static <TValue extends Object, TProcessedValue extends Object> MappedAdjacencyList<TValue, TProcessedValue> open(final File file, final IProcessedValueSerializer<TValue> serializer) throws IOException {
+    if (file == null)
+      throw new IllegalArgumentException("file cannot be null");
+    if (serializer == null)
+      throw new IllegalArgumentException("serializer cannot be null");
+
+    //Mappings remain valid once the file has been closed.
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      return new MappedAdjacencyList<TValue, TProcessedValue>(serializer, new Segments(raf.getChannel()));
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Writes the graph to the provided file in the layout expected by {@link #open(File, IProcessedValueSerializer)},
+   * replacing its contents.
+   *
+   * @param graph The {@link IGraph} to write. Every edge must refer to vertices in the graph.
+   * @param serializer Writes each vertex's value.
+   * @param file The file to write.
+   * @return The number of bytes written.
+   * @throws IOException Thrown if the file cannot be written or the serializer fails.
+   */
+  public static <TVertex extends IVertex<TValue>, TValue extends Object> long write(final IGraph<TVertex, TValue, ?> graph, final IProcessedValueSerializer<TValue> serializer, final File file) throws IOException {
+    if (graph == null)
+      throw new IllegalArgumentException("graph cannot be null");
+    if (serializer == null)
+      throw new IllegalArgumentException("serializer cannot be null");
+    if (file == null)
+      throw new IllegalArgumentException("file cannot be null");
+
+    final CompressedSparseRows<TVertex, TValue> csr = CompressedSparseRows.from(graph);
+    final int n = csr.size();
+    final long[] value_offsets = new long[n + 1];
+
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(0L);
+      final FileChannel channel = raf.getChannel();
+      final ChannelOutput output = new ChannelOutput(channel, BUFFER_SIZE);
+
+      //The positions in the header are filled in once they're known.
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeLong(n);
+      output.writeLong(csr.edgeCount());
+      output.writeLong(0L);
+      output.writeLong(0L);
+
+      for(int i = 0; i <= n; ++i)
+        output.writeLong(csr.offsets[i]);
+      for(int i = 0; i < csr.targets.length; ++i)
+        output.writeInt(csr.targets[i]);
+
+      final long values_position = output.written();
+      final SpillFile.Output value_bytes = new SpillFile.Output();
+      for(int i = 0; i < n; ++i) {
+        value_offsets[i] = output.written();
+        final TValue value = csr.vertices.get(i).getValue();
+        if (value == null) {
+          output.writeByte(0);
+          continue;
+        }
+        value_bytes.reset();
+        serializer.write(value, value_bytes);
+        output.writeByte(1);
+        output.write(value_bytes.bytes(), 0, value_bytes.size());
+      }
+      value_offsets[n] = output.written();
+
+      while((output.written() & 7L) != 0L)
+        output.writeByte(0);
+      final long value_offsets_position = output.written();
+      for(int i = 0; i <= n; ++i)
+        output.writeLong(value_offsets[i]);
+      output.flush();
+
+      final ByteBuffer positions = ByteBuffer.allocate(16);
+      positions.putLong(values_position);
+      positions.putLong(value_offsets_position);
+      ((Buffer)positions).flip();
+      while(positions.hasRemaining())
+        channel.write(positions, 24L + positions.position());
+
+      return output.written();
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * @return The number of edges in the graph.
+   */
+  public long getEdgeCount() {
+    return edge_count;
+  }
+
+  //The header was checked when the file was opened but offsets and targets are only checked as they're read.
+  private long offsetAt(final int index) {
+    final long offset = segments.getLong(HEADER_SIZE + 8L * index);
+    if (offset < 0L || offset > edge_count)
+      throw new IllegalStateException("Corrupt graph: offset " + offset + " for vertex " + index + " is out of range");
+    return offset;
+  }
+
+  private int targetAt(final long position) {
+    final int target = segments.getInt(targets_position + 4L * position);
+    if (target < 0 || target >= size)
+      throw new IllegalStateException("Corrupt graph: edge " + position + " refers to vertex " + target + " of " + size);
+    return target;
+  }
+
+  private int outDegreeAt(final int index) {
+    final long degree = offsetAt(index + 1) - offsetAt(index);
+    if (degree < 0L)
+      throw new IllegalStateException("Corrupt graph: negative out-degree for vertex " + index);
+    return (int)degree;
+  }
+
+  private TValue valueAt(final int index) {
+    final long start = segments.getLong(value_offsets_position + 8L * index);
+    final long end = segments.getLong(value_offsets_position + 8L * (index + 1));
+    final ByteBuffer bytes = segments.bytes(start, (int)(end - start));
+    if (bytes.get() == 0)
+      return null;
+    try {
+      return serializer.read(new SpillFile.Input(bytes));
+    } catch(IOException e) {
+      throw new IllegalStateException("Unable to read the value of vertex " + index, e);
+    }
+  }
+
+  private void checkIndex(final int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+  }
+
+  /**
+   * Provides the vertex at the given index. Instances are cached, so repeated calls usually return the same one
+   * and its value is only deserialized once.
+   *
+   * @param index The index of the vertex.
+   * @return The {@link IVertex} at the given index.
+   */
+  public IVertex<TValue> vertexAt(final int index) {
+    checkIndex(index);
+    return vertexOf(index);
+  }
+
+  /**
+   * Slots are read and written without locking. Vertices only have a final index and a volatile value, so a
+   * stale or lost entry just means another instance is created.
+   */
+  @SuppressWarnings("unchecked")
+  private MappedVertex vertexOf(final int index) {
+    final int slot = index & (vertex_cache.length - 1);
+    final Object cached = vertex_cache[slot];
+    if (cached != null) {
+      final MappedVertex vertex = (MappedVertex)cached;
+      if (vertex.index == index)
+        return vertex;
+    }
+    final MappedVertex vertex = new MappedVertex(index);
+    vertex_cache[slot] = vertex;
+    return vertex;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public List<IVertex<TValue>> outNeighborsFor(final IVertex<TValue> vertex) {
+    final int index = indexOf(vertex);
+    return (index >= 0) ? outNeighborsAt(index) : null;
+  }
+
+  @Override
+  public IAdjacencyListPair<IVertex<TValue>> pairAt(final int index) {
+    return new AdjacencyListPair<IVertex<TValue>>(vertexAt(index), outNeighborsAt(index));
+  }
+
+  @Override
+  public List<IVertex<TValue>> outNeighborsAt(final int index) {
+    checkIndex(index);
+    final long start = offsetAt(index);
+    final int count = outDegreeAt(index);
+    return new AbstractList<IVertex<TValue>>() {
+      @Override
+      public IVertex<TValue> get(final int i) {
+        if (i < 0 || i >= count)
+          throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + count);
+        return vertexOf(targetAt(start + i));
+      }
+
+      @Override
+      public int size() {
+        return count;
+      }
+    };
+  }
+
+  @Override
+  public int idOf(final IVertex<TValue> vertex) {
+    return indexOf(vertex);
+  }
+
+  @Override
+  public int idAt(final int index) {
+    return index;
+  }
+
+  @Override
+  public int getIdBound() {
+    return size;
+  }
+
+  @Override
+  public int indexOf(final IVertex<TValue> vertex) {
+    if (vertex instanceof MappedAdjacencyList.MappedVertex) {
+      final MappedAdjacencyList<?, ?>.MappedVertex mapped = (MappedAdjacencyList<?, ?>.MappedVertex)vertex;
+      if (mapped.owner() == this)
+        return mapped.index;
+    }
+    if (vertex == null)
+      return -1;
+
+    final Integer index = valueIndex().get(vertex.getValue());
+    return (index != null) ? index : -1;
+  }
+
+  private Map<TValue, Integer> valueIndex() {
+    Map<TValue, Integer> index = value_index;
+    if (index == null) {
+      synchronized (this) {
+        index = value_index;
+        if (index == null) {
+          index = new HashMap<TValue, Integer>(size * 2);
+          for(int i = 0; i < size; ++i)
+            index.put(valueAt(i), i);
+          value_index = index;
+        }
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Counts in-degrees with a single pass over the targets.
+   */
+  @Override
+  public int[] calculateInDegrees() {
+    final int[] in_degrees = new int[size];
+    for(long i = 0L; i < edge_count; ++i)
+      ++in_degrees[targetAt(i)];
+    return in_degrees;
+  }
+
+  /**
+   * Provides a view of the vertices with no out-neighbors. Iterating it scans the offsets.
+   */
+  @Override
+  public Set<IVertex<TValue>> getEndingVertices() {
+    return new AbstractSet<IVertex<TValue>>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public boolean contains(final Object o) {
+        return (o instanceof IVertex) && isEndingVertex((IVertex<TValue>)o);
+      }
+
+      @Override
+      public Iterator<IVertex<TValue>> iterator() {
+        return new Iterator<IVertex<TValue>>() {
+          private int next = advance(0);
+
+          private int advance(int from) {
+            while(from < size && outDegreeAt(from) != 0)
+              ++from;
+            return from;
+          }
+
+          @Override
+          public boolean hasNext() {
+            return next < size;
+          }
+
+          @Override
+          public IVertex<TValue> next() {
+            if (next >= size)
+              throw new NoSuchElementException();
+            final IVertex<TValue> vertex = vertexOf(next);
+            next = advance(next + 1);
+            return vertex;
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        int count = 0;
+        for(int i = 0; i < MappedAdjacencyList.this.size; ++i) {
+          if (outDegreeAt(i) == 0)
+            ++count;
+        }
+        return count;
+      }
+    };
+  }
+
+  @Override
+  public boolean isEndingVertex(final IVertex<TValue> vertex) {
+    final int index = indexOf(vertex);
+    return index >= 0 && outDegreeAt(index) == 0;
+  }
+
+  @Override
+  public Map<TValue, TProcessedValue> createResultMap() {
+    return new HashMap<TValue, TProcessedValue>();
+  }
+
+  @Override
+  public Iterator<IAdjacencyListPair<IVertex<TValue>>> iterator() {
+    return new Iterator<IAdjacencyListPair<IVertex<TValue>>>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      @Override
+      public IAdjacencyListPair<IVertex<TValue>> next() {
+        if (next >= size)
+          throw new NoSuchElementException();
+        return pairAt(next++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * A vertex identified by its index whose value is read from the file the first time it's requested. A null
+   * value field means it hasn't been read yet.
+   */
+  private final class MappedVertex implements IVertex<TValue> {
+    private final int index;
+    private volatile Object value;
+
+    MappedVertex(final int index) {
+      this.index = index;
+    }
+
+    MappedAdjacencyList<TValue, TProcessedValue> owner() {
+      return MappedAdjacencyList.this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public TValue get() {
+      Object v = value;
+      if (v == null) {
+        final TValue read = valueAt(index);
+        v = (read != null) ? read : NULL_VALUE;
+        value = v;
+      }
+      return (v != NULL_VALUE) ? (TValue)v : null;
+    }
+
+    @Override
+    public TValue getValue() {
+      return get();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) return true;
+      if (!(o instanceof MappedAdjacencyList.MappedVertex)) return false;
+      final MappedAdjacencyList<?, ?>.MappedVertex that = (MappedAdjacencyList<?, ?>.MappedVertex)o;
+      return index == that.index && owner() == that.owner();
+    }
+
+    @Override
+    public int hashCode() {
+      return index;
+    }
+
+    @Override
+    public String toString() {
+      return "" + get();
+    }
+  }
+
+  /**
+   * Maps a file in read-only segments of up to 1GB. Sections of the file are aligned to their element size
+   * so that ints and longs never span two segments.
+   */
+  private static final class Segments {
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1L;
+
+    private final MappedByteBuffer[] segments;
+    private final long length;
+
+    Segments(final FileChannel channel) throws IOException {
+      this.length = channel.size();
+      this.segments = new MappedByteBuffer[(int)((length + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+      for(int i = 0; i < segments.length; ++i) {
+        final long start = (long)i << SEGMENT_SHIFT;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_MASK + 1L, length - start));
+      }
+    }
+
+    long length() {
+      return length;
+    }
+
+    int getInt(final long position) {
+      return segments[(int)(position >>> SEGMENT_SHIFT)].getInt((int)(position & SEGMENT_MASK));
+    }
+
+    long getLong(final long position) {
+      return segments[(int)(position >>> SEGMENT_SHIFT)].getLong((int)(position & SEGMENT_MASK));
+    }
+
+    ByteBuffer bytes(final long position, final int count) {
+      final int segment = (int)(position >>> SEGMENT_SHIFT);
+      final int offset = (int)(position & SEGMENT_MASK);
+
+      //The common case: a view of the mapped bytes.
+      if (offset + count <= segments[segment].capacity()) {
+        final ByteBuffer view = segments[segment].duplicate();
+        ((Buffer)view).position(offset);
+        ((Buffer)view).limit(offset + count);
+        return view;
+      }
+
+      //Values may straddle two segments, in which case they are copied.
+      final ByteBuffer copy = ByteBuffer.allocate(count);
+      for(long p = position; p < position + count; ++p)
+        copy.put(segments[(int)(p >>> SEGMENT_SHIFT)].get((int)(p & SEGMENT_MASK)));
+      ((Buffer)copy).flip();
+      return copy;
+    }
+  }
+}
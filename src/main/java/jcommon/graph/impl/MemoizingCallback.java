@@ -0,0 +1,203 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.ITopologicalSortCallback;
+import jcommon.graph.ITopologicalSortCoordinator;
+import jcommon.graph.ITopologicalSortInput;
+import jcommon.graph.IVertex;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps an {@link ITopologicalSortCallback} whose result depends only on a vertex's value and its
+ * {@link ITopologicalSortInput}, and remembers its results so that later calls with the same value and the same
+ * inputs don't run it again. This carries over from one sort to the next for as long as the instance is reused.
+ *
+ * Calls are keyed by the vertex value plus the input's values, each paired with the hash code of its processed
+ * value. Only those are kept with each entry, never the processed values themselves, so the cache doesn't pin
+ * large inputs. With {@link SimpleTopologicalSort#enableSpilling} the hash codes of spilled inputs are taken when
+ * they're spilled, so looking a call up never reads them back. Processed values are therefore told apart by their
+ * <code>hashCode()</code> alone: two processed values of the same in-neighbor with equal hash codes are treated
+ * as the same input, so they should have well-distributed hash codes and must not be mutated once returned.
+ *
+ * At most <code>maxEntries</code> results are kept. The least recently used is evicted to make room for a new one.
+ * Hit, miss and eviction counts are kept for tuning the size.
+ *
+ * Only use this for callbacks without side effects: a hit skips the callback entirely.
+ */
+public final class MemoizingCallback<TValue extends Object, TProcessedValue extends Object> implements ITopologicalSortCallback<TValue, TProcessedValue> {
+  //Distinguishes a remembered null from a miss.
+  private static final Object NULL_RESULT = new Object();
+
+  private final ITopologicalSortCallback<TValue, TProcessedValue> callback;
+  private final int max_entries;
+  private final Map<Key<TValue, TProcessedValue>, Object> entries;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * @param callback The {@link ITopologicalSortCallback} whose results are remembered.
+   * @param maxEntries The maximum number of results to keep.
+   */
+  public MemoizingCallback(final ITopologicalSortCallback<TValue, TProcessedValue> callback, final int maxEntries) {
+    if (callback == null)
+      throw new IllegalArgumentException("callback cannot be null");
+    if (maxEntries <= 0)
+      throw new IllegalArgumentException("maxEntries must be greater than zero");
+
+    this.callback = callback;
+    this.max_entries = maxEntries;
+    this.entries = new LinkedHashMap<Key<TValue, TProcessedValue>, Object>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Key<TValue, TProcessedValue>, Object> eldest) {
+        if (size() <= max_entries)
+          return false;
+        evictions.incrementAndGet();
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Returns the remembered result for the value and input if there is one, otherwise calls the wrapped callback
+   * and remembers what it returns. Results aren't remembered when the callback throws.
+   *
+   * @see ITopologicalSortCallback#handle(Object, ITopologicalSortInput, IVertex, ITopologicalSortCoordinator)
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public TProcessedValue handle(final TValue value, final ITopologicalSortInput<TValue, TProcessedValue> input, final IVertex<TValue> vertex, final ITopologicalSortCoordinator coordinator) throws Throwable {
+    final Key<TValue, TProcessedValue> key = Key.of(value, input);
+
+    final Object remembered;
+    synchronized (entries) {
+      remembered = entries.get(key);
+    }
+    if (remembered != null) {
+      hits.incrementAndGet();
+      return (remembered != NULL_RESULT) ? (TProcessedValue)remembered : null;
+    }
+
+    misses.incrementAndGet();
+    final TProcessedValue result = callback.handle(value, input, vertex, coordinator);
+    synchronized (entries) {
+      entries.put(key, (result != null) ? result : NULL_RESULT);
+    }
+    return result;
+  }
+
+  /**
+   * @return The number of calls answered from a remembered result.
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * @return The number of calls that ran the wrapped callback.
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * @return The number of results evicted to stay within the maximum number of entries.
+   */
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  /**
+   * @return The number of results currently remembered.
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * Forgets every remembered result. The counters are kept.
+   */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  private static final class Key<TValue extends Object, TProcessedValue extends Object> {
+    private final TValue value;
+    //Each input value mapped to the hash code of its processed value.
+    private final Map<TValue, Integer> inputs;
+    private final int hash;
+
+    private Key(final TValue value, final Map<TValue, Integer> inputs, final int hash) {
+      this.value = value;
+      this.inputs = inputs;
+      this.hash = hash;
+    }
+
+    static <TValue extends Object, TProcessedValue extends Object> Key<TValue, TProcessedValue> of(final TValue value, final ITopologicalSortInput<TValue, TProcessedValue> input) {
+      //Spilled inputs know their hash codes, so they're never read back just to be looked up.
+      final LazyTopologicalSortInput<TValue, TProcessedValue> lazy = (input instanceof LazyTopologicalSortInput) ? (LazyTopologicalSortInput<TValue, TProcessedValue>)input : null;
+
+      //Summing keeps the fingerprint independent of the order the inputs are visited in.
+      int fingerprint = 0;
+      final Map<TValue, Integer> inputs = new HashMap<TValue, Integer>(input.size() * 2);
+      for(TValue from : input.values()) {
+        final int processed_hash = (lazy != null) ? lazy.hashOf(from) : hashOf(input.get(from));
+        inputs.put(from, processed_hash);
+        fingerprint += mix(31 * hashOf(from) + processed_hash);
+      }
+      return new Key<TValue, TProcessedValue>(value, inputs, 31 * hashOf(value) + fingerprint);
+    }
+
+    private static int hashOf(final Object o) {
+      return (o != null) ? o.hashCode() : 0;
+    }
+
+    private static int mix(int h) {
+      h ^= h >>> 16;
+      h *= 0x85ebca6b;
+      h ^= h >>> 13;
+      return h;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o)
+        return true;
+      if (!(o instanceof Key))
+        return false;
+      final Key other = (Key)o;
+      return hash == other.hash && (value != null ? value.equals(other.value) : other.value == null) && inputs.equals(other.inputs);
+    }
+  }
+}
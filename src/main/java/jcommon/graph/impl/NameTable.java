@@ -0,0 +1,135 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.IVertex;
+import jcommon.graph.ObjectVertex;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * Interns UTF-8 encoded vertex names, assigning each distinct name a dense index. Lookups hash the raw bytes
+ * so that a {@link String} and its {@link IVertex} are only created the first time a name is seen.
+ *
+ * Not thread safe.
+ */
+final class NameTable {
+  private static final int EMPTY = -1;
+
+  private byte[] arena;
+  private int arena_size;
+  private int[] starts;
+  private int[] lengths;
+  private int[] hashes;
+  private IVertex<String>[] vertices;
+  private int size;
+  private int[] table;
+
+  @SuppressWarnings("unchecked")
+  NameTable() {
+    this.arena = new byte[4096];
+    this.starts = new int[256];
+    this.lengths = new int[256];
+    this.hashes = new int[256];
+    this.vertices = new IVertex[256];
+    this.table = new int[512];
+    Arrays.fill(table, EMPTY);
+  }
+
+  int size() {
+    return size;
+  }
+
+  IVertex<String>[] vertices() {
+    return Arrays.copyOf(vertices, size);
+  }
+
+  /**
+   * @return The index of the name held in <code>bytes[0..length)</code>, adding it if it hasn't been seen before.
+   */
+  int intern(final byte[] bytes, final int length) {
+    int hash = 0x811C9DC5;
+    for(int i = 0; i < length; ++i)
+      hash = (hash ^ bytes[i]) * 0x01000193;
+
+    final int mask = table.length - 1;
+    int slot = hash & mask;
+    int index;
+    while((index = table[slot]) != EMPTY) {
+      if (hashes[index] == hash && matches(index, bytes, length))
+        return index;
+      slot = (slot + 1) & mask;
+    }
+
+    index = add(bytes, length, hash);
+    table[slot] = index;
+    if (size * 2 > table.length)
+      rehash();
+    return index;
+  }
+
+  private boolean matches(final int index, final byte[] bytes, final int length) {
+    if (lengths[index] != length)
+      return false;
+    final int start = starts[index];
+    for(int i = 0; i < length; ++i) {
+      if (arena[start + i] != bytes[i])
+        return false;
+    }
+    return true;
+  }
+
+  private int add(final byte[] bytes, final int length, final int hash) {
+    if (size == starts.length) {
+      final int capacity = size * 2;
+      starts = Arrays.copyOf(starts, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+      hashes = Arrays.copyOf(hashes, capacity);
+      vertices = Arrays.copyOf(vertices, capacity);
+    }
+    if (arena_size + length > arena.length)
+      arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arena_size + length));
+
+    System.arraycopy(bytes, 0, arena, arena_size, length);
+    starts[size] = arena_size;
+    lengths[size] = length;
+    hashes[size] = hash;
+    try {
+      vertices[size] = ObjectVertex.from(new String(bytes, 0, length, "UTF-8"));
+    } catch(UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+    arena_size += length;
+    return size++;
+  }
+
+  private void rehash() {
+    table = new int[table.length * 2];
+    Arrays.fill(table, EMPTY);
+    final int mask = table.length - 1;
+    for(int index = 0; index < size; ++index) {
+      int slot = hashes[index] & mask;
+      while(table[slot] != EMPTY)
+        slot = (slot + 1) & mask;
+      table[slot] = index;
+    }
+  }
+}
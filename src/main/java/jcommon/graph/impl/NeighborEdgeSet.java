@@ -0,0 +1,502 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.IEdge;
+import jcommon.graph.IVertex;
+
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A {@link Set} of edges that doesn't hold any edge objects. Each source vertex keeps its out-neighbors in a plain
+ * array, in insertion order, and {@link Edge} instances are only created while iterating.
+ *
+ * An {@link Edge} in a {@link java.util.LinkedHashSet} costs roughly 80 bytes once the set's entry is accounted for.
+ * Here an edge costs a reference in its source's array plus, for vertices with many out-neighbors, a slot in a small
+ * int hash index used to reject duplicates.
+ *
+ * Iteration groups edges by source vertex: sources in the order they were first seen, then each source's
+ * out-neighbors in the order they were added. Removing an edge moves its source's last out-neighbor into its place,
+ * so that removals cost O(1) however many out-neighbors the source has. Not thread safe.
+ *
+ * @param <TVertex> Type of {@link IVertex} instances that the edges connect.
+ */
+public class NeighborEdgeSet<TVertex extends IVertex> extends AbstractSet<IEdge<TVertex>> {
+  private final Map<TVertex, Neighbors> out_neighbors;
+  private int size;
+  private int mod_count;
+
+  public NeighborEdgeSet() {
+    this(16);
+  }
+
+  /**
+   * @param expectedSources The expected number of distinct source vertices.
+   */
+  public NeighborEdgeSet(final int expectedSources) {
+    this.out_neighbors = new LinkedHashMap<TVertex, Neighbors>(Math.max(16, (int)(expectedSources / 0.75f) + 1));
+  }
+
+  /**
+   * Creates a new set with the same edges as the provided one.
+   *
+   * @param edges The edges to copy.
+   */
+  public NeighborEdgeSet(final Set<IEdge<TVertex>> edges) {
+    this(edges instanceof NeighborEdgeSet ? ((NeighborEdgeSet)edges).out_neighbors.size() : 16);
+    if (edges instanceof NeighborEdgeSet) {
+      final NeighborEdgeSet<TVertex> src = (NeighborEdgeSet<TVertex>)edges;
+      for(Map.Entry<TVertex, Neighbors> e : src.out_neighbors.entrySet())
+        out_neighbors.put(e.getKey(), e.getValue().copy());
+      size = src.size;
+    } else {
+      for(IEdge<TVertex> e : edges)
+        add(e.getFrom(), e.getTo());
+    }
+  }
+
+  /**
+   * Copies this set in time proportional to the number of source vertices rather than the number of edges. The
+   * two sets share each source's out-neighbors until either one changes them, at which point it copies only that
+   * source's. Since shared out-neighbors are never changed in place, the copy can be read by other threads while
+   * this set keeps changing, as long as it was safely published to them.
+   *
+   * @return A new {@link NeighborEdgeSet} with the same edges.
+   */
+  public NeighborEdgeSet<TVertex> share() {
+    final NeighborEdgeSet<TVertex> copy = new NeighborEdgeSet<TVertex>(out_neighbors.size());
+    for(Map.Entry<TVertex, Neighbors> e : out_neighbors.entrySet()) {
+      e.getValue().shared = true;
+      copy.out_neighbors.put(e.getKey(), e.getValue());
+    }
+    copy.size = size;
+    return copy;
+  }
+
+  /**
+   * Adds an edge without allocating an {@link Edge}.
+   *
+   * @param from The vertex the edge begins at.
+   * @param to The vertex the edge points to.
+   * @return <code>true</code> if the edge was not already present; <code>false</code> otherwise.
+   */
+  public boolean add(final TVertex from, final TVertex to) {
+    if (from == null || to == null)
+      throw new NullPointerException("from and to both cannot be null");
+
+    Neighbors n = out_neighbors.get(from);
+    if (n == null) {
+      n = new Neighbors();
+      out_neighbors.put(from, n);
+    } else if (n.shared) {
+      if (n.indexOf(to) >= 0)
+        return false;
+      n = writable(from, n);
+    }
+    if (!n.addIfAbsent(to))
+      return false;
+    ++size;
+    ++mod_count;
+    return true;
+  }
+
+  /**
+   * Adds many out-neighbors of one vertex at once, taking them from a compressed sparse row (CSR) layout. The
+   * vertex's array is grown and, if needed, indexed once for the whole batch instead of once per edge.
+   *
+   * @param from The vertex the edges begin at.
+   * @param vertices The vertices that <code>indices</code> refer to.
+   * @param indices Indices into <code>vertices</code> of the out-neighbors.
+   * @param start The first position in <code>indices</code> to add.
+   * @param end The position in <code>indices</code> after the last one to add.
+   * @return The number of edges that were not already present.
+   */
+  public int addNeighbors(final TVertex from, final TVertex[] vertices, final int[] indices, final int start, final int end) {
+    if (from == null)
+      throw new NullPointerException("from and to both cannot be null");
+    if (start >= end)
+      return 0;
+
+    Neighbors n = out_neighbors.get(from);
+    if (n == null) {
+      n = new Neighbors();
+      out_neighbors.put(from, n);
+    } else {
+      n = writable(from, n);
+    }
+    final int added = n.addAllIfAbsent(vertices, indices, start, end);
+    size += added;
+    ++mod_count;
+    return added;
+  }
+
+  /**
+   * Removes an edge without allocating an {@link Edge}.
+   *
+   * @param from The vertex the edge begins at.
+   * @param to The vertex the edge points to.
+   * @return <code>true</code> if the edge was present; <code>false</code> otherwise.
+   */
+  public boolean remove(final TVertex from, final TVertex to) {
+    final Neighbors n = out_neighbors.get(from);
+    if (n == null)
+      return false;
+    final int index = n.indexOf(to);
+    if (index < 0)
+      return false;
+    removeAt(from, writable(from, n), index);
+    return true;
+  }
+
+  /**
+   * Removes every edge that begins at a vertex.
+   *
+   * @param from The vertex whose out-edges should be removed.
+   * @return The out-neighbors that <code>from</code> had, in iteration order.
+   */
+  @SuppressWarnings("unchecked")
+  public List<TVertex> removeSource(final TVertex from) {
+    final Neighbors n = out_neighbors.remove(from);
+    if (n == null)
+      return Collections.emptyList();
+    size -= n.size();
+    ++mod_count;
+    return (List<TVertex>)(List<?>)n;
+  }
+
+  /**
+   * Determines if the edge is present without allocating an {@link Edge}.
+   *
+   * @param from The vertex the edge begins at.
+   * @param to The vertex the edge points to.
+   * @return <code>true</code> if the edge is present; <code>false</code> otherwise.
+   */
+  public boolean contains(final TVertex from, final TVertex to) {
+    final Neighbors n = out_neighbors.get(from);
+    return n != null && n.indexOf(to) >= 0;
+  }
+
+  /**
+   * Provides a read-only view of the out-neighbors of a vertex in iteration order.
+   *
+   * @param from The vertex whose out-neighbors are needed.
+   * @return A {@link List} of out-neighbors, empty if there are none.
+   */
+  @SuppressWarnings("unchecked")
+  public List<TVertex> outNeighborsFor(final TVertex from) {
+    final Neighbors n = out_neighbors.get(from);
+    if (n == null)
+      return Collections.emptyList();
+    return (List<TVertex>)(List<?>)n;
+  }
+
+  /**
+   * Provides a read-only view of every source vertex mapped to its out-neighbors, in the order the sources were
+   * first seen. Iterating it doesn't call <code>equals()</code> or <code>hashCode()</code> on any vertex.
+   *
+   * @return A {@link Set} of entries from a source vertex to a {@link List} of its out-neighbors.
+   */
+  @SuppressWarnings("unchecked")
+  Set<Map.Entry<TVertex, List<TVertex>>> sources() {
+    return (Set<Map.Entry<TVertex, List<TVertex>>>)(Set<?>)Collections.unmodifiableMap(out_neighbors).entrySet();
+  }
+
+  @Override
+  public boolean add(final IEdge<TVertex> edge) {
+    return add(edge.getFrom(), edge.getTo());
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean remove(final Object o) {
+    if (!(o instanceof IEdge))
+      return false;
+    final IEdge<TVertex> edge = (IEdge<TVertex>)o;
+    return remove(edge.getFrom(), edge.getTo());
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean contains(final Object o) {
+    if (!(o instanceof IEdge))
+      return false;
+    final IEdge<TVertex> edge = (IEdge<TVertex>)o;
+    return contains(edge.getFrom(), edge.getTo());
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    out_neighbors.clear();
+    size = 0;
+    ++mod_count;
+  }
+
+  @Override
+  public Iterator<IEdge<TVertex>> iterator() {
+    return new EdgeIterator();
+  }
+
+  //Gives a source its own copy of out-neighbors that are shared with another set, before they're changed.
+  private Neighbors writable(final TVertex from, final Neighbors n) {
+    if (!n.shared)
+      return n;
+    final Neighbors copy = n.copy();
+    out_neighbors.put(from, copy);
+    return copy;
+  }
+
+  private void removeAt(final TVertex from, final Neighbors n, final int index) {
+    n.removeAt(index);
+    if (n.size() == 0)
+      out_neighbors.remove(from);
+    --size;
+    ++mod_count;
+  }
+
+  private class EdgeIterator implements Iterator<IEdge<TVertex>> {
+    private final Iterator<Map.Entry<TVertex, Neighbors>> sources = out_neighbors.entrySet().iterator();
+    private Map.Entry<TVertex, Neighbors> entry;
+    private TVertex from;
+    private Neighbors current;
+    private int next;
+    private boolean can_remove;
+    private int expected_mod_count = mod_count;
+
+    @Override
+    public boolean hasNext() {
+      while(current == null || next >= current.size()) {
+        if (!sources.hasNext())
+          return false;
+        entry = sources.next();
+        from = entry.getKey();
+        current = entry.getValue();
+        next = 0;
+      }
+      return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public IEdge<TVertex> next() {
+      if (expected_mod_count != mod_count)
+        throw new ConcurrentModificationException();
+      if (!hasNext())
+        throw new NoSuchElementException();
+      can_remove = true;
+      return new Edge<TVertex>(from, (TVertex)current.items[next++]);
+    }
+
+    @Override
+    public void remove() {
+      if (!can_remove)
+        throw new IllegalStateException();
+      if (expected_mod_count != mod_count)
+        throw new ConcurrentModificationException();
+      can_remove = false;
+
+      --next;
+      if (current.shared) {
+        current = current.copy();
+        entry.setValue(current);
+      }
+      current.removeAt(next);
+      --size;
+      ++mod_count;
+      expected_mod_count = mod_count;
+      if (current.size() == 0) {
+        sources.remove();
+        current = null;
+      }
+    }
+  }
+
+  /**
+   * Out-neighbors of a single vertex in insertion order, until one is removed and the last one takes its place.
+   * Small lists are searched linearly. Larger ones keep an open-addressing index of positions into the array.
+   */
+  private static final class Neighbors extends AbstractList<Object> {
+    private static final int INDEX_THRESHOLD = 8;
+    private static final Object[] EMPTY = new Object[0];
+
+    private Object[] items = EMPTY;
+    private int count;
+    private int[] index;
+    //Set once another set holds these out-neighbors too. They're then copied before being changed.
+    private boolean shared;
+
+    @Override
+    public Object get(final int i) {
+      if (i < 0 || i >= count)
+        throw new IndexOutOfBoundsException("" + i);
+      return items[i];
+    }
+
+    @Override
+    public int size() {
+      return count;
+    }
+
+    @Override
+    public int indexOf(final Object o) {
+      if (o == null)
+        return -1;
+      if (index == null) {
+        for(int i = 0; i < count; ++i) {
+          if (o.equals(items[i]))
+            return i;
+        }
+        return -1;
+      }
+
+      final int mask = index.length - 1;
+      for(int slot = mix(o.hashCode()) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+        final int i = index[slot] - 1;
+        if (o.equals(items[i]))
+          return i;
+      }
+      return -1;
+    }
+
+    boolean addIfAbsent(final Object vertex) {
+      if (indexOf(vertex) >= 0)
+        return false;
+      if (count == items.length)
+        items = Arrays.copyOf(items, (count < 2) ? 2 : count + (count >> 1) + 1);
+      items[count++] = vertex;
+
+      if (index != null && count * 2 > index.length)
+        rebuildIndex();
+      else if (index != null)
+        insertIndex(count - 1);
+      else if (count > INDEX_THRESHOLD)
+        rebuildIndex();
+      return true;
+    }
+
+    int addAllIfAbsent(final Object[] vertices, final int[] indices, final int start, final int end) {
+      final int expected = count + (end - start);
+      if (items.length < expected)
+        items = Arrays.copyOf(items, expected);
+      if (expected > INDEX_THRESHOLD)
+        rebuildIndex(expected);
+
+      final int before = count;
+      for(int j = start; j < end; ++j) {
+        final Object vertex = vertices[indices[j]];
+        if (vertex == null)
+          throw new NullPointerException("from and to both cannot be null");
+        if (indexOf(vertex) >= 0)
+          continue;
+        items[count++] = vertex;
+        if (index != null)
+          insertIndex(count - 1);
+      }
+      return count - before;
+    }
+
+    void removeAt(final int i) {
+      final int last = count - 1;
+      if (index != null && last <= INDEX_THRESHOLD) {
+        index = null;
+      } else if (index != null) {
+        deleteSlot(slotOf(i));
+        if (i != last)
+          index[slotOf(last)] = i + 1;
+      }
+      //Move the last out-neighbor into the gap rather than shifting every one after it.
+      items[i] = items[last];
+      items[last] = null;
+      count = last;
+    }
+
+    Neighbors copy() {
+      final Neighbors n = new Neighbors();
+      n.items = Arrays.copyOf(items, count);
+      n.count = count;
+      n.index = (index != null) ? index.clone() : null;
+      return n;
+    }
+
+    private void rebuildIndex() {
+      rebuildIndex(count);
+    }
+
+    private void rebuildIndex(final int expected) {
+      int capacity = 16;
+      while(capacity < expected * 2)
+        capacity <<= 1;
+      if (index == null || index.length != capacity)
+        index = new int[capacity];
+      else
+        Arrays.fill(index, 0);
+      for(int i = 0; i < count; ++i)
+        insertIndex(i);
+    }
+
+    private int slotOf(final int i) {
+      final int mask = index.length - 1;
+      int slot = mix(items[i].hashCode()) & mask;
+      while(index[slot] != i + 1)
+        slot = (slot + 1) & mask;
+      return slot;
+    }
+
+    //Empties a slot, shifting back any later entries of the same probe run so that lookups never stop early.
+    private void deleteSlot(final int slot) {
+      final int mask = index.length - 1;
+      int hole = slot;
+      for(int next = (hole + 1) & mask; index[next] != 0; next = (next + 1) & mask) {
+        final int home = mix(items[index[next] - 1].hashCode()) & mask;
+        if (((next - home) & mask) >= ((next - hole) & mask)) {
+          index[hole] = index[next];
+          hole = next;
+        }
+      }
+      index[hole] = 0;
+    }
+
+    private void insertIndex(final int i) {
+      final int mask = index.length - 1;
+      int slot = mix(items[i].hashCode()) & mask;
+      while(index[slot] != 0)
+        slot = (slot + 1) & mask;
+      index[slot] = i + 1;
+    }
+
+    private static int mix(final int h) {
+      return h ^ (h >>> 16);
+    }
+  }
+}
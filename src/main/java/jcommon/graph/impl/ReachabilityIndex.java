@@ -0,0 +1,380 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.CyclicGraphException;
+import jcommon.graph.IAdjacencyList;
+import jcommon.graph.IVertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Answers whether one vertex of an {@link IAdjacencyList} can reach another in constant time, without walking
+ * the graph.
+ *
+ * Vertices are labelled with their position in a topological order, so a vertex can only ever reach vertices
+ * with a higher rank. Each vertex then keeps a bitset of the ranks it reaches, which is built in reverse
+ * topological order by or-ing together the bitsets of its out-neighbors. A bitset only spans the words from the
+ * vertex's own rank up to the highest rank it reaches, so vertices near the end of the order, and those that
+ * only reach nearby vertices, cost little. Queries are a rank comparison followed by at most one bit test.
+ *
+ * On a dense graph the bitsets add up to about <code>n<sup>2</sup>/64</code> words, so the index stops labelling
+ * vertices once it would hold more than a memory cap, {@link #DEFAULT_MAX_BYTES} unless another is given. Since
+ * labels are built from the end of the order, the vertices left without a bitset are those at the start of it.
+ * Queries from them walk the graph depth-first instead, stopping at the first labelled vertices they meet, and
+ * {@link #isComplete()} reports whether that can happen.
+ *
+ * The index is immutable and can be shared between threads. It reflects the adjacency list it was built from and
+ * must be rebuilt when the graph changes. {@link #getMemoryUsage()} reports roughly how much it holds on to.
+ *
+ * @see jcommon.graph.GraphSnapshot#reachability()
+ */
+public final class ReachabilityIndex<TVertex extends IVertex<TValue>, TValue extends Object> {
+  /**
+   * The most memory, in bytes, that {@link #build(IAdjacencyList)} lets the bitsets use: 64 MB.
+   */
+  public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+  private static final long[] NO_WORDS = new long[0];
+
+  private final IAdjacencyList<TVertex, TValue, ?> adjacency_list;
+  private final TopologicalOrder<TVertex, TValue> order;
+  private final long[][] reached;
+  private final int[] first_word;
+  private final long memory_usage;
+  private final boolean complete;
+
+  private ReachabilityIndex(final IAdjacencyList<TVertex, TValue, ?> adjacencyList, final TopologicalOrder<TVertex, TValue> order, final long[][] reached, final int[] firstWord, final long bytes, final boolean complete) {
+    this.adjacency_list = adjacencyList;
+    this.order = order;
+    this.reached = reached;
+    this.first_word = firstWord;
+    this.memory_usage = bytes;
+    this.complete = complete;
+  }
+
+  /**
+   * Builds the reachability index of an {@link IAdjacencyList} using no more than {@link #DEFAULT_MAX_BYTES} for
+   * its bitsets.
+   *
+   * @see #build(IAdjacencyList, long)
+   */
+  public static <TVertex extends IVertex<TValue>, TValue extends Object> ReachabilityIndex<TVertex, TValue> build(final IAdjacencyList<TVertex, TValue, ?> adjacencyList) throws CyclicGraphException {
+    return build(adjacencyList, DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * Builds the reachability index of an {@link IAdjacencyList}. This takes time proportional to the number of
+   * edges times the length of the bitsets being merged, so build it once and keep it for as long as the graph
+   * doesn't change.
+   *
+   * @param adjacencyList The adjacency list to index.
+   * @param maxBytes The most memory, in bytes, the index should use. The arrays it needs for every vertex count
+   *                 towards it but are always allocated. Vertices whose bitset doesn't fit are left unlabelled and
+   *                 answer queries by walking the graph.
+   * @return A new {@link ReachabilityIndex}.
+   * @throws CyclicGraphException Thrown if the graph has a cycle.
+   */
+  public static <TVertex extends IVertex<TValue>, TValue extends Object> ReachabilityIndex<TVertex, TValue> build(final IAdjacencyList<TVertex, TValue, ?> adjacencyList, final long maxBytes) throws CyclicGraphException {
+    if (adjacencyList == null)
+      throw new IllegalArgumentException("adjacencyList cannot be null");
+    if (maxBytes < 0L)
+      throw new IllegalArgumentException("maxBytes cannot be negative");
+
+    final TopologicalOrder<TVertex, TValue> order = new TopologicalSortContext().sortOrder(adjacencyList);
+    final int n = order.size();
+    final int[] ranks = order.getRanks();
+    final long[][] reached = new long[n][];
+    final int[] first_word = new int[n];
+
+    //Array headers are counted as 16 bytes and references as 8.
+    long bytes = 16L + 8L * n + 3L * (16L + 4L * n);
+    boolean complete = true;
+
+    //Work backwards through the order so that every out-neighbor is done before the vertices pointing at it.
+    //Bitsets are indexed by rank and aligned to whole words so they can be merged a word at a time.
+    for(int position = n - 1; position >= 0; --position) {
+      final int index = order.indexAt(position);
+      final List<TVertex> out_neighbors = adjacencyList.outNeighborsAt(index);
+
+      final int first = (position + 1) >>> 6;
+      first_word[index] = first;
+      //Once the cap is reached, everything earlier in the order is left unlabelled.
+      if (!complete) {
+        reached[index] = out_neighbors.isEmpty() ? NO_WORDS : null;
+        continue;
+      }
+
+      int highest = -1;
+      for(int j = 0; j < out_neighbors.size(); ++j) {
+        final int t = adjacencyList.indexOf(out_neighbors.get(j));
+        if (t < 0)
+          continue;
+        highest = Math.max(highest, ranks[t]);
+        if (reached[t].length > 0)
+          highest = Math.max(highest, ((first_word[t] + reached[t].length) << 6) - 1);
+      }
+
+      if (highest < 0) {
+        reached[index] = NO_WORDS;
+        continue;
+      }
+
+      final int length = (Math.min(highest, n - 1) >>> 6) - first + 1;
+      if (bytes + 16L + 8L * length > maxBytes) {
+        complete = false;
+        continue;
+      }
+      bytes += 16L + 8L * length;
+
+      final long[] words = new long[length];
+      for(int j = 0; j < out_neighbors.size(); ++j) {
+        final int t = adjacencyList.indexOf(out_neighbors.get(j));
+        if (t < 0)
+          continue;
+        words[(ranks[t] >>> 6) - first] |= 1L << ranks[t];
+        final long[] from = reached[t];
+        final int offset = first_word[t] - first;
+        for(int w = 0; w < from.length; ++w)
+          words[offset + w] |= from[w];
+      }
+      reached[index] = words;
+    }
+
+    return new ReachabilityIndex<TVertex, TValue>(adjacencyList, order, reached, first_word, bytes, complete);
+  }
+
+  /**
+   * @return The adjacency list that was indexed.
+   */
+  public IAdjacencyList<TVertex, TValue, ?> getAdjacencyList() {
+    return adjacency_list;
+  }
+
+  /**
+   * @return The topological order whose ranks label the vertices.
+   */
+  public TopologicalOrder<TVertex, TValue> getOrder() {
+    return order;
+  }
+
+  /**
+   * An estimate of the memory held by the index, in bytes, not counting the adjacency list it was built from.
+   *
+   * @return The approximate number of bytes used by the index.
+   */
+  public long getMemoryUsage() {
+    return memory_usage;
+  }
+
+  /**
+   * Indicates whether every vertex got a bitset within the memory cap. When it didn't, queries from the vertices
+   * at the start of the topological order walk the graph.
+   *
+   * @return <code>true</code> if every query is answered in constant time; <code>false</code> otherwise.
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * Checks whether there's a path from the vertex at one index to the vertex at another.
+   *
+   * @param fromIndex The index of a vertex in the adjacency list.
+   * @param toIndex The index of another vertex in the adjacency list.
+   * @return <code>true</code> if there's a path of one or more edges from the vertex at <code>fromIndex</code>
+   *         to the one at <code>toIndex</code>.
+   */
+  public boolean reachesAt(final int fromIndex, final int toIndex) {
+    final int to_rank = order.rankAt(toIndex);
+    if (to_rank <= order.rankAt(fromIndex))
+      return false;
+    if (reached[fromIndex] != null)
+      return isSet(fromIndex, to_rank);
+
+    //Walk from an unlabelled vertex, only following vertices ranked before the target and testing the bitset of
+    //any labelled vertex instead of going past it.
+    final BitSet visited = new BitSet(order.size());
+    int[] stack = new int[16];
+    int top = 0;
+    stack[top++] = fromIndex;
+    while(top > 0) {
+      final List<TVertex> out_neighbors = adjacency_list.outNeighborsAt(stack[--top]);
+      for(int j = 0; j < out_neighbors.size(); ++j) {
+        final int t = adjacency_list.indexOf(out_neighbors.get(j));
+        if (t < 0)
+          continue;
+        final int rank = order.rankAt(t);
+        if (rank == to_rank)
+          return true;
+        if (rank > to_rank || visited.get(t))
+          continue;
+        visited.set(t);
+        if (reached[t] != null) {
+          if (isSet(t, to_rank))
+            return true;
+        } else {
+          if (top == stack.length)
+            stack = Arrays.copyOf(stack, top * 2);
+          stack[top++] = t;
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean isSet(final int index, final int rank) {
+    final long[] words = reached[index];
+    final int w = (rank >>> 6) - first_word[index];
+    return w < words.length && (words[w] & (1L << rank)) != 0L;
+  }
+
+  /**
+   * Checks whether there's a path from one vertex to another, which is to say whether <code>to</code>
+   * transitively depends on <code>from</code>.
+   *
+   * @param from A vertex in the adjacency list.
+   * @param to Another vertex in the adjacency list.
+   * @return <code>true</code> if there's a path of one or more edges from <code>from</code> to <code>to</code>.
+   * @throws IllegalArgumentException Thrown if either vertex is not in the adjacency list.
+   */
+  public boolean reaches(final TVertex from, final TVertex to) {
+    final int from_index = adjacency_list.indexOf(from);
+    if (from_index < 0)
+      throw new IllegalArgumentException("from must be a vertex of the adjacency list");
+    final int to_index = adjacency_list.indexOf(to);
+    if (to_index < 0)
+      throw new IllegalArgumentException("to must be a vertex of the adjacency list");
+    return reachesAt(from_index, to_index);
+  }
+
+  /**
+   * Provides every vertex that can be reached from a vertex, in topological order.
+   *
+   * @param vertex A vertex in the adjacency list.
+   * @return The vertices reachable from <code>vertex</code>, not including itself.
+   * @throws IllegalArgumentException Thrown if the vertex is not in the adjacency list.
+   */
+  public List<TVertex> descendantsOf(final TVertex vertex) {
+    final int index = adjacency_list.indexOf(vertex);
+    if (index < 0)
+      throw new IllegalArgumentException("vertex must be a vertex of the adjacency list");
+
+    final List<TVertex> result = new ArrayList<TVertex>();
+    if (reached[index] == null) {
+      final BitSet descendants = descendantRanksOf(index);
+      for(int rank = descendants.nextSetBit(0); rank >= 0; rank = descendants.nextSetBit(rank + 1))
+        result.add(order.vertexAt(rank));
+      return result;
+    }
+
+    final long[] words = reached[index];
+    final int base = first_word[index] << 6;
+    for(int w = 0; w < words.length; ++w) {
+      long bits = words[w];
+      while(bits != 0L) {
+        result.add(order.vertexAt(base + (w << 6) + Long.numberOfTrailingZeros(bits)));
+        bits &= bits - 1L;
+      }
+    }
+    return result;
+  }
+
+  //Collects the ranks reachable from an unlabelled vertex. A labelled vertex only reaches labelled vertices, so
+  //its bitset is merged in whole instead of being walked.
+  private BitSet descendantRanksOf(final int index) {
+    final BitSet ranks = new BitSet(order.size());
+    int[] stack = new int[16];
+    int top = 0;
+    stack[top++] = index;
+    while(top > 0) {
+      final List<TVertex> out_neighbors = adjacency_list.outNeighborsAt(stack[--top]);
+      for(int j = 0; j < out_neighbors.size(); ++j) {
+        final int t = adjacency_list.indexOf(out_neighbors.get(j));
+        if (t < 0 || ranks.get(order.rankAt(t)))
+          continue;
+        ranks.set(order.rankAt(t));
+        final long[] words = reached[t];
+        if (words != null) {
+          final int base = first_word[t] << 6;
+          for(int w = 0; w < words.length; ++w) {
+            long bits = words[w];
+            while(bits != 0L) {
+              ranks.set(base + (w << 6) + Long.numberOfTrailingZeros(bits));
+              bits &= bits - 1L;
+            }
+          }
+        } else {
+          if (top == stack.length)
+            stack = Arrays.copyOf(stack, top * 2);
+          stack[top++] = t;
+        }
+      }
+    }
+    return ranks;
+  }
+
+  /**
+   * Provides every vertex that can reach a vertex, in topological order. Only vertices ranked before
+   * <code>vertex</code> are checked, in reverse order, each with a single bit test or, if it's unlabelled, by
+   * looking at its out-neighbors.
+   *
+   * @param vertex A vertex in the adjacency list.
+   * @return The vertices that <code>vertex</code> can be reached from, not including itself.
+   * @throws IllegalArgumentException Thrown if the vertex is not in the adjacency list.
+   */
+  public List<TVertex> ancestorsOf(final TVertex vertex) {
+    final int index = adjacency_list.indexOf(vertex);
+    if (index < 0)
+      throw new IllegalArgumentException("vertex must be a vertex of the adjacency list");
+
+    final int rank = order.rankAt(index);
+    final BitSet ancestors = new BitSet(rank);
+    for(int position = rank - 1; position >= 0; --position) {
+      final int from = order.indexAt(position);
+      if (reached[from] != null) {
+        if (isSet(from, rank))
+          ancestors.set(position);
+        continue;
+      }
+
+      //Every out-neighbor is ranked after this vertex, so it has already been decided.
+      final List<TVertex> out_neighbors = adjacency_list.outNeighborsAt(from);
+      for(int j = 0; j < out_neighbors.size(); ++j) {
+        final int t = adjacency_list.indexOf(out_neighbors.get(j));
+        if (t < 0)
+          continue;
+        final int t_rank = order.rankAt(t);
+        if (t_rank == rank || (t_rank < rank && ancestors.get(t_rank))) {
+          ancestors.set(position);
+          break;
+        }
+      }
+    }
+
+    final List<TVertex> result = new ArrayList<TVertex>(ancestors.cardinality());
+    for(int position = ancestors.nextSetBit(0); position >= 0; position = ancestors.nextSetBit(position + 1))
+      result.add(order.vertexAt(position));
+    return result;
+  }
+}
@@ -0,0 +1,171 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.IAdjacencyList;
+import jcommon.graph.IAdjacencyListPair;
+import jcommon.graph.IVertex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A view of an {@link IAdjacencyList} without some of its edges. Only the out-neighbors of the vertices that lose
+ * an edge are copied; everything else is read from the underlying adjacency list.
+ *
+ * @see TransitiveReduction#reduce(IAdjacencyList)
+ */
+final class ReducedAdjacencyList<TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> implements IAdjacencyList<TVertex, TValue, TProcessedValue> {
+  private final IAdjacencyList<TVertex, TValue, TProcessedValue> adjacency_list;
+  private final Map<Integer, List<TVertex>> rows;
+  private final int[] in_degrees;
+
+  ReducedAdjacencyList(final IAdjacencyList<TVertex, TValue, TProcessedValue> adjacencyList, final TransitiveReduction.Redundancy redundancy) {
+    this.adjacency_list = adjacencyList;
+    this.rows = new HashMap<Integer, List<TVertex>>(Math.max(4, redundancy.rows.length * 2));
+    this.in_degrees = adjacencyList.calculateInDegrees();
+
+    for(int r = 0; r < redundancy.rows.length; ++r) {
+      final List<TVertex> out_neighbors = adjacencyList.outNeighborsAt(redundancy.rows[r]);
+      final int[] skip = redundancy.positions[r];
+      final List<TVertex> kept = new ArrayList<TVertex>(out_neighbors.size() - skip.length);
+      int s = 0;
+      for(int j = 0; j < out_neighbors.size(); ++j) {
+        if (s < skip.length && skip[s] == j) {
+          ++s;
+          final int t = adjacencyList.indexOf(out_neighbors.get(j));
+          if (t >= 0)
+            --in_degrees[t];
+        } else {
+          kept.add(out_neighbors.get(j));
+        }
+      }
+      rows.put(redundancy.rows[r], Collections.unmodifiableList(kept));
+    }
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return adjacency_list.isEmpty();
+  }
+
+  @Override
+  public List<TVertex> outNeighborsFor(final TVertex vertex) {
+    final int index = adjacency_list.indexOf(vertex);
+    final List<TVertex> row = (index >= 0) ? rows.get(index) : null;
+    return (row != null) ? row : adjacency_list.outNeighborsFor(vertex);
+  }
+
+  @Override
+  public IAdjacencyListPair<TVertex> pairAt(final int index) {
+    final List<TVertex> row = rows.get(index);
+    if (row == null)
+      return adjacency_list.pairAt(index);
+    return new AdjacencyListPair<TVertex>(adjacency_list.pairAt(index).getVertex(), row);
+  }
+
+  @Override
+  public List<TVertex> outNeighborsAt(final int index) {
+    final List<TVertex> row = rows.get(index);
+    return (row != null) ? row : adjacency_list.outNeighborsAt(index);
+  }
+
+  @Override
+  public int indexOf(final TVertex vertex) {
+    return adjacency_list.indexOf(vertex);
+  }
+
+  @Override
+  public int idOf(final TVertex vertex) {
+    return adjacency_list.idOf(vertex);
+  }
+
+  @Override
+  public int idAt(final int index) {
+    return adjacency_list.idAt(index);
+  }
+
+  @Override
+  public int getIdBound() {
+    return adjacency_list.getIdBound();
+  }
+
+  /**
+   * The in-degrees of the underlying adjacency list less the edges that were removed.
+   */
+  @Override
+  public int[] calculateInDegrees() {
+    return in_degrees.clone();
+  }
+
+  @Override
+  public int size() {
+    return adjacency_list.size();
+  }
+
+  /**
+   * Every vertex that loses an edge keeps at least one, so the ending vertices are those of the underlying
+   * adjacency list.
+   */
+  @Override
+  public Set<TVertex> getEndingVertices() {
+    return adjacency_list.getEndingVertices();
+  }
+
+  @Override
+  public boolean isEndingVertex(final TVertex vertex) {
+    return adjacency_list.isEndingVertex(vertex);
+  }
+
+  @Override
+  public Map<TValue, TProcessedValue> createResultMap() {
+    return adjacency_list.createResultMap();
+  }
+
+  @Override
+  public Iterator<IAdjacencyListPair<TVertex>> iterator() {
+    return new Iterator<IAdjacencyListPair<TVertex>>() {
+      private int next;
+
+      @Override
+      public boolean hasNext() {
+        return next < size();
+      }
+
+      @Override
+      public IAdjacencyListPair<TVertex> next() {
+        if (!hasNext())
+          throw new NoSuchElementException();
+        return pairAt(next++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
@@ -23,22 +23,24 @@ package jcommon.graph.impl;
 import jcommon.graph.CyclicGraphException;
 import jcommon.graph.IAdjacencyList;
 import jcommon.graph.IAdjacencyListPair;
+import jcommon.graph.IProcessedValueSerializer;
 import jcommon.graph.ITopologicalSortAsyncResult;
 import jcommon.graph.ITopologicalSortCallback;
 import jcommon.graph.ITopologicalSortCoordinator;
 import jcommon.graph.ITopologicalSortErrorCallback;
 import jcommon.graph.ITopologicalSortInput;
+import jcommon.graph.ITopologicalSortListener;
 import jcommon.graph.ITopologicalSortStrategy;
 import jcommon.graph.IVertex;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -54,17 +56,180 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @see <a href="http://www.cs.washington.edu/education/courses/cse373/02sp/lectures/cse373-21-TopoSort-4up.pdf">http://www.cs.washington.edu/education/courses/cse373/02sp/lectures/cse373-21-TopoSort-4up.pdf</a>
  */
 public final class SimpleTopologicalSort<TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> implements ITopologicalSortStrategy<TVertex, TValue, TProcessedValue> {
+  private IProcessedValueSerializer<TProcessedValue> spill_serializer;
+  private long spill_heap_budget;
+  private File spill_directory;
+  private ITopologicalSortListener<TValue, TProcessedValue> listener;
+  private boolean transitive_reduction;
+
+  //The redundant edges found for each adjacency list sorted with transitive reduction on. Redundancy only holds
+  //indices, so entries go away along with their adjacency list.
+  private final Map<IAdjacencyList<?, ?, ?>, TransitiveReduction.Redundancy> reductions = Collections.synchronizedMap(new WeakHashMap<IAdjacencyList<?, ?, ?>, TransitiveReduction.Redundancy>());
+
   /**
    * @see ITopologicalSortStrategy
    */
   public SimpleTopologicalSort() {
   }
 
+  /**
+   * Limits the heap used to hold intermediate results during {@link #sortAsync(ExecutorService, IAdjacencyList, ITopologicalSortCallback, ITopologicalSortErrorCallback)}.
+   * Spilled results are written to a memory-mapped file in the default temporary-file directory.
+   *
+   * @see #enableSpilling(IProcessedValueSerializer, long, File)
+   */
+  public SimpleTopologicalSort<TVertex, TValue, TProcessedValue> enableSpilling(final IProcessedValueSerializer<TProcessedValue> serializer, final long heapBudget) {
+    return enableSpilling(serializer, heapBudget, null);
+  }
+
+  /**
+   * Limits the heap used to hold intermediate results during {@link #sortAsync(ExecutorService, IAdjacencyList, ITopologicalSortCallback, ITopologicalSortErrorCallback)}.
+   *
+   * Once the estimated size of the results waiting to be consumed by out-neighbors exceeds the budget, the least
+   * recently used are written to a memory-mapped temporary file and are read back whenever
+   * {@link ITopologicalSortInput#get(Object)} (or any other accessor of the input) asks for them. Ending vertices are
+   * never spilled. The file is removed when processing completes.
+   *
+   * Must be called before sorting.
+   *
+   * @param serializer An instance of {@link IProcessedValueSerializer} used to size, write and read results.
+   * @param heapBudget The number of bytes of results to keep on the heap before spilling.
+   * @param directory The directory in which to create the temporary file. <code>null</code> uses the default
+   *                  temporary-file directory.
+   * @return The current instance of {@link SimpleTopologicalSort} for use in a builder-style pattern.
+   */
+  public SimpleTopologicalSort<TVertex, TValue, TProcessedValue> enableSpilling(final IProcessedValueSerializer<TProcessedValue> serializer, final long heapBudget, final File directory) {
+    if (serializer == null)
+      throw new IllegalArgumentException("serializer cannot be null");
+    if (heapBudget < 0L)
+      throw new IllegalArgumentException("heapBudget cannot be negative");
+
+    this.spill_serializer = serializer;
+    this.spill_heap_budget = heapBudget;
+    this.spill_directory = directory;
+    return this;
+  }
+
+  /**
+   * Provides an instance of {@link ITopologicalSortListener} that will be notified as vertices become ready, start,
+   * finish and fail during {@link #sortAsync(ExecutorService, IAdjacencyList, ITopologicalSortCallback, ITopologicalSortErrorCallback)}.
+   * When no listener is set, no timing information is gathered.
+   *
+   * Must be called before sorting.
+   *
+   * @param listener An instance of {@link ITopologicalSortListener} or <code>null</code> to remove the current one.
+   * @return The current instance of {@link SimpleTopologicalSort} for use in a builder-style pattern.
+   *
+   * @see TopologicalSortMetrics
+   */
+  public SimpleTopologicalSort<TVertex, TValue, TProcessedValue> setListener(final ITopologicalSortListener<TValue, TProcessedValue> listener) {
+    this.listener = listener;
+    return this;
+  }
+
+  /**
+   * Removes redundant edges from the adjacency list before {@link #sortAsync(ExecutorService, IAdjacencyList, ITopologicalSortCallback, ITopologicalSortErrorCallback)}
+   * schedules anything, so that an edge such as <code>A&rarr;C</code> that's implied by <code>A&rarr;B&rarr;C</code>
+   * costs no task submission, in-degree update or input entry. Vertices still run in a valid order, but their
+   * {@link ITopologicalSortInput} no longer holds the processed values of vertices that were only connected by
+   * a redundant edge. Graphs with a cycle are scheduled unchanged so the cycle is reported as usual.
+   *
+   * The redundant edges are found on the thread calling <code>sortAsync</code>, which blocks for time proportional
+   * to the number of edges times the length of the bitsets in a {@link ReachabilityIndex}. They're remembered for
+   * as long as the {@link IAdjacencyList} instance is alive, so sorting the same one again, such as the one held by a
+   * {@link jcommon.graph.GraphSnapshot} or a {@link MappedAdjacencyList}, doesn't pay that cost again. Graphs that
+   * build a new adjacency list for every sort pay it every time. The reduced list is a view that only copies the
+   * out-neighbors of vertices that lose an edge.
+   *
+   * Must be called before sorting.
+   *
+   * @param enabled <code>true</code> to reduce the adjacency list before every asynchronous sort.
+   * @return The current instance of {@link SimpleTopologicalSort} for use in a builder-style pattern.
+   *
+   * @see TransitiveReduction
+   */
+  public SimpleTopologicalSort<TVertex, TValue, TProcessedValue> setTransitiveReduction(final boolean enabled) {
+    this.transitive_reduction = enabled;
+    return this;
+  }
+
+  private InputStore<TValue, TProcessedValue> createInputStore(final int[] in_degrees) {
+    if (spill_serializer == null)
+      return new HeapInputStore<TValue, TProcessedValue>(in_degrees);
+    return new SpillingInputStore<TValue, TProcessedValue>(in_degrees, spill_serializer, spill_heap_budget, spill_directory);
+  }
+
   /**
    * @see ITopologicalSortStrategy#sort(IAdjacencyList)
    */
   @Override
   public List<TValue> sort(final IAdjacencyList<TVertex, TValue, TProcessedValue> adjacencyList) throws CyclicGraphException {
+    final Object event = FlightRecorderEvents.beginSort();
+    boolean successful = false;
+    try {
+      final List<TValue> ordered = sortVertices(adjacencyList);
+      successful = true;
+      return ordered;
+    } finally {
+      FlightRecorderEvents.endSort(event, adjacencyList.size(), successful);
+    }
+  }
+
+  /**
+   * Topologically sorts using the scratch space of a {@link TopologicalSortContext} that the caller keeps
+   * between sorts, typically one per thread. Sorting the same adjacency list again with the same context
+   * allocates nothing.
+   *
+   * @param adjacencyList The adjacency list to sort.
+   * @param context The {@link TopologicalSortContext} to sort with.
+   * @return A topologically sorted list of values that's owned by the context and reused by its next sort.
+   * @throws CyclicGraphException Thrown if a cycle is detected during the sort.
+   *
+   * @see TopologicalSortContext#sort(IAdjacencyList)
+   */
+  public List<TValue> sort(final IAdjacencyList<TVertex, TValue, TProcessedValue> adjacencyList, final TopologicalSortContext context) throws CyclicGraphException {
+    if (context == null)
+      throw new IllegalArgumentException("context cannot be null");
+
+    final Object event = FlightRecorderEvents.beginSort();
+    boolean successful = false;
+    try {
+      final List<TValue> ordered = context.sort(adjacencyList);
+      successful = true;
+      return ordered;
+    } finally {
+      FlightRecorderEvents.endSort(event, adjacencyList.size(), successful);
+    }
+  }
+
+  /**
+   * Topologically sorts into a permutation of the adjacency list's indices, along with the inverse rank of
+   * every index, instead of a list of values. Use {@link TopologicalOrder#rankOf(IVertex)} or
+   * {@link TopologicalOrder#precedes(IVertex, IVertex)} to compare the positions of vertices without building
+   * a map of positions.
+   *
+   * @param adjacencyList The adjacency list to sort.
+   * @return The {@link TopologicalOrder} of the adjacency list's indices.
+   * @throws CyclicGraphException Thrown if a cycle is detected during the sort.
+   *
+   * @see TopologicalSortContext#sortIndices(IAdjacencyList, int[], int[])
+   */
+  public TopologicalOrder<TVertex, TValue> sortOrder(final IAdjacencyList<TVertex, TValue, TProcessedValue> adjacencyList) throws CyclicGraphException {
+    if (adjacencyList == null)
+      throw new IllegalArgumentException("adjacencyList cannot be null");
+
+    final Object event = FlightRecorderEvents.beginSort();
+    boolean successful = false;
+    try {
+      final TopologicalOrder<TVertex, TValue> order = new TopologicalSortContext().sortOrder(adjacencyList);
+      successful = true;
+      return order;
+    } finally {
+      FlightRecorderEvents.endSort(event, adjacencyList.size(), successful);
+    }
+  }
+
+  private List<TValue> sortVertices(final IAdjacencyList<TVertex, TValue, TProcessedValue> adjacencyList) throws CyclicGraphException {
     if (adjacencyList.isEmpty())
       return new ArrayList<TValue>(0);
 
@@ -114,36 +279,55 @@ public final class SimpleTopologicalSort<TVertex extends IVertex<TValue>, TValue
    */
   @Override
   public ITopologicalSortAsyncResult<TValue, TProcessedValue> sortAsync(final ExecutorService executorProcessors, final IAdjacencyList<TVertex, TValue, TProcessedValue> adjacencyList, final ITopologicalSortCallback<TValue, TProcessedValue> callback, final ITopologicalSortErrorCallback<TValue> errorCallback) {
+    if (transitive_reduction && adjacencyList != null) {
+      TransitiveReduction.Redundancy redundancy = reductions.get(adjacencyList);
+      if (redundancy == null) {
+        try {
+          redundancy = TransitiveReduction.find(adjacencyList);
+        } catch(CyclicGraphException e) {
+          redundancy = TransitiveReduction.Redundancy.NONE;
+        }
+        reductions.put(adjacencyList, redundancy);
+      }
+      return scheduleAsync(executorProcessors, TransitiveReduction.reduce(adjacencyList, redundancy), callback, errorCallback);
+    }
+    return scheduleAsync(executorProcessors, adjacencyList, callback, errorCallback);
+  }
+
+  private ITopologicalSortAsyncResult<TValue, TProcessedValue> scheduleAsync(final ExecutorService executorProcessors, final IAdjacencyList<TVertex, TValue, TProcessedValue> adjacencyList, final ITopologicalSortCallback<TValue, TProcessedValue> callback, final ITopologicalSortErrorCallback<TValue> errorCallback) {
+    final ITopologicalSortListener<TValue, TProcessedValue> listener = FlightRecorderEvents.listener(this.listener);
     final TopologicalSortAsyncResult<TValue, TProcessedValue> asyncResult = new TopologicalSortAsyncResult<TValue, TProcessedValue>(executorProcessors);
+
+    if (listener != null)
+      notifySortStarted(listener, adjacencyList.size());
+
     if (adjacencyList.isEmpty()) {
+      if (listener != null)
+        notifySortCompleted(listener, true);
       asyncResult.asyncComplete(adjacencyList.createResultMap(), true);
       return asyncResult;
     }
 
-    final Queue<Callable<Object>> queue = new LinkedList<Callable<Object>>();
+    final Queue<Integer> queue = new LinkedList<Integer>();
     final int[] in_degrees = adjacencyList.calculateInDegrees();
     final List<Callable<Object>> callables = new ArrayList<Callable<Object>>(in_degrees.length);
-    final Set<IAdjacencyListPair<TVertex>> remaining = new HashSet<IAdjacencyListPair<TVertex>>();
+    final AtomicInteger remaining = new AtomicInteger(in_degrees.length);
     final AtomicInteger[] atomics = new AtomicInteger[in_degrees.length];
-    final List<Map<TValue, TProcessedValue>> inputs = new ArrayList<Map<TValue, TProcessedValue>>(in_degrees.length);
+    final long[] ready_at = (listener != null) ? new long[in_degrees.length] : null;
+    final InputStore<TValue, TProcessedValue> inputs = createInputStore(in_degrees);
     final AtomicInteger outstanding_submissions = new AtomicInteger(0);
     final ITopologicalSortCoordinator coordinator = new TopologicalSortCoordinator(asyncResult);
     final Map<TValue, TProcessedValue> results = adjacencyList.createResultMap();
 
     //Find all vertices who have an in-degree of zero.
-    //Also initialize latches to the size of the the in-degree + 1.
+    //Also initialize counters to the in-degree. A vertex is submitted for processing
+    //once every one of its in-neighbors has been processed and the counter reaches zero.
     for(int i = 0; i < in_degrees.length; ++i) {
+      final int my_index = i;
+      final int my_id = adjacencyList.idAt(i);
       final IAdjacencyListPair<TVertex> pair = adjacencyList.pairAt(i);
-      final AtomicInteger atom = atomics[i] = new AtomicInteger(in_degrees[i] == 0 ? 1 : in_degrees[i]);
-      final Map<TValue, TProcessedValue> my_input = new HashMap<TValue, TProcessedValue>(in_degrees[i], 1.0f);
       final boolean has_no_one_pointing_to_me = (in_degrees[i] == 0);
-      inputs.add(my_input);
-
-      //Ensure that we add all items in the adjacency list to our list of remaining items.
-      //As we discover the proper order to visit them and then process them, we will drain
-      //the list of remaining vertices. If there is no cycle, then the list of remaining
-      //vertices will be empty when we're through.
-      remaining.add(pair);
+      atomics[i] = new AtomicInteger(in_degrees[i]);
 
       final Callable<Object> callable = new Callable<Object>() {
         @Override
@@ -152,107 +336,129 @@ public final class SimpleTopologicalSort<TVertex extends IVertex<TValue>, TValue
           Throwable handled_exception = null;
           boolean handle_all_done = false;
           final TVertex vertex = pair.getVertex();
-          ITopologicalSortInput<TValue, TProcessedValue> input;
 
           try {
+            //Every vertex starts out as remaining. As we discover the proper order to visit
+            //them and then process them, we drain the count. If there is no cycle, then there
+            //will be none remaining when we're through. Each vertex is submitted at most once.
+            remaining.decrementAndGet();
+
+            final ITopologicalSortInput<TValue, TProcessedValue> input = inputs.inputFor(my_index, my_id, has_no_one_pointing_to_me);
+
+            //Call the callback to let him handle this vertex.
+            final TValue vertex_value = vertex.get();
+            final long started_at = (listener != null) ? System.nanoTime() : 0L;
+            if (listener != null)
+              notifyVertexStarted(listener, vertex_value, vertex, input, started_at - ready_at[my_index]);
+
+            TProcessedValue result = null;
+            try {
+              result = callback.handle(vertex_value, input, vertex, coordinator);
+            } catch(Throwable t) {
+              //We need to handle the exception later after we've done other work.
+              //Save it off for later evaluation.
+              handled_exception = t;
+            }
 
-            if (atom.decrementAndGet() == 0) {
-              //Remove from the list of remaining vertices.
-              synchronized (remaining) {
-                remaining.remove(pair);
-              }
+            if (listener != null) {
+              final long elapsed = System.nanoTime() - started_at;
+              if (handled_exception == null)
+                notifyVertexFinished(listener, vertex_value, vertex, elapsed);
+              else
+                notifyVertexFailed(listener, vertex_value, vertex, handled_exception, elapsed);
+            }
 
-              synchronized (my_input) {
-                input = new TopologicalSortInput<TValue, TProcessedValue>(has_no_one_pointing_to_me, my_input);
-              }
+            //Our inputs are no longer needed.
+            inputs.consumed(my_index);
 
-              //Call the callback to let him handle this vertex.
-              final TValue vertex_value = vertex.get();
-              TProcessedValue result = null;
-              try {
-                result = callback.handle(vertex_value, input, vertex, coordinator);
-              } catch(Throwable t) {
-                //We need to handle the exception later after we've done other work.
-                //Save it off for later evaluation.
-                handled_exception = t;
+            //Add to result set if this is a vertex with no out neighbors -- which
+            //means that it is not pointing to any other vertices. As such, we're
+            //likely interested in its callback's result. In that case, we save
+            //it off so we can provide it in the ITopologicalSortAsyncResult instance.
+            if (adjacencyList.isEndingVertex(vertex)) {
+              synchronized (results) {
+                results.put(vertex_value, result);
               }
+            }
 
-              //Add to result set if this is a vertex with no out neighbors -- which
-              //means that it is not pointing to any other vertices. As such, we're
-              //likely interested in its callback's result. In that case, we save
-              //it off so we can provide it in the ITopologicalSortAsyncResult instance.
-              if (adjacencyList.isEndingVertex(vertex)) {
-                synchronized (results) {
-                  results.put(vertex_value, result);
+            //Ensure we haven't been asked to stop processing. If so,
+            //we don't want to schedule anything else. We need to let the existing
+            //submissions drain.
+            if (!asyncResult.isProcessingDiscontinued()) {
+              final List<TVertex> out_neighbors = pair.getOutNeighbors();
+              inputs.produced(my_index, result, out_neighbors.size());
+
+              //Offer our result to everyone who is dependent on me and submit
+              //a task for those who are no longer waiting on anyone else.
+              for(TVertex dep : out_neighbors) {
+                final int index = adjacencyList.indexOf(dep);
+                inputs.offer(index, vertex_value, my_index, result);
+
+                if (atomics[index].decrementAndGet() != 0)
+                  continue;
+
+                if (listener != null) {
+                  ready_at[index] = System.nanoTime();
+                  notifyVertexReady(listener, dep);
                 }
-              }
 
-              //Ensure we haven't been asked to stop processing. If so,
-              //we don't want to schedule anything else. We need to let the existing
-              //submissions drain.
-              if (!asyncResult.isProcessingDiscontinued()) {
-                //Submit a task for everyone who is dependent on me.
-                //On the next round if all of their vertices have been evaluated,
-                //the count will be at zero.
-                for(TVertex dep : pair.getOutNeighbors()) {
-                  final int index = adjacencyList.indexOf(dep);
-                  final Callable<Object> dep_callable = callables.get(index);
-                  final Map<TValue, TProcessedValue> dep_inputs = inputs.get(index);
-
-                  synchronized (dep_inputs) {
-                    dep_inputs.put(vertex_value, result);
-                  }
-
-                  //Ensure we track the number of submissions. This will be used to
-                  //detect an effective deadlock -- we can't make progress b/c there's
-                  //a cycle preventing it.
-                  outstanding_submissions.incrementAndGet();
-                  try {
-                    executorProcessors.submit(dep_callable);
-                  } catch(Throwable t) {
-                    //If the submission was rejected, then decrement the count we just incremented.
-                    //This should result in a leftover and the remaining.size() will be > 0 and
-                    //will thus fail later on.
-                    outstanding_submissions.decrementAndGet();
-                  }
+                //Ensure we track the number of submissions. This will be used to
+                //detect an effective deadlock -- we can't make progress b/c there's
+                //a cycle preventing it.
+                outstanding_submissions.incrementAndGet();
+                try {
+                  executorProcessors.submit(callables.get(index));
+                } catch(Throwable t) {
+                  //If the submission was rejected, then decrement the count we just incremented.
+                  //This should result in a leftover and the remaining count will be > 0 and
+                  //will thus fail later on.
+                  outstanding_submissions.decrementAndGet();
+                  if (listener != null)
+                    notifyVertexRejected(listener, dep);
                 }
               }
             }
+          } catch(Throwable t) {
+            //Anything unexpected while scheduling is reported the same way as a failure in
+            //the callback. We still need to account for this submission below or we'd never
+            //signal completion.
+            if (handled_exception == null)
+              handled_exception = t;
+          }
 
-            //Check if we cannot make any more progress. We know to do this check b/c
-            //on every submission we atomically increment a counter and then when that
-            //submission is processed we decrement the counter. If the counter reaches
-            //zero, then we know we've effectively drained the submissions. At that
-            //point, if there are any remaining then we know there's a cycle.
+          //Check if we cannot make any more progress. We know to do this check b/c
+          //on every submission we atomically increment a counter and then when that
+          //submission is processed we decrement the counter. If the counter reaches
+          //zero, then we know we've effectively drained the submissions. At that
+          //point, if there are any remaining then we know there's a cycle.
 
-            final int outstanding = outstanding_submissions.decrementAndGet();
+          Throwable error = handled_exception;
+          final int outstanding = outstanding_submissions.decrementAndGet();
 
-            if (outstanding == 0) {
-              //Save a notification for later processing after we've handled errors.
-              handle_all_done = true;
+          if (outstanding == 0) {
+            //Save a notification for later processing after we've handled errors.
+            handle_all_done = true;
 
-              if (remaining.size() > 0) {
-                throw new CyclicGraphException(STANDARD_CYCLE_MESSAGE);
-              }
+            if (remaining.get() > 0) {
+              error = new CyclicGraphException(STANDARD_CYCLE_MESSAGE);
             }
+          }
 
-            //Now deal with any exception that was thrown upon processing the vertex.
-            //Will bubble up to the callable-wide handler below.
-            if (handled_exception != null)
-              throw handled_exception;
-
-          } catch(Throwable t) {
-            if (errorCallback != null) {
-              try {
-                errorCallback.handleError(vertex.get(), t, vertex, coordinator);
-              } catch(Throwable t2) {
-                //Swallow any exceptions thrown by our error handler.
-              }
+          //Now deal with any exception that was thrown upon processing the vertex.
+          if (error != null && errorCallback != null) {
+            try {
+              errorCallback.handleError(vertex.get(), error, vertex, coordinator);
+            } catch(Throwable t2) {
+              //Swallow any exceptions thrown by our error handler.
             }
           }
 
           if (handle_all_done) {
-            asyncResult.asyncComplete(results, remaining.size() == 0);
+            final boolean successful = remaining.get() == 0;
+            inputs.close();
+            if (listener != null)
+              notifySortCompleted(listener, successful);
+            asyncResult.asyncComplete(results, successful);
           }
 
           return null;
@@ -262,13 +468,9 @@ public final class SimpleTopologicalSort<TVertex extends IVertex<TValue>, TValue
 
       //If in-degree is zero, then that indicates a starting vertex.
       if (has_no_one_pointing_to_me) {
-        ////If this is a starting vertex, add its value as its input.
-        //final TVertex v = pair.getVertex();
-        //my_input.put(v, v.get());
-
         //We do this to ensure that callables has been fully
         //initialized prior to starting up any tasks.
-        queue.add(callable);
+        queue.add(my_index);
       }
     }
 
@@ -278,6 +480,9 @@ public final class SimpleTopologicalSort<TVertex extends IVertex<TValue>, TValue
       if (errorCallback != null) {
         errorCallback.handleError(null, new CyclicGraphException(STANDARD_CYCLE_MESSAGE), null, coordinator);
       }
+      inputs.close();
+      if (listener != null)
+        notifySortCompleted(listener, false);
       asyncResult.asyncComplete(results, false);
       return asyncResult;
     }
@@ -287,15 +492,26 @@ public final class SimpleTopologicalSort<TVertex extends IVertex<TValue>, TValue
     //is a sign of a cycle.
     outstanding_submissions.set(queue.size());
 
-    Callable<Object> callable;
+    Integer starting;
+
+    while ((starting = queue.poll()) != null) {
+      if (listener != null) {
+        ready_at[starting] = System.nanoTime();
+        notifyVertexReady(listener, adjacencyList.pairAt(starting).getVertex());
+      }
 
-    while ((callable = queue.poll()) != null) {
       try {
-        executorProcessors.submit(callable);
+        executorProcessors.submit(callables.get(starting));
       } catch(Throwable t) {
+        if (listener != null)
+          notifyVertexRejected(listener, adjacencyList.pairAt(starting).getVertex());
         if (errorCallback != null)
           errorCallback.handleError(null, new CyclicGraphException(STANDARD_CYCLE_MESSAGE), null, coordinator);
         asyncResult.discontinueScheduling();
+        //The outstanding count can no longer reach zero, so no task would ever close the store.
+        inputs.close();
+        if (listener != null)
+          notifySortCompleted(listener, false);
         asyncResult.asyncComplete(results, false);
         return asyncResult;
       }
@@ -303,4 +519,60 @@ public final class SimpleTopologicalSort<TVertex extends IVertex<TValue>, TValue
 
     return asyncResult;
   }
+
+  private static <TValue, TProcessedValue> void notifySortStarted(final ITopologicalSortListener<TValue, TProcessedValue> listener, final int size) {
+    try {
+      listener.sortStarted(size);
+    } catch(Throwable t) {
+      //Swallow any exceptions thrown by the listener.
+    }
+  }
+
+  private static <TValue, TProcessedValue> void notifyVertexReady(final ITopologicalSortListener<TValue, TProcessedValue> listener, final IVertex<TValue> vertex) {
+    try {
+      listener.vertexReady(vertex.get(), vertex);
+    } catch(Throwable t) {
+      //Swallow any exceptions thrown by the listener.
+    }
+  }
+
+  private static <TValue, TProcessedValue> void notifyVertexRejected(final ITopologicalSortListener<TValue, TProcessedValue> listener, final IVertex<TValue> vertex) {
+    try {
+      listener.vertexRejected(vertex.get(), vertex);
+    } catch(Throwable t) {
+      //Swallow any exceptions thrown by the listener.
+    }
+  }
+
+  private static <TValue, TProcessedValue> void notifyVertexStarted(final ITopologicalSortListener<TValue, TProcessedValue> listener, final TValue value, final IVertex<TValue> vertex, final ITopologicalSortInput<TValue, TProcessedValue> input, final long waitNanos) {
+    try {
+      listener.vertexStarted(value, vertex, input, waitNanos);
+    } catch(Throwable t) {
+      //Swallow any exceptions thrown by the listener.
+    }
+  }
+
+  private static <TValue, TProcessedValue> void notifyVertexFinished(final ITopologicalSortListener<TValue, TProcessedValue> listener, final TValue value, final IVertex<TValue> vertex, final long elapsedNanos) {
+    try {
+      listener.vertexFinished(value, vertex, elapsedNanos);
+    } catch(Throwable t) {
+      //Swallow any exceptions thrown by the listener.
+    }
+  }
+
+  private static <TValue, TProcessedValue> void notifyVertexFailed(final ITopologicalSortListener<TValue, TProcessedValue> listener, final TValue value, final IVertex<TValue> vertex, final Throwable failure, final long elapsedNanos) {
+    try {
+      listener.vertexFailed(value, vertex, failure, elapsedNanos);
+    } catch(Throwable t) {
+      //Swallow any exceptions thrown by the listener.
+    }
+  }
+
+  private static <TValue, TProcessedValue> void notifySortCompleted(final ITopologicalSortListener<TValue, TProcessedValue> listener, final boolean successful) {
+    try {
+      listener.sortCompleted(successful);
+    } catch(Throwable t) {
+      //Swallow any exceptions thrown by the listener.
+    }
+  }
 }
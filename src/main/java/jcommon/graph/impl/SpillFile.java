@@ -0,0 +1,218 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A temporary file that's memory-mapped in fixed size segments. Written regions are handed back as read-only
+ * {@link ByteBuffer}s so that they can be read without going through the heap.
+ *
+ * Every segment counts the regions written to it that haven't been released. Once all of them have been, the
+ * segment is reused for later writes instead of extending the file, so the file only grows to fit the regions
+ * that are live at the same time. Not thread safe.
+ */
+final class SpillFile {
+  /** The default size of each mapped segment of the file. */
+  static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private final File file;
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+  private final int segment_size;
+  private final List<Segment> free_segments;
+  private Segment segment;
+  private long length;
+
+  SpillFile(final File directory, final int segmentSize) throws IOException {
+    this.file = File.createTempFile("jcommon-graph-", ".spill", directory);
+    this.file.deleteOnExit();
+    this.raf = new RandomAccessFile(file, "rw");
+    this.channel = raf.getChannel();
+    this.segment_size = segmentSize;
+    this.free_segments = new ArrayList<Segment>(2);
+    this.length = 0L;
+  }
+
+  /**
+   * Copies the contents of the buffer into the file.
+   *
+   * @param buffer The bytes to write.
+   * @return The written {@link Region}, which must be passed to {@link #release(Region)} once it's no longer
+   *         needed.
+   * @throws IOException Thrown if the file cannot be extended.
+   */
+  Region write(final Output buffer) throws IOException {
+    final int size = buffer.size();
+
+    if (segment == null || segment.buffer.remaining() < size)
+      segment = nextSegment(size);
+
+    //Calls go through java.nio.Buffer so that builds on newer JDKs don't
+    //link against the covariant overrides added to ByteBuffer in Java 9.
+    final MappedByteBuffer mapped = segment.buffer;
+    final ByteBuffer region = mapped.slice();
+    ((Buffer)region).limit(size);
+    region.put(buffer.bytes(), 0, size);
+    ((Buffer)region).flip();
+
+    ((Buffer)mapped).position(mapped.position() + size);
+    ++segment.live;
+    return new Region(segment, region.asReadOnlyBuffer());
+  }
+
+  /**
+   * Signals that a region will no longer be read. Its segment is reused once every region in it is released.
+   *
+   * @param region A region returned by {@link #write(Output)}.
+   */
+  void release(final Region region) {
+    final Segment s = region.segment;
+    if (--s.live == 0 && s != segment) {
+      ((Buffer)s.buffer).clear();
+      free_segments.add(s);
+    }
+  }
+
+  private Segment nextSegment(final int size) throws IOException {
+    //The segment being replaced can be reused right away if everything in it was already released.
+    if (segment != null && segment.live == 0) {
+      ((Buffer)segment.buffer).clear();
+      free_segments.add(segment);
+    }
+
+    for(int i = 0; i < free_segments.size(); ++i) {
+      final Segment free = free_segments.get(i);
+      if (free.buffer.capacity() >= size) {
+        free_segments.remove(i);
+        return free;
+      }
+    }
+
+    //Values larger than a segment get a mapping all to themselves.
+    final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, length, Math.max(segment_size, size));
+    length += mapped.capacity();
+    return new Segment(mapped);
+  }
+
+  /**
+   * @return The number of bytes the file has been extended to.
+   */
+  long length() {
+    return length;
+  }
+
+  /**
+   * Closes the file and attempts to remove it. Mapped regions remain valid until they're garbage collected.
+   */
+  void close() {
+    try {
+      channel.close();
+      raf.close();
+    } catch(IOException ignored) {
+      //Nothing more we can do. The file will be removed when the VM exits.
+    }
+    file.delete();
+  }
+
+  private static final class Segment {
+    final MappedByteBuffer buffer;
+    int live;
+
+    Segment(final MappedByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+  }
+
+  /**
+   * A written region of the file.
+   */
+  static final class Region {
+    private final Segment segment;
+    private final ByteBuffer buffer;
+
+    private Region(final Segment segment, final ByteBuffer buffer) {
+      this.segment = segment;
+      this.buffer = buffer;
+    }
+
+    /**
+     * @return A new read-only view of the region's bytes, positioned at its start.
+     */
+    ByteBuffer bytes() {
+      return buffer.duplicate();
+    }
+  }
+
+  /**
+   * A {@link ByteArrayOutputStream} that exposes its backing array to avoid copying it.
+   */
+  static final class Output extends ByteArrayOutputStream {
+    Output() {
+      super(8192);
+    }
+
+    byte[] bytes() {
+      return buf;
+    }
+  }
+
+  /**
+   * Reads the contents of a {@link ByteBuffer} as an {@link InputStream}.
+   */
+  static final class Input extends InputStream {
+    private final ByteBuffer buffer;
+
+    Input(final ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) {
+      if (len == 0)
+        return 0;
+      if (!buffer.hasRemaining())
+        return -1;
+      final int count = Math.min(len, buffer.remaining());
+      buffer.get(b, off, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
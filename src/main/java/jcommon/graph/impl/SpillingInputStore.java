@@ -0,0 +1,283 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.IProcessedValueSerializer;
+import jcommon.graph.ITopologicalSortInput;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps results on the heap until their combined estimated size exceeds a budget. At that point the
+ * least recently used are serialized to a memory-mapped temporary file and read back lazily when
+ * an out-neighbor asks for them.
+ *
+ * Serialization happens outside the store's lock so a large value never holds up other threads. A
+ * result stays readable from the heap until it has been written out and the spilled copy published.
+ *
+ * Each result is held once regardless of how many out-neighbors consume it and is released as soon as the
+ * last of them has been processed, at which point its region of the spill file becomes reusable.
+ *
+ * @see InputStore
+ * @see IProcessedValueSerializer
+ */
+final class SpillingInputStore<TValue extends Object, TProcessedValue extends Object> extends InputStore<TValue, TProcessedValue> {
+  private final Object lock = new Object();
+  //Guards the spill file, which isn't thread safe. Always taken after lock, never before it.
+  private final Object file_lock = new Object();
+  private final IProcessedValueSerializer<TProcessedValue> serializer;
+  private final long heap_budget;
+  private final File directory;
+  private final List<Map<TValue, Integer>> inputs;
+  private final Object[] values;
+  private final long[] sizes;
+  private final int[] consumers;
+  private final SpillFile.Region[] spilled;
+  //Hash code of each spilled result, taken while it was still on the heap.
+  private final int[] spilled_hashes;
+  private final LinkedHashSet<Integer> resident;
+  private long resident_bytes;
+  private SpillFile file;
+  //Set by close() while holding file_lock. Results are no longer spilled after that.
+  private boolean closed;
+  private volatile boolean spilling_failed;
+
+  SpillingInputStore(final int[] in_degrees, final IProcessedValueSerializer<TProcessedValue> serializer, final long heapBudget, final File directory) {
+    final int size = in_degrees.length;
+
+    this.serializer = serializer;
+    this.heap_budget = heapBudget;
+    this.directory = directory;
+    this.inputs = new ArrayList<Map<TValue, Integer>>(size);
+    this.values = new Object[size];
+    this.sizes = new long[size];
+    this.consumers = new int[size];
+    this.spilled = new SpillFile.Region[size];
+    this.spilled_hashes = new int[size];
+    this.resident = new LinkedHashSet<Integer>();
+    this.resident_bytes = 0L;
+    this.spilling_failed = false;
+
+    for(int i = 0; i < size; ++i) {
+      inputs.add(new HashMap<TValue, Integer>(in_degrees[i], 1.0f));
+    }
+  }
+
+  @Override
+  void produced(final int producer, final TProcessedValue result, final int consumerCount) {
+    //Ending vertices are handed directly to the async result and null needs no storage.
+    if (consumerCount == 0 || result == null)
+      return;
+
+    long size;
+    try {
+      size = serializer.sizeOf(result);
+    } catch(RuntimeException re) {
+      //A serializer that can't size values can't be trusted to write them either.
+      spilling_failed = true;
+      size = 0L;
+    }
+
+    //Pick the coldest results to evict under the lock, but write them out after releasing it. They
+    //stay on the heap, and readable, until they've been written.
+    List<Integer> victims = null;
+    synchronized (lock) {
+      values[producer] = result;
+      sizes[producer] = size;
+      consumers[producer] = consumerCount;
+      resident.add(producer);
+      resident_bytes += size;
+
+      for(Iterator<Integer> it = resident.iterator(); resident_bytes > heap_budget && !spilling_failed && it.hasNext(); ) {
+        final int victim = it.next();
+        it.remove();
+        resident_bytes -= sizes[victim];
+        if (victims == null)
+          victims = new ArrayList<Integer>(2);
+        victims.add(victim);
+      }
+    }
+
+    if (victims != null) {
+      for(int victim : victims)
+        spill(victim);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void spill(final int producer) {
+    final TProcessedValue value;
+    synchronized (lock) {
+      value = (TProcessedValue)values[producer];
+    }
+    if (value == null)
+      return;
+
+    final int hash = value.hashCode();
+    SpillFile.Region region = null;
+    if (!spilling_failed) {
+      try {
+        final SpillFile.Output buffer = new SpillFile.Output();
+        serializer.write(value, buffer);
+        synchronized (file_lock) {
+          //Tasks can outlive a sort that was abandoned, so never open a file that nothing would close.
+          if (!closed) {
+            if (file == null)
+              file = new SpillFile(directory, SpillFile.DEFAULT_SEGMENT_SIZE);
+            region = file.write(buffer);
+          }
+        }
+      } catch(IOException ioe) {
+        //Keep everything on the heap from here on out. Exceeding the budget
+        //is preferable to losing results.
+        spilling_failed = true;
+      } catch(RuntimeException re) {
+        spilling_failed = true;
+      }
+    }
+
+    synchronized (lock) {
+      if (values[producer] == null) {
+        //Every consumer finished while we were writing.
+        if (region != null)
+          release(region);
+      } else if (region == null) {
+        //Couldn't spill it so it goes back to being resident.
+        resident.add(producer);
+        resident_bytes += sizes[producer];
+      } else {
+        spilled[producer] = region;
+        spilled_hashes[producer] = hash;
+        values[producer] = null;
+      }
+    }
+  }
+
+  //Must be called while holding lock.
+  private void release(final SpillFile.Region region) {
+    synchronized (file_lock) {
+      if (file != null)
+        file.release(region);
+    }
+  }
+
+  @Override
+  void offer(final int consumer, final TValue value, final int producer, final TProcessedValue result) {
+    final Map<TValue, Integer> input = inputs.get(consumer);
+    synchronized (input) {
+      input.put(value, producer);
+    }
+  }
+
+  @Override
+  ITopologicalSortInput<TValue, TProcessedValue> inputFor(final int consumer, final int vertexId, final boolean starting) {
+    final Map<TValue, Integer> input = inputs.get(consumer);
+    synchronized (input) {
+      return new LazyTopologicalSortInput<TValue, TProcessedValue>(starting, vertexId, input, this);
+    }
+  }
+
+  /**
+   * Retrieves the result of a processed vertex, reading it back from the spill file if necessary. Every call
+   * for a spilled result deserializes it again, so callers should hold on to what they get back.
+   *
+   * @param producer The index of the processed vertex.
+   * @return The result of processing the vertex.
+   */
+  @SuppressWarnings("unchecked")
+  TProcessedValue resultOf(final int producer) {
+    final ByteBuffer buffer;
+
+    synchronized (lock) {
+      if (spilled[producer] == null) {
+        //Touch it so it's the last to be evicted.
+        if (resident.remove(producer))
+          resident.add(producer);
+        return (TProcessedValue)values[producer];
+      }
+      buffer = spilled[producer].bytes();
+    }
+
+    try {
+      return serializer.read(new SpillFile.Input(buffer));
+    } catch(IOException ioe) {
+      throw new IllegalStateException("Unable to read spilled result", ioe);
+    }
+  }
+
+  /**
+   * Gets the hash code of the result of a processed vertex without reading it back from the spill file.
+   *
+   * @param producer The index of the processed vertex.
+   * @return The hash code of the result, or 0 if it's <code>null</code>.
+   */
+  int hashOf(final int producer) {
+    final Object value;
+    synchronized (lock) {
+      if (spilled[producer] != null)
+        return spilled_hashes[producer];
+      value = values[producer];
+    }
+    return (value != null) ? value.hashCode() : 0;
+  }
+
+  @Override
+  void consumed(final int consumer) {
+    final Map<TValue, Integer> input = inputs.get(consumer);
+    synchronized (input) {
+      synchronized (lock) {
+        for(Iterator<Integer> it = input.values().iterator(); it.hasNext(); ) {
+          final int producer = it.next();
+          if (--consumers[producer] <= 0) {
+            if (resident.remove(producer))
+              resident_bytes -= sizes[producer];
+            values[producer] = null;
+            if (spilled[producer] != null) {
+              release(spilled[producer]);
+              spilled[producer] = null;
+            }
+          }
+        }
+      }
+      input.clear();
+    }
+  }
+
+  @Override
+  void close() {
+    synchronized (lock) {
+      synchronized (file_lock) {
+        closed = true;
+        if (file != null) {
+          file.close();
+          file = null;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.IAdjacencyList;
+import jcommon.graph.IVertex;
+
+/**
+ * A topological order expressed as a permutation of the indices of an {@link IAdjacencyList}. The order array
+ * holds the index of the vertex at each position, and the rank array is its inverse, holding the position of
+ * the vertex at each index. Both are indexed the same way as {@link IAdjacencyList#pairAt(int)}, so
+ * precedence checks are a pair of array reads once a vertex's index is known.
+ *
+ * Instances don't copy the arrays they're given, nor the adjacency list, and neither should be modified
+ * afterwards.
+ *
+ * @see TopologicalSortContext#sortOrder(IAdjacencyList)
+ */
+public final class TopologicalOrder<TVertex extends IVertex<TValue>, TValue extends Object> {
+  private final IAdjacencyList<TVertex, TValue, ?> adjacency_list;
+  private final int[] order;
+  private final int[] ranks;
+
+  TopologicalOrder(final IAdjacencyList<TVertex, TValue, ?> adjacencyList, final int[] order, final int[] ranks) {
+    this.adjacency_list = adjacencyList;
+    this.order = order;
+    this.ranks = ranks;
+  }
+
+  /**
+   * @return The adjacency list whose indices this order refers to.
+   */
+  public IAdjacencyList<TVertex, TValue, ?> getAdjacencyList() {
+    return adjacency_list;
+  }
+
+  /**
+   * @return The number of vertices in the order.
+   */
+  public int size() {
+    return order.length;
+  }
+
+  /**
+   * Provides the index of the vertex at each position of the order. The array is not copied.
+   *
+   * @return An array where <code>order[position]</code> is the index of a vertex in the adjacency list.
+   */
+  public int[] getOrder() {
+    return order;
+  }
+
+  /**
+   * Provides the position of each vertex in the order. The array is not copied.
+   *
+   * @return An array where <code>ranks[index]</code> is the position of the vertex at that index in the
+   *         adjacency list.
+   */
+  public int[] getRanks() {
+    return ranks;
+  }
+
+  /**
+   * @param position A position in the order, from <code>0</code> up to {@link #size()}.
+   * @return The index of the vertex at that position.
+   */
+  public int indexAt(final int position) {
+    return order[position];
+  }
+
+  /**
+   * @param position A position in the order, from <code>0</code> up to {@link #size()}.
+   * @return The vertex at that position.
+   */
+  public TVertex vertexAt(final int position) {
+    return adjacency_list.pairAt(order[position]).getVertex();
+  }
+
+  /**
+   * @param index The index of a vertex in the adjacency list.
+   * @return The position of the vertex in the order.
+   */
+  public int rankAt(final int index) {
+    return ranks[index];
+  }
+
+  /**
+   * Looks the vertex up with {@link IAdjacencyList#indexOf(IVertex)}.
+   *
+   * @param vertex The vertex whose position is wanted.
+   * @return The position of the vertex in the order, or <code>-1</code> if it's not in the adjacency list.
+   */
+  public int rankOf(final TVertex vertex) {
+    final int index = adjacency_list.indexOf(vertex);
+    return (index >= 0) ? ranks[index] : -1;
+  }
+
+  /**
+   * @param fromIndex The index of a vertex in the adjacency list.
+   * @param toIndex The index of another vertex in the adjacency list.
+   * @return <code>true</code> if the vertex at <code>fromIndex</code> comes before the one at
+   *         <code>toIndex</code> in the order.
+   */
+  public boolean precedesAt(final int fromIndex, final int toIndex) {
+    return ranks[fromIndex] < ranks[toIndex];
+  }
+
+  /**
+   * Checks whether one vertex comes before another in the order. A vertex that precedes another doesn't
+   * necessarily have a path to it, but a vertex that doesn't precede another can never have one.
+   *
+   * @param from A vertex in the adjacency list.
+   * @param to Another vertex in the adjacency list.
+   * @return <code>true</code> if <code>from</code> comes before <code>to</code> in the order.
+   * @throws IllegalArgumentException Thrown if either vertex is not in the adjacency list.
+   */
+  public boolean precedes(final TVertex from, final TVertex to) {
+    final int from_index = adjacency_list.indexOf(from);
+    if (from_index < 0)
+      throw new IllegalArgumentException("from must be a vertex of the adjacency list");
+    final int to_index = adjacency_list.indexOf(to);
+    if (to_index < 0)
+      throw new IllegalArgumentException("to must be a vertex of the adjacency list");
+    return ranks[from_index] < ranks[to_index];
+  }
+}
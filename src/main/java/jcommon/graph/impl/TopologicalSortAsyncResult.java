@@ -34,9 +34,12 @@ final class TopologicalSortAsyncResult<TValue extends Object, TProcessedValue ex
   private final Object lock = new Object();
   private final ExecutorService executor;
   private final CountDownLatch latch;
-  private boolean done;
-  private boolean successful;
-  private boolean discontinue_processing;
+
+  //Read without holding the lock (e.g. polling isDone() from another thread), so these
+  //must be volatile. results is published by the write to done that follows it.
+  private volatile boolean done;
+  private volatile boolean successful;
+  private volatile boolean discontinue_processing;
   private Map<TValue, TProcessedValue> results;
 
   public TopologicalSortAsyncResult(final ExecutorService executor) {
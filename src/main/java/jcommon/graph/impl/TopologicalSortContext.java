@@ -0,0 +1,311 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.CyclicGraphException;
+import jcommon.graph.DirectedAcyclicGraph;
+import jcommon.graph.IAdjacencyList;
+import jcommon.graph.IEdge;
+import jcommon.graph.ITopologicalSortStrategy;
+import jcommon.graph.IVertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Scratch space for topological sorts that is kept between calls so that sorting allocates little more than
+ * the returned list. The arrays grow to fit the largest graph sorted and are then reused.
+ *
+ * When the same {@link IAdjacencyList} is sorted again, its out-neighbors and in-degrees are reused as well,
+ * so sorting it with {@link #sort(IAdjacencyList)} or {@link #sort(IAdjacencyList, List)} allocates nothing at
+ * all. The context keeps a reference to the last adjacency list it sorted until {@link #release()} is called or
+ * another graph is sorted.
+ *
+ * Sorts produce the same order as {@link SimpleTopologicalSort#sort(IAdjacencyList)}. The order can also be
+ * produced as indices into the adjacency list with {@link #sortOrder(IAdjacencyList)} or
+ * {@link #sortIndices(IAdjacencyList, int[], int[])}, which don't touch the vertices at all.
+ *
+ * Instances are not thread safe. Keep one per thread, as {@link BatchTopologicalSort} does.
+ */
+public class TopologicalSortContext {
+  private static final int[] EMPTY = new int[0];
+  private static final Object[] NO_VERTICES = new Object[0];
+
+  private int[] position_by_id = EMPTY;
+  private int[] offsets = EMPTY;
+  private int[] targets = EMPTY;
+  private int[] in_degrees = EMPTY;
+  private int[] base_in_degrees = EMPTY;
+  private int[] queue = EMPTY;
+  private Object[] vertices = NO_VERTICES;
+  private final ArrayList<Object> output = new ArrayList<Object>();
+
+  //The adjacency list whose rows and in-degrees are currently loaded, if any.
+  private IAdjacencyList<?, ?, ?> loaded;
+  private int loaded_size;
+
+  /**
+   * Topologically sorts an {@link IAdjacencyList} into a list owned by this context. The list is cleared and
+   * refilled by the next call to this method, so copy it if it's needed for longer.
+   *
+   * @param adjacencyList The adjacency list to sort.
+   * @return A topologically sorted list of the values of the vertices, owned by this context.
+   * @throws CyclicGraphException Thrown if a cycle is detected during the sort.
+   */
+  @SuppressWarnings("unchecked")
+  public <TVertex extends IVertex<TValue>, TValue extends Object> List<TValue> sort(final IAdjacencyList<TVertex, TValue, ?> adjacencyList) throws CyclicGraphException {
+    output.clear();
+    try {
+      sort(adjacencyList, (List<TValue>)(List<?>)output);
+    } catch(CyclicGraphException e) {
+      output.clear();
+      throw e;
+    }
+    return (List<TValue>)(List<?>)output;
+  }
+
+  /**
+   * Topologically sorts an {@link IAdjacencyList}, appending the values of its vertices to a list provided by
+   * the caller.
+   *
+   * @param adjacencyList The adjacency list to sort.
+   * @param output The list to append the sorted values to. It's left partially filled if there's a cycle.
+   * @throws CyclicGraphException Thrown if a cycle is detected during the sort.
+   */
+  public <TVertex extends IVertex<TValue>, TValue extends Object> void sort(final IAdjacencyList<TVertex, TValue, ?> adjacencyList, final List<? super TValue> output) throws CyclicGraphException {
+    if (adjacencyList == null)
+      throw new IllegalArgumentException("adjacencyList cannot be null");
+    if (output == null)
+      throw new IllegalArgumentException("output cannot be null");
+
+    if (loaded != adjacencyList)
+      load(adjacencyList);
+    System.arraycopy(base_in_degrees, 0, in_degrees, 0, loaded_size);
+    sortRows(loaded_size, output);
+  }
+
+  /**
+   * Topologically sorts an {@link IAdjacencyList} into newly allocated order and rank arrays.
+   *
+   * @param adjacencyList The adjacency list to sort.
+   * @return The {@link TopologicalOrder} of the adjacency list's indices.
+   * @throws CyclicGraphException Thrown if a cycle is detected during the sort.
+   */
+  public <TVertex extends IVertex<TValue>, TValue extends Object> TopologicalOrder<TVertex, TValue> sortOrder(final IAdjacencyList<TVertex, TValue, ?> adjacencyList) throws CyclicGraphException {
+    if (adjacencyList == null)
+      throw new IllegalArgumentException("adjacencyList cannot be null");
+
+    final int n = adjacencyList.size();
+    final int[] order = new int[n];
+    final int[] ranks = new int[n];
+    sortIndices(adjacencyList, order, ranks);
+    return new TopologicalOrder<TVertex, TValue>(adjacencyList, order, ranks);
+  }
+
+  /**
+   * Topologically sorts an {@link IAdjacencyList} into arrays provided by the caller, so that repeated sorts
+   * allocate nothing. Either array may be <code>null</code> if it's not wanted.
+   *
+   * @param adjacencyList The adjacency list to sort.
+   * @param order Receives the index of the vertex at each position of the order. Must hold at least
+   *              {@link IAdjacencyList#size()} entries.
+   * @param ranks Receives the position in the order of the vertex at each index. Must hold at least
+   *              {@link IAdjacencyList#size()} entries.
+   * @return The number of vertices sorted.
+   * @throws CyclicGraphException Thrown if a cycle is detected during the sort, in which case the arrays are
+   *                              left untouched.
+   */
+  public <TVertex extends IVertex<TValue>, TValue extends Object> int sortIndices(final IAdjacencyList<TVertex, TValue, ?> adjacencyList, final int[] order, final int[] ranks) throws CyclicGraphException {
+    if (adjacencyList == null)
+      throw new IllegalArgumentException("adjacencyList cannot be null");
+    final int n = adjacencyList.size();
+    if (order != null && order.length < n)
+      throw new IllegalArgumentException("order must hold at least " + n + " entries");
+    if (ranks != null && ranks.length < n)
+      throw new IllegalArgumentException("ranks must hold at least " + n + " entries");
+
+    if (loaded != adjacencyList)
+      load(adjacencyList);
+    System.arraycopy(base_in_degrees, 0, in_degrees, 0, n);
+    if (orderRows(n) != n)
+      throw new CyclicGraphException(ITopologicalSortStrategy.STANDARD_CYCLE_MESSAGE);
+
+    if (order != null)
+      System.arraycopy(queue, 0, order, 0, n);
+    if (ranks != null) {
+      for(int i = 0; i < n; ++i)
+        ranks[queue[i]] = i;
+    }
+    return n;
+  }
+
+  /**
+   * Drops the reference to the last adjacency list sorted, along with its vertices, so that they can be garbage
+   * collected. The scratch arrays are kept.
+   */
+  public void release() {
+    if (loaded != null)
+      Arrays.fill(vertices, 0, loaded_size, null);
+    loaded = null;
+    loaded_size = 0;
+    output.clear();
+    output.trimToSize();
+  }
+
+  private <TVertex extends IVertex<TValue>, TValue extends Object> void load(final IAdjacencyList<TVertex, TValue, ?> adjacencyList) {
+    release();
+
+    final int n = adjacencyList.size();
+    int m = 0;
+    for(int i = 0; i < n; ++i)
+      m += adjacencyList.outNeighborsAt(i).size();
+    ensureCapacity(n, m, 0);
+
+    //Out-neighbors that aren't part of the adjacency list aren't counted, just as in calculateInDegrees().
+    Arrays.fill(base_in_degrees, 0, n, 0);
+    int k = 0;
+    for(int i = 0; i < n; ++i) {
+      offsets[i] = k;
+      vertices[i] = adjacencyList.pairAt(i).getVertex();
+      final List<TVertex> out_neighbors = adjacencyList.outNeighborsAt(i);
+      for(int j = 0; j < out_neighbors.size(); ++j) {
+        final int t = adjacencyList.indexOf(out_neighbors.get(j));
+        if (t >= 0) {
+          targets[k++] = t;
+          ++base_in_degrees[t];
+        }
+      }
+    }
+    offsets[n] = k;
+
+    loaded = adjacencyList;
+    loaded_size = n;
+  }
+
+  /**
+   * Topologically sorts a {@link DirectedAcyclicGraph} straight from its vertices and edges, using the graph's
+   * vertex ids instead of building an {@link AdjacencyList}.
+   *
+   * @param graph The graph to sort.
+   * @return A topologically sorted list of the values of the graph's vertices.
+   * @throws CyclicGraphException Thrown if a cycle is detected during the sort.
+   * @throws IllegalStateException Thrown if the graph is invalid.
+   */
+  public <TVertex extends IVertex<TValue>, TValue extends Object> List<TValue> sort(final DirectedAcyclicGraph<TVertex, TValue, ?> graph) throws CyclicGraphException {
+    if (graph == null)
+      throw new IllegalArgumentException("graph cannot be null");
+    if (!graph.validate())
+      throw new IllegalStateException("The graph is invalid. Please confirm that all vertices are present for every relationship.");
+
+    release();
+    final Set<TVertex> graph_vertices = graph.getVertices();
+    final Set<IEdge<TVertex>> graph_edges = graph.getEdges();
+    final int n = graph_vertices.size();
+    final int m = graph_edges.size();
+    ensureCapacity(n, m, graph.getIdBound());
+
+    try {
+      //Number the vertices by their position so that the order matches an adjacency list's.
+      int p = 0;
+      for(TVertex v : graph_vertices) {
+        position_by_id[graph.idOf(v)] = p;
+        vertices[p++] = v;
+      }
+
+      //Lay the out-neighbors out as compressed rows, keeping each source's edges in order. The queue
+      //serves as the per-row write cursor until the sort itself starts.
+      Arrays.fill(offsets, 0, n + 1, 0);
+      Arrays.fill(in_degrees, 0, n, 0);
+      for(IEdge<TVertex> e : graph_edges)
+        ++offsets[position_by_id[graph.idOf(e.getFrom())] + 1];
+      for(int i = 0; i < n; ++i) {
+        offsets[i + 1] += offsets[i];
+        queue[i] = offsets[i];
+      }
+      for(IEdge<TVertex> e : graph_edges) {
+        final int to = position_by_id[graph.idOf(e.getTo())];
+        targets[queue[position_by_id[graph.idOf(e.getFrom())]]++] = to;
+        ++in_degrees[to];
+      }
+
+      final List<TValue> result = new ArrayList<TValue>(n);
+      sortRows(n, result);
+      return result;
+    } finally {
+      //Don't hold on to the graph's vertices.
+      Arrays.fill(vertices, 0, n, null);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private <TValue extends Object> void sortRows(final int n, final List<? super TValue> output) throws CyclicGraphException {
+    final int sorted = orderRows(n);
+    for(int i = 0; i < sorted; ++i)
+      output.add(((IVertex<TValue>)vertices[queue[i]]).get());
+
+    if (sorted != n)
+      throw new CyclicGraphException(ITopologicalSortStrategy.STANDARD_CYCLE_MESSAGE);
+  }
+
+  /**
+   * Runs Kahn's algorithm over the loaded rows, leaving the order in the first entries of the queue.
+   *
+   * @return The number of vertices ordered, which is less than <code>n</code> if there's a cycle.
+   */
+  private int orderRows(final int n) {
+    int head = 0;
+    int tail = 0;
+    for(int i = 0; i < n; ++i) {
+      if (in_degrees[i] == 0)
+        queue[tail++] = i;
+    }
+
+    while(head < tail) {
+      final int v = queue[head++];
+      for(int j = offsets[v]; j < offsets[v + 1]; ++j) {
+        final int t = targets[j];
+        if (--in_degrees[t] == 0)
+          queue[tail++] = t;
+      }
+    }
+    return tail;
+  }
+
+  private void ensureCapacity(final int n, final int m, final int idBound) {
+    if (position_by_id.length < idBound)
+      position_by_id = new int[grow(idBound)];
+    if (offsets.length < n + 1) {
+      final int size = grow(n);
+      vertices = new Object[size];
+      in_degrees = new int[size];
+      base_in_degrees = new int[size];
+      queue = new int[size];
+      offsets = new int[size + 1];
+    }
+    if (targets.length < m)
+      targets = new int[grow(m)];
+  }
+
+  private static int grow(final int size) {
+    return (int)Math.min(Integer.MAX_VALUE - 8, size + (size >> 1) + 16L);
+  }
+}
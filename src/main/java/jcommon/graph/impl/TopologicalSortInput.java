@@ -31,19 +31,32 @@ import java.util.Set;
  */
 public class TopologicalSortInput<TValue extends Object, TProcessedValue extends Object> implements ITopologicalSortInput<TValue, TProcessedValue> {
   private final boolean starting;
+  private final int vertex_id;
   private final Map<TValue, TProcessedValue> inputs;
 
   /**
-   * Instantiates a new instance of {@link TopologicalSortInput}.
+   * Instantiates a new instance of {@link TopologicalSortInput} whose vertex id isn't known.
    *
    * @param inputs An instance of a {@link Map} that maps between a value and the output from
    *               processing it.
    */
   public TopologicalSortInput(final boolean starting, final Map<TValue, TProcessedValue> inputs) {
+    this(starting, -1, inputs);
+  }
+
+  /**
+   * Instantiates a new instance of {@link TopologicalSortInput}.
+   *
+   * @param vertexId The id of the vertex being processed.
+   * @param inputs An instance of a {@link Map} that maps between a value and the output from
+   *               processing it.
+   */
+  public TopologicalSortInput(final boolean starting, final int vertexId, final Map<TValue, TProcessedValue> inputs) {
     if (inputs == null)
       throw new IllegalArgumentException("inputs cannot be empty");
 
     this.starting = starting;
+    this.vertex_id = vertexId;
 
     //Make a read-only copy of the map.
     this.inputs = Collections.unmodifiableMap(new HashMap<TValue, TProcessedValue>(inputs));
@@ -57,6 +70,14 @@ public class TopologicalSortInput<TValue extends Object, TProcessedValue extends
     return starting;
   }
 
+  /**
+   * @see ITopologicalSortInput#getVertexId()
+   */
+  @Override
+  public int getVertexId() {
+    return vertex_id;
+  }
+
   /**
    * @see ITopologicalSortInput#isEmpty()
    */
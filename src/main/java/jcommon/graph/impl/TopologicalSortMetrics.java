@@ -0,0 +1,227 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.ITopologicalSortInput;
+import jcommon.graph.ITopologicalSortListener;
+import jcommon.graph.IVertex;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link ITopologicalSortListener} that records how long vertices wait for a thread and how long their callbacks
+ * take, how many vertices are ready or running at once, and how busy the executor was kept.
+ *
+ * A single instance may be shared by many sorts, including ones running concurrently. Values accumulate until a new
+ * instance is created.
+ *
+ * @see SimpleTopologicalSort#setListener(ITopologicalSortListener)
+ */
+public class TopologicalSortMetrics<TValue extends Object, TProcessedValue extends Object> implements ITopologicalSortListener<TValue, TProcessedValue> {
+  private final LatencyHistogram wait_latency = new LatencyHistogram();
+  private final LatencyHistogram run_latency = new LatencyHistogram();
+  private final AtomicInteger ready = new AtomicInteger(0);
+  private final AtomicInteger running = new AtomicInteger(0);
+  private final AtomicInteger max_ready = new AtomicInteger(0);
+  private final AtomicInteger max_running = new AtomicInteger(0);
+  private final AtomicLong failed = new AtomicLong(0L);
+  private final AtomicLong rejected = new AtomicLong(0L);
+  private final Object lock = new Object();
+  private int active_sorts;
+  private long sorts;
+  private long successful_sorts;
+  private long active_since;
+  private long elapsed_nanos;
+
+  /**
+   * Instantiates a new instance of {@link TopologicalSortMetrics}.
+   */
+  public TopologicalSortMetrics() {
+  }
+
+  @Override
+  public void sortStarted(final int size) {
+    synchronized (lock) {
+      if (active_sorts++ == 0)
+        active_since = System.nanoTime();
+      ++sorts;
+    }
+  }
+
+  @Override
+  public void vertexReady(final TValue value, final IVertex<TValue> vertex) {
+    updateMax(max_ready, ready.incrementAndGet());
+  }
+
+  @Override
+  public void vertexRejected(final TValue value, final IVertex<TValue> vertex) {
+    ready.decrementAndGet();
+    rejected.incrementAndGet();
+  }
+
+  @Override
+  public void vertexStarted(final TValue value, final IVertex<TValue> vertex, final ITopologicalSortInput<TValue, TProcessedValue> input, final long waitNanos) {
+    ready.decrementAndGet();
+    updateMax(max_running, running.incrementAndGet());
+    wait_latency.record(waitNanos);
+  }
+
+  @Override
+  public void vertexFinished(final TValue value, final IVertex<TValue> vertex, final long elapsedNanos) {
+    running.decrementAndGet();
+    run_latency.record(elapsedNanos);
+  }
+
+  @Override
+  public void vertexFailed(final TValue value, final IVertex<TValue> vertex, final Throwable t, final long elapsedNanos) {
+    running.decrementAndGet();
+    run_latency.record(elapsedNanos);
+    failed.incrementAndGet();
+  }
+
+  @Override
+  public void sortCompleted(final boolean successful) {
+    synchronized (lock) {
+      if (--active_sorts == 0)
+        elapsed_nanos += System.nanoTime() - active_since;
+      if (successful)
+        ++successful_sorts;
+    }
+  }
+
+  private static void updateMax(final AtomicInteger max, final int value) {
+    int current;
+    while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+      //Retry until we've set it or someone else has set a larger value.
+    }
+  }
+
+  /**
+   * @return The {@link LatencyHistogram} of the time vertices spent waiting for a thread after becoming ready.
+   */
+  public LatencyHistogram getWaitLatency() {
+    return wait_latency;
+  }
+
+  /**
+   * @return The {@link LatencyHistogram} of the time spent in callbacks.
+   */
+  public LatencyHistogram getRunLatency() {
+    return run_latency;
+  }
+
+  /**
+   * @return The number of vertices that became ready but were rejected by the executor.
+   */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  /**
+   * @return The number of vertices that are currently ready but have not yet started.
+   */
+  public int getReadyQueueDepth() {
+    return ready.get();
+  }
+
+  /**
+   * @return The largest number of vertices that were ready but not yet started at the same time.
+   */
+  public int getMaxReadyQueueDepth() {
+    return max_ready.get();
+  }
+
+  /**
+   * @return The number of callbacks currently running.
+   */
+  public int getRunning() {
+    return running.get();
+  }
+
+  /**
+   * @return The largest number of callbacks that ran at the same time.
+   */
+  public int getMaxRunning() {
+    return max_running.get();
+  }
+
+  /**
+   * @return The number of callbacks that threw an exception.
+   */
+  public long getFailedCount() {
+    return failed.get();
+  }
+
+  /**
+   * @return The number of sorts that have started.
+   */
+  public long getSortCount() {
+    synchronized (lock) {
+      return sorts;
+    }
+  }
+
+  /**
+   * @return The number of sorts that completed successfully.
+   */
+  public long getSuccessfulSortCount() {
+    synchronized (lock) {
+      return successful_sorts;
+    }
+  }
+
+  /**
+   * @return The wall-clock nanoseconds during which at least one sort was in progress.
+   */
+  public long getElapsedNanos() {
+    synchronized (lock) {
+      return (active_sorts > 0) ? elapsed_nanos + (System.nanoTime() - active_since) : elapsed_nanos;
+    }
+  }
+
+  /**
+   * @return The average number of callbacks running at once while a sort was in progress.
+   */
+  public double getAverageConcurrency() {
+    final long elapsed = getElapsedNanos();
+    return (elapsed > 0L) ? (double)run_latency.getTotalNanos() / (double)elapsed : 0.0;
+  }
+
+  /**
+   * Calculates the fraction of the executor's threads kept busy running callbacks while a sort was in progress.
+   *
+   * @param threads The number of threads available to the {@link java.util.concurrent.ExecutorService}.
+   * @return A value between <code>0.0</code> and <code>1.0</code>.
+   */
+  public double getUtilization(final int threads) {
+    if (threads <= 0)
+      throw new IllegalArgumentException("threads must be greater than zero");
+    return Math.min(1.0, getAverageConcurrency() / threads);
+  }
+
+  /**
+   * @see Object#toString()
+   */
+  @Override
+  public String toString() {
+    return "wait: [" + wait_latency + "], run: [" + run_latency + "], max ready: " + getMaxReadyQueueDepth() + ", max running: " + getMaxRunning() + ", failed: " + getFailedCount() + ", average concurrency: " + getAverageConcurrency();
+  }
+}
@@ -0,0 +1,199 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.ITopologicalSortInput;
+import jcommon.graph.ITopologicalSortListener;
+import jcommon.graph.IVertex;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * An {@link ITopologicalSortListener} that records when and on which thread every vertex was processed, how long
+ * it waited for a thread and which in-neighbors it depended on. The recording can then be written in the Chrome
+ * trace-event JSON format and opened in <code>chrome://tracing</code> or
+ * <a href="https://ui.perfetto.dev/">https://ui.perfetto.dev/</a> to find stalls along the critical path and
+ * periods of poor parallelism.
+ *
+ * Each vertex is drawn as a slice on the track of the thread that processed it, with arrows from the slices of its
+ * in-neighbors. Times are relative to the creation of the recorder. Use a new instance for each sort.
+ *
+ * @see SimpleTopologicalSort#setListener(ITopologicalSortListener)
+ */
+public class TopologicalSortTraceRecorder<TValue extends Object, TProcessedValue extends Object> implements ITopologicalSortListener<TValue, TProcessedValue> {
+  private static final int PID = 1;
+  private static final String CATEGORY = "jcommon.graph";
+
+  private final long origin = System.nanoTime();
+  private final ThreadLocal<Span> running = new ThreadLocal<Span>();
+  private final Queue<Span> spans = new ConcurrentLinkedQueue<Span>();
+  private final Map<Long, String> threads = new ConcurrentHashMap<Long, String>();
+
+  /**
+   * Instantiates a new instance of {@link TopologicalSortTraceRecorder}.
+   */
+  public TopologicalSortTraceRecorder() {
+  }
+
+  @Override
+  public void sortStarted(final int size) {
+  }
+
+  @Override
+  public void vertexReady(final TValue value, final IVertex<TValue> vertex) {
+  }
+
+  @Override
+  public void vertexRejected(final TValue value, final IVertex<TValue> vertex) {
+  }
+
+  @Override
+  public void vertexStarted(final TValue value, final IVertex<TValue> vertex, final ITopologicalSortInput<TValue, TProcessedValue> input, final long waitNanos) {
+    final Thread thread = Thread.currentThread();
+    final long tid = thread.getId();
+    if (!threads.containsKey(tid))
+      threads.put(tid, thread.getName());
+
+    running.set(new Span(value, input.values().toArray(), tid, System.nanoTime() - origin, waitNanos));
+  }
+
+  @Override
+  public void vertexFinished(final TValue value, final IVertex<TValue> vertex, final long elapsedNanos) {
+    finish(true);
+  }
+
+  @Override
+  public void vertexFailed(final TValue value, final IVertex<TValue> vertex, final Throwable t, final long elapsedNanos) {
+    finish(false);
+  }
+
+  private void finish(final boolean successful) {
+    final Span span = running.get();
+    if (span == null)
+      return;
+    running.remove();
+    span.end = System.nanoTime() - origin;
+    span.successful = successful;
+    spans.add(span);
+  }
+
+  @Override
+  public void sortCompleted(final boolean successful) {
+  }
+
+  /**
+   * @return The number of vertices recorded so far.
+   */
+  public int size() {
+    return spans.size();
+  }
+
+  /**
+   * Writes the recording to a file as UTF-8 encoded JSON.
+   *
+   * @param file The {@link File} to create or overwrite.
+   * @throws IOException Thrown if the file cannot be written.
+   */
+  public void write(final File file) throws IOException {
+    final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 64 * 1024);
+    try {
+      write(writer);
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Streams the recording as JSON to the provided {@link Writer}. The writer is flushed but not closed.
+   *
+   * @param writer The {@link Writer} to write to.
+   * @throws IOException Thrown if the writer throws.
+   */
+  public void write(final Writer writer) throws IOException {
+    final TraceEventWriter trace = new TraceEventWriter(writer);
+    final Map<Object, Span> by_value = new HashMap<Object, Span>(spans.size());
+    for(Span span : spans)
+      by_value.put(span.value, span);
+
+    trace.begin();
+
+    for(Map.Entry<Long, String> e : threads.entrySet())
+      trace.threadName(PID, e.getKey(), e.getValue());
+
+    long flow_id = 0L;
+    for(Span span : spans) {
+      trace.complete(String.valueOf(span.value), CATEGORY, span.start, span.end - span.start, PID, span.tid, span.args());
+
+      //Draw an arrow from the end of each in-neighbor to the start of this vertex.
+      for(Object predecessor : span.predecessors) {
+        final Span from = by_value.get(predecessor);
+        if (from == null)
+          continue;
+        ++flow_id;
+        trace.flow(true, flow_id, CATEGORY, Math.max(from.start, from.end - 1L), PID, from.tid);
+        trace.flow(false, flow_id, CATEGORY, span.start, PID, span.tid);
+      }
+    }
+
+    trace.end();
+  }
+
+  private static final class Span {
+    final Object value;
+    final Object[] predecessors;
+    final long tid;
+    final long start;
+    final long wait;
+    long end;
+    boolean successful;
+
+    Span(final Object value, final Object[] predecessors, final long tid, final long start, final long wait) {
+      this.value = value;
+      this.predecessors = predecessors;
+      this.tid = tid;
+      this.start = start;
+      this.wait = wait;
+    }
+
+    String args() {
+      final StringBuilder sb = new StringBuilder(64);
+      sb.append("{\"wait_us\":").append(wait / 1000L);
+      sb.append(",\"successful\":").append(successful);
+      sb.append(",\"inputs\":[");
+      for(int i = 0; i < predecessors.length; ++i) {
+        if (i > 0)
+          sb.append(',');
+        sb.append(TraceEventWriter.quote(String.valueOf(predecessors[i])));
+      }
+      sb.append("]}");
+      return sb.toString();
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streams events in the Chrome trace-event JSON format to a {@link Writer} one at a time. The output can be
+ * loaded into <code>chrome://tracing</code> or <a href="https://ui.perfetto.dev/">https://ui.perfetto.dev/</a>.
+ *
+ * Timestamps and durations are provided in nanoseconds and written as fractional microseconds. Not thread safe.
+ *
+ * @see <a href="https://docs.google.com/document/d/1CvAClvFfyA5R-PhYUmn5OOQtYMH4h6I0nSsKchNAySU">Trace Event Format</a>
+ */
+final class TraceEventWriter {
+  private final Writer writer;
+  private boolean first;
+
+  TraceEventWriter(final Writer writer) {
+    this.writer = writer;
+    this.first = true;
+  }
+
+  void begin() throws IOException {
+    writer.write("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[");
+  }
+
+  void end() throws IOException {
+    writer.write("\n]}\n");
+    writer.flush();
+  }
+
+  /**
+   * Writes a metadata event naming a thread.
+   */
+  void threadName(final int pid, final long tid, final String name) throws IOException {
+    next();
+    writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":");
+    writer.write(Integer.toString(pid));
+    writer.write(",\"tid\":");
+    writer.write(Long.toString(tid));
+    writer.write(",\"args\":{\"name\":");
+    string(name);
+    writer.write("}}");
+  }
+
+  /**
+   * Writes a complete ("X") event. The args are written as-is and must already be a valid JSON object or
+   * <code>null</code>.
+   */
+  void complete(final String name, final String category, final long tsNanos, final long durNanos, final int pid, final long tid, final String args) throws IOException {
+    next();
+    writer.write("{\"name\":");
+    string(name);
+    writer.write(",\"cat\":");
+    string(category);
+    writer.write(",\"ph\":\"X\",\"ts\":");
+    micros(tsNanos);
+    writer.write(",\"dur\":");
+    micros(durNanos);
+    writer.write(",\"pid\":");
+    writer.write(Integer.toString(pid));
+    writer.write(",\"tid\":");
+    writer.write(Long.toString(tid));
+    if (args != null) {
+      writer.write(",\"args\":");
+      writer.write(args);
+    }
+    writer.write('}');
+  }
+
+  /**
+   * Writes one end of a flow arrow. The start ("s") is bound to the enclosing slice at its timestamp and the
+   * finish ("f") to the slice that begins at its timestamp.
+   */
+  void flow(final boolean start, final long id, final String category, final long tsNanos, final int pid, final long tid) throws IOException {
+    next();
+    writer.write("{\"name\":\"dependency\",\"cat\":");
+    string(category);
+    writer.write(start ? ",\"ph\":\"s\"" : ",\"ph\":\"f\",\"bp\":\"e\"");
+    writer.write(",\"id\":");
+    writer.write(Long.toString(id));
+    writer.write(",\"ts\":");
+    micros(tsNanos);
+    writer.write(",\"pid\":");
+    writer.write(Integer.toString(pid));
+    writer.write(",\"tid\":");
+    writer.write(Long.toString(tid));
+    writer.write('}');
+  }
+
+  private void next() throws IOException {
+    writer.write(first ? "\n" : ",\n");
+    first = false;
+  }
+
+  private void micros(final long nanos) throws IOException {
+    final long value = Math.max(0L, nanos);
+    final long fraction = value % 1000L;
+    writer.write(Long.toString(value / 1000L));
+    writer.write('.');
+    if (fraction < 100L)
+      writer.write('0');
+    if (fraction < 10L)
+      writer.write('0');
+    writer.write(Long.toString(fraction));
+  }
+
+  private void string(final String value) throws IOException {
+    writer.write(quote(value));
+  }
+
+  /**
+   * Produces a quoted and escaped JSON string.
+   */
+  static String quote(final String value) {
+    if (value == null)
+      return "null";
+
+    final StringBuilder sb = new StringBuilder(value.length() + 2);
+    sb.append('"');
+    for(int i = 0; i < value.length(); ++i) {
+      final char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            final String hex = Integer.toHexString(c);
+            sb.append("\\u");
+            for(int j = hex.length(); j < 4; ++j)
+              sb.append('0');
+            sb.append(hex);
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+    sb.append('"');
+    return sb.toString();
+  }
+}
@@ -0,0 +1,161 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.CyclicGraphException;
+import jcommon.graph.IAdjacencyList;
+import jcommon.graph.IEdge;
+import jcommon.graph.IVertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the edges of a directed acyclic graph that are implied by other paths. An edge from <code>A</code> to
+ * <code>C</code> is redundant when <code>C</code> can also be reached from another out-neighbor of
+ * <code>A</code>, as in <code>A&rarr;B&rarr;C</code>. Removing every redundant edge leaves the transitive
+ * reduction, which has the same reachability, and therefore the same valid orders, as the original graph.
+ *
+ * The search is driven by a {@link ReachabilityIndex}, so each vertex only compares its own out-neighbors
+ * against each other. That makes it quick for sparse graphs, where out-degrees are small, but it still visits
+ * every edge and builds the index, so it takes time proportional to the edges times the length of the index's
+ * bitsets.
+ *
+ * @see jcommon.graph.IGraph#transitiveReduction()
+ */
+public final class TransitiveReduction {
+  private TransitiveReduction() {
+  }
+
+  /**
+   * Finds the redundant edges of an {@link IAdjacencyList}.
+   *
+   * @param adjacencyList The adjacency list to search.
+   * @return The redundant edges, grouped by source in the order of the adjacency list.
+   * @throws CyclicGraphException Thrown if the graph has a cycle.
+   */
+  public static <TVertex extends IVertex<TValue>, TValue extends Object> List<IEdge<TVertex>> redundantEdges(final IAdjacencyList<TVertex, TValue, ?> adjacencyList) throws CyclicGraphException {
+    final Redundancy redundancy = find(adjacencyList);
+    final List<IEdge<TVertex>> result = new ArrayList<IEdge<TVertex>>();
+    for(int r = 0; r < redundancy.rows.length; ++r) {
+      final TVertex from = adjacencyList.pairAt(redundancy.rows[r]).getVertex();
+      final List<TVertex> out_neighbors = adjacencyList.outNeighborsAt(redundancy.rows[r]);
+      for(int position : redundancy.positions[r])
+        result.add(new Edge<TVertex>(from, out_neighbors.get(position)));
+    }
+    return result;
+  }
+
+  /**
+   * Provides the transitive reduction of an {@link IAdjacencyList} as a view over it. Vertices keep their indices
+   * and only the out-neighbors of vertices that lose an edge are copied, so a {@link MappedAdjacencyList} mostly
+   * stays in its file.
+   *
+   * @param adjacencyList The adjacency list to reduce.
+   * @return A view of the adjacency list without any redundant edges, or <code>adjacencyList</code> itself if it
+   *         has none.
+   * @throws CyclicGraphException Thrown if the graph has a cycle.
+   */
+  public static <TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> IAdjacencyList<TVertex, TValue, TProcessedValue> reduce(final IAdjacencyList<TVertex, TValue, TProcessedValue> adjacencyList) throws CyclicGraphException {
+    return reduce(adjacencyList, find(adjacencyList));
+  }
+
+  static <TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object> IAdjacencyList<TVertex, TValue, TProcessedValue> reduce(final IAdjacencyList<TVertex, TValue, TProcessedValue> adjacencyList, final Redundancy redundancy) {
+    if (redundancy.isEmpty())
+      return adjacencyList;
+    return new ReducedAdjacencyList<TVertex, TValue, TProcessedValue>(adjacencyList, redundancy);
+  }
+
+  /**
+   * Finds the redundant edges of an {@link IAdjacencyList} by their position among their source's out-neighbors.
+   *
+   * @param adjacencyList The adjacency list to search.
+   * @return The {@link Redundancy} of the adjacency list.
+   * @throws CyclicGraphException Thrown if the graph has a cycle.
+   */
+  static <TVertex extends IVertex<TValue>, TValue extends Object> Redundancy find(final IAdjacencyList<TVertex, TValue, ?> adjacencyList) throws CyclicGraphException {
+    if (adjacencyList == null)
+      throw new IllegalArgumentException("adjacencyList cannot be null");
+
+    final ReachabilityIndex<TVertex, TValue> reachability = ReachabilityIndex.build(adjacencyList);
+    final List<Integer> rows = new ArrayList<Integer>();
+    final List<int[]> positions = new ArrayList<int[]>();
+    int[] targets = new int[16];
+    int[] redundant = new int[16];
+
+    for(int i = 0; i < adjacencyList.size(); ++i) {
+      final List<TVertex> out_neighbors = adjacencyList.outNeighborsAt(i);
+      if (out_neighbors.size() < 2)
+        continue;
+
+      if (targets.length < out_neighbors.size()) {
+        targets = new int[out_neighbors.size() + (out_neighbors.size() >> 1)];
+        redundant = new int[targets.length];
+      }
+      for(int j = 0; j < out_neighbors.size(); ++j)
+        targets[j] = adjacencyList.indexOf(out_neighbors.get(j));
+
+      int count = 0;
+      for(int j = 0; j < out_neighbors.size(); ++j) {
+        final int to = targets[j];
+        if (to < 0)
+          continue;
+        for(int k = 0; k < out_neighbors.size(); ++k) {
+          if (k != j && targets[k] >= 0 && reachability.reachesAt(targets[k], to)) {
+            redundant[count++] = j;
+            break;
+          }
+        }
+      }
+      if (count > 0) {
+        rows.add(i);
+        positions.add(Arrays.copyOf(redundant, count));
+      }
+    }
+
+    final int[] row_array = new int[rows.size()];
+    for(int r = 0; r < row_array.length; ++r)
+      row_array[r] = rows.get(r);
+    return new Redundancy(row_array, positions.toArray(new int[positions.size()][]));
+  }
+
+  /**
+   * The redundant edges of an adjacency list, identified only by indices so that holding on to it doesn't keep
+   * the adjacency list or its vertices alive.
+   */
+  static final class Redundancy {
+    static final Redundancy NONE = new Redundancy(new int[0], new int[0][]);
+
+    //Indices of the vertices that have redundant out-edges, in ascending order.
+    final int[] rows;
+    //For each of those vertices, the ascending positions of its redundant edges among its out-neighbors.
+    final int[][] positions;
+
+    Redundancy(final int[] rows, final int[][] positions) {
+      this.rows = rows;
+      this.positions = positions;
+    }
+
+    boolean isEmpty() {
+      return rows.length == 0;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.IProcessedValueSerializer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Common implementations of {@link IProcessedValueSerializer} for use with
+ * {@link SimpleTopologicalSort#enableSpilling(IProcessedValueSerializer, long)} and {@link BinaryGraphFormat}.
+ */
+public final class ValueSerializers {
+  private ValueSerializers() {
+  }
+
+  /**
+   * Serializes {@link String}s as modified UTF-8 (see {@link DataOutputStream#writeUTF(String)}).
+   */
+  public static final IProcessedValueSerializer<String> STRINGS = new IProcessedValueSerializer<String>() {
+    @Override
+    public long sizeOf(final String value) {
+      return 40L + 2L * value.length();
+    }
+
+    @Override
+    public void write(final String value, final OutputStream output) throws IOException {
+      new DataOutputStream(output).writeUTF(value);
+    }
+
+    @Override
+    public String read(final InputStream input) throws IOException {
+      return new DataInputStream(input).readUTF();
+    }
+  };
+
+  /**
+   * Serializes {@link Integer}s as 4 big-endian bytes.
+   */
+  public static final IProcessedValueSerializer<Integer> INTEGERS = new IProcessedValueSerializer<Integer>() {
+    @Override
+    public long sizeOf(final Integer value) {
+      return 16L;
+    }
+
+    @Override
+    public void write(final Integer value, final OutputStream output) throws IOException {
+      new DataOutputStream(output).writeInt(value);
+    }
+
+    @Override
+    public Integer read(final InputStream input) throws IOException {
+      return new DataInputStream(input).readInt();
+    }
+  };
+
+  /**
+   * Serializes {@link Long}s as 8 big-endian bytes.
+   */
+  public static final IProcessedValueSerializer<Long> LONGS = new IProcessedValueSerializer<Long>() {
+    @Override
+    public long sizeOf(final Long value) {
+      return 16L;
+    }
+
+    @Override
+    public void write(final Long value, final OutputStream output) throws IOException {
+      new DataOutputStream(output).writeLong(value);
+    }
+
+    @Override
+    public Long read(final InputStream input) throws IOException {
+      return new DataInputStream(input).readLong();
+    }
+  };
+}
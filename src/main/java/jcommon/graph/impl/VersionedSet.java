@@ -0,0 +1,240 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A set that keeps every version of itself, so that a read-only view of any committed version can be handed out in
+ * O(1) and read by other threads while the set keeps changing.
+ *
+ * Every item is stored once, in a record stamped with the version that added it and, once removed, the version
+ * that removed it. A view only sees the records that were alive at its version. Iterating a view goes through the
+ * records in the order they were added, like a {@link java.util.LinkedHashSet}, and <code>contains()</code> looks
+ * the item up and then walks back to the record that was alive at the view's version. When more records are dead
+ * than alive, a commit copies the live ones into fresh storage. Views that were already handed out keep the old
+ * storage, so the copy is amortized over the changes that made the records dead.
+ *
+ * Changes are made under a single writer. Views are safe to read from any thread once they've been safely
+ * published, for example through a volatile field.
+ *
+ * @param <T> Type of the items in the set.
+ */
+public final class VersionedSet<T> {
+  private static final int COMPACT_THRESHOLD = 64;
+
+  private Map<T, Record<T>> latest = new ConcurrentHashMap<T, Record<T>>();
+  private Record<T>[] log = newLog(16);
+  private int count;
+  private int live;
+  private int dead;
+  //Records changed since the last commit, in order. Undone in reverse by rollback().
+  private final List<Record<T>> uncommitted = new ArrayList<Record<T>>();
+
+  /**
+   * Adds an item as of a version that hasn't been committed yet. The item must not already be in the set.
+   *
+   * @param item The item to add.
+   * @param version The version being built.
+   */
+  public void add(final T item, final long version) {
+    if (item == null)
+      throw new NullPointerException("item cannot be null");
+    final Record<T> r = new Record<T>(item, version, latest.get(item));
+    latest.put(item, r);
+    if (count == log.length)
+      log = Arrays.copyOf(log, count + (count >> 1) + 1);
+    log[count++] = r;
+    uncommitted.add(r);
+    ++live;
+  }
+
+  /**
+   * Removes an item as of a version that hasn't been committed yet.
+   *
+   * @param item The item to remove.
+   * @param version The version being built.
+   * @return <code>true</code> if the item was in the set; <code>false</code> otherwise.
+   */
+  public boolean remove(final T item, final long version) {
+    final Record<T> r = latest.get(item);
+    if (r == null || r.died != 0L)
+      return false;
+    r.died = version;
+    uncommitted.add(r);
+    --live;
+    ++dead;
+    return true;
+  }
+
+  /**
+   * Undoes every change made since the last commit.
+   */
+  public void rollback() {
+    for(int i = uncommitted.size() - 1; i >= 0; --i) {
+      final Record<T> r = uncommitted.get(i);
+      if (r.died != 0L) {
+        r.died = 0L;
+        ++live;
+        --dead;
+      } else {
+        //Never visible to any version, and no longer reachable from the item.
+        r.died = r.born;
+        if (r.previous != null)
+          latest.put(r.item, r.previous);
+        else
+          latest.remove(r.item);
+        --live;
+        ++dead;
+      }
+    }
+    uncommitted.clear();
+  }
+
+  /**
+   * Commits the changes made since the last commit as a version.
+   *
+   * @param version The version that the changes were made as.
+   * @return A read-only view of the set at <code>version</code>.
+   */
+  public Set<T> commit(final long version) {
+    final Set<T> view = new View<T>(log, count, latest, version, live);
+    uncommitted.clear();
+    if (dead > live && count > COMPACT_THRESHOLD)
+      compact();
+    return view;
+  }
+
+  //Copies the live records into fresh storage. Views that were handed out keep reading the old storage, which
+  //nothing writes to any more, so later changes only ever touch the new records.
+  private void compact() {
+    final Map<T, Record<T>> compacted = new ConcurrentHashMap<T, Record<T>>(Math.max(16, (int)(live / 0.75f) + 1));
+    final Record<T>[] kept = newLog(Math.max(16, live + (live >> 1)));
+    int kept_count = 0;
+    for(int i = 0; i < count; ++i) {
+      final Record<T> r = log[i];
+      if (r.died == 0L) {
+        final Record<T> copy = new Record<T>(r.item, r.born, null);
+        kept[kept_count++] = copy;
+        compacted.put(r.item, copy);
+      }
+    }
+    latest = compacted;
+    log = kept;
+    count = kept_count;
+    dead = 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Record<T>[] newLog(final int capacity) {
+    return (Record<T>[])new Record[capacity];
+  }
+
+  private static final class Record<T> {
+    final T item;
+    final long born;
+    //The previous record of the same item, which died before this one was born.
+    final Record<T> previous;
+    //0 while alive. Only ever set to a version later than any view that can see this record.
+    volatile long died;
+
+    Record(final T item, final long born, final Record<T> previous) {
+      this.item = item;
+      this.born = born;
+      this.previous = previous;
+    }
+
+    boolean aliveAt(final long version) {
+      final long d = died;
+      return born <= version && (d == 0L || d > version);
+    }
+  }
+
+  private static final class View<T> extends AbstractSet<T> {
+    private final Record<T>[] log;
+    private final int count;
+    private final Map<T, Record<T>> latest;
+    private final long version;
+    private final int size;
+
+    View(final Record<T>[] log, final int count, final Map<T, Record<T>> latest, final long version, final int size) {
+      this.log = log;
+      this.count = count;
+      this.latest = latest;
+      this.version = version;
+      this.size = size;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+      if (o == null)
+        return false;
+      Record<T> r = latest.get(o);
+      while(r != null && r.born > version)
+        r = r.previous;
+      return r != null && r.aliveAt(version);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return new Iterator<T>() {
+        private int next = advance(0);
+
+        private int advance(int i) {
+          while(i < count && !log[i].aliveAt(version))
+            ++i;
+          return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+          return next < count;
+        }
+
+        @Override
+        public T next() {
+          if (next >= count)
+            throw new NoSuchElementException();
+          final T item = log[next].item;
+          next = advance(next + 1);
+          return item;
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException("A versioned set view cannot be modified");
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when an {@link AdjacencyList} is built from a graph's vertices and edges.
+ */
+@Name("jcommon.graph.AdjacencyList")
+@Label("Adjacency List Construction")
+@Category({ "jcommon", "Graph" })
+@Description("Time spent building the adjacency list of a graph")
+final class AdjacencyListEvent extends jdk.jfr.Event {
+  @Label("Vertices")
+  int vertexCount;
+
+  @Label("Edges")
+  int edgeCount;
+}
@@ -0,0 +1,79 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.ITopologicalSortListener;
+
+/**
+ * Hooks for emitting Java Flight Recorder events on JDK 11 or later.
+ *
+ * Replaces the no-op version of this class in multi-release jars. Each hook first checks whether its event is
+ * enabled so that nothing is allocated or timed when no recording has asked for it.
+ */
+final class FlightRecorderEvents {
+  private FlightRecorderEvents() {
+  }
+
+  static Object beginAdjacencyList() {
+    final AdjacencyListEvent event = new AdjacencyListEvent();
+    if (!event.isEnabled())
+      return null;
+    event.begin();
+    return event;
+  }
+
+  static void endAdjacencyList(final Object token, final int vertices, final int edges) {
+    if (token == null)
+      return;
+    final AdjacencyListEvent event = (AdjacencyListEvent)token;
+    event.end();
+    if (event.shouldCommit()) {
+      event.vertexCount = vertices;
+      event.edgeCount = edges;
+      event.commit();
+    }
+  }
+
+  static Object beginSort() {
+    final SortEvent event = new SortEvent();
+    if (!event.isEnabled())
+      return null;
+    event.begin();
+    return event;
+  }
+
+  static void endSort(final Object token, final int vertices, final boolean successful) {
+    if (token == null)
+      return;
+    final SortEvent event = (SortEvent)token;
+    event.end();
+    if (event.shouldCommit()) {
+      event.vertexCount = vertices;
+      event.successful = successful;
+      event.commit();
+    }
+  }
+
+  static <TValue extends Object, TProcessedValue extends Object> ITopologicalSortListener<TValue, TProcessedValue> listener(final ITopologicalSortListener<TValue, TProcessedValue> delegate) {
+    if (!new VertexReadyEvent().isEnabled() && !new VertexRunEvent().isEnabled())
+      return delegate;
+    return new FlightRecorderListener<TValue, TProcessedValue>(delegate);
+  }
+}
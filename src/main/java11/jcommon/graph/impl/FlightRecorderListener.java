@@ -0,0 +1,123 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jcommon.graph.ITopologicalSortInput;
+import jcommon.graph.ITopologicalSortListener;
+import jcommon.graph.IVertex;
+
+import java.util.ArrayDeque;
+
+/**
+ * Emits {@link VertexReadyEvent}s and {@link VertexRunEvent}s for a single asynchronous sort and forwards every
+ * notification to the listener that was configured on the strategy, if any.
+ *
+ * A vertex is started, finished or failed on the same thread, so the run events in progress are kept in a
+ * {@link ThreadLocal} owned by this instance. It holds a stack rather than a single event because executors that
+ * run tasks on the submitting thread can start a vertex, or a nested sort, before the current one has finished.
+ */
+final class FlightRecorderListener<TValue extends Object, TProcessedValue extends Object> implements ITopologicalSortListener<TValue, TProcessedValue> {
+  private final ThreadLocal<ArrayDeque<VertexRunEvent>> running = new ThreadLocal<ArrayDeque<VertexRunEvent>>() {
+    @Override
+    protected ArrayDeque<VertexRunEvent> initialValue() {
+      return new ArrayDeque<VertexRunEvent>(2);
+    }
+  };
+  private final ITopologicalSortListener<TValue, TProcessedValue> delegate;
+  private volatile int size;
+
+  FlightRecorderListener(final ITopologicalSortListener<TValue, TProcessedValue> delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void sortStarted(final int size) {
+    this.size = size;
+    if (delegate != null)
+      delegate.sortStarted(size);
+  }
+
+  @Override
+  public void vertexReady(final TValue value, final IVertex<TValue> vertex) {
+    final VertexReadyEvent event = new VertexReadyEvent();
+    if (event.shouldCommit()) {
+      event.vertex = String.valueOf(value);
+      event.vertexCount = size;
+      event.commit();
+    }
+    if (delegate != null)
+      delegate.vertexReady(value, vertex);
+  }
+
+  @Override
+  public void vertexRejected(final TValue value, final IVertex<TValue> vertex) {
+    if (delegate != null)
+      delegate.vertexRejected(value, vertex);
+  }
+
+  @Override
+  public void vertexStarted(final TValue value, final IVertex<TValue> vertex, final ITopologicalSortInput<TValue, TProcessedValue> input, final long waitNanos) {
+    final VertexRunEvent event = new VertexRunEvent();
+    if (event.isEnabled()) {
+      event.vertex = String.valueOf(value);
+      event.vertexCount = size;
+      event.inputCount = input.size();
+      event.waitNanos = waitNanos;
+      event.begin();
+      running.get().push(event);
+    }
+    if (delegate != null)
+      delegate.vertexStarted(value, vertex, input, waitNanos);
+  }
+
+  @Override
+  public void vertexFinished(final TValue value, final IVertex<TValue> vertex, final long elapsedNanos) {
+    commitRun(true);
+    if (delegate != null)
+      delegate.vertexFinished(value, vertex, elapsedNanos);
+  }
+
+  @Override
+  public void vertexFailed(final TValue value, final IVertex<TValue> vertex, final Throwable t, final long elapsedNanos) {
+    commitRun(false);
+    if (delegate != null)
+      delegate.vertexFailed(value, vertex, t, elapsedNanos);
+  }
+
+  private void commitRun(final boolean successful) {
+    final ArrayDeque<VertexRunEvent> stack = running.get();
+    final VertexRunEvent event = stack.poll();
+    if (event == null)
+      return;
+    if (stack.isEmpty())
+      running.remove();
+    event.end();
+    if (event.shouldCommit()) {
+      event.successful = successful;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void sortCompleted(final boolean successful) {
+    if (delegate != null)
+      delegate.sortCompleted(successful);
+  }
+}
@@ -0,0 +1,41 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded for every synchronous topological sort done by {@link SimpleTopologicalSort}.
+ */
+@Name("jcommon.graph.Sort")
+@Label("Topological Sort")
+@Category({ "jcommon", "Graph" })
+@Description("Time spent topologically sorting a graph")
+final class SortEvent extends jdk.jfr.Event {
+  @Label("Vertices")
+  int vertexCount;
+
+  @Label("Successful")
+  @Description("False if a cycle was detected")
+  boolean successful;
+}
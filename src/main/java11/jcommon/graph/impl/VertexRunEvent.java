@@ -0,0 +1,56 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Recorded for every vertex processed during an asynchronous sort. The duration of the event is the time
+ * spent in the callback and the event is committed when the callback completes.
+ */
+@Name("jcommon.graph.VertexRun")
+@Label("Vertex Run")
+@Category({ "jcommon", "Graph" })
+@StackTrace(false)
+@Description("A vertex was processed by its callback")
+final class VertexRunEvent extends jdk.jfr.Event {
+  @Label("Vertex")
+  String vertex;
+
+  @Label("Graph Vertices")
+  int vertexCount;
+
+  @Label("Inputs")
+  int inputCount;
+
+  @Label("Queue Wait")
+  @Description("Time spent waiting for a thread after becoming ready")
+  @Timespan(Timespan.NANOSECONDS)
+  long waitNanos;
+
+  @Label("Successful")
+  @Description("False if the callback threw an exception")
+  boolean successful;
+}
@@ -0,0 +1,232 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph;
+
+import jcommon.graph.impl.SimpleTopologicalSort;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Looped, randomized harness that runs many concurrent sortAsync calls on generated graphs
+ * sharing a single executor and checks ordering, completion and result visibility.
+ *
+ * The number of sorts can be raised for longer soak runs:
+ *   mvn test -Dtest=AsyncStressTest -DargLine="-Dstress.sorts=100000"
+ */
+public class AsyncStressTest {
+  private static final int SORTS = Integer.getInteger("stress.sorts", 2000);
+  private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+  private static final long TIMEOUT_SECONDS = 60L;
+
+  private static final GraphGenerator.Shape[] SHAPES = GraphGenerator.Shape.values();
+
+  @Test
+  public void testConcurrentSorts() throws InterruptedException {
+    final Random random = new Random(0xA5A5L);
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    final ExecutorService watchers = Executors.newFixedThreadPool(2);
+    final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<String>();
+
+    try {
+      final List<Run> runs = new ArrayList<Run>(SORTS);
+      for(int i = 0; i < SORTS; ++i) {
+        final GraphGenerator generator = GraphGenerator.seeded(random.nextLong())
+          .shape(SHAPES[random.nextInt(SHAPES.length)], 1 + random.nextInt(120));
+        if (random.nextInt(8) == 0)
+          generator.injectCycles(1 + random.nextInt(3));
+
+        final Run run = new Run(generator.getShape() + "#" + i, generator.toNumberGraph(), failures);
+        run.start(executor);
+
+        //Observe completion from a thread that never waits on the latch, relying
+        //only on the visibility guarantees of the result itself.
+        if ((i & 7) == 0)
+          run.watch(watchers);
+        runs.add(run);
+      }
+
+      for(Run run : runs)
+        run.verify();
+    } finally {
+      watchers.shutdownNow();
+      executor.shutdownNow();
+      executor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    assertTrue("Failures: " + failures, failures.isEmpty());
+  }
+
+  private static class Run {
+    private final String name;
+    private final NumberGraph<Integer> graph;
+    private final ConcurrentLinkedQueue<String> failures;
+    private final Map<Integer, List<Integer>> predecessors;
+    private final Map<Integer, Integer> expected;
+    private final boolean cycle_expected;
+    private final AtomicIntegerArray handled;
+    private final AtomicIntegerArray finished;
+    private final CountDownLatch error_reported;
+    private volatile CountDownLatch watched;
+    private ITopologicalSortAsyncResult<Integer, Integer> result;
+
+    Run(final String name, final NumberGraph<Integer> graph, final ConcurrentLinkedQueue<String> failures) {
+      this.name = name;
+      this.graph = graph;
+      this.failures = failures;
+      this.predecessors = new HashMap<Integer, List<Integer>>();
+      this.handled = new AtomicIntegerArray(graph.getVertices().size() + 1);
+      this.finished = new AtomicIntegerArray(graph.getVertices().size() + 1);
+      this.error_reported = new CountDownLatch(1);
+      this.expected = new HashMap<Integer, Integer>();
+
+      final Map<Integer, Integer> out_degrees = new HashMap<Integer, Integer>();
+      for(IVertex<Integer> v : graph.getVertices()) {
+        predecessors.put(v.getValue(), new ArrayList<Integer>(2));
+        out_degrees.put(v.getValue(), 0);
+      }
+      for(IEdge<IVertex<Integer>> e : graph.getEdges()) {
+        predecessors.get(e.getTo().getValue()).add(e.getFrom().getValue());
+        out_degrees.put(e.getFrom().getValue(), out_degrees.get(e.getFrom().getValue()) + 1);
+      }
+
+      //Use the serial sort as the reference for what the async sort must produce.
+      boolean cycle = false;
+      try {
+        final Map<Integer, Integer> computed = new HashMap<Integer, Integer>();
+        for(Integer value : graph.sort()) {
+          int sum = value;
+          for(Integer p : predecessors.get(value))
+            sum += computed.get(p);
+          computed.put(value, sum);
+          if (out_degrees.get(value) == 0)
+            expected.put(value, sum);
+        }
+      } catch(CyclicGraphException cge) {
+        cycle = true;
+      }
+      this.cycle_expected = cycle;
+    }
+
+    void fail(final String message) {
+      failures.add(name + ": " + message);
+    }
+
+    void start(final ExecutorService executor) {
+      result = graph.sortAsync(executor, new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>(), new ITopologicalSortCallback<Integer, Integer>() {
+        @Override
+        public Integer handle(Integer value, ITopologicalSortInput<Integer, Integer> input, IVertex<Integer> vertex, ITopologicalSortCoordinator coordinator) throws Throwable {
+          if (handled.incrementAndGet(value) != 1)
+            fail(value + " was handled more than once");
+
+          //Every predecessor must have finished and provided its result before we start.
+          final List<Integer> preds = predecessors.get(value);
+          if (input.size() != preds.size())
+            fail(value + " received " + input.size() + " inputs, expected " + preds.size());
+          int sum = value;
+          for(Integer p : preds) {
+            if (finished.get(p) != 1)
+              fail(value + " started before its predecessor " + p + " finished");
+            final Integer r = input.get(p);
+            if (r == null)
+              fail(value + " is missing the input from " + p);
+            else
+              sum += r;
+          }
+
+          if ((value & 3) == 0)
+            Thread.yield();
+
+          finished.set(value, 1);
+          return sum;
+        }
+      }, new ITopologicalSortErrorCallback<Integer>() {
+        @Override
+        public void handleError(Integer value, Throwable t, IVertex<Integer> vertex, ITopologicalSortCoordinator coordinator) {
+          if (!(t instanceof CyclicGraphException))
+            fail("unexpected error " + t);
+          error_reported.countDown();
+        }
+      });
+    }
+
+    void watch(final ExecutorService watchers) {
+      watched = new CountDownLatch(1);
+      watchers.submit(new Runnable() {
+        @Override
+        public void run() {
+          final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+          while(!result.isDone()) {
+            if (System.nanoTime() > deadline) {
+              fail("isDone() never became visible");
+              return;
+            }
+            Thread.yield();
+          }
+          if (result.isSuccessful() == cycle_expected)
+            fail("isSuccessful() is " + result.isSuccessful() + " after isDone()");
+          if (!cycle_expected && !matchesExpected())
+            fail("incomplete results visible after isDone()");
+          watched.countDown();
+        }
+      });
+    }
+
+    boolean matchesExpected() {
+      if (result.size() != expected.size())
+        return false;
+      for(Map.Entry<Integer, Integer> e : expected.entrySet()) {
+        if (!result.contains(e.getKey()) || !e.getValue().equals(result.get(e.getKey())))
+          return false;
+      }
+      return true;
+    }
+
+    void verify() throws InterruptedException {
+      assertTrue(name + " did not complete", result.awaitUninterruptibly(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      assertTrue(name, result.isDone());
+      if (cycle_expected) {
+        assertFalse(name + " should have failed", result.isSuccessful());
+        assertTrue(name + " did not report the cycle", error_reported.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      } else {
+        assertTrue(name + " should have succeeded", result.isSuccessful());
+        for(IVertex<Integer> v : graph.getVertices())
+          assertEquals(name + " handled " + v.getValue(), 1, handled.get(v.getValue()));
+        assertTrue(name + " results " + result.results(), matchesExpected());
+      }
+      if (watched != null)
+        assertTrue(name + " watcher did not finish", watched.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+  }
+}
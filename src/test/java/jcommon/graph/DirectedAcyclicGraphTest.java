@@ -19,14 +19,59 @@
 
 package jcommon.graph;
 
+import jcommon.graph.impl.AdjacencyList;
+import jcommon.graph.impl.BatchTopologicalSort;
+import jcommon.graph.impl.BinaryGraphFormat;
+import jcommon.graph.impl.CompositeTopologicalSortListener;
+import jcommon.graph.impl.Edge;
+import jcommon.graph.impl.GraphImporter;
+import jcommon.graph.impl.IncrementalTopologicalSort;
+import jcommon.graph.impl.MappedAdjacencyList;
+import jcommon.graph.impl.MemoizingCallback;
+import jcommon.graph.impl.ReachabilityIndex;
+import jcommon.graph.impl.SimpleTopologicalSort;
+import jcommon.graph.impl.TopologicalOrder;
+import jcommon.graph.impl.TopologicalSortContext;
+import jcommon.graph.impl.TopologicalSortMetrics;
+import jcommon.graph.impl.TopologicalSortTraceRecorder;
+import jcommon.graph.impl.TransitiveReduction;
+import jcommon.graph.impl.ValueSerializers;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings("unchecked")
@@ -117,6 +162,443 @@ public class DirectedAcyclicGraphTest {
     assertEquals(120, (int)ng_result.first());
   }
 
+  @Test
+  public void testAsyncSpilling() throws IOException {
+    final IProcessedValueSerializer<Integer> serializer = new IProcessedValueSerializer<Integer>() {
+      @Override
+      public long sizeOf(Integer value) {
+        return 16L;
+      }
+
+      @Override
+      public void write(Integer value, OutputStream output) throws IOException {
+        new DataOutputStream(output).writeInt(value);
+      }
+
+      @Override
+      public Integer read(InputStream input) throws IOException {
+        return new DataInputStream(input).readInt();
+      }
+    };
+
+    //Sum up every input so spilled values are read back by several out-neighbors.
+    final ITopologicalSortCallback<Integer, Integer> sum = new ITopologicalSortCallback<Integer, Integer>() {
+      @Override
+      public Integer handle(Integer number, ITopologicalSortInput<Integer, Integer> input, IVertex<Integer> vertex, ITopologicalSortCoordinator coordinator) throws Throwable {
+        int total = number;
+        for(Integer i : input.inputs())
+          total += i;
+        return total;
+      }
+    };
+
+    //A budget of zero forces every intermediate result out to disk.
+    for(long budget : new long[] { 0L, 32L, Long.MAX_VALUE }) {
+      ITopologicalSortAsyncResult<Integer, Integer> result = Examples.VALID_5.sortAsync(new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>().enableSpilling(serializer, budget), sum);
+      assertTrue(result.waitForCompletion(10L, TimeUnit.SECONDS));
+      assertEquals(15, (int)result.first());
+
+      //Results for 1, 4, 6 and 9 are consumed by more than one out-neighbor.
+      result = Examples.VALID_2.sortAsync(new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>().enableSpilling(serializer, budget), sum);
+      assertTrue(result.waitForCompletion(10L, TimeUnit.SECONDS));
+      assertEquals(11, (int)result.get(3));
+      assertEquals(7, (int)result.get(7));
+      assertEquals(44, (int)result.get(8));
+    }
+
+    //A serializer that fails outright leaves results on the heap instead of failing the sort.
+    final IProcessedValueSerializer<Integer> broken = new IProcessedValueSerializer<Integer>() {
+      @Override
+      public long sizeOf(Integer value) {
+        return 16L;
+      }
+
+      @Override
+      public void write(Integer value, OutputStream output) {
+        throw new UnsupportedOperationException("cannot write");
+      }
+
+      @Override
+      public Integer read(InputStream input) {
+        throw new UnsupportedOperationException("cannot read");
+      }
+    };
+    final ITopologicalSortAsyncResult<Integer, Integer> result = Examples.VALID_2.sortAsync(new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>().enableSpilling(broken, 0L), sum);
+    assertTrue(result.waitForCompletion(10L, TimeUnit.SECONDS));
+    assertEquals(44, (int)result.get(8));
+
+    //The spill file is removed when a starting vertex can't be submitted, even after another one has spilled.
+    final File directory = File.createTempFile("jcommon-graph-", ".dir");
+    assertTrue(directory.delete() && directory.mkdir());
+    try {
+      final NumberGraph<Integer> starts = NumberGraph.buildFromNumbers(1, 2, 3);
+      starts.addEdge(1, 3).addEdge(2, 3);
+      //Runs the first task it's given on the calling thread and rejects everything after it.
+      final ExecutorService first_only = new AbstractExecutorService() {
+        private boolean accepted;
+
+        @Override
+        public void execute(Runnable command) {
+          if (accepted)
+            throw new RejectedExecutionException();
+          accepted = true;
+          command.run();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+          return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+          return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+          return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+          return false;
+        }
+      };
+      assertFalse(starts.sortAsync(first_only, new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>().enableSpilling(serializer, 0L, directory), sum).waitForCompletion(10L, TimeUnit.SECONDS));
+      assertEquals(0, directory.list().length);
+    } finally {
+      directory.delete();
+    }
+  }
+
+  @Test
+  public void testAsyncMetrics() {
+    final ITopologicalSortCallback<Integer, Integer> callback = new ITopologicalSortCallback<Integer, Integer>() {
+      @Override
+      public Integer handle(Integer number, ITopologicalSortInput<Integer, Integer> input, IVertex<Integer> vertex, ITopologicalSortCoordinator coordinator) throws Throwable {
+        if (number == 9)
+          throw new IllegalStateException("9 always fails");
+        return number;
+      }
+    };
+
+    final TopologicalSortMetrics<Integer, Integer> metrics = new TopologicalSortMetrics<Integer, Integer>();
+    assertTrue(Examples.VALID_2.sortAsync(new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>().setListener(metrics), callback).waitForCompletion(10L, TimeUnit.SECONDS));
+    assertFalse(Examples.CYCLE_3.sortAsync(new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>().setListener(metrics), callback).waitForCompletion(10L, TimeUnit.SECONDS));
+
+    //Only 1, 2, 7 and 9 can be processed in CYCLE_3.
+    assertEquals(9 + 4, metrics.getRunLatency().getCount());
+    assertEquals(9 + 4, metrics.getWaitLatency().getCount());
+    assertEquals(2, metrics.getFailedCount());
+    assertEquals(2, metrics.getSortCount());
+    assertEquals(1, metrics.getSuccessfulSortCount());
+    assertEquals(0, metrics.getReadyQueueDepth());
+    assertEquals(0, metrics.getRunning());
+    assertTrue(metrics.getMaxRunning() >= 1);
+    assertTrue(metrics.getRunLatency().getPercentileNanos(100.0) <= metrics.getRunLatency().getMaxNanos());
+  }
+
+  @Test
+  public void testAsyncRejectedSubmissions() {
+    final TopologicalSortMetrics<Integer, Integer> metrics = new TopologicalSortMetrics<Integer, Integer>();
+    final TopologicalSortTraceRecorder<Integer, Integer> trace = new TopologicalSortTraceRecorder<Integer, Integer>();
+    final CompositeTopologicalSortListener<Integer, Integer> listener = new CompositeTopologicalSortListener<Integer, Integer>().add(metrics).add(trace);
+
+    //Shutting down the executor from the first callback rejects the submission of every vertex that becomes ready
+    //afterwards.
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final ITopologicalSortAsyncResult<Integer, Integer> result = Examples.VALID_2.sortAsync(executor, new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>().setListener(listener), new ITopologicalSortCallback<Integer, Integer>() {
+      @Override
+      public Integer handle(Integer number, ITopologicalSortInput<Integer, Integer> input, IVertex<Integer> vertex, ITopologicalSortCoordinator coordinator) throws Throwable {
+        executor.shutdown();
+        return number;
+      }
+    });
+    assertFalse(result.waitForCompletion(10L, TimeUnit.SECONDS));
+    assertTrue(metrics.getRejectedCount() > 0);
+    assertEquals(0, metrics.getReadyQueueDepth());
+    assertEquals(metrics.getRunLatency().getCount(), trace.size());
+
+    //Nothing is accepted by an executor that's already shut down.
+    assertFalse(Examples.VALID_2.sortAsync(executor, new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>().setListener(listener), new ITopologicalSortCallback<Integer, Integer>() {
+      @Override
+      public Integer handle(Integer number, ITopologicalSortInput<Integer, Integer> input, IVertex<Integer> vertex, ITopologicalSortCoordinator coordinator) throws Throwable {
+        return number;
+      }
+    }).waitForCompletion(10L, TimeUnit.SECONDS));
+    assertEquals(0, metrics.getReadyQueueDepth());
+    assertEquals(2, metrics.getSortCount());
+    assertEquals(0, metrics.getSuccessfulSortCount());
+  }
+
+  @Test
+  public void testAsyncTrace() throws IOException {
+    final TopologicalSortTraceRecorder<String, String> trace = new TopologicalSortTraceRecorder<String, String>();
+    final ITopologicalSortAsyncResult<String, String> result = Examples.VALID_3.sortAsync(new SimpleTopologicalSort<IVertex<String>, String, String>().setListener(trace), new ITopologicalSortCallback<String, String>() {
+      @Override
+      public String handle(String value, ITopologicalSortInput<String, String> input, IVertex<String> vertex, ITopologicalSortCoordinator coordinator) throws Throwable {
+        return value;
+      }
+    });
+    assertTrue(result.waitForCompletion(10L, TimeUnit.SECONDS));
+    assertEquals(6, trace.size());
+
+    final StringWriter writer = new StringWriter();
+    trace.write(writer);
+    final String json = writer.toString();
+
+    //One slice per vertex and an arrow (two events) per edge.
+    assertTrue(json.startsWith("{\"displayTimeUnit\":\"ns\",\"traceEvents\":["));
+    assertTrue(json.trim().endsWith("]}"));
+    assertEquals(6, json.split("\"ph\":\"X\"", -1).length - 1);
+    assertEquals(7, json.split("\"ph\":\"s\"", -1).length - 1);
+    assertEquals(7, json.split("\"ph\":\"f\"", -1).length - 1);
+    assertTrue(json.contains("\"name\":\"E\""));
+    assertTrue(json.contains("\"inputs\":[\"D\"]"));
+  }
+
+  @Test
+  public void testGenerator() throws CyclicGraphException {
+    for(GraphGenerator.Shape shape : GraphGenerator.Shape.values()) {
+      final NumberGraph<Integer> g = GraphGenerator.seeded(7L).shape(shape, 400).toNumberGraph();
+      assertTrue(shape.name(), GraphGenerator.isTopologicalOrder(g, g.sort()));
+      assertEquals(shape.name(), g.getEdges(), GraphGenerator.seeded(7L).shape(shape, 400).toNumberGraph().getEdges());
+
+      //Every requested cycle is injected as a distinct reversed edge.
+      final StringGraph cyclic = GraphGenerator.seeded(7L).shape(shape, 400).injectCycles(3).toStringGraph();
+      assertEquals(shape.name(), g.getEdges().size() + 3, cyclic.getEdges().size());
+      try {
+        cyclic.sort();
+        assertTrue("A cycle was expected in " + shape.name(), false);
+      } catch(CyclicGraphException expected) {
+      }
+    }
+
+    final GraphGenerator layered = GraphGenerator.seeded(1L).layered(10, 50, 3);
+    assertEquals(500, layered.getVertexCount());
+    assertEquals(9L * 50L * 3L, layered.toNumberGraph().getEdges().size());
+
+    //Millions of edges shouldn't take long when they aren't materialized into a graph.
+    final long[] count = new long[1];
+    final long edges = GraphGenerator.seeded(1L).lattice(1000, 1000).generate(new GraphGenerator.EdgeSink() {
+      @Override
+      public void edge(int from, int to) {
+        ++count[0];
+      }
+    });
+    assertEquals(2L * 1000L * 999L, edges);
+    assertEquals(edges, count[0]);
+  }
+
+  @Test
+  public void testBinaryFormat() throws IOException, CyclicGraphException {
+    final File file = File.createTempFile("jcommon-graph-test-", ".bin");
+    file.deleteOnExit();
+    try {
+      final NumberGraph<Integer> numbers = GraphGenerator.seeded(3L).random(2000, 0.01).toNumberGraph();
+      assertTrue(BinaryGraphFormat.write(numbers, ValueSerializers.INTEGERS, file) > 0L);
+      final NumberGraph<Integer> numbers_read = BinaryGraphFormat.read(file, ValueSerializers.INTEGERS, NumberGraph.<Integer>createForNumbers());
+      assertEquals(new ArrayList<IVertex<Integer>>(numbers.getVertices()), new ArrayList<IVertex<Integer>>(numbers_read.getVertices()));
+      assertEquals(numbers.getEdges(), numbers_read.getEdges());
+
+      BinaryGraphFormat.write(Examples.VALID_3, ValueSerializers.STRINGS, file);
+      final StringGraph strings_read = BinaryGraphFormat.read(file, ValueSerializers.STRINGS, StringGraph.createForStrings());
+      assertEquals(Examples.VALID_3.getVertices(), strings_read.getVertices());
+      assertEquals(Examples.VALID_3.getEdges(), strings_read.getEdges());
+      Examples.SOLUTION_VALID_3.check(strings_read.sort());
+
+      final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        raf.writeInt(0);
+      } finally {
+        raf.close();
+      }
+      try {
+        BinaryGraphFormat.read(file, ValueSerializers.STRINGS);
+        assertTrue("Expected the file to be rejected", false);
+      } catch(IOException expected) {
+      }
+
+      //A single vertex whose value length is the varint encoding of -1.
+      final DataOutputStream corrupt = new DataOutputStream(new FileOutputStream(file));
+      try {
+        corrupt.writeInt(BinaryGraphFormat.MAGIC);
+        corrupt.writeByte(BinaryGraphFormat.VERSION);
+        corrupt.write(new byte[] { 1, 0, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x0F });
+      } finally {
+        corrupt.close();
+      }
+      try {
+        BinaryGraphFormat.read(file, ValueSerializers.STRINGS);
+        assertTrue("Expected a negative length to be rejected", false);
+      } catch(IOException expected) {
+      }
+
+      //Counts far larger than the file must be rejected before anything is allocated for them.
+      final byte[][] headers = new byte[][] {
+        { (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x07, 0 },
+        { 1, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x07 }
+      };
+      for(byte[] header : headers) {
+        final DataOutputStream oversized = new DataOutputStream(new FileOutputStream(file));
+        try {
+          oversized.writeInt(BinaryGraphFormat.MAGIC);
+          oversized.writeByte(BinaryGraphFormat.VERSION);
+          oversized.write(header);
+          oversized.write(new byte[] { 0, 0 });
+        } finally {
+          oversized.close();
+        }
+        try {
+          BinaryGraphFormat.read(file, ValueSerializers.STRINGS);
+          assertTrue("Expected an oversized count to be rejected", false);
+        } catch(IOException expected) {
+        }
+      }
+
+      //A value length larger than the file.
+      final DataOutputStream long_value = new DataOutputStream(new FileOutputStream(file));
+      try {
+        long_value.writeInt(BinaryGraphFormat.MAGIC);
+        long_value.writeByte(BinaryGraphFormat.VERSION);
+        long_value.write(new byte[] { 1, 0, (byte)0xFE, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x07 });
+      } finally {
+        long_value.close();
+      }
+      try {
+        BinaryGraphFormat.read(file, ValueSerializers.STRINGS);
+        assertTrue("Expected an oversized length to be rejected", false);
+      } catch(IOException expected) {
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testMappedAdjacencyList() throws IOException, CyclicGraphException {
+    final File file = File.createTempFile("jcommon-graph-test-", ".mapped");
+    file.deleteOnExit();
+    try {
+      final StringGraph g = GraphGenerator.seeded(5L).layered(20, 30, 3).toStringGraph();
+      MappedAdjacencyList.write(g, ValueSerializers.STRINGS, file);
+
+      final Set<IVertex<String>> ending = new HashSet<IVertex<String>>(g.getVertices());
+      for(IEdge<IVertex<String>> e : g.getEdges())
+        ending.remove(e.getFrom());
+
+      final MappedAdjacencyList<String, String> mapped = MappedAdjacencyList.open(file, ValueSerializers.STRINGS);
+      assertEquals(600, mapped.size());
+      assertEquals(g.getEdges().size(), mapped.getEdgeCount());
+      assertEquals(ending.size(), mapped.getEndingVertices().size());
+      assertEquals(17, mapped.indexOf(ObjectVertex.from("V17")));
+      assertEquals(-1, mapped.indexOf(ObjectVertex.from("missing")));
+      assertTrue(GraphGenerator.isTopologicalOrder(g, new SimpleTopologicalSort<IVertex<String>, String, String>().sort(mapped)));
+
+      //Vertices are cached, so following an edge returns the same instance with its value already decoded.
+      final IVertex<String> neighbor = mapped.outNeighborsAt(0).get(0);
+      assertTrue(neighbor == mapped.vertexAt(mapped.indexOf(neighbor)));
+      assertTrue(neighbor.getValue() == mapped.outNeighborsAt(0).get(0).getValue());
+      assertEquals(neighbor, mapped.vertexAt(mapped.indexOf(ObjectVertex.from(neighbor.getValue()))));
+
+      final ITopologicalSortAsyncResult<String, String> result = new SimpleTopologicalSort<IVertex<String>, String, String>().sortAsync(Executors.newFixedThreadPool(4), mapped, new ITopologicalSortCallback<String, String>() {
+        @Override
+        public String handle(String value, ITopologicalSortInput<String, String> input, IVertex<String> vertex, ITopologicalSortCoordinator coordinator) throws Throwable {
+          return value;
+        }
+      }, null);
+      assertTrue(result.waitForCompletion(10L, TimeUnit.SECONDS));
+      assertEquals(ending.size(), result.size());
+      result.getExecutorService().shutdown();
+
+      //A target outside the graph is reported as corruption rather than an index exception.
+      final long targets_position = 40L + 8L * (mapped.size() + 1L);
+      final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        raf.seek(targets_position);
+        raf.writeInt(mapped.size());
+      } finally {
+        raf.close();
+      }
+      try {
+        new SimpleTopologicalSort<IVertex<String>, String, String>().sort(MappedAdjacencyList.<String, String>open(file, ValueSerializers.STRINGS));
+        assertTrue("Expected an out of range target to be rejected", false);
+      } catch(IllegalStateException expected) {
+      }
+
+      //More edges than the file has room for.
+      final RandomAccessFile header = new RandomAccessFile(file, "rw");
+      try {
+        header.seek(16L);
+        header.writeLong(file.length());
+      } finally {
+        header.close();
+      }
+      try {
+        MappedAdjacencyList.open(file, ValueSerializers.STRINGS);
+        assertTrue("Expected an oversized edge count to be rejected", false);
+      } catch(IOException expected) {
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testImporters() throws IOException {
+    final String tsv = "# from\tto\nA\tB\nA\tC\r\nA\tD\n\nB\tC\tignored\nB\tD\nD\tE\nF\tB\nE\n";
+    assertEquals(Examples.VALID_3.getEdges(), GraphImporter.readEdgeList(channelFor(tsv), GraphImporter.TAB, StringGraph.createForStrings()).getEdges());
+
+    final String csv = "A, B\n\"A\",C\n\"A\" , \"D\"\nB,C\nB,D\nD,E\nF,B\n\"say \"\"hi\"\"\",F";
+    final StringGraph from_csv = GraphImporter.readEdgeList(channelFor(csv), GraphImporter.COMMA, StringGraph.createForStrings());
+    assertEquals(7, from_csv.getVertices().size());
+    assertTrue(from_csv.getEdges().containsAll(Examples.VALID_3.getEdges()));
+    assertTrue(from_csv.getVertices().contains(ObjectVertex.from("say \"hi\"")));
+
+    final StringGraph from_whitespace = GraphImporter.readEdgeList(channelFor("A  B\nA\t C\nA D\nB C\nB D\nD E\nF B"), GraphImporter.WHITESPACE, StringGraph.createForStrings());
+    assertEquals(Examples.VALID_3.getEdges(), from_whitespace.getEdges());
+
+    final String dot =
+        "/* exported */\n"
+      + "strict digraph \"deps\" {\n"
+      + "  rankdir=LR;\n"
+      + "  node [shape=box];\n"
+      + "  A -> B -> C [color=red][style=dashed];\n"
+      + "  A -> C; A -> \"D\" // trailing comment\n"
+      + "  subgraph cluster_0 { B -> D; D -> E }\n"
+      + "  # preprocessor style comment\n"
+      + "  F -> B\n"
+      + "  G [label=\"isolated\"]\n"
+      + "}\n";
+    final StringGraph from_dot = GraphImporter.readDot(channelFor(dot), StringGraph.createForStrings());
+    assertEquals(Examples.VALID_3.getEdges(), from_dot.getEdges());
+    assertEquals(7, from_dot.getVertices().size());
+
+    //Large enough to span many reads of the underlying buffer.
+    final StringGraph generated = GraphGenerator.seeded(9L).random(5000, 0.004).toStringGraph();
+    final StringBuilder lines = new StringBuilder();
+    for(IEdge<IVertex<String>> e : generated.getEdges())
+      lines.append(e.getFrom().getValue()).append('\t').append(e.getTo().getValue()).append('\n');
+    assertEquals(generated.getEdges(), GraphImporter.readEdgeList(channelFor(lines.toString()), GraphImporter.TAB, StringGraph.createForStrings()).getEdges());
+
+    for(String invalid : new String[] { "graph { A -- B }", "digraph { A -> B", "digraph { A -> { B C } }", "digraph { A:p -> B }" }) {
+      try {
+        GraphImporter.readDot(channelFor(invalid), StringGraph.createForStrings());
+        assertTrue("Expected " + invalid + " to be rejected", false);
+      } catch(IOException expected) {
+      }
+    }
+  }
+
+  private static ReadableByteChannel channelFor(final String text) throws IOException {
+    return Channels.newChannel(new ByteArrayInputStream(text.getBytes("UTF-8")));
+  }
+
   private boolean allSuccessfullyCompleted(ITopologicalSortAsyncResult[] results) {
     for(ITopologicalSortAsyncResult result : results) {
       if (!result.waitForCompletion())
@@ -124,4 +606,1163 @@ public class DirectedAcyclicGraphTest {
     }
     return true;
   }
+
+  @Test
+  public void testConcurrentGraph() throws Throwable {
+    final NumberGraph<Integer> reference = GraphGenerator.seeded(11L).layered(20, 100, 4).toNumberGraph();
+    final Object[] edges = reference.getEdges().toArray();
+    final ConcurrentDirectedAcyclicGraph<IVertex<Integer>, Integer, Integer> g = ConcurrentDirectedAcyclicGraph.create();
+    final int threads = 8;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    for(int t = 0; t < threads; ++t) {
+      final int offset = t;
+      futures.add(executor.submit(new Runnable() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+          for(int i = offset; i < edges.length; i += threads) {
+            final IEdge<IVertex<Integer>> e = (IEdge<IVertex<Integer>>)edges[i];
+            g.addVertex(e.getFrom());
+            g.addVertex(e.getTo());
+            g.addEdge(e.getFrom(), e.getTo());
+          }
+        }
+      }));
+    }
+
+    //Every snapshot taken while the writers are busy must be valid since each edge's vertices are added before it.
+    futures.add(executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        for(int i = 0; i < 20; ++i) {
+          final IGraph<IVertex<Integer>, Integer, Integer> copy = g.copy();
+          assertTrue(copy.validate());
+          assertTrue(GraphGenerator.isTopologicalOrder(copy, copy.sort()));
+        }
+        return null;
+      }
+    }));
+
+    for(Future<?> f : futures) {
+      try {
+        f.get();
+      } catch(ExecutionException e) {
+        throw e.getCause();
+      }
+    }
+    executor.shutdown();
+
+    for(IVertex<Integer> v : reference.getVertices())
+      g.addVertex(v);
+    assertEquals(reference.getVertices(), g.getVertices());
+    assertEquals(reference.getEdges(), new HashSet<IEdge<IVertex<Integer>>>(g.getEdges()));
+    assertTrue(GraphGenerator.isTopologicalOrder(g, g.sort()));
+
+    //Removing vertices takes their edges with them, including edges added after the first removal.
+    final List<IVertex<Integer>> doomed = new ArrayList<IVertex<Integer>>(reference.getVertices()).subList(0, 50);
+    g.removeVertex(doomed.get(0));
+    g.addEdge(doomed.get(1), doomed.get(49));
+    for(IVertex<Integer> v : doomed)
+      g.removeVertex(v);
+    assertTrue(g.validate());
+    assertEquals(reference.getVertices().size() - 50, g.getVertices().size());
+    for(IEdge<IVertex<Integer>> e : g.getEdges())
+      assertFalse(doomed.contains(e.getFrom()) || doomed.contains(e.getTo()));
+    assertTrue(GraphGenerator.isTopologicalOrder(g, g.sort()));
+
+    g.addEdge(new ObjectVertex<Integer>(-1), new ObjectVertex<Integer>(-2));
+    assertFalse(g.validate());
+    try {
+      g.sort();
+      assertTrue("An invalid graph should not sort", false);
+    } catch(IllegalStateException expected) {
+    }
+  }
+
+  @Test
+  public void testVersionedGraph() throws Throwable {
+    final VersionedDirectedAcyclicGraph<IVertex<Integer>, Integer, Integer> g = VersionedDirectedAcyclicGraph.create();
+    final NumberGraph<Integer> reference = GraphGenerator.seeded(5L).layered(10, 20, 3).toNumberGraph();
+    assertEquals(1L, g.update(new IGraphUpdate<IVertex<Integer>, Integer, Integer>() {
+      @Override
+      public void apply(IGraph<IVertex<Integer>, Integer, Integer> graph) {
+        for(IVertex<Integer> v : reference.getVertices())
+          graph.addVertex(v);
+        for(IEdge<IVertex<Integer>> e : reference.getEdges())
+          graph.addEdge(e.getFrom(), e.getTo());
+      }
+    }));
+    assertEquals(1L, g.getVersion());
+
+    final GraphSnapshot<IVertex<Integer>, Integer, Integer> first = g.snapshot();
+    final List<Integer> first_order = first.sort();
+    assertTrue(GraphGenerator.isTopologicalOrder(first, first_order));
+
+    //A failed update leaves no trace.
+    try {
+      g.update(new IGraphUpdate<IVertex<Integer>, Integer, Integer>() {
+        @Override
+        public void apply(IGraph<IVertex<Integer>, Integer, Integer> graph) throws Exception {
+          graph.removeVertex(reference.getVertices().iterator().next());
+          throw new IOException("abort");
+        }
+      });
+      assertTrue("The update should have failed", false);
+    } catch(IOException expected) {
+    }
+    assertTrue(first == g.snapshot());
+    try {
+      g.update(new IGraphUpdate<IVertex<Integer>, Integer, Integer>() {
+        @Override
+        public void apply(IGraph<IVertex<Integer>, Integer, Integer> graph) throws Exception {
+          graph.addVertex(new ObjectVertex<Integer>(-2000));
+          graph.addEdge(reference.getVertices().iterator().next(), new ObjectVertex<Integer>(-2000));
+          throw new IOException("abort");
+        }
+      });
+      assertTrue("The update should have failed", false);
+    } catch(IOException expected) {
+    }
+    assertTrue(first == g.snapshot());
+
+    //Undoing a failed update puts back removed vertices along with their edges, and edges that were
+    //waiting on a vertex it added.
+    final IVertex<Integer> waiting_on = new ObjectVertex<Integer>(-1000);
+    g.addEdge(reference.getVertices().iterator().next(), waiting_on);
+    try {
+      g.update(new IGraphUpdate<IVertex<Integer>, Integer, Integer>() {
+        @Override
+        public void apply(IGraph<IVertex<Integer>, Integer, Integer> graph) throws Exception {
+          graph.addVertex(waiting_on);
+          graph.removeVertex(reference.getVertices().iterator().next());
+          graph.transitiveReduction();
+          throw new IOException("abort");
+        }
+      });
+      assertTrue("The update should have failed", false);
+    } catch(IOException expected) {
+    }
+    assertEquals(2L, g.getVersion());
+    assertFalse(g.validate());
+    assertEquals(reference.getVertices(), g.getVertices());
+    assertEquals(reference.getEdges().size() + 1, g.getEdges().size());
+    g.removeEdge(reference.getVertices().iterator().next(), waiting_on);
+    assertEquals(reference.getEdges(), g.getEdges());
+    assertTrue(g.validate());
+
+    //Every change is published as it's made.
+    g.addVertex(waiting_on);
+    assertTrue(g.snapshot().getVertices().contains(waiting_on));
+    g.removeVertex(waiting_on);
+    assertEquals(5L, g.getVersion());
+    final GraphSnapshot<IVertex<Integer>, Integer, Integer> latest = g.snapshot();
+    assertEquals(5L, latest.getVersion());
+    assertTrue(latest == g.snapshot());
+    assertFalse(latest.getVertices().contains(waiting_on));
+    assertEquals(first_order, latest.sort());
+
+    //Readers don't wait for an update that's still running.
+    final CountDownLatch update_started = new CountDownLatch(1);
+    final CountDownLatch reader_done = new CountDownLatch(1);
+    final ExecutorService updater = Executors.newSingleThreadExecutor();
+    final Future<Long> pending = updater.submit(new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        return g.update(new IGraphUpdate<IVertex<Integer>, Integer, Integer>() {
+          @Override
+          public void apply(IGraph<IVertex<Integer>, Integer, Integer> graph) throws Exception {
+            graph.addVertex(waiting_on);
+            update_started.countDown();
+            assertTrue(reader_done.await(10L, TimeUnit.SECONDS));
+            graph.removeVertex(waiting_on);
+          }
+        });
+      }
+    });
+    assertTrue(update_started.await(10L, TimeUnit.SECONDS));
+    assertTrue(latest == g.snapshot());
+    assertEquals(first_order, g.sort());
+    reader_done.countDown();
+    assertEquals(6L, (long)pending.get());
+    updater.shutdown();
+    assertEquals(latest.getVertices(), g.getVertices());
+
+    //Churn leaves old versions intact once the writer has compacted what it keeps.
+    final IVertex<Integer> churned = new ObjectVertex<Integer>(-3000);
+    final IVertex<Integer> churn_source = reference.getVertices().iterator().next();
+    for(int i = 0; i < 500; ++i) {
+      g.addVertex(churned).addEdge(churn_source, churned);
+      g.removeVertex(churned);
+    }
+    assertEquals(6L + 1500L, g.getVersion());
+    assertEquals(reference.getVertices(), g.getVertices());
+    assertEquals(reference.getEdges(), g.getEdges());
+    assertEquals(reference.getEdges(), first.getEdges());
+    assertEquals(first_order, first.sort());
+    assertEquals(first_order, g.sort());
+
+    try {
+      first.addVertex(new ObjectVertex<Integer>(-1));
+      assertTrue("Snapshots should be read-only", false);
+    } catch(UnsupportedOperationException expected) {
+    }
+
+    //A writer keeps adding chains onto the graph while readers sort whatever version they see.
+    final int readers = 4;
+    final ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+    futures.add(executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        for(int i = 1; i <= 200; ++i) {
+          final ObjectVertex<Integer> from = new ObjectVertex<Integer>(-i);
+          final ObjectVertex<Integer> to = new ObjectVertex<Integer>(-i - 1);
+          g.addVertex(from);
+          g.addVertex(to);
+          g.addEdge(from, to);
+          if (i % 3 == 0)
+            g.removeEdge(from, to);
+        }
+      }
+    }));
+    for(int r = 0; r < readers; ++r) {
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          long last = 0L;
+          for(int i = 0; i < 50; ++i) {
+            final GraphSnapshot<IVertex<Integer>, Integer, Integer> s = g.snapshot();
+            assertTrue(s.getVersion() >= last);
+            last = s.getVersion();
+            assertTrue(GraphGenerator.isTopologicalOrder(s, s.sort()));
+          }
+          return null;
+        }
+      }));
+    }
+    for(Future<?> f : futures) {
+      try {
+        f.get();
+      } catch(ExecutionException e) {
+        throw e.getCause();
+      }
+    }
+    executor.shutdown();
+
+    assertEquals(1506L + 201L + 200L + 66L, g.getVersion());
+    assertEquals(reference.getVertices().size() + 201, g.getVertices().size());
+    assertEquals(reference.getVertices().size(), first.getVertices().size());
+    assertEquals(first_order, first.sort());
+  }
+
+  @Test
+  public void testNeighborListStorage() throws CyclicGraphException {
+    for(GraphGenerator.Shape shape : GraphGenerator.Shape.values()) {
+      final NumberGraph<Integer> expected = GraphGenerator.seeded(3L).shape(shape, 300).toNumberGraph();
+      final NumberGraph<Integer> g = NumberGraph.createForNumbers();
+      g.withEdgeStorage(DirectedAcyclicGraph.EdgeStorage.NEIGHBOR_LISTS);
+      GraphGenerator.seeded(3L).shape(shape, 300).fill(g, new GraphGenerator.VertexFactory<IVertex<Integer>>() {
+        @Override
+        public IVertex<Integer> create(int index) {
+          return ObjectVertex.from(index + 1);
+        }
+      });
+
+      assertEquals(shape.name(), DirectedAcyclicGraph.EdgeStorage.NEIGHBOR_LISTS, g.getEdgeStorage());
+      assertEquals(shape.name(), expected.getEdges(), g.getEdges());
+      assertEquals(shape.name(), g.getEdges(), expected.getEdges());
+      assertEquals(shape.name(), expected.sort(), g.sort());
+
+      final NumberGraph<Integer> copy = g.copyAsNumberGraph();
+      assertEquals(shape.name(), DirectedAcyclicGraph.EdgeStorage.NEIGHBOR_LISTS, copy.getEdgeStorage());
+      assertEquals(shape.name(), g.getEdges(), copy.getEdges());
+    }
+
+    //Enough out-neighbors on one vertex to use the hashed index, including duplicates and removals.
+    final StringGraph g = StringGraph.createForStrings();
+    g.withEdgeStorage(DirectedAcyclicGraph.EdgeStorage.NEIGHBOR_LISTS);
+    g.addVertex("root");
+    for(int i = 0; i < 100; ++i) {
+      g.addVertex("v" + i);
+      g.addEdge("root", "v" + i);
+      g.addEdge("root", "v" + i);
+    }
+    assertEquals(100, g.getEdges().size());
+    for(int i = 0; i < 100; i += 2)
+      g.removeEdge("root", "v" + i);
+    assertEquals(50, g.getEdges().size());
+    assertTrue(g.getEdges().contains(new Edge<IVertex<String>>(ObjectVertex.from("root"), ObjectVertex.from("v1"))));
+    assertFalse(g.getEdges().contains(new Edge<IVertex<String>>(ObjectVertex.from("root"), ObjectVertex.from("v0"))));
+
+    //Removals swap the last out-neighbor into place, so the hashed index must still find every survivor.
+    final StringGraph hub = StringGraph.createForStrings();
+    hub.withEdgeStorage(DirectedAcyclicGraph.EdgeStorage.NEIGHBOR_LISTS);
+    final List<Integer> doomed = new ArrayList<Integer>();
+    for(int i = 0; i < 200; ++i) {
+      hub.addEdge("hub", "h" + i);
+      doomed.add(i);
+    }
+    Collections.shuffle(doomed, new Random(5L));
+    for(int n = 0; n < 150; ++n) {
+      hub.removeEdge("hub", "h" + doomed.get(n));
+      hub.removeEdge("hub", "h" + doomed.get(n));
+    }
+    assertEquals(50, hub.getEdges().size());
+    for(int n = 0; n < 200; ++n)
+      assertEquals(n >= 150, hub.getEdges().contains(new Edge<IVertex<String>>(ObjectVertex.from("hub"), ObjectVertex.from("h" + doomed.get(n)))));
+
+    final Iterator<IEdge<IVertex<String>>> it = g.getEdges().iterator();
+    final Set<IEdge<IVertex<String>>> mutable = new HashSet<IEdge<IVertex<String>>>();
+    while(it.hasNext())
+      mutable.add(it.next());
+    assertEquals(50, mutable.size());
+
+    g.withEdgeStorage(DirectedAcyclicGraph.EdgeStorage.EDGE_SET);
+    assertEquals(mutable, g.getEdges());
+    assertTrue(GraphGenerator.isTopologicalOrder(g, g.sort()));
+
+    //Bulk rows with duplicate targets, into an empty graph and then into one that already has edges.
+    final IVertex<String>[] vertices = new IVertex[21];
+    final int[] targets = new int[40];
+    for(int i = 0; i < 21; ++i)
+      vertices[i] = ObjectVertex.from("b" + i);
+    for(int i = 0; i < 40; ++i)
+      targets[i] = 1 + (i % 20);
+    final int[] offsets = new int[22];
+    Arrays.fill(offsets, 1, 22, 40);
+    final StringGraph bulk = StringGraph.createForStrings();
+    bulk.withEdgeStorage(DirectedAcyclicGraph.EdgeStorage.NEIGHBOR_LISTS);
+    bulk.addAll(vertices, offsets, targets);
+    assertEquals(21, bulk.getVertices().size());
+    assertEquals(20, bulk.getEdges().size());
+    assertTrue(bulk.validate());
+    bulk.addAll(vertices, offsets, targets);
+    assertEquals(20, bulk.getEdges().size());
+    assertEquals(0, bulk.sort().indexOf("b0"));
+  }
+
+  @Test
+  public void testIdentityLookup() throws Throwable {
+    final GraphGenerator generator = GraphGenerator.seeded(9L).layered(8, 25, 3);
+    final DirectedAcyclicGraph<CountingVertex, Integer, Integer> g = (DirectedAcyclicGraph<CountingVertex, Integer, Integer>)DirectedAcyclicGraph.<CountingVertex, Integer, Integer>create();
+    g.withVertexLookup(DirectedAcyclicGraph.VertexLookup.IDENTITY);
+    for(int i = 0; i < generator.getVertexCount(); ++i)
+      g.addVertex(new CountingVertex(i));
+
+    //Edges deliberately use equal but distinct instances.
+    generator.generate(new GraphGenerator.EdgeSink() {
+      @Override
+      public void edge(int from, int to) {
+        g.addEdge(new CountingVertex(from), new CountingVertex(to));
+      }
+    });
+
+    final DirectedAcyclicGraph<CountingVertex, Integer, Integer> by_equality = (DirectedAcyclicGraph<CountingVertex, Integer, Integer>)g.copy();
+    by_equality.withVertexLookup(DirectedAcyclicGraph.VertexLookup.EQUALITY);
+    assertEquals(DirectedAcyclicGraph.VertexLookup.IDENTITY, ((DirectedAcyclicGraph<CountingVertex, Integer, Integer>)g.copy()).getVertexLookup());
+
+    //Neither building the adjacency list nor sorting may call equals() or hashCode().
+    CountingVertex.CALLS.set(0);
+    final List<Integer> order = g.sort();
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final ITopologicalSortAsyncResult<Integer, Integer> result = g.sortAsync(executor, new ITopologicalSortCallback<Integer, Integer>() {
+        @Override
+        public Integer handle(Integer value, ITopologicalSortInput<Integer, Integer> input, IVertex<Integer> vertex, ITopologicalSortCoordinator coordinator) {
+          return value;
+        }
+      });
+      assertTrue(result.waitForCompletion());
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(0, CountingVertex.CALLS.get());
+
+    g.withEdgeStorage(DirectedAcyclicGraph.EdgeStorage.NEIGHBOR_LISTS);
+    CountingVertex.CALLS.set(0);
+    assertEquals(order, g.sort());
+    assertEquals(0, CountingVertex.CALLS.get());
+
+    assertTrue(GraphGenerator.isTopologicalOrder(g, order));
+    assertEquals(by_equality.sort(), order);
+
+    //Edges added before their vertices are mapped to the graph's instances on the next sort.
+    final IGraph<CountingVertex, Integer, Integer> late = DirectedAcyclicGraph.<CountingVertex, Integer, Integer>create();
+    ((DirectedAcyclicGraph<CountingVertex, Integer, Integer>)late).withVertexLookup(DirectedAcyclicGraph.VertexLookup.IDENTITY);
+    late.addEdge(new CountingVertex(1), new CountingVertex(0));
+    late.addVertex(new CountingVertex(0));
+    late.addVertex(new CountingVertex(1));
+    final DirectedAcyclicGraph<CountingVertex, Integer, Integer> late_by_equality = (DirectedAcyclicGraph<CountingVertex, Integer, Integer>)late.copy();
+    late_by_equality.withVertexLookup(DirectedAcyclicGraph.VertexLookup.EQUALITY);
+    assertEquals(late_by_equality.sort(), late.sort());
+    assertEquals(2, late.sort().size());
+  }
+
+  private static class CountingVertex extends ObjectVertex<Integer> {
+    static final AtomicInteger CALLS = new AtomicInteger();
+
+    CountingVertex(final int value) {
+      super(value);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      CALLS.incrementAndGet();
+      return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+      CALLS.incrementAndGet();
+      return super.hashCode();
+    }
+  }
+
+  @Test
+  public void testVertexIds() throws CyclicGraphException {
+    final StringGraph g = StringGraph.buildFromStrings("A", "B", "C", "D");
+    assertEquals(4, g.getIdBound());
+    assertEquals(0, g.idOf(ObjectVertex.from("A")));
+    assertEquals(3, g.idOf(ObjectVertex.from("D")));
+    assertEquals(-1, g.idOf(ObjectVertex.from("Z")));
+
+    //Removing a vertex leaves the other ids alone and its id is handed to the next vertex added.
+    g.removeVertex("B");
+    assertEquals(-1, g.idOf(ObjectVertex.from("B")));
+    assertEquals(2, g.idOf(ObjectVertex.from("C")));
+    g.addVertex("E");
+    g.addVertex("E");
+    assertEquals(1, g.idOf(ObjectVertex.from("E")));
+    assertEquals(4, g.getIdBound());
+    g.addVertex("F");
+    assertEquals(4, g.idOf(ObjectVertex.from("F")));
+    assertEquals(g.idOf(ObjectVertex.from("F")), g.copyAsStringGraph().idOf(ObjectVertex.from("F")));
+
+    final VertexProperties<IVertex<String>, String> labels = new VertexProperties<IVertex<String>, String>(g, "?");
+    labels.set(ObjectVertex.from("A"), "a");
+    assertEquals("a", labels.get(ObjectVertex.from("A")));
+    assertEquals("?", labels.get(ObjectVertex.from("F")));
+    g.addVertex("G");
+    labels.set(ObjectVertex.from("G"), "g");
+    assertEquals("g", labels.getAt(g.idOf(ObjectVertex.from("G"))));
+    try {
+      labels.get(ObjectVertex.from("Z"));
+      assertTrue("Vertices without ids should be rejected", false);
+    } catch(IllegalArgumentException expected) {
+    }
+
+    //Longest path to every vertex of a generated graph, kept in arrays keyed by the graph's ids.
+    final NumberGraph<Integer> numbers = GraphGenerator.seeded(4L).layered(6, 30, 3).toNumberGraph();
+    final IntVertexProperties<IVertex<Integer>> depth = new IntVertexProperties<IVertex<Integer>>(numbers);
+    final DoubleVertexProperties<IVertex<Integer>> cost = new DoubleVertexProperties<IVertex<Integer>>(numbers, 1.5);
+    final List<Integer> order = numbers.sort();
+    for(Integer value : order) {
+      final IVertex<Integer> from = ObjectVertex.from(value);
+      for(IEdge<IVertex<Integer>> e : numbers.getEdges()) {
+        if (e.getFrom().equals(from))
+          depth.set(e.getTo(), Math.max(depth.get(e.getTo()), depth.get(from) + 1));
+      }
+    }
+    for(int i = 0; i < 30; ++i)
+      assertEquals(0, depth.get(ObjectVertex.from(order.get(i))));
+    assertEquals(5, depth.get(ObjectVertex.from(order.get(order.size() - 1))));
+    assertEquals(1.5, cost.getAt(numbers.getIdBound() - 1), 0.0);
+
+    //Adjacency lists number their vertices by index.
+    final IAdjacencyList<IVertex<Integer>, Integer, Integer> list = new AdjacencyList<IVertex<Integer>, Integer, Integer>(numbers.getVertices(), numbers.getEdges());
+    final IntVertexProperties<IVertex<Integer>> in_degree = new IntVertexProperties<IVertex<Integer>>(list);
+    for(IEdge<IVertex<Integer>> e : numbers.getEdges())
+      in_degree.set(e.getTo(), in_degree.get(e.getTo()) + 1);
+    final int[] expected = list.calculateInDegrees();
+    for(int i = 0; i < expected.length; ++i)
+      assertEquals(expected[i], in_degree.getAt(i));
+
+    //Callbacks get the id of their vertex in the list being sorted.
+    final IntVertexProperties<IVertex<Integer>> visited = new IntVertexProperties<IVertex<Integer>>(list, -1);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final ITopologicalSortAsyncResult<Integer, Integer> result = new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>().sortAsync(executor, list, new ITopologicalSortCallback<Integer, Integer>() {
+        @Override
+        public Integer handle(Integer value, ITopologicalSortInput<Integer, Integer> input, IVertex<Integer> vertex, ITopologicalSortCoordinator coordinator) {
+          visited.setAt(input.getVertexId(), list.idOf(vertex));
+          return value;
+        }
+      }, null);
+      assertTrue(result.waitForCompletion());
+    } finally {
+      executor.shutdown();
+    }
+    for(int i = 0; i < list.getIdBound(); ++i)
+      assertEquals(i, visited.getAt(i));
+
+    //Sorting the graph hands callbacks the graph's own ids, even after a removed vertex's id was reused, whether
+    //the whole graph, a slice of it or only what changed is executed.
+    g.addEdge("A", "E").addEdge("E", "G").addEdge("C", "G").addEdge("F", "D");
+    final List<ITopologicalSortStrategy<IVertex<String>, String, String>> strategies = new ArrayList<ITopologicalSortStrategy<IVertex<String>, String, String>>();
+    strategies.add(new SimpleTopologicalSort<IVertex<String>, String, String>());
+    strategies.add(new IncrementalTopologicalSort<IVertex<String>, String, String>());
+    final ExecutorService graph_executor = Executors.newFixedThreadPool(4);
+    try {
+      for(ITopologicalSortStrategy<IVertex<String>, String, String> strategy : strategies) {
+        for(int slice = 0; slice < 2; ++slice) {
+          final VertexProperties<IVertex<String>, String> seen = new VertexProperties<IVertex<String>, String>(g, null);
+          final ITopologicalSortCallback<String, String> record = new ITopologicalSortCallback<String, String>() {
+            @Override
+            public String handle(String value, ITopologicalSortInput<String, String> input, IVertex<String> vertex, ITopologicalSortCoordinator coordinator) {
+              seen.setAt(input.getVertexId(), value);
+              return value;
+            }
+          };
+          final ITopologicalSortAsyncResult<String, String> result = (slice == 0)
+            ? g.sortAsync(graph_executor, strategy, record)
+            : g.sortAsync(graph_executor, strategy, Arrays.asList(ObjectVertex.from("G")), record, null);
+          assertTrue(result.waitForCompletion());
+          for(IVertex<String> v : g.getVertices()) {
+            if (slice == 0 || !"D".equals(v.getValue()) && !"F".equals(v.getValue()))
+              assertEquals(v.getValue(), seen.get(v));
+          }
+          if (strategy instanceof IncrementalTopologicalSort)
+            ((IncrementalTopologicalSort<IVertex<String>, String, String>)strategy).invalidateAll();
+        }
+      }
+    } finally {
+      graph_executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testRemoveVertexCascades() throws CyclicGraphException {
+    for(DirectedAcyclicGraph.EdgeStorage storage : DirectedAcyclicGraph.EdgeStorage.values()) {
+      final NumberGraph<Integer> g = GraphGenerator.seeded(8L).random(400, 0.02).toNumberGraph();
+      g.withEdgeStorage(storage);
+      g.addEdge(7, 7);
+      final Set<IEdge<IVertex<Integer>>> expected = new HashSet<IEdge<IVertex<Integer>>>(g.getEdges());
+
+      //Single removals go through the incident-edge index, which must keep up with later edge changes.
+      for(int v = 1; v < 390; v += 7) {
+        g.removeVertex(v);
+        for(Iterator<IEdge<IVertex<Integer>>> it = expected.iterator(); it.hasNext(); ) {
+          final IEdge<IVertex<Integer>> e = it.next();
+          if (e.getFrom().getValue() == v || e.getTo().getValue() == v)
+            it.remove();
+        }
+        g.addEdge(v + 1, v + 2);
+        expected.add(new Edge<IVertex<Integer>>(ObjectVertex.from(v + 1), ObjectVertex.from(v + 2)));
+      }
+      assertEquals(storage.name(), expected, new HashSet<IEdge<IVertex<Integer>>>(g.getEdges()));
+      g.removeEdge(7, 7);
+      assertTrue(storage.name(), g.validate());
+      assertTrue(storage.name(), GraphGenerator.isTopologicalOrder(g, g.sort()));
+
+      //Bulk removal in one pass over the edges when no index has been built yet.
+      final NumberGraph<Integer> bulk = GraphGenerator.seeded(8L).random(400, 0.02).toNumberGraph();
+      bulk.withEdgeStorage(storage);
+      final List<IVertex<Integer>> doomed = new ArrayList<IVertex<Integer>>();
+      for(int v = 1; v <= 400; v += 3)
+        doomed.add(ObjectVertex.from(v));
+      bulk.removeVertices(doomed);
+      assertEquals(storage.name(), 400 - doomed.size(), bulk.getVertices().size());
+      assertTrue(storage.name(), bulk.validate());
+      for(IEdge<IVertex<Integer>> e : bulk.getEdges())
+        assertFalse(storage.name(), doomed.contains(e.getFrom()) || doomed.contains(e.getTo()));
+      assertTrue(storage.name(), GraphGenerator.isTopologicalOrder(bulk, bulk.sort()));
+    }
+  }
+
+  @Test
+  public void testIncrementalValidation() {
+    for(DirectedAcyclicGraph.EdgeStorage storage : DirectedAcyclicGraph.EdgeStorage.values()) {
+      final Random random = new Random(12L);
+      final NumberGraph<Integer> g = NumberGraph.createForNumbers();
+      g.withEdgeStorage(storage);
+
+      //Edges may be added before their vertices, so mix every kind of change and compare against a full scan.
+      for(int i = 0; i < 5000; ++i) {
+        final int a = random.nextInt(30);
+        final int b = random.nextInt(30);
+        switch(random.nextInt(6)) {
+          case 0:
+          case 1:
+            g.addEdge(a, b);
+            break;
+          case 2:
+            g.removeEdge(a, b);
+            break;
+          case 3:
+            g.addVertex(a);
+            break;
+          case 4:
+            g.removeVertex(a);
+            break;
+          default:
+            if (random.nextInt(50) == 0)
+              g.removeVertices(Arrays.asList(ObjectVertex.from(a), ObjectVertex.from(b)));
+            else
+              g.addVertex(b);
+            break;
+        }
+        assertEquals(storage.name() + " after change " + i, isValid(g), g.validate());
+      }
+      final NumberGraph<Integer> copy = g.copyAsNumberGraph();
+      assertEquals(storage.name(), isValid(copy), copy.validate());
+
+      //Adding every missing endpoint completes every dangling edge, in the copy as well as the original.
+      for(int v = 0; v < 30; ++v)
+        copy.addVertex(v);
+      assertTrue(storage.name(), copy.validate());
+      assertEquals(storage.name(), isValid(g), g.validate());
+    }
+
+    //Sorting an invalid graph is still refused.
+    final StringGraph g = StringGraph.buildFromStrings("A").addEdge("A", "B");
+    assertFalse(g.validate());
+    try {
+      g.sort();
+      assertTrue("An invalid graph should not sort", false);
+    } catch(IllegalStateException expected) {
+    } catch(CyclicGraphException e) {
+      assertTrue("An invalid graph should not sort", false);
+    }
+    g.addVertex("B");
+    assertTrue(g.validate());
+  }
+
+  private static boolean isValid(final IGraph<?, ?, ?> g) {
+    for(IEdge<?> e : g.getEdges()) {
+      if (!g.getVertices().contains(e.getFrom()) || !g.getVertices().contains(e.getTo()))
+        return false;
+    }
+    return true;
+  }
+
+  @Test
+  public void testBatchSort() throws CyclicGraphException {
+    final List<IGraph<IVertex<Integer>, Integer, Integer>> graphs = new ArrayList<IGraph<IVertex<Integer>, Integer, Integer>>();
+    for(int i = 0; i < 500; ++i) {
+      final GraphGenerator.Shape shape = GraphGenerator.Shape.values()[i % GraphGenerator.Shape.values().length];
+      final GraphGenerator generator = GraphGenerator.seeded(i).shape(shape, 5 + (i % 40));
+      graphs.add((i % 50 == 7) ? generator.injectCycles(1).toNumberGraph() : generator.toNumberGraph());
+    }
+    graphs.add(VersionedDirectedAcyclicGraph.<IVertex<Integer>, Integer, Integer>create().addVertex(ObjectVertex.from(1)));
+    graphs.add(NumberGraph.<Integer>createForNumbers());
+
+    final List<List<Integer>> expected = new ArrayList<List<Integer>>();
+    for(IGraph<IVertex<Integer>, Integer, Integer> g : graphs) {
+      try {
+        expected.add(g.sort());
+      } catch(CyclicGraphException e) {
+        expected.add(null);
+      }
+    }
+
+    assertEquals(expected, new BatchTopologicalSort().sortAll(graphs));
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final BatchTopologicalSort batch = new BatchTopologicalSort(executor);
+      for(int i = 0; i < 3; ++i)
+        assertEquals(expected, batch.sortAll(graphs));
+
+      graphs.add(NumberGraph.buildFromNumbers(1).addEdge(1, 2));
+      try {
+        batch.sortAll(graphs);
+        assertTrue("An invalid graph should fail the batch", false);
+      } catch(IllegalStateException expected_failure) {
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testSortContext() throws CyclicGraphException {
+    final TopologicalSortContext context = new TopologicalSortContext();
+    for(Solution solution : Examples.ALL_SOLUTIONS) {
+      final IGraph g = solution.getGraph();
+      final IAdjacencyList list = new AdjacencyList(g.getVertices(), g.getEdges());
+      final SimpleTopologicalSort strategy = new SimpleTopologicalSort();
+      try {
+        final List expected = strategy.sort(list);
+        assertEquals(solution.getMessage(), expected, strategy.sort(list, context));
+        assertEquals(solution.getMessage(), expected, context.sort(list));
+        assertEquals(solution.getMessage(), expected, context.sort((DirectedAcyclicGraph)g));
+        assertEquals(solution.getMessage(), expected, context.sort(list));
+        assertFalse(solution.getMessage(), solution.isCycleExpected());
+      } catch(CyclicGraphException e) {
+        assertTrue(solution.getMessage(), solution.isCycleExpected());
+        try {
+          context.sort(list);
+          assertTrue(solution.getMessage(), false);
+        } catch(CyclicGraphException expected) {
+        }
+      }
+    }
+
+    //Sorting the same adjacency list again shouldn't allocate.
+    final NumberGraph<Integer> g = GraphGenerator.seeded(2L).layered(20, 50, 3).toNumberGraph();
+    final IAdjacencyList<IVertex<Integer>, Integer, Integer> list = new AdjacencyList<IVertex<Integer>, Integer, Integer>(g.getVertices(), g.getEdges());
+    final List<Integer> expected = g.sort();
+    assertEquals(expected, context.sort(list));
+    final List<Integer> output = new ArrayList<Integer>(expected.size());
+    context.sort(list, output);
+    assertEquals(expected, output);
+
+    final java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported()) {
+      final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean)threads;
+      final long thread = Thread.currentThread().getId();
+      final long before = allocations.getThreadAllocatedBytes(thread);
+      for(int i = 0; i < 1000; ++i)
+        context.sort(list);
+      final long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+      assertTrue("Allocated " + allocated + " bytes", allocated < 64L * 1024L);
+    }
+    assertEquals(expected, context.sort(list));
+    context.release();
+    assertEquals(expected, context.sort(list));
+  }
+
+  @Test
+  public void testSortOrder() throws CyclicGraphException {
+    final SimpleTopologicalSort<IVertex<Integer>, Integer, Integer> strategy = new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>();
+    final NumberGraph<Integer> g = GraphGenerator.seeded(3L).random(300, 0.02).toNumberGraph();
+    final IAdjacencyList<IVertex<Integer>, Integer, Integer> list = new AdjacencyList<IVertex<Integer>, Integer, Integer>(g.getVertices(), g.getEdges());
+    final List<Integer> expected = strategy.sort(list);
+
+    final TopologicalOrder<IVertex<Integer>, Integer> order = strategy.sortOrder(list);
+    assertEquals(expected.size(), order.size());
+    for(int position = 0; position < order.size(); ++position) {
+      assertEquals(expected.get(position), order.vertexAt(position).get());
+      assertEquals(position, order.rankAt(order.indexAt(position)));
+      assertEquals(position, order.rankOf(order.vertexAt(position)));
+    }
+    for(IEdge<IVertex<Integer>> e : g.getEdges()) {
+      assertTrue(order.precedes(e.getFrom(), e.getTo()));
+      assertFalse(order.precedes(e.getTo(), e.getFrom()));
+    }
+    assertEquals(-1, order.rankOf(ObjectVertex.from(-1)));
+
+    //Sorting into caller-owned arrays matches.
+    final TopologicalSortContext context = new TopologicalSortContext();
+    final int[] indices = new int[list.size()];
+    final int[] ranks = new int[list.size()];
+    assertEquals(list.size(), context.sortIndices(list, indices, ranks));
+    assertTrue(Arrays.equals(order.getOrder(), indices));
+    assertTrue(Arrays.equals(order.getRanks(), ranks));
+
+    //A cycle leaves the arrays alone.
+    final NumberGraph<Integer> cyclic = GraphGenerator.seeded(3L).random(50, 0.05).injectCycles(1).toNumberGraph();
+    final IAdjacencyList<IVertex<Integer>, Integer, Integer> cyclic_list = new AdjacencyList<IVertex<Integer>, Integer, Integer>(cyclic.getVertices(), cyclic.getEdges());
+    final int[] untouched = new int[cyclic_list.size()];
+    try {
+      context.sortIndices(cyclic_list, untouched, null);
+      assertTrue(false);
+    } catch(CyclicGraphException e) {
+      assertTrue(Arrays.equals(new int[cyclic_list.size()], untouched));
+    }
+  }
+
+  @Test
+  public void testReachabilityIndex() throws CyclicGraphException {
+    for(int seed = 0; seed < 5; ++seed) {
+      final NumberGraph<Integer> g = GraphGenerator.seeded(seed).random(150 + 40 * seed, 0.01 * (seed + 1)).toNumberGraph();
+      final IAdjacencyList<IVertex<Integer>, Integer, Integer> list = new AdjacencyList<IVertex<Integer>, Integer, Integer>(g.getVertices(), g.getEdges());
+      final ReachabilityIndex<IVertex<Integer>, Integer> index = ReachabilityIndex.build(list);
+      assertTrue(index.getMemoryUsage() > 0L);
+
+      for(int i = 0; i < list.size(); ++i) {
+        //Walk the graph to find what's actually reachable.
+        final Set<IVertex<Integer>> expected = new HashSet<IVertex<Integer>>();
+        final List<IVertex<Integer>> pending = new ArrayList<IVertex<Integer>>(list.outNeighborsAt(i));
+        while(!pending.isEmpty()) {
+          final IVertex<Integer> v = pending.remove(pending.size() - 1);
+          if (expected.add(v))
+            pending.addAll(list.outNeighborsFor(v));
+        }
+
+        final IVertex<Integer> from = list.pairAt(i).getVertex();
+        assertEquals(expected, new HashSet<IVertex<Integer>>(index.descendantsOf(from)));
+        for(int j = 0; j < list.size(); ++j)
+          assertEquals(expected.contains(list.pairAt(j).getVertex()), index.reachesAt(i, j));
+        for(IVertex<Integer> ancestor : index.ancestorsOf(from))
+          assertTrue(index.reaches(ancestor, from));
+      }
+
+      //Capping the memory leaves the start of the order unlabelled without changing any answer.
+      assertTrue(index.isComplete());
+      for(long max_bytes : new long[] { 0L, index.getMemoryUsage() / 2L }) {
+        final ReachabilityIndex<IVertex<Integer>, Integer> capped = ReachabilityIndex.build(list, max_bytes);
+        assertFalse(capped.isComplete());
+        assertTrue(capped.getMemoryUsage() < index.getMemoryUsage());
+        for(int i = 0; i < list.size(); ++i) {
+          final IVertex<Integer> v = list.pairAt(i).getVertex();
+          assertEquals(index.descendantsOf(v), capped.descendantsOf(v));
+          assertEquals(index.ancestorsOf(v), capped.ancestorsOf(v));
+          for(int j = 0; j < list.size(); ++j)
+            assertEquals(index.reachesAt(i, j), capped.reachesAt(i, j));
+        }
+      }
+    }
+
+    //Snapshots build the index once.
+    final VersionedDirectedAcyclicGraph<IVertex<Integer>, Integer, Integer> versioned = VersionedDirectedAcyclicGraph.create();
+    final IVertex<Integer> a = ObjectVertex.from(1);
+    final IVertex<Integer> b = ObjectVertex.from(2);
+    final IVertex<Integer> c = ObjectVertex.from(3);
+    versioned.addVertex(a).addVertex(b).addVertex(c).addEdge(a, b).addEdge(b, c);
+    final GraphSnapshot<IVertex<Integer>, Integer, Integer> snapshot = versioned.snapshot();
+    assertTrue(snapshot.reachability() == snapshot.reachability());
+    assertTrue(snapshot.reachability().reaches(a, c));
+    assertFalse(snapshot.reachability().reaches(c, a));
+    assertFalse(snapshot.reachability().reaches(a, a));
+  }
+
+  @Test
+  public void testTransitiveReduction() throws CyclicGraphException {
+    final IVertex<Integer> a = ObjectVertex.from(1);
+    final IVertex<Integer> b = ObjectVertex.from(2);
+    final IVertex<Integer> c = ObjectVertex.from(3);
+    final IGraph<IVertex<Integer>, Integer, Integer> simple = DirectedAcyclicGraph.build(a, b, c);
+    simple.addEdge(a, b).addEdge(b, c).addEdge(a, c).transitiveReduction();
+    assertEquals(2, simple.getEdges().size());
+    assertFalse(simple.getEdges().contains(new Edge<IVertex<Integer>>(a, c)));
+
+    //Reachability is unchanged and nothing is left to remove.
+    for(DirectedAcyclicGraph.EdgeStorage storage : DirectedAcyclicGraph.EdgeStorage.values()) {
+      final NumberGraph<Integer> g = GraphGenerator.seeded(4L).random(200, 0.05).toNumberGraph();
+      g.withEdgeStorage(storage);
+      final IAdjacencyList<IVertex<Integer>, Integer, Integer> before = new AdjacencyList<IVertex<Integer>, Integer, Integer>(g.getVertices(), g.getEdges());
+      final ReachabilityIndex<IVertex<Integer>, Integer> expected = ReachabilityIndex.build(before);
+      final int edge_count = g.getEdges().size();
+
+      g.transitiveReduction();
+      assertTrue(g.getEdges().size() < edge_count);
+      final IAdjacencyList<IVertex<Integer>, Integer, Integer> after = new AdjacencyList<IVertex<Integer>, Integer, Integer>(g.getVertices(), g.getEdges());
+      assertTrue(TransitiveReduction.redundantEdges(after).isEmpty());
+      final ReachabilityIndex<IVertex<Integer>, Integer> actual = ReachabilityIndex.build(after);
+      for(IVertex<Integer> v : g.getVertices())
+        assertEquals(expected.descendantsOf(v), actual.descendantsOf(v));
+      assertTrue(GraphGenerator.isTopologicalOrder(g, g.sort()));
+    }
+
+    //Cyclic graphs are left alone.
+    final IGraph<IVertex<Integer>, Integer, Integer> cyclic = DirectedAcyclicGraph.build(a, b, c);
+    cyclic.addEdge(a, b).addEdge(b, c).addEdge(c, a).addEdge(a, c);
+    try {
+      cyclic.transitiveReduction();
+      assertTrue(false);
+    } catch(CyclicGraphException e) {
+      assertEquals(4, cyclic.getEdges().size());
+    }
+
+    //Versioned graphs publish the reduction as one version.
+    final VersionedDirectedAcyclicGraph<IVertex<Integer>, Integer, Integer> versioned = VersionedDirectedAcyclicGraph.create();
+    versioned.addVertex(a).addVertex(b).addVertex(c).addEdge(a, b).addEdge(b, c).addEdge(a, c);
+    final GraphSnapshot<IVertex<Integer>, Integer, Integer> snapshot = versioned.snapshot();
+    versioned.transitiveReduction();
+    assertEquals(snapshot.getVersion() + 1L, versioned.getVersion());
+    assertEquals(2, versioned.getEdges().size());
+    assertEquals(3, snapshot.getEdges().size());
+    try {
+      snapshot.transitiveReduction();
+      assertTrue(false);
+    } catch(UnsupportedOperationException e) {
+    }
+
+    //Reducing before async execution drops the redundant inputs.
+    final IGraph<IVertex<Integer>, Integer, Integer> scheduled = DirectedAcyclicGraph.build(a, b, c);
+    scheduled.addEdge(a, b).addEdge(b, c).addEdge(a, c);
+    final AtomicInteger inputs = new AtomicInteger();
+    final ITopologicalSortCallback<Integer, Integer> callback = new ITopologicalSortCallback<Integer, Integer>() {
+      @Override
+      public Integer handle(Integer number, ITopologicalSortInput<Integer, Integer> input, IVertex<Integer> vertex, ITopologicalSortCoordinator coordinator) throws Throwable {
+        inputs.addAndGet(input.size());
+        return number;
+      }
+    };
+    final ITopologicalSortAsyncResult<Integer, Integer> result = scheduled.sortAsync(new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>().setTransitiveReduction(true), callback);
+    assertTrue(result.waitForCompletion(10L, TimeUnit.SECONDS));
+    assertEquals(Integer.valueOf(3), result.get(3));
+    assertEquals(2, inputs.get());
+    assertEquals(3, scheduled.getEdges().size());
+    assertFalse(Examples.CYCLE_3.sortAsync(new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>().setTransitiveReduction(true), callback).waitForCompletion(10L, TimeUnit.SECONDS));
+
+    //The reduction is a view that keeps every index, and it's found once per adjacency list.
+    final NumberGraph<Integer> dense = GraphGenerator.seeded(6L).random(200, 0.05).toNumberGraph();
+    final IAdjacencyList<IVertex<Integer>, Integer, Integer> full = new AdjacencyList<IVertex<Integer>, Integer, Integer>(dense.getVertices(), dense.getEdges());
+    final IAdjacencyList<IVertex<Integer>, Integer, Integer> reduced = TransitiveReduction.reduce(full);
+    assertTrue(TransitiveReduction.redundantEdges(reduced).isEmpty());
+    int reduced_edges = 0;
+    for(int i = 0; i < full.size(); ++i) {
+      assertEquals(full.pairAt(i).getVertex(), reduced.pairAt(i).getVertex());
+      reduced_edges += reduced.outNeighborsAt(i).size();
+    }
+    assertEquals(dense.getEdges().size() - TransitiveReduction.redundantEdges(full).size(), reduced_edges);
+    int in_degree_sum = 0;
+    for(int in_degree : reduced.calculateInDegrees())
+      in_degree_sum += in_degree;
+    assertEquals(reduced_edges, in_degree_sum);
+
+    final SimpleTopologicalSort<IVertex<Integer>, Integer, Integer> reducing = new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>().setTransitiveReduction(true);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for(int i = 0; i < 2; ++i) {
+        inputs.set(0);
+        assertTrue(reducing.sortAsync(executor, full, callback, null).waitForCompletion(10L, TimeUnit.SECONDS));
+        assertEquals(reduced_edges, inputs.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testSortTargets() throws Throwable {
+    final NumberGraph<Integer> g = GraphGenerator.seeded(5L).layered(10, 30, 2).toNumberGraph();
+    final List<IVertex<Integer>> all = new ArrayList<IVertex<Integer>>(g.getVertices());
+    final List<IVertex<Integer>> targets = Arrays.asList(all.get(150), all.get(200), all.get(20));
+
+    //Find the ancestors by walking the edges backwards.
+    final Set<Integer> expected = new HashSet<Integer>();
+    final List<IVertex<Integer>> pending = new ArrayList<IVertex<Integer>>(targets);
+    while(!pending.isEmpty()) {
+      final IVertex<Integer> v = pending.remove(pending.size() - 1);
+      if (!expected.add(v.get()))
+        continue;
+      for(IEdge<IVertex<Integer>> e : g.getEdges()) {
+        if (e.getTo().equals(v))
+          pending.add(e.getFrom());
+      }
+    }
+
+    final List<IGraph<IVertex<Integer>, Integer, Integer>> graphs = new ArrayList<IGraph<IVertex<Integer>, Integer, Integer>>();
+    graphs.add(g);
+    graphs.add(((DirectedAcyclicGraph<IVertex<Integer>, Integer, Integer>)g.copy()).withEdgeStorage(DirectedAcyclicGraph.EdgeStorage.NEIGHBOR_LISTS));
+    final VersionedDirectedAcyclicGraph<IVertex<Integer>, Integer, Integer> versioned = VersionedDirectedAcyclicGraph.create();
+    final ConcurrentDirectedAcyclicGraph<IVertex<Integer>, Integer, Integer> concurrent = ConcurrentDirectedAcyclicGraph.create();
+    for(IVertex<Integer> v : all) {
+      versioned.addVertex(v);
+      concurrent.addVertex(v);
+    }
+    for(IEdge<IVertex<Integer>> e : g.getEdges()) {
+      versioned.addEdge(e.getFrom(), e.getTo());
+      concurrent.addEdge(e.getFrom(), e.getTo());
+    }
+    graphs.add(versioned);
+    graphs.add(versioned.snapshot());
+    graphs.add(concurrent);
+
+    final List<Integer> full = g.sort();
+    for(IGraph<IVertex<Integer>, Integer, Integer> graph : graphs) {
+      final List<Integer> sorted = graph.sort(targets);
+      assertEquals(expected, new HashSet<Integer>(sorted));
+      assertEquals(expected.size(), sorted.size());
+      for(IEdge<IVertex<Integer>> e : g.getEdges()) {
+        if (expected.contains(e.getTo().get()))
+          assertTrue(sorted.indexOf(e.getFrom().get()) < sorted.indexOf(e.getTo().get()));
+      }
+      assertTrue(full.containsAll(sorted));
+
+      final AtomicInteger processed = new AtomicInteger();
+      final ITopologicalSortAsyncResult<Integer, Integer> result = graph.sortAsync(targets, new ITopologicalSortCallback<Integer, Integer>() {
+        @Override
+        public Integer handle(Integer number, ITopologicalSortInput<Integer, Integer> input, IVertex<Integer> vertex, ITopologicalSortCoordinator coordinator) throws Throwable {
+          processed.incrementAndGet();
+          return number;
+        }
+      });
+      assertTrue(result.waitForCompletion(10L, TimeUnit.SECONDS));
+      result.getExecutorService().shutdown();
+      assertEquals(expected.size(), processed.get());
+      //Only targets that no other target depends on are ending vertices of the slice.
+      final Set<Integer> ending = new HashSet<Integer>(expected);
+      for(IEdge<IVertex<Integer>> e : g.getEdges())
+        ending.remove(e.getFrom().get());
+      assertFalse(ending.isEmpty());
+      for(Integer value : ending)
+        assertEquals(value, result.get(value));
+    }
+
+    //Later versions share the in-neighbor index of the working graph, and no version sees another's changes.
+    final GraphSnapshot<IVertex<Integer>, Integer, Integer> before = versioned.snapshot();
+    final List<Integer> sliced_before = before.sort(targets);
+    final IVertex<Integer> extra = ObjectVertex.from(-5);
+    IEdge<IVertex<Integer>> dropped = null;
+    for(IEdge<IVertex<Integer>> e : g.getEdges()) {
+      if (e.getTo().equals(targets.get(0)))
+        dropped = e;
+    }
+    assertNotNull(dropped);
+    versioned.addVertex(extra).addEdge(extra, targets.get(0));
+    versioned.removeEdge(dropped.getFrom(), dropped.getTo());
+    final GraphSnapshot<IVertex<Integer>, Integer, Integer> after = versioned.snapshot();
+    assertEquals(new HashSet<Integer>(after.copy().sort(targets)), new HashSet<Integer>(after.sort(targets)));
+    assertTrue(after.sort(targets).contains(-5));
+    assertEquals(sliced_before, before.sort(targets));
+
+    versioned.removeVertex(extra);
+    versioned.addEdge(dropped.getFrom(), dropped.getTo());
+    assertEquals(new HashSet<Integer>(sliced_before), new HashSet<Integer>(versioned.snapshot().sort(targets)));
+    assertTrue(after.sort(targets).contains(-5));
+
+    try {
+      g.sort(Arrays.asList(ObjectVertex.from(-1)));
+      assertTrue(false);
+    } catch(IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testIncrementalSort() {
+    final NumberGraph<Integer> g = GraphGenerator.seeded(6L).layered(6, 20, 2).toNumberGraph();
+    final Set<Integer> executed = java.util.Collections.synchronizedSet(new HashSet<Integer>());
+    final AtomicInteger offset = new AtomicInteger();
+
+    //Every vertex sums its inputs with its own value, plus an offset for vertex 30.
+    final ITopologicalSortCallback<Integer, Integer> callback = new ITopologicalSortCallback<Integer, Integer>() {
+      @Override
+      public Integer handle(Integer number, ITopologicalSortInput<Integer, Integer> input, IVertex<Integer> vertex, ITopologicalSortCoordinator coordinator) throws Throwable {
+        assertTrue(executed.add(number));
+        int sum = number + (number == 30 ? offset.get() : 0);
+        for(IEdge<IVertex<Integer>> e : g.getEdges()) {
+          if (e.getTo().get().equals(number))
+            sum += input.get(e.getFrom().get());
+        }
+        return sum;
+      }
+    };
+
+    final IncrementalTopologicalSort<IVertex<Integer>, Integer, Integer> incremental = new IncrementalTopologicalSort<IVertex<Integer>, Integer, Integer>();
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      assertTrue(g.sortAsync(executor, incremental, callback).waitForCompletion(10L, TimeUnit.SECONDS));
+      assertEquals(g.getVertices().size(), executed.size());
+
+      //Nothing is dirty, so nothing runs and the ending values are remembered.
+      executed.clear();
+      final ITopologicalSortAsyncResult<Integer, Integer> unchanged = g.sortAsync(executor, incremental, callback);
+      assertTrue(unchanged.waitForCompletion(10L, TimeUnit.SECONDS));
+      assertTrue(executed.isEmpty());
+      for(IVertex<Integer> v : g.getVertices()) {
+        assertTrue(incremental.hasResult(v.get()));
+        if (unchanged.get(v.get()) != null)
+          assertEquals(incremental.resultFor(v.get()), unchanged.get(v.get()));
+      }
+
+      //Only vertex 30 and everything downstream of it runs again.
+      final Set<Integer> downstream = new HashSet<Integer>();
+      final List<Integer> pending = new ArrayList<Integer>(Arrays.asList(30));
+      while(!pending.isEmpty()) {
+        final Integer v = pending.remove(pending.size() - 1);
+        if (!downstream.add(v))
+          continue;
+        for(IEdge<IVertex<Integer>> e : g.getEdges()) {
+          if (e.getFrom().get().equals(v))
+            pending.add(e.getTo().get());
+        }
+      }
+      executed.clear();
+      offset.set(1000);
+      assertTrue(g.sortAsync(executor, incremental.markDirty(30), callback).waitForCompletion(10L, TimeUnit.SECONDS));
+      assertEquals(downstream, executed);
+
+      //The results match a full run from scratch.
+      final IncrementalTopologicalSort<IVertex<Integer>, Integer, Integer> fresh = new IncrementalTopologicalSort<IVertex<Integer>, Integer, Integer>();
+      executed.clear();
+      assertTrue(g.sortAsync(executor, fresh, callback).waitForCompletion(10L, TimeUnit.SECONDS));
+      for(IVertex<Integer> v : g.getVertices())
+        assertEquals(fresh.resultFor(v.get()), incremental.resultFor(v.get()));
+
+      executed.clear();
+      assertTrue(g.sortAsync(executor, incremental.invalidateAll(), callback).waitForCompletion(10L, TimeUnit.SECONDS));
+      assertEquals(g.getVertices().size(), executed.size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testMemoizingCallback() {
+    final NumberGraph<Integer> g = GraphGenerator.seeded(7L).layered(5, 10, 2).toNumberGraph();
+    final int n = g.getVertices().size();
+    final AtomicInteger calls = new AtomicInteger();
+    final ITopologicalSortCallback<Integer, Integer> callback = new ITopologicalSortCallback<Integer, Integer>() {
+      @Override
+      public Integer handle(Integer number, ITopologicalSortInput<Integer, Integer> input, IVertex<Integer> vertex, ITopologicalSortCoordinator coordinator) throws Throwable {
+        calls.incrementAndGet();
+        int sum = number;
+        for(Integer i : input.inputs())
+          sum += i;
+        return sum;
+      }
+    };
+
+    final MemoizingCallback<Integer, Integer> memo = new MemoizingCallback<Integer, Integer>(callback, 1000);
+    final ITopologicalSortAsyncResult<Integer, Integer> first = g.sortAsync(memo);
+    assertTrue(first.waitForCompletion(10L, TimeUnit.SECONDS));
+    first.getExecutorService().shutdown();
+    assertEquals(n, calls.get());
+    assertEquals(n, memo.getMissCount());
+    assertEquals(0L, memo.getHitCount());
+    assertEquals(n, memo.size());
+
+    //The same inputs are answered from memory.
+    final ITopologicalSortAsyncResult<Integer, Integer> second = g.sortAsync(memo);
+    assertTrue(second.waitForCompletion(10L, TimeUnit.SECONDS));
+    second.getExecutorService().shutdown();
+    assertEquals(n, calls.get());
+    assertEquals(n, memo.getHitCount());
+    for(IVertex<Integer> v : g.getVertices()) {
+      if (first.get(v.get()) != null)
+        assertEquals(first.get(v.get()), second.get(v.get()));
+    }
+
+    //Least recently used results are evicted once full.
+    final MemoizingCallback<Integer, Integer> small = new MemoizingCallback<Integer, Integer>(callback, 5);
+    final ITopologicalSortAsyncResult<Integer, Integer> third = g.sortAsync(small);
+    assertTrue(third.waitForCompletion(10L, TimeUnit.SECONDS));
+    third.getExecutorService().shutdown();
+    assertEquals(5, small.size());
+    assertEquals(n - 5, small.getEvictionCount());
+    small.clear();
+    assertEquals(0, small.size());
+
+    //Looking up spilled inputs never reads them back.
+    final AtomicInteger reads = new AtomicInteger();
+    final IProcessedValueSerializer<Integer> counting = new IProcessedValueSerializer<Integer>() {
+      @Override
+      public long sizeOf(Integer value) {
+        return 16L;
+      }
+
+      @Override
+      public void write(Integer value, OutputStream output) throws IOException {
+        new DataOutputStream(output).writeInt(value);
+      }
+
+      @Override
+      public Integer read(InputStream input) throws IOException {
+        reads.incrementAndGet();
+        return new DataInputStream(input).readInt();
+      }
+    };
+    final MemoizingCallback<Integer, Integer> spilled = new MemoizingCallback<Integer, Integer>(callback, 1000);
+    final SimpleTopologicalSort<IVertex<Integer>, Integer, Integer> spilling = new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>().enableSpilling(counting, 0L);
+    final ITopologicalSortAsyncResult<Integer, Integer> fourth = g.sortAsync(spilling, spilled);
+    assertTrue(fourth.waitForCompletion(10L, TimeUnit.SECONDS));
+    fourth.getExecutorService().shutdown();
+    assertTrue(reads.get() > 0);
+    reads.set(0);
+    final ITopologicalSortAsyncResult<Integer, Integer> fifth = g.sortAsync(spilling, spilled);
+    assertTrue(fifth.waitForCompletion(10L, TimeUnit.SECONDS));
+    fifth.getExecutorService().shutdown();
+    assertEquals(n, spilled.getHitCount());
+    assertEquals(0, reads.get());
+    for(IVertex<Integer> v : g.getVertices()) {
+      if (first.get(v.get()) != null)
+        assertEquals(first.get(v.get()), fifth.get(v.get()));
+    }
+  }
 }
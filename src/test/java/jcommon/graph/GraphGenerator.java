@@ -0,0 +1,428 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package jcommon.graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Seeded generator of large synthetic graphs for stress tests and benchmarks.
+ *
+ * Vertices are numbered <code>0..n-1</code> and, before any cycles are injected, every
+ * generated edge goes from a lower index to a higher one so the result is always a DAG.
+ * Generation is O(V + E) and the same seed and configuration always produce the same graph.
+ *
+ * <pre>
+ *   NumberGraph&lt;Integer&gt; g = GraphGenerator.seeded(42L).layered(100, 1000, 4).toNumberGraph();
+ * </pre>
+ */
+public class GraphGenerator {
+  public enum Shape {
+    RANDOM,
+    LAYERED,
+    CHAIN,
+    FAN_OUT,
+    FAN_IN,
+    FAN_OUT_IN,
+    DIAMOND_LATTICE
+  }
+
+  public interface EdgeSink {
+    void edge(int from, int to);
+  }
+
+  public interface VertexFactory<TVertex extends IVertex> {
+    TVertex create(int index);
+  }
+
+  private final long seed;
+  private Shape shape;
+  private int vertex_count;
+  private double density;
+  private int rows;
+  private int columns;
+  private int fan_in;
+  private int cycles;
+
+  public GraphGenerator(final long seed) {
+    this.seed = seed;
+    this.shape = Shape.CHAIN;
+    this.vertex_count = 0;
+  }
+
+  public static GraphGenerator seeded(final long seed) {
+    return new GraphGenerator(seed);
+  }
+
+  public Shape getShape() {
+    return shape;
+  }
+
+  public int getVertexCount() {
+    return vertex_count;
+  }
+
+  /**
+   * Every pair <code>i &lt; j</code> is connected with the given probability.
+   */
+  public GraphGenerator random(final int vertices, final double density) {
+    if (density < 0.0 || density > 1.0)
+      throw new IllegalArgumentException("density must be between 0 and 1");
+    this.shape = Shape.RANDOM;
+    this.vertex_count = checkCount(vertices);
+    this.density = density;
+    return this;
+  }
+
+  /**
+   * <code>layers</code> layers of <code>width</code> vertices where each vertex depends on up to
+   * <code>fanIn</code> distinct vertices of the previous layer.
+   */
+  public GraphGenerator layered(final int layers, final int width, final int fanIn) {
+    if (fanIn < 1)
+      throw new IllegalArgumentException("fanIn must be at least 1");
+    this.shape = Shape.LAYERED;
+    this.vertex_count = checkCount((long)layers * width);
+    this.rows = layers;
+    this.columns = width;
+    this.fan_in = Math.min(fanIn, width);
+    return this;
+  }
+
+  /**
+   * 0 -> 1 -> ... -> n-1
+   */
+  public GraphGenerator chain(final int vertices) {
+    this.shape = Shape.CHAIN;
+    this.vertex_count = checkCount(vertices);
+    return this;
+  }
+
+  /**
+   * A single source with <code>width</code> dependents.
+   */
+  public GraphGenerator fanOut(final int width) {
+    this.shape = Shape.FAN_OUT;
+    this.vertex_count = checkCount(width + 1L);
+    return this;
+  }
+
+  /**
+   * <code>width</code> sources that all feed a single sink.
+   */
+  public GraphGenerator fanIn(final int width) {
+    this.shape = Shape.FAN_IN;
+    this.vertex_count = checkCount(width + 1L);
+    return this;
+  }
+
+  /**
+   * A single source fanning out to <code>width</code> vertices that all fan back in to a single sink.
+   */
+  public GraphGenerator fanOutIn(final int width) {
+    this.shape = Shape.FAN_OUT_IN;
+    this.vertex_count = checkCount(width + 2L);
+    return this;
+  }
+
+  /**
+   * A <code>rows</code> x <code>columns</code> grid where every vertex points right and down, giving
+   * an exponential number of paths between the corners.
+   */
+  public GraphGenerator lattice(final int rows, final int columns) {
+    this.shape = Shape.DIAMOND_LATTICE;
+    this.vertex_count = checkCount((long)rows * columns);
+    this.rows = rows;
+    this.columns = columns;
+    return this;
+  }
+
+  /**
+   * Reverses a copy of up to <code>count</code> randomly chosen edges, each of which closes a cycle.
+   */
+  public GraphGenerator injectCycles(final int count) {
+    if (count < 0)
+      throw new IllegalArgumentException("count cannot be negative");
+    this.cycles = count;
+    return this;
+  }
+
+  /**
+   * Picks reasonable proportions for the given shape with roughly <code>size</code> vertices.
+   */
+  public GraphGenerator shape(final Shape shape, final int size) {
+    switch(shape) {
+      case RANDOM:
+        return random(size, Math.min(1.0, 4.0 / Math.max(1, size)));
+      case LAYERED:
+        final int width = Math.max(1, (int)Math.sqrt(size));
+        return layered(Math.max(1, size / width), width, 2);
+      case CHAIN:
+        return chain(size);
+      case FAN_OUT:
+        return fanOut(Math.max(0, size - 1));
+      case FAN_IN:
+        return fanIn(Math.max(0, size - 1));
+      case FAN_OUT_IN:
+        return fanOutIn(Math.max(0, size - 2));
+      case DIAMOND_LATTICE:
+        final int side = Math.max(1, (int)Math.sqrt(size));
+        return lattice(side, Math.max(1, size / side));
+      default:
+        throw new IllegalArgumentException("Unknown shape: " + shape);
+    }
+  }
+
+  /**
+   * Emits every edge to the provided sink. Returns the number of edges emitted.
+   */
+  public long generate(final EdgeSink sink) {
+    final Random random = new Random(seed);
+    //Sampling draws from its own generator so that injecting cycles doesn't change the acyclic edges.
+    final CycleSink cycle_sink = new CycleSink(sink, cycles, new Random(~seed));
+    final int n = vertex_count;
+
+    switch(shape) {
+      case RANDOM:
+        if (density <= 0.0)
+          break;
+        if (density >= 1.0) {
+          for(int i = 0; i < n; ++i)
+            for(int j = i + 1; j < n; ++j)
+              cycle_sink.edge(i, j);
+          break;
+        }
+        //Skip over the pairs that won't be connected (geometric distribution) so that
+        //generation is proportional to the number of edges rather than to n^2.
+        final double log_q = Math.log(1.0 - density);
+        for(int i = 0; i < n; ++i) {
+          long j = i;
+          while(true) {
+            j += 1L + (long)(Math.log(1.0 - random.nextDouble()) / log_q);
+            if (j >= n)
+              break;
+            cycle_sink.edge(i, (int)j);
+          }
+        }
+        break;
+      case LAYERED:
+        for(int layer = 1; layer < rows; ++layer) {
+          final int previous = (layer - 1) * columns;
+          for(int c = 0; c < columns; ++c) {
+            final int start = random.nextInt(columns);
+            for(int k = 0; k < fan_in; ++k)
+              cycle_sink.edge(previous + (start + k) % columns, layer * columns + c);
+          }
+        }
+        break;
+      case CHAIN:
+        for(int i = 1; i < n; ++i)
+          cycle_sink.edge(i - 1, i);
+        break;
+      case FAN_OUT:
+        for(int i = 1; i < n; ++i)
+          cycle_sink.edge(0, i);
+        break;
+      case FAN_IN:
+        for(int i = 0; i < n - 1; ++i)
+          cycle_sink.edge(i, n - 1);
+        break;
+      case FAN_OUT_IN:
+        for(int i = 1; i < n - 1; ++i) {
+          cycle_sink.edge(0, i);
+          cycle_sink.edge(i, n - 1);
+        }
+        break;
+      case DIAMOND_LATTICE:
+        for(int r = 0; r < rows; ++r) {
+          for(int c = 0; c < columns; ++c) {
+            final int i = r * columns + c;
+            if (c + 1 < columns)
+              cycle_sink.edge(i, i + 1);
+            if (r + 1 < rows)
+              cycle_sink.edge(i, i + columns);
+          }
+        }
+        break;
+    }
+
+    return cycle_sink.finish();
+  }
+
+  /**
+   * Fills the provided graph with vertices created by the factory and then the generated edges.
+   * {@link DirectedAcyclicGraph}s are loaded in bulk through
+   * {@link DirectedAcyclicGraph#addAll(IVertex[], int[], int[])}: the edges are generated twice, first to count
+   * the out-degree of every vertex and then to place each target, so no per-edge objects are kept in between.
+   */
+  @SuppressWarnings("unchecked")
+  public <TVertex extends IVertex<TValue>, TValue extends Object, TProcessedValue extends Object, TGraph extends IGraph<TVertex, TValue, TProcessedValue>> TGraph fill(final TGraph graph, final VertexFactory<TVertex> factory) {
+    final IVertex[] vertices = new IVertex[vertex_count];
+    for(int i = 0; i < vertex_count; ++i)
+      vertices[i] = factory.create(i);
+
+    if (graph instanceof DirectedAcyclicGraph) {
+      final int[] offsets = new int[vertex_count + 1];
+      final long edge_count = generate(new EdgeSink() {
+        @Override
+        public void edge(int from, int to) {
+          ++offsets[from + 1];
+        }
+      });
+      if (edge_count > Integer.MAX_VALUE)
+        throw new IllegalStateException("Too many edges: " + edge_count);
+      for(int i = 0; i < vertex_count; ++i)
+        offsets[i + 1] += offsets[i];
+
+      final int[] targets = new int[(int)edge_count];
+      final int[] next = Arrays.copyOf(offsets, vertex_count);
+      generate(new EdgeSink() {
+        @Override
+        public void edge(int from, int to) {
+          targets[next[from]++] = to;
+        }
+      });
+      ((DirectedAcyclicGraph<TVertex, TValue, TProcessedValue>)graph).addAll((TVertex[])vertices, offsets, targets);
+      return graph;
+    }
+
+    for(int i = 0; i < vertex_count; ++i)
+      graph.addVertex((TVertex)vertices[i]);
+    generate(new EdgeSink() {
+      @Override
+      public void edge(int from, int to) {
+        graph.addEdge((TVertex)vertices[from], (TVertex)vertices[to]);
+      }
+    });
+    return graph;
+  }
+
+  /**
+   * Vertex <code>i</code> has the value <code>i + 1</code>.
+   */
+  public NumberGraph<Integer> toNumberGraph() {
+    return fill(NumberGraph.<Integer>createForNumbers(), new VertexFactory<IVertex<Integer>>() {
+      @Override
+      public IVertex<Integer> create(int index) {
+        return ObjectVertex.from(index + 1);
+      }
+    });
+  }
+
+  /**
+   * Vertex <code>i</code> has the value <code>"V" + i</code>.
+   */
+  public StringGraph toStringGraph() {
+    return fill(StringGraph.createForStrings(), new VertexFactory<IVertex<String>>() {
+      @Override
+      public IVertex<String> create(int index) {
+        return ObjectVertex.from("V" + index);
+      }
+    });
+  }
+
+  /**
+   * Determines if <code>order</code> contains every vertex of <code>graph</code> exactly once and
+   * every edge goes from an earlier value to a later one.
+   */
+  public static <TVertex extends IVertex<TValue>, TValue extends Object> boolean isTopologicalOrder(final IGraph<TVertex, TValue, ?> graph, final List<TValue> order) {
+    if (order == null || order.size() != graph.getVertices().size())
+      return false;
+    final Map<TValue, Integer> position = new HashMap<TValue, Integer>(order.size() * 2);
+    for(int i = 0; i < order.size(); ++i) {
+      if (position.put(order.get(i), i) != null)
+        return false;
+    }
+    for(IEdge<TVertex> e : graph.getEdges()) {
+      final Integer from = position.get(e.getFrom().getValue());
+      final Integer to = position.get(e.getTo().getValue());
+      if (from == null || to == null || from >= to)
+        return false;
+    }
+    return true;
+  }
+
+  private static int checkCount(final long count) {
+    if (count < 0L || count > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Invalid number of vertices: " + count);
+    return (int)count;
+  }
+
+  /**
+   * Passes edges through while keeping a reservoir sample of them. The reverse of each
+   * sampled edge is emitted at the end, closing a cycle.
+   *
+   * An edge that's already in the reservoir is not sampled again, so every injected edge closes a
+   * different cycle and exactly <code>min(cycles, distinct edges)</code> of them are injected.
+   */
+  private static class CycleSink implements EdgeSink {
+    private final EdgeSink sink;
+    private final Random random;
+    private final long[] reservoir;
+    private final Set<Long> sampled;
+    private long count;
+    private long total;
+
+    CycleSink(final EdgeSink sink, final int cycles, final Random random) {
+      this.sink = sink;
+      this.random = random;
+      this.reservoir = new long[cycles];
+      this.sampled = new HashSet<Long>(cycles * 2);
+      this.count = 0L;
+      this.total = 0L;
+    }
+
+    @Override
+    public void edge(int from, int to) {
+      sink.edge(from, to);
+      ++total;
+      if (reservoir.length == 0)
+        return;
+
+      final long packed = ((long)from << 32) | (to & 0xFFFFFFFFL);
+      if (sampled.contains(packed))
+        return;
+      if (count < reservoir.length) {
+        reservoir[(int)count] = packed;
+        sampled.add(packed);
+      } else {
+        final long slot = (long)(random.nextDouble() * (count + 1));
+        if (slot < reservoir.length) {
+          sampled.remove(reservoir[(int)slot]);
+          reservoir[(int)slot] = packed;
+          sampled.add(packed);
+        }
+      }
+      ++count;
+    }
+
+    long finish() {
+      final int injected = (int)Math.min(count, reservoir.length);
+      for(int i = 0; i < injected; ++i)
+        sink.edge((int)(reservoir[i] & 0xFFFFFFFFL), (int)(reservoir[i] >>> 32));
+      return total + injected;
+    }
+  }
+}
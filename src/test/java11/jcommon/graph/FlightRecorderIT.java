@@ -0,0 +1,84 @@
+/*
+  Copyright (C) 2012-2013 the original author or authors.
+
+  See the LICENSE.txt file distributed with this work for additional
+  information regarding copyright ownership.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package jcommon.graph;
+
+import jcommon.graph.impl.SimpleTopologicalSort;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs against the packaged multi-release jar so that the JDK 11 overlay is the one being tested.
+ */
+public class FlightRecorderIT {
+  @Test
+  public void testEventsAreEmitted() throws Exception {
+    final Path dump = Files.createTempFile("jcommon-graph-", ".jfr");
+    try {
+      final Recording recording = new Recording();
+      try {
+        recording.enable("jcommon.graph.AdjacencyList");
+        recording.enable("jcommon.graph.Sort");
+        recording.enable("jcommon.graph.VertexReady");
+        recording.enable("jcommon.graph.VertexRun");
+        recording.start();
+
+        Examples.VALID_2.sort();
+        assertTrue(Examples.VALID_2.sortAsync(new SimpleTopologicalSort<IVertex<Integer>, Integer, Integer>(), new ITopologicalSortCallback<Integer, Integer>() {
+          @Override
+          public Integer handle(Integer number, ITopologicalSortInput<Integer, Integer> input, IVertex<Integer> vertex, ITopologicalSortCoordinator coordinator) throws Throwable {
+            return number;
+          }
+        }).waitForCompletion(10L, TimeUnit.SECONDS));
+
+        recording.stop();
+        recording.dump(dump);
+      } finally {
+        recording.close();
+      }
+
+      final Map<String, Integer> counts = new HashMap<String, Integer>();
+      final List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+      for(RecordedEvent event : events) {
+        final String name = event.getEventType().getName();
+        final Integer count = counts.get(name);
+        counts.put(name, count == null ? 1 : count + 1);
+      }
+
+      assertTrue(counts.containsKey("jcommon.graph.AdjacencyList"));
+      assertTrue(counts.containsKey("jcommon.graph.Sort"));
+      assertEquals(Integer.valueOf(9), counts.get("jcommon.graph.VertexReady"));
+      assertEquals(Integer.valueOf(9), counts.get("jcommon.graph.VertexRun"));
+    } finally {
+      new File(dump.toString()).delete();
+    }
+  }
+}